@@ -0,0 +1,326 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.predic8.membrane.core.rules.AbstractRuleKey;
+import com.predic8.membrane.core.rules.Rule;
+import com.predic8.membrane.core.rules.RuleKey;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+
+/**
+ * An immutable index over a snapshot of the {@link RuleManager}'s rules, used to find the first matching rule
+ * without testing every rule.
+ *
+ * Rules are grouped by port (rules listening on any port form their own group), then by exact host name (rules
+ * with a wildcard or a host pattern fall back to a common group), and finally stored in a trie of path prefixes
+ * (the literal prefix of a path regular expression, or the whole path for prefix matching).
+ *
+ * The index only ever sorts out rules which could not match: Every candidate is still tested using
+ * {@link RuleManager#matches(Rule, String, String, String, String, int, String)}, and the candidate with the
+ * lowest position in the rule list wins. The result is therefore always the same as testing all rules in order.
+ *
+ * Rule keys not derived from {@link AbstractRuleKey}, or overriding one of the matching methods, are not indexed
+ * and tested for every request.
+ */
+final class RoutingTable {
+
+	private final Rule[] rules;
+	private final int keyModifications;
+
+	private final int[] ports;
+	private final PortTable[] portTables;
+	private final PortTable anyPort;
+
+	private RoutingTable(Rule[] rules, int keyModifications, int[] ports, PortTable[] portTables, PortTable anyPort) {
+		this.rules = rules;
+		this.keyModifications = keyModifications;
+		this.ports = ports;
+		this.portTables = portTables;
+		this.anyPort = anyPort;
+	}
+
+	/**
+	 * @return whether the table still reflects the given rule list: Adding, removing and reordering rules through
+	 * the {@link RuleManager} as well as modifying rule keys invalidates the table.
+	 */
+	boolean isValid(List<Rule> current) {
+		return keyModifications == AbstractRuleKey.getModificationCount() && rules.length == current.size();
+	}
+
+	Rule getMatchingRule(String hostHeader, String method, String uri, String version, int port, String localIP) {
+		String host = getHostName(hostHeader);
+		int best = Integer.MAX_VALUE;
+
+		int i = Arrays.binarySearch(ports, port);
+		if (i >= 0)
+			best = portTables[i].find(this, best, host, hostHeader, method, uri, version, port, localIP);
+		best = anyPort.find(this, best, host, hostHeader, method, uri, version, port, localIP);
+
+		return best == Integer.MAX_VALUE ? null : rules[best];
+	}
+
+	/**
+	 * Tests the rules at the given positions (in ascending order) and returns the position of the first match, if
+	 * it is lower than <code>best</code>.
+	 */
+	private int test(int[] positions, int best, String hostHeader, String method, String uri, String version, int port, String localIP) {
+		for (int position : positions) {
+			if (position >= best)
+				break;
+			if (RuleManager.matches(rules[position], hostHeader, method, uri, version, port, localIP))
+				return position;
+		}
+		return best;
+	}
+
+	/**
+	 * Extracts the part of the host header {@link ServiceProxyKey#matchesHostHeader(String)} matches against, in
+	 * lower case.
+	 */
+	private static String getHostName(String hostHeader) {
+		if (hostHeader == null)
+			return null;
+		int colon = hostHeader.indexOf(':');
+		return toLowerCase(colon == -1 ? hostHeader : hostHeader.substring(0, colon));
+	}
+
+	/**
+	 * Converts only US-ASCII characters, just like a {@link Pattern#CASE_INSENSITIVE} match.
+	 */
+	private static String toLowerCase(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				char[] chars = s.toCharArray();
+				for (int j = i; j < chars.length; j++)
+					if (chars[j] >= 'A' && chars[j] <= 'Z')
+						chars[j] += 'a' - 'A';
+				return new String(chars);
+			}
+		}
+		return s;
+	}
+
+	private static class PortTable {
+		private final Map<String, PathTrie> hosts;
+		private final PathTrie otherHosts;
+
+		PortTable(Map<String, PathTrie> hosts, PathTrie otherHosts) {
+			this.hosts = hosts;
+			this.otherHosts = otherHosts;
+		}
+
+		int find(RoutingTable table, int best, String host, String hostHeader, String method, String uri, String version, int port, String localIP) {
+			if (host != null) {
+				PathTrie trie = hosts.get(host);
+				if (trie != null)
+					best = trie.find(table, best, hostHeader, method, uri, version, port, localIP);
+			}
+			return otherHosts.find(table, best, hostHeader, method, uri, version, port, localIP);
+		}
+	}
+
+	private static class PathTrie {
+		private static final int[] NONE = new int[0];
+
+		int[] positions = NONE;
+		char[] labels = new char[0];
+		PathTrie[] children = new PathTrie[0];
+
+		PathTrie getChild(char c) {
+			int i = Arrays.binarySearch(labels, c);
+			return i < 0 ? null : children[i];
+		}
+
+		PathTrie getOrCreateChild(char c) {
+			int i = Arrays.binarySearch(labels, c);
+			if (i >= 0)
+				return children[i];
+			i = -i - 1;
+			PathTrie child = new PathTrie();
+			labels = insert(labels, i, c);
+			PathTrie[] newChildren = new PathTrie[children.length + 1];
+			System.arraycopy(children, 0, newChildren, 0, i);
+			newChildren[i] = child;
+			System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+			children = newChildren;
+			return child;
+		}
+
+		private static char[] insert(char[] a, int i, char c) {
+			char[] b = new char[a.length + 1];
+			System.arraycopy(a, 0, b, 0, i);
+			b[i] = c;
+			System.arraycopy(a, i, b, i + 1, a.length - i);
+			return b;
+		}
+
+		void add(String prefix, int position) {
+			PathTrie node = this;
+			for (int i = 0; i < prefix.length(); i++)
+				node = node.getOrCreateChild(prefix.charAt(i));
+			// positions are added in ascending order
+			node.positions = Arrays.copyOf(node.positions, node.positions.length + 1);
+			node.positions[node.positions.length - 1] = position;
+		}
+
+		int find(RoutingTable table, int best, String hostHeader, String method, String uri, String version, int port, String localIP) {
+			PathTrie node = this;
+			int i = 0;
+			while (true) {
+				if (node.positions.length > 0)
+					best = table.test(node.positions, best, hostHeader, method, uri, version, port, localIP);
+				if (uri == null || i == uri.length())
+					return best;
+				node = node.getChild(uri.charAt(i++));
+				if (node == null)
+					return best;
+			}
+		}
+	}
+
+	static RoutingTable build(List<Rule> ruleList) {
+		// read the counter first: a concurrent key modification will invalidate the table
+		int keyModifications = AbstractRuleKey.getModificationCount();
+		Rule[] rules = ruleList.toArray(new Rule[0]);
+
+		TreeMap<Integer, Map<String, PathTrie>> hostsByPort = new TreeMap<Integer, Map<String, PathTrie>>();
+		TreeMap<Integer, PathTrie> otherHostsByPort = new TreeMap<Integer, PathTrie>();
+		Map<String, PathTrie> anyPortHosts = new HashMap<String, PathTrie>();
+		PathTrie anyPortOtherHosts = new PathTrie();
+		Map<Class<?>, Boolean> indexable = new HashMap<Class<?>, Boolean>();
+
+		for (int position = 0; position < rules.length; position++) {
+			RuleKey key = rules[position].getKey();
+			boolean indexed = isIndexable(key, indexable);
+
+			Map<String, PathTrie> hosts = anyPortHosts;
+			PathTrie otherHosts = anyPortOtherHosts;
+			if (indexed && key.getPort() != -1) {
+				hosts = hostsByPort.get(key.getPort());
+				if (hosts == null) {
+					hosts = new HashMap<String, PathTrie>();
+					hostsByPort.put(key.getPort(), hosts);
+					otherHostsByPort.put(key.getPort(), new PathTrie());
+				}
+				otherHosts = otherHostsByPort.get(key.getPort());
+			}
+
+			PathTrie trie = otherHosts;
+			String host = indexed ? getExactHost(key) : null;
+			if (host != null) {
+				trie = hosts.get(host);
+				if (trie == null) {
+					trie = new PathTrie();
+					hosts.put(host, trie);
+				}
+			}
+
+			trie.add(indexed ? getPathPrefix(key) : "", position);
+		}
+
+		int[] ports = new int[hostsByPort.size()];
+		PortTable[] portTables = new PortTable[ports.length];
+		int i = 0;
+		for (Map.Entry<Integer, Map<String, PathTrie>> e : hostsByPort.entrySet()) {
+			ports[i] = e.getKey();
+			portTables[i++] = new PortTable(e.getValue(), otherHostsByPort.get(e.getKey()));
+		}
+		return new RoutingTable(rules, keyModifications, ports, portTables, new PortTable(anyPortHosts, anyPortOtherHosts));
+	}
+
+	/**
+	 * @return whether the key's class uses the port, host and path matching implemented in {@link AbstractRuleKey}
+	 * and {@link ServiceProxyKey}, which the index relies on
+	 */
+	private static boolean isIndexable(RuleKey key, Map<Class<?>, Boolean> cache) {
+		if (!(key instanceof AbstractRuleKey))
+			return false;
+		Boolean result = cache.get(key.getClass());
+		if (result == null) {
+			try {
+				Class<?> c = key.getClass();
+				result = isDeclaredBy(c, AbstractRuleKey.class, "getPort")
+						&& isDeclaredBy(c, AbstractRuleKey.class, "getPath")
+						&& isDeclaredBy(c, AbstractRuleKey.class, "isPathRegExp")
+						&& isDeclaredBy(c, AbstractRuleKey.class, "isUsePathPattern")
+						&& isDeclaredBy(c, AbstractRuleKey.class, "matchesPath", String.class);
+			} catch (NoSuchMethodException e) {
+				result = false;
+			}
+			cache.put(key.getClass(), result);
+		}
+		return result;
+	}
+
+	private static boolean isDeclaredBy(Class<?> c, Class<?> declaringClass, String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+		return c.getMethod(name, parameterTypes).getDeclaringClass() == declaringClass;
+	}
+
+	private static final Pattern SIMPLE_HOST = Pattern.compile("[A-Za-z0-9._\\-]+");
+
+	/**
+	 * @return the lower case host name, if the key only matches this single host name, or null
+	 */
+	private static String getExactHost(RuleKey key) {
+		if (!(key instanceof ServiceProxyKey))
+			return null;
+		try {
+			if (!isDeclaredBy(key.getClass(), ServiceProxyKey.class, "matchesHostHeader", String.class))
+				return null;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+		ServiceProxyKey k = (ServiceProxyKey) key;
+		if (k.isHostWildcard() || !SIMPLE_HOST.matcher(k.getHost()).matches())
+			return null;
+		return toLowerCase(k.getHost());
+	}
+
+	/**
+	 * @return a string every path matched by the key starts with
+	 */
+	static String getPathPrefix(RuleKey key) {
+		if (!key.isUsePathPattern() || key.getPath() == null)
+			return "";
+		if (!key.isPathRegExp())
+			return key.getPath();
+		return getLiteralPrefix(key.getPath());
+	}
+
+	/**
+	 * Conservatively determines the literal prefix of a regular expression: Returns "" if the expression contains
+	 * an alternation, and stops at the first character having a special meaning.
+	 */
+	static String getLiteralPrefix(String regex) {
+		if (regex.indexOf('|') != -1)
+			return "";
+		int i = 0;
+		while (i < regex.length() && "\\[](){}.*+?^$".indexOf(regex.charAt(i)) == -1)
+			i++;
+		// a quantifier may make the preceding character optional
+		if (i < regex.length() && i > 0 && "*+?{".indexOf(regex.charAt(i)) != -1)
+			i--;
+		return regex.substring(0, i);
+	}
+
+}
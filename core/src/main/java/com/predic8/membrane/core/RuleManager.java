@@ -45,6 +45,7 @@ public class RuleManager {
 	private Router router;
 
 	private List<Rule> rules = new Vector<Rule>();
+	private volatile RoutingTable routingTable;
 	private List<RuleDefinitionSource> ruleSources = new ArrayList<RuleManager.RuleDefinitionSource>();
 	private Set<IRuleChangeListener> listeners = new HashSet<IRuleChangeListener>();
 
@@ -115,6 +116,7 @@ public class RuleManager {
 
 		rules.add(rule);
 		ruleSources.add(source);
+		routingTable = RoutingTable.build(rules);
 
 		for (IRuleChangeListener listener : listeners) {
 			listener.ruleAdded(rule);
@@ -127,6 +129,7 @@ public class RuleManager {
 
 		rules.add(rule);
 		ruleSources.add(source);
+		routingTable = RoutingTable.build(rules);
 
 		for (IRuleChangeListener listener : listeners) {
 			listener.ruleAdded(rule);
@@ -186,6 +189,7 @@ public class RuleManager {
 			return;
 		Collections.swap(rules, index, index - 1);
 		Collections.swap(ruleSources, index, index - 1);
+		routingTable = RoutingTable.build(rules);
 		for (IRuleChangeListener listener : listeners) {
 			listener.rulePositionsChanged();
 		}
@@ -197,46 +201,79 @@ public class RuleManager {
 			return;
 		Collections.swap(rules, index, index + 1);
 		Collections.swap(ruleSources, index, index + 1);
+		routingTable = RoutingTable.build(rules);
 		for (IRuleChangeListener listener : listeners) {
 			listener.rulePositionsChanged();
 		}
 	}
 
 	public void ruleChanged(Rule rule) {
+		routingTable = RoutingTable.build(rules);
 		for (IRuleChangeListener listener : listeners) {
 			listener.ruleUpdated(rule);
 		}
 		getExchangeStore().refreshExchangeStoreListeners();
 	}
 
+	/**
+	 * Returns the first active rule matching the request.
+	 *
+	 * The rules are looked up in a {@link RoutingTable}, which is rebuilt whenever the rule list changes. Should a
+	 * rule key have been modified in the meantime, the table is rebuilt on the next call.
+	 */
 	public Rule getMatchingRule(String hostHeader, String method, String uri, String version, int port, String localIP) {
-		for (Rule rule : rules) {
-			RuleKey key = rule.getKey();
+		if (port == -1)
+			return getMatchingRuleByScan(hostHeader, method, uri, version, port, localIP);
+		return getRoutingTable().getMatchingRule(hostHeader, method, uri, version, port, localIP);
+	}
 
-			log.debug("Host from rule: " + key.getHost() + ";   Host from parameter rule key: " + hostHeader);
+	private RoutingTable getRoutingTable() {
+		RoutingTable table = routingTable;
+		if (table != null && table.isValid(rules))
+			return table;
+		table = RoutingTable.build(rules);
+		routingTable = table;
+		return table;
+	}
 
-			if (!rule.isActive())
-				continue;
-			if (!key.matchesVersion(version))
-				continue;
-			if (key.getIp() != null && !key.getIp().equals(localIP))
-				continue;
-			if (!key.matchesHostHeader(hostHeader))
-				continue;
-			if (key.getPort() != -1 && port != -1 && key.getPort() != port)
-				continue;
-			if (!key.getMethod().equals(method) && !key.isMethodWildcard())
-				continue;
-			if (key.isUsePathPattern() && !key.matchesPath(uri))
-				continue;
-			if (!key.complexMatch(hostHeader, method, uri, version, port, localIP))
-				continue;
-
-			return rule;
+	/**
+	 * Tests all rules in order. Used if the port the request was received on is unknown, as each rule key with a
+	 * port then matches.
+	 */
+	Rule getMatchingRuleByScan(String hostHeader, String method, String uri, String version, int port, String localIP) {
+		for (Rule rule : rules) {
+			if (matches(rule, hostHeader, method, uri, version, port, localIP))
+				return rule;
 		}
 		return null;
 	}
 
+	static boolean matches(Rule rule, String hostHeader, String method, String uri, String version, int port, String localIP) {
+		RuleKey key = rule.getKey();
+
+		if (log.isDebugEnabled())
+			log.debug("Host from rule: " + key.getHost() + ";   Host from parameter rule key: " + hostHeader);
+
+		if (!rule.isActive())
+			return false;
+		if (!key.matchesVersion(version))
+			return false;
+		if (key.getIp() != null && !key.getIp().equals(localIP))
+			return false;
+		if (!key.matchesHostHeader(hostHeader))
+			return false;
+		if (key.getPort() != -1 && port != -1 && key.getPort() != port)
+			return false;
+		if (!key.getMethod().equals(method) && !key.isMethodWildcard())
+			return false;
+		if (key.isUsePathPattern() && !key.matchesPath(uri))
+			return false;
+		if (!key.complexMatch(hostHeader, method, uri, version, port, localIP))
+			return false;
+
+		return true;
+	}
+
 	public void addRuleChangeListener(IRuleChangeListener viewer) {
 		listeners.add(viewer);
 		viewer.batchUpdate(rules.size());
@@ -262,6 +299,7 @@ public class RuleManager {
 		int i = rules.indexOf(rule);
 		rules.remove(i);
 		ruleSources.remove(i);
+		routingTable = RoutingTable.build(rules);
 
 		for (IRuleChangeListener listener : listeners) {
 			listener.ruleRemoved(rule, rules.size());
@@ -274,6 +312,7 @@ public class RuleManager {
 
 		int i = rules.indexOf(rule);
 		rules.set(i, newRule);
+		routingTable = RoutingTable.build(rules);
 
 		for (IRuleChangeListener listener : listeners) {
 			listener.ruleRemoved(rule, rules.size());
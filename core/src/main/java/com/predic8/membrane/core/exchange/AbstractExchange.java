@@ -67,7 +67,7 @@ public abstract class AbstractExchange {
 	private List<String> destinations = new ArrayList<String>();
 
 
-	private String remoteAddr;
+	private volatile String remoteAddr;
 	private String remoteAddrIp;
 
 	private ArrayList<Interceptor> interceptorStack = new ArrayList<Interceptor>(10);
@@ -96,26 +96,22 @@ public class Exchange extends AbstractExchange {
 
 	public void blockRequestIfNeeded() throws TerminateException {
 		if (getRule().isBlockRequest()) {
-			synchronized (getRequest()) {
-				setStopped();
-				block(getRequest());
-			}
+			setStopped();
+			block(getRequest());
 		}
 	}
 
 	public void blockResponseIfNeeded() throws TerminateException {
 		if (getRule().isBlockResponse()) {
-			synchronized (getResponse()) {
-				setStopped();
-				block(getResponse());
-			}
+			setStopped();
+			block(getResponse());
 		}
 	}
 
 	public void block(Message msg) throws TerminateException {
 		try {
 			log.debug("Message thread waits");
-			msg.wait();
+			msg.awaitRelease();
 			log.debug("Message thread received notify");
 			if (isForcedToStop())
 				throw new TerminateException("Force the exchange to stop.");
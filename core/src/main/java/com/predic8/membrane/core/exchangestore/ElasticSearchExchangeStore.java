@@ -14,6 +14,7 @@
 
 package com.predic8.membrane.core.exchangestore;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
@@ -28,26 +29,71 @@ import com.predic8.membrane.core.interceptor.Interceptor;
 import com.predic8.membrane.core.rules.Rule;
 import com.predic8.membrane.core.rules.RuleKey;
 import com.predic8.membrane.core.rules.StatisticCollector;
+import com.predic8.membrane.core.stats.LatencyHistogram;
 import com.predic8.membrane.core.transport.http.HttpClient;
+import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Ships exchange snapshots to Elasticsearch using the bulk API.
+ *
+ * Snapshots are kept in a bounded queue (only the latest snapshot of an exchange is kept while it waits). If the
+ * queue is full, snapshots are dropped instead of blocking the exchange. A background thread takes snapshots from
+ * the queue and hands them over to up to <code>maxInFlight</code> concurrent bulk requests. Each request body is
+ * serialized while it is sent (using chunked transfer encoding), taking further snapshots from the queue until
+ * <code>maxBulkDocs</code> or <code>maxBulkBytes</code> is reached. Failed bulk requests are retried with
+ * exponential backoff, as are the documents Elasticsearch could temporarily not index (status 429 or 5xx in the
+ * bulk response's items). While all bulk requests are in flight, the queue fills up: This is the back pressure.
+ */
 @MCElement(name="elasticSearchExchangeStore")
-public class ElasticSearchExchangeStore extends AbstractExchangeStore {
+public class ElasticSearchExchangeStore extends AbstractExchangeStore implements DisposableBean {
+
+    private static final long STOP_TIMEOUT_MS = 10000;
+
 
     HttpClient client;
     static Logger log = LoggerFactory.getLogger(ElasticSearchExchangeStore.class);
     int updateIntervalMs = 1000;
-    Map<Long,AbstractExchangeSnapshot> shortTermMemoryForBatching = new HashMap<>();
+    private int maxQueueSize = 10000;
+    private int maxBulkDocs = 1000;
+    private int maxBulkBytes = 5 * 1024 * 1024;
+    private int maxInFlight = 2;
+    private int maxRetries = 3;
+    private int retryDelayMs = 500;
+
+    /** the latest snapshot of each queued exchange */
+    final Map<Long,AbstractExchangeSnapshot> shortTermMemoryForBatching = new ConcurrentHashMap<>();
+    /** the IDs of the exchanges in {@link #shortTermMemoryForBatching}, in order */
+    private ArrayBlockingQueue<Long> queue;
+    private Semaphore inFlight;
+    private ExecutorService senders;
+    private byte[] issuer;
+
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder shipped = new LongAdder();
+    private final LongAdder failedBulks = new LongAdder();
+    private final LatencyHistogram bulkLatency = new LatencyHistogram();
+
     Cache<Long,AbstractExchangeSnapshot> cacheToWaitForElasticSearchIndex = CacheBuilder.newBuilder().expireAfterWrite(5, TimeUnit.SECONDS).build();
     Thread updateJob;
     String index = "membrane";
@@ -62,8 +108,12 @@ public class ElasticSearchExchangeStore extends AbstractExchangeStore {
     @Override
     public void init() {
         super.init();
-        if(client == null)
-            client = new HttpClient();
+        if(client == null) {
+            // bulk requests are retried by the store: the client does not need to buffer the request body
+            HttpClientConfiguration configuration = new HttpClientConfiguration();
+            configuration.setMaxRetries(1);
+            client = new HttpClient(configuration);
+        }
         if(mapper == null)
             mapper = new ObjectMapper();
 
@@ -71,46 +121,282 @@ public class ElasticSearchExchangeStore extends AbstractExchangeStore {
             documentPrefix = getLocalHostname();
         documentPrefix = documentPrefix.toLowerCase();
         startTime = System.nanoTime();
+        try {
+            issuer = mapper.writeValueAsBytes(documentPrefix);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        queue = new ArrayBlockingQueue<>(maxQueueSize);
+        inFlight = new Semaphore(maxInFlight);
+        senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread t = new Thread(r, "ElasticSearch Bulk Sender");
+            t.setDaemon(true);
+            return t;
+        });
 
         updateJob = new Thread(() -> {
             while(true) {
                 try {
-                    List<AbstractExchangeSnapshot> exchanges;
-                    synchronized (shortTermMemoryForBatching){
-                        exchanges = shortTermMemoryForBatching.values().stream().collect(Collectors.toList());
-                        shortTermMemoryForBatching.values().stream().forEach(exc -> cacheToWaitForElasticSearchIndex.put(exc.getId(),exc));
-                        shortTermMemoryForBatching.clear();
-                    }
-                    if(exchanges.size() > 0){
-                        sendToElasticSearch(exchanges);
-                    }
-                    else
+                    inFlight.acquire();
+                    Long id = queue.take();
+                    // give the batch a chance to fill up
+                    if (queue.size() < maxBulkDocs - 1)
                         Thread.sleep(updateIntervalMs);
+                    senders.execute(() -> {
+                        try {
+                            ship(id);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
                     break;
-                } catch(Exception e){
-                    throw new RuntimeException(e);
                 }
             }
-        });
+        }, "ElasticSearch Exchange Store Updater");
+        updateJob.setDaemon(true);
         updateJob.start();
         init = true;
     }
 
-    private void sendToElasticSearch(List<AbstractExchangeSnapshot> exchanges) throws Exception {
-        StringBuilder data = exchanges
-                .stream()
-                .map(exchange -> wrapForBulkOperationElasticSearch(index,type,getLocalMachineNameWithSuffix()+"-"+exchange.getId(),collectExchangeDataFrom(exchange)))
-                .collect(StringBuilder::new, (sb, str) -> sb.append(str), (sb1,sb2) -> sb1.append(sb2));
+    /**
+     * Stops the updater thread and waits for the bulk requests in flight to complete. Snapshots still queued are
+     * dropped.
+     */
+    @Override
+    public void destroy() throws InterruptedException {
+        if (!init)
+            return;
+        init = false;
+        updateJob.interrupt();
+        updateJob.join(STOP_TIMEOUT_MS);
+        senders.shutdown();
+        if (!senders.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+            senders.shutdownNow();
+        List<Long> left = new ArrayList<>();
+        queue.drainTo(left);
+        for (Long id : left)
+            if (shortTermMemoryForBatching.remove(id) != null)
+                dropped.increment();
+    }
+
+    /**
+     * Sends a bulk request starting with the given exchange, retrying it if Elasticsearch is not available.
+     */
+    private void ship(Long firstId) {
+        AbstractExchangeSnapshot first = shortTermMemoryForBatching.remove(firstId);
+        if (first == null)
+            return;
+        List<AbstractExchangeSnapshot> documents = new ArrayList<>();
+        documents.add(first);
+        BulkBody body = new BulkBody(documents, true);
+        for (int attempt = 0; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                Response response = sendToElasticSearch(body);
+                int status = response.getStatusCode();
+                if (status < 300) {
+                    bulkLatency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    documents = getRetriableDocuments(response, documents);
+                    if (documents.isEmpty())
+                        return;
+                    log.debug("Elasticsearch could temporarily not index " + documents.size() + " exchanges.");
+                } else if (status != 429 && status < 500) {
+                    log.warn("Elasticsearch rejected bulk request with status " + status + ", dropping " + documents.size() + " exchanges.");
+                    failedBulks.increment();
+                    dropped.add(documents.size());
+                    return;
+                } else {
+                    log.debug("Elasticsearch responded with status " + status + " to bulk request.");
+                }
+            } catch (Exception e) {
+                log.debug("Could not send bulk request to Elasticsearch.", e);
+            }
+            if (attempt >= maxRetries) {
+                log.warn("Could not send bulk request to Elasticsearch, dropping " + documents.size() + " exchanges.");
+                failedBulks.increment();
+                dropped.add(documents.size());
+                return;
+            }
+            try {
+                Thread.sleep((long) retryDelayMs << Math.min(attempt, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped.add(documents.size());
+                return;
+            }
+            // replay the documents of the failed attempt
+            body = new BulkBody(documents, false);
+        }
+    }
 
+    /**
+     * Evaluates the items of a successful bulk response: Indexed documents are counted as shipped, documents
+     * rejected for good as dropped.
+     *
+     * @return the documents Elasticsearch could temporarily not index
+     */
+    private List<AbstractExchangeSnapshot> getRetriableDocuments(Response response, List<AbstractExchangeSnapshot> documents) {
+        JsonNode result;
+        try {
+            result = mapper.readTree(response.getBodyAsStreamDecoded());
+        } catch (Exception e) {
+            log.warn("Could not parse Elasticsearch bulk response.", e);
+            result = null;
+        }
+        if (result == null || !result.path("errors").asBoolean(false)) {
+            shipped.add(documents.size());
+            return Collections.emptyList();
+        }
+        JsonNode items = result.path("items");
+        List<AbstractExchangeSnapshot> retry = new ArrayList<>();
+        int rejected = 0;
+        for (int i = 0; i < documents.size(); i++) {
+            // each item holds the result of one action, e.g. {"index":{"status":201,...}}
+            Iterator<JsonNode> action = items.path(i).elements();
+            int status = action.hasNext() ? action.next().path("status").asInt(0) : 0;
+            if (status >= 200 && status < 300)
+                shipped.increment();
+            else if (status == 0 || status == 429 || status >= 500)
+                retry.add(documents.get(i));
+            else
+                rejected++;
+        }
+        if (rejected > 0) {
+            log.warn("Elasticsearch rejected " + rejected + " exchanges of a bulk request, dropping them.");
+            dropped.add(rejected);
+        }
+        return retry;
+    }
+
+    private Response sendToElasticSearch(BulkBody body) throws Exception {
         Exchange elasticSearchExc = new Request.Builder()
                 .post(location + "/_bulk")
                 .header("Content-Type","application/x-ndjson")
-                .body(data.toString())
+                .header(Header.TRANSFER_ENCODING, Header.CHUNKED)
                 .buildExchange();
+        elasticSearchExc.getRequest().setBody(new Body(body));
+
+        Response response = client.call(elasticSearchExc).getResponse();
+        // consume the response, so that the connection can be reused
+        response.readBody();
+        return response;
+    }
+
+    /**
+     * A bulk request body, serializing one document at a time while it is read.
+     */
+    private class BulkBody extends InputStream {
+        private final List<AbstractExchangeSnapshot> documents;
+        /** whether to take further documents from the queue, or to replay the given documents */
+        private final boolean take;
+        private final DocumentBuffer buffer = new DocumentBuffer();
+        private int next;
+        private int pos;
+        private long bytes;
+
+        BulkBody(List<AbstractExchangeSnapshot> documents, boolean take) {
+            this.documents = documents;
+            this.take = take;
+        }
 
-        client.call(elasticSearchExc);
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable())
+                return -1;
+            return buffer.get(pos++);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!ensureAvailable())
+                return -1;
+            int n = Math.min(len, buffer.size() - pos);
+            buffer.copyTo(pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        private boolean ensureAvailable() {
+            while (pos == buffer.size()) {
+                AbstractExchangeSnapshot document = nextDocument();
+                if (document == null)
+                    return false;
+                buffer.reset();
+                pos = 0;
+                try {
+                    writeDocument(buffer, document);
+                } catch (IOException e) {
+                    log.error("Could not serialize exchange " + document.getId() + ".", e);
+                    buffer.reset();
+                    // keep the documents in line with the items of the bulk response
+                    documents.remove(--next);
+                    dropped.increment();
+                }
+                bytes += buffer.size();
+            }
+            return true;
+        }
+
+        private AbstractExchangeSnapshot nextDocument() {
+            if (next < documents.size())
+                return documents.get(next++);
+            if (!take)
+                return null;
+            while (documents.size() < maxBulkDocs && bytes < maxBulkBytes) {
+                Long id = queue.poll();
+                if (id == null)
+                    return null;
+                AbstractExchangeSnapshot document = shortTermMemoryForBatching.remove(id);
+                if (document != null) {
+                    documents.add(document);
+                    next++;
+                    return document;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class DocumentBuffer extends ByteArrayOutputStream {
+        int get(int pos) {
+            return buf[pos] & 0xFF;
+        }
+
+        void copyTo(int pos, byte[] b, int off, int len) {
+            System.arraycopy(buf, pos, b, off, len);
+        }
+
+        /**
+         * Adds a field to the JSON object just written.
+         */
+        void appendField(byte[] name, byte[] value) {
+            if (count == 0 || buf[count - 1] != '}')
+                throw new IllegalStateException("Document is not a JSON object.");
+            count--;
+            if (count > 0 && buf[count - 1] != '{')
+                write(',');
+            write(name, 0, name.length);
+            write(value, 0, value.length);
+            write('}');
+        }
+    }
+
+    private static final byte[] ISSUER_FIELD = "\"issuer\":".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Writes the bulk action line and the document, serializing the snapshot only once.
+     */
+    private void writeDocument(DocumentBuffer out, AbstractExchangeSnapshot exc) throws IOException {
+        cacheToWaitForElasticSearchIndex.put(exc.getId(), exc);
+        out.write(getBulkActionLine(index, type, getLocalMachineNameWithSuffix() + "-" + exc.getId()).getBytes(StandardCharsets.UTF_8));
+        // closing a ByteArrayOutputStream has no effect
+        mapper.writeValue(out, exc);
+        out.appendField(ISSUER_FIELD, issuer);
+        out.write('\n');
     }
 
     private static String getLocalHostname() {
@@ -131,7 +417,11 @@ public class ElasticSearchExchangeStore extends AbstractExchangeStore {
     }
 
     public String wrapForBulkOperationElasticSearch(String index, String type, String id,String value){
-        return "{ \"index\" : { \"_index\" : \"" + index + "\", \"_type\" : \"" + type + "\", \"_id\" : \""+id+"\" } }\n" + value + "\n";
+        return getBulkActionLine(index, type, id) + value + "\n";
+    }
+
+    private static String getBulkActionLine(String index, String type, String id) {
+        return "{ \"index\" : { \"_index\" : \"" + index + "\", \"_type\" : \"" + type + "\", \"_id\" : \""+id+"\" } }\n";
     }
 
     @Override
@@ -153,29 +443,28 @@ public class ElasticSearchExchangeStore extends AbstractExchangeStore {
         }
     }
 
+    /**
+     * Queues the snapshot, replacing the exchange's previous snapshot if it is still queued. Drops the snapshot if
+     * the queue is full.
+     */
     private void addForElasticSearch(AbstractExchangeSnapshot exc) {
-        synchronized (shortTermMemoryForBatching){
-            shortTermMemoryForBatching.put(exc.getId(),exc);
-        }
-    }
-
-    private String collectExchangeDataFrom(AbstractExchangeSnapshot exc) {
-        try {
-            Map value = mapper.readValue(mapper.writeValueAsString(exc),Map.class);
-            value.put("issuer",documentPrefix);
-            return mapper.writeValueAsString(value);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return "";
+        Long id = exc.getId();
+        if (shortTermMemoryForBatching.put(id, exc) != null)
+            return;
+        if (!queue.offer(id)) {
+            shortTermMemoryForBatching.remove(id);
+            dropped.increment();
         }
     }
 
     public AbstractExchangeSnapshot getExchangeDtoById(int id){
         Long idBox = Long.valueOf(id);
-        if(shortTermMemoryForBatching.get(idBox) != null)
-            return shortTermMemoryForBatching.get(idBox);
-        if(cacheToWaitForElasticSearchIndex.getIfPresent(idBox) != null)
-            return cacheToWaitForElasticSearchIndex.getIfPresent(idBox);
+        AbstractExchangeSnapshot snapshot = shortTermMemoryForBatching.get(idBox);
+        if(snapshot != null)
+            return snapshot;
+        snapshot = cacheToWaitForElasticSearchIndex.getIfPresent(idBox);
+        if(snapshot != null)
+            return snapshot;
 
         return getFromElasticSearchById(id);
     }
@@ -449,4 +738,112 @@ public class ElasticSearchExchangeStore extends AbstractExchangeStore {
     public void setDocumentPrefix(String documentPrefix) {
         this.documentPrefix = documentPrefix;
     }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * @description Maximum number of exchanges waiting to be sent. Further exchanges are dropped.
+     * @default 10000
+     */
+    @MCAttribute
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxBulkDocs() {
+        return maxBulkDocs;
+    }
+
+    /**
+     * @description Maximum number of exchanges sent in one bulk request.
+     * @default 1000
+     */
+    @MCAttribute
+    public void setMaxBulkDocs(int maxBulkDocs) {
+        this.maxBulkDocs = maxBulkDocs;
+    }
+
+    public int getMaxBulkBytes() {
+        return maxBulkBytes;
+    }
+
+    /**
+     * @description Size in bytes after which no further exchanges are added to a bulk request.
+     * @default 5242880
+     */
+    @MCAttribute
+    public void setMaxBulkBytes(int maxBulkBytes) {
+        this.maxBulkBytes = maxBulkBytes;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @description Maximum number of concurrent bulk requests.
+     * @default 2
+     */
+    @MCAttribute
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @description Number of times a failed bulk request is retried before its exchanges are dropped.
+     * @default 3
+     */
+    @MCAttribute
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    /**
+     * @description Time in milliseconds before the first retry of a failed bulk request. The delay doubles with every
+     *              further retry.
+     * @default 500
+     */
+    @MCAttribute
+    public void setRetryDelayMs(int retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    /**
+     * @return the number of exchanges dropped because the queue was full or the bulk request failed
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of exchanges sent successfully
+     */
+    public long getShipped() {
+        return shipped.sum();
+    }
+
+    public long getFailedBulks() {
+        return failedBulks.sum();
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * @return the durations of successful bulk requests in milliseconds
+     */
+    public LatencyHistogram getBulkLatency() {
+        return bulkLatency;
+    }
 }
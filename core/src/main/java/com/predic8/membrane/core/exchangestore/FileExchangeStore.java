@@ -14,6 +14,7 @@
 
 package com.predic8.membrane.core.exchangestore;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Required;
 
 import com.predic8.membrane.annot.MCAttribute;
@@ -47,9 +49,25 @@ import com.predic8.membrane.core.util.TextUtil;
 
 /**
  * The output file is UTF-8 encoded.
+ *
+ * By default, every message is written to its own file by the thread which completed the message. If
+ * <code>async</code> is set, messages are queued and appended to segment files by a background thread instead
+ * (see {@link SegmentWriter}). The queued messages are written when the store is destroyed, or when the JVM
+ * shuts down.
  */
 @MCElement(name="fileExchangeStore")
-public class FileExchangeStore extends AbstractExchangeStore {
+public class FileExchangeStore extends AbstractExchangeStore implements DisposableBean {
+
+	public enum WhenFull {
+		BLOCK,
+		DROP
+	}
+
+	public enum Fsync {
+		NEVER,
+		SEGMENT,
+		BATCH
+	}
 
 	private static Logger log = LoggerFactory.getLogger(FileExchangeStore.class
 			.getName());
@@ -65,6 +83,8 @@ public class FileExchangeStore extends AbstractExchangeStore {
 
 	public static final String MESSAGE_FILE_PATH = "message.file.path";
 
+	private static final long STOP_TIMEOUT = 10000;
+
 	private String dir;
 
 	private File directory;
@@ -73,8 +93,80 @@ public class FileExchangeStore extends AbstractExchangeStore {
 	private boolean saveBodyOnly = false;
 	private int maxDays = -1;
 
+	private boolean async = false;
+	private int queueSize = 10000;
+	private WhenFull whenFull = WhenFull.BLOCK;
+	private long maxSegmentSize = 64 * 1024 * 1024;
+	private long maxSegmentAge = 60 * 60 * 1000;
+	private Fsync fsync = Fsync.SEGMENT;
+
+	private volatile SegmentWriter writer;
+	private Thread shutdownHook;
+
 	private Timer oldFilesCleanupTimer;
 
+	@Override
+	public void init() {
+		super.init();
+		if (async)
+			getWriter();
+	}
+
+	private SegmentWriter getWriter() {
+		SegmentWriter w = writer;
+		if (w == null) {
+			synchronized (this) {
+				w = writer;
+				if (w == null) {
+					writer = w = new SegmentWriter(dir, queueSize, whenFull == WhenFull.BLOCK, maxSegmentSize, maxSegmentAge, fsync);
+					shutdownHook = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							stopWriter();
+						}
+					}, "File Exchange Store Shutdown");
+					Runtime.getRuntime().addShutdownHook(shutdownHook);
+				}
+			}
+		}
+		return w;
+	}
+
+	/**
+	 * Writes the messages queued so far and closes the current segment (in asynchronous mode). Messages snapped
+	 * afterwards are dropped.
+	 */
+	@Override
+	public void destroy() {
+		if (oldFilesCleanupTimer != null)
+			oldFilesCleanupTimer.cancel();
+		Thread hook;
+		synchronized (this) {
+			hook = shutdownHook;
+			shutdownHook = null;
+		}
+		if (hook != null) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(hook);
+			} catch (IllegalStateException e) {
+				// the JVM is already shutting down: the hook runs anyway
+			}
+		}
+		stopWriter();
+	}
+
+	private void stopWriter() {
+		SegmentWriter w = writer;
+		if (w == null)
+			return;
+		try {
+			if (!w.stop(STOP_TIMEOUT))
+				log.warn("Could not write all queued exchanges within " + STOP_TIMEOUT + "ms.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 	public void snap(final AbstractExchange exc, final Flow flow) {
 		try {
 			Message m = flow == Flow.REQUEST ? exc.getRequest() : exc.getResponse();
@@ -94,9 +186,14 @@ public class FileExchangeStore extends AbstractExchangeStore {
 	}
 
 	private void snapInternal(AbstractExchange exc, Flow flow) {
+		if (async) {
+			snapAsync(exc, flow);
+			return;
+		}
+
 		int fileNumber = counter.incrementAndGet();
 
-		StringBuilder buf = getDirectoryNameBuffer(exc.getTime());
+		StringBuilder buf = new StringBuilder(getDirectoryName(dir, exc.getTime()));
 
 		directory = new File(buf.toString());
 		directory.mkdirs();
@@ -129,7 +226,46 @@ public class FileExchangeStore extends AbstractExchangeStore {
 
 	}
 
-	private StringBuilder getDirectoryNameBuffer(Calendar time) {
+	/**
+	 * Serializes the message on the calling thread (as its body might be released afterwards) and queues it. The
+	 * message is named just like its file would be, and {@link #MESSAGE_FILE_PATH} is set to the same value: The
+	 * name can be looked up in the index files of the day's directory.
+	 */
+	private void snapAsync(AbstractExchange exc, Flow flow) {
+		Message msg = flow == Flow.REQUEST ? exc.getRequest() : exc.getResponse();
+		if (msg == null)
+			return;
+		StringBuilder name = new StringBuilder();
+		name.append(getDateFormat().format(exc.getTime().getTime()));
+		name.append("-");
+		name.append(counter.incrementAndGet());
+		exc.setProperty(MESSAGE_FILE_PATH, getDirectoryName(dir, exc.getTime()) + separator + name);
+		name.append(flow == Flow.REQUEST ? "-Request.msg" : "-Response.msg");
+		try {
+			ByteArrayOutputStream head = new ByteArrayOutputStream();
+			if (raw || !saveBodyOnly) {
+				msg.writeStartLine(head);
+				msg.getHeader().write(head);
+				head.write(Constants.CRLF_BYTES);
+			}
+			byte[] body = null;
+			String xmlCharset = null;
+			if (!msg.isBodyEmpty()) {
+				if (raw) {
+					body = msg.getBody().getRaw();
+				} else {
+					body = msg.getBody().getContent();
+					if (msg.isXML())
+						xmlCharset = msg.getHeader().getCharset();
+				}
+			}
+			getWriter().add(new SegmentWriter.Record(name.toString(), head.toByteArray(), body, xmlCharset));
+		} catch (Exception e) {
+			log.error("{}",e, e);
+		}
+	}
+
+	static String getDirectoryName(String dir, Calendar time) {
 		StringBuilder buf = new StringBuilder();
 		buf.append(dir);
 		buf.append(separator);
@@ -138,10 +274,10 @@ public class FileExchangeStore extends AbstractExchangeStore {
 		buf.append((time.get(Calendar.MONTH) + 1));
 		buf.append(separator);
 		buf.append(time.get(Calendar.DAY_OF_MONTH));
-		return buf;
+		return buf.toString();
 	}
 
-	private static DateFormat getDateFormat() {
+	static DateFormat getDateFormat() {
 		DateFormat df = dateFormat.get();
 		if (df == null) {
 			df = new SimpleDateFormat(DATE_FORMAT);
@@ -224,6 +360,8 @@ public class FileExchangeStore extends AbstractExchangeStore {
 		ArrayList<File> folders3 = new DepthWalker(3).getDirectories(new File(dir));
 
 		ArrayList<File> deletion = new ArrayList<File>();
+		SegmentWriter w = writer;
+		File current = w == null ? null : w.getCurrentDirectory();
 
 		for (File f : folders3) {
 
@@ -233,7 +371,7 @@ public class FileExchangeStore extends AbstractExchangeStore {
 			Calendar folderTime = Calendar.getInstance();
 			folderTime.clear();
 			folderTime.set(year, mon-1, day);
-			if (folderTime.before(threshold)) {
+			if (folderTime.before(threshold) && !f.equals(current)) {
 				deletion.add(f);
 			}
 		}
@@ -243,6 +381,24 @@ public class FileExchangeStore extends AbstractExchangeStore {
 		}
 	}
 
+	/**
+	 * Waits until all messages queued so far have been written (in asynchronous mode).
+	 *
+	 * @return false, if the timeout elapsed
+	 */
+	public boolean flush(long timeoutMillis) throws InterruptedException {
+		SegmentWriter w = writer;
+		return w == null || w.flush(timeoutMillis);
+	}
+
+	/**
+	 * @return the number of messages dropped because the queue was full (in asynchronous mode)
+	 */
+	public long getDropped() {
+		SegmentWriter w = writer;
+		return w == null ? 0 : w.getDropped();
+	}
+
 	public AbstractExchange[] getExchanges(RuleKey ruleKey) {
 		throw new RuntimeException(
 				"Method getExchanges() is not supported by FileExchangeStore");
@@ -340,4 +496,92 @@ public class FileExchangeStore extends AbstractExchangeStore {
 		this.maxDays = maxDays;
 	}
 
+	public boolean isAsync() {
+		return async;
+	}
+	/**
+	 * @default false
+	 * @description If this is true, messages are not written to individual
+	 *              files by the thread handling the exchange. They are
+	 *              queued and appended to segment files (<i>.seg</i>) by a
+	 *              background thread. For each segment, an index file
+	 *              (<i>.idx</i>) lists the name, offset and length of every
+	 *              message.
+	 * @example true
+	 */
+	@MCAttribute
+	public void setAsync(boolean async) {
+		this.async = async;
+	}
+
+	public int getQueueSize() {
+		return queueSize;
+	}
+	/**
+	 * @default 10000
+	 * @description Maximum number of messages waiting to be written (in
+	 *              asynchronous mode).
+	 */
+	@MCAttribute
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	public WhenFull getWhenFull() {
+		return whenFull;
+	}
+	/**
+	 * @default BLOCK
+	 * @description What happens if the queue is full (in asynchronous mode):
+	 *              BLOCK makes the exchange wait, DROP discards the message.
+	 * @example DROP
+	 */
+	@MCAttribute
+	public void setWhenFull(WhenFull whenFull) {
+		this.whenFull = whenFull;
+	}
+
+	public long getMaxSegmentSize() {
+		return maxSegmentSize;
+	}
+	/**
+	 * @default 67108864 <i>(64 MB)</i>
+	 * @description Size in bytes after which a new segment file is started
+	 *              (in asynchronous mode).
+	 */
+	@MCAttribute
+	public void setMaxSegmentSize(long maxSegmentSize) {
+		this.maxSegmentSize = maxSegmentSize;
+	}
+
+	public long getMaxSegmentAge() {
+		return maxSegmentAge;
+	}
+	/**
+	 * @default 3600000 <i>(1 hour)</i>
+	 * @description Time in milliseconds after which a new segment file is
+	 *              started (in asynchronous mode). A new segment is also
+	 *              started every day.
+	 */
+	@MCAttribute
+	public void setMaxSegmentAge(long maxSegmentAge) {
+		this.maxSegmentAge = maxSegmentAge;
+	}
+
+	public Fsync getFsync() {
+		return fsync;
+	}
+	/**
+	 * @default SEGMENT
+	 * @description When written data is forced to disk (in asynchronous
+	 *              mode): NEVER leaves it to the operating system, SEGMENT
+	 *              syncs a segment when it is closed, BATCH syncs after every
+	 *              batch of messages.
+	 * @example BATCH
+	 */
+	@MCAttribute
+	public void setFsync(Fsync fsync) {
+		this.fsync = fsync;
+	}
+
 }
@@ -0,0 +1,625 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.exchangestore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.annot.MCAttribute;
+import com.predic8.membrane.annot.MCElement;
+import com.predic8.membrane.core.exchange.AbstractExchange;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.exchange.ExchangeState;
+import com.predic8.membrane.core.exchange.snapshots.FakeRule;
+import com.predic8.membrane.core.http.AbstractBody;
+import com.predic8.membrane.core.http.Body;
+import com.predic8.membrane.core.http.EmptyBody;
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.HeaderField;
+import com.predic8.membrane.core.http.Message;
+import com.predic8.membrane.core.http.MessageObserver;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.Interceptor.Flow;
+import com.predic8.membrane.core.rules.Rule;
+import com.predic8.membrane.core.rules.RuleKey;
+import com.predic8.membrane.core.rules.StatisticCollector;
+
+/**
+ * @description Stores completed exchanges in a fixed-size ring buffer outside of the Java heap. The buffer is split
+ *              into equally sized slots, each holding one exchange: its summary, the headers and the beginning of
+ *              the bodies (binary bodies are not stored). When all slots are used, the oldest exchange is
+ *              overwritten. The memory used does therefore not depend on the traffic.
+ * @explanation Exchanges are added when the response has been completely received, without taking a global lock.
+ *              Requests still in flight are not shown. The exchanges are only deserialized when they are queried,
+ *              e.g. by the admin console.
+ */
+@MCElement(name="ringBufferExchangeStore")
+public class RingBufferExchangeStore extends AbstractExchangeStore {
+
+	private static final Logger log = LoggerFactory.getLogger(RingBufferExchangeStore.class.getName());
+
+	private static final int MIN_SLOT_SIZE = 1024;
+	private static final int NONE = -2;
+
+	private long maxSize = 16 * 1024 * 1024;
+	private int slotSize = 16 * 1024;
+	private String file;
+
+	private volatile Ring ring;
+	private final LongAdder dropped = new LongAdder();
+	private volatile long lastModification = System.currentTimeMillis();
+
+	/**
+	 * The slots. A slot is written under its {@link StampedLock}'s write lock, taken using
+	 * {@link StampedLock#tryWriteLock()}: If a slot is still being written when the ring has wrapped around, the
+	 * newer exchange is dropped instead of waiting. Readers copy a slot using an optimistic read.
+	 */
+	private static class Ring {
+		final ByteBuffer buffer;
+		final int slotSize;
+		final int slots;
+		final StampedLock[] locks;
+		/** the sequence number of the exchange in each slot, -1 if the slot is empty */
+		final AtomicLongArray sequences;
+		/** the ID of the exchange in each slot */
+		final AtomicLongArray ids;
+		final AtomicLong next = new AtomicLong();
+
+		Ring(ByteBuffer buffer, int slotSize) {
+			this.buffer = buffer;
+			this.slotSize = slotSize;
+			this.slots = buffer.capacity() / slotSize;
+			locks = new StampedLock[slots];
+			for (int i = 0; i < slots; i++)
+				locks[i] = new StampedLock();
+			sequences = new AtomicLongArray(slots);
+			ids = new AtomicLongArray(slots);
+			for (int i = 0; i < slots; i++)
+				sequences.set(i, -1);
+		}
+
+		/**
+		 * @return a view of the slot's bytes, which may be used by the calling thread only
+		 */
+		ByteBuffer slot(int slot) {
+			ByteBuffer b = buffer.duplicate();
+			b.position(slot * slotSize);
+			b.limit(slot * slotSize + slotSize);
+			return b.slice();
+		}
+
+		/**
+		 * @return a copy of the record in the slot, or null if it was empty, is being written or does not hold
+		 * the expected sequence number (if not -1)
+		 */
+		byte[] read(int slot, long expectedSequence) {
+			StampedLock lock = locks[slot];
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0)
+				return null;
+			long sequence = sequences.get(slot);
+			if (sequence == -1 || (expectedSequence != -1 && sequence != expectedSequence))
+				return null;
+			ByteBuffer b = slot(slot);
+			int length = b.getInt(0);
+			byte[] record = null;
+			if (length > 4 && length <= slotSize) {
+				record = new byte[length - 4];
+				b.position(4);
+				b.get(record);
+			}
+			if (!lock.validate(stamp))
+				return null;
+			return record;
+		}
+	}
+
+	private Ring getRing() {
+		Ring r = ring;
+		if (r == null) {
+			synchronized (this) {
+				r = ring;
+				if (r == null)
+					ring = r = createRing();
+			}
+		}
+		return r;
+	}
+
+	private Ring createRing() {
+		if (slotSize < MIN_SLOT_SIZE)
+			throw new IllegalArgumentException("slotSize must be at least " + MIN_SLOT_SIZE + ".");
+		long size = Math.min(maxSize, (long) Integer.MAX_VALUE / slotSize * slotSize);
+		if (size < slotSize)
+			throw new IllegalArgumentException("maxSize must be at least slotSize.");
+		size = size / slotSize * slotSize;
+		ByteBuffer buffer;
+		if (file == null) {
+			buffer = ByteBuffer.allocateDirect((int) size);
+		} else {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(size);
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not map " + file + ".", e);
+			}
+		}
+		log.info("Storing up to " + size / slotSize + " exchanges of up to " + slotSize + " bytes each " + (file == null ? "off-heap" : "in " + file) + ".");
+		return new Ring(buffer, slotSize);
+	}
+
+	@Override
+	public void init() {
+		getRing();
+	}
+
+	public void snap(final AbstractExchange exc, Flow flow) {
+		if (flow == Flow.REQUEST)
+			return;
+		Response response = exc.getResponse();
+		if (response == null) {
+			store(exc);
+			return;
+		}
+		response.addObserver(new MessageObserver() {
+			public void bodyRequested(AbstractBody body) {
+			}
+			public void bodyComplete(AbstractBody body) {
+				store(exc);
+			}
+		});
+	}
+
+	private void store(AbstractExchange exc) {
+		Ring r = getRing();
+		long sequence = r.next.getAndIncrement();
+		int slot = (int) (sequence % r.slots);
+		StampedLock lock = r.locks[slot];
+		long stamp = lock.tryWriteLock();
+		if (stamp == 0) {
+			dropped.increment();
+			return;
+		}
+		try {
+			r.sequences.set(slot, -1);
+			ByteBuffer b = r.slot(slot);
+			try {
+				b.position(4);
+				write(b, exc);
+				b.putInt(0, b.position());
+			} catch (BufferOverflowException e) {
+				// the head of the exchange does not fit into a slot
+				dropped.increment();
+				return;
+			}
+			r.ids.set(slot, exc.getId());
+			r.sequences.set(slot, sequence);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		lastModification = System.currentTimeMillis();
+	}
+
+	private static void write(ByteBuffer b, AbstractExchange exc) {
+		b.putLong(exc.getId());
+		b.putLong(exc.getTime() == null ? 0 : exc.getTime().getTimeInMillis());
+		b.putLong(exc.getTimeReqSent());
+		b.putLong(exc.getTimeReqReceived());
+		b.putLong(exc.getTimeResSent());
+		b.putLong(exc.getTimeResReceived());
+		b.put((byte) (exc.getStatus() == null ? -1 : exc.getStatus().ordinal()));
+		Rule rule = exc.getRule();
+		putString(b, rule == null ? null : rule.toString());
+		putString(b, rule == null || rule.getKey() == null ? null : rule.getKey().toString());
+		b.putInt(rule == null || rule.getKey() == null ? -1 : rule.getKey().getPort());
+		putString(b, exc.getRemoteAddr());
+		putString(b, exc.getRemoteAddrIp());
+		putString(b, exc.getOriginalRequestUri());
+		putString(b, exc.getErrorMessage());
+		List<String> destinations = exc.getDestinations();
+		b.putInt(destinations.size());
+		for (String destination : destinations)
+			putString(b, destination);
+
+		Request request = exc.getRequest();
+		b.put((byte) (request == null ? 0 : 1));
+		if (request != null) {
+			putString(b, request.getMethod());
+			putString(b, request.getUri());
+			putString(b, request.getVersion());
+			putHeader(b, request.getHeader());
+		}
+		Response response = exc.getResponse();
+		b.put((byte) (response == null ? 0 : 1));
+		if (response != null) {
+			b.putInt(response.getStatusCode());
+			putString(b, response.getStatusMessage());
+			putString(b, response.getVersion());
+			putHeader(b, response.getHeader());
+		}
+
+		// the bodies get what is left: the request body at most half of it, if there is a response body
+		boolean responseBody = hasStorableBody(response);
+		if (request != null)
+			putBody(b, request, responseBody ? (b.remaining() - 4) / 2 : b.remaining());
+		if (response != null)
+			putBody(b, response, b.remaining());
+	}
+
+	private static boolean hasStorableBody(Message msg) {
+		return msg != null && msg.getBody().isRead() && !msg.getHeader().isBinaryContentType();
+	}
+
+	private static void putBody(ByteBuffer b, Message msg, int space) {
+		int max = space - 4;
+		if (!hasStorableBody(msg) || max <= 0) {
+			b.putInt(NONE);
+			return;
+		}
+		int lengthPosition = b.position();
+		b.putInt(0);
+		int n = 0;
+		try (InputStream in = msg.getBody().getContentAsStream()) {
+			byte[] buffer = new byte[Math.min(max, 4096)];
+			int read;
+			while (n < max && (read = in.read(buffer, 0, Math.min(buffer.length, max - n))) > 0) {
+				b.put(buffer, 0, read);
+				n += read;
+			}
+		} catch (IOException e) {
+			log.debug("Could not store body.", e);
+		}
+		b.putInt(lengthPosition, n);
+	}
+
+	private static void putHeader(ByteBuffer b, Header header) {
+		HeaderField[] fields = header.getAllHeaderFields();
+		b.putInt(fields.length);
+		for (HeaderField field : fields) {
+			putString(b, field.getHeaderName().toString());
+			putString(b, field.getValue());
+		}
+	}
+
+	private static void putString(ByteBuffer b, String s) {
+		if (s == null) {
+			b.putInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		b.putInt(bytes.length);
+		b.put(bytes);
+	}
+
+	private static String getString(ByteBuffer b) {
+		int length = b.getInt();
+		if (length == -1)
+			return null;
+		String s = new String(b.array(), b.arrayOffset() + b.position(), length, StandardCharsets.UTF_8);
+		b.position(b.position() + length);
+		return s;
+	}
+
+	/**
+	 * Deserializes a record: Bodies are restored as far as they were stored.
+	 */
+	private static AbstractExchange read(byte[] record) {
+		ByteBuffer b = ByteBuffer.wrap(record);
+		Exchange exc = new Exchange(null);
+		exc.setId(b.getLong());
+		long time = b.getLong();
+		if (time != 0) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			exc.setTime(calendar);
+		}
+		exc.setTimeReqSent(b.getLong());
+		exc.setTimeReqReceived(b.getLong());
+		exc.setTimeResSent(b.getLong());
+		exc.setTimeResReceived(b.getLong());
+		byte status = b.get();
+		if (status != -1)
+			exc.setStatus(ExchangeState.values()[status]);
+		String ruleName = getString(b);
+		getString(b); // rule key
+		int port = b.getInt();
+		if (ruleName != null)
+			exc.setRule(new FakeRule(ruleName, port));
+		exc.setRemoteAddr(getString(b));
+		exc.setRemoteAddrIp(getString(b));
+		exc.setOriginalRequestUri(getString(b));
+		exc.setErrorMessage(getString(b));
+		int destinations = b.getInt();
+		List<String> list = new ArrayList<String>(destinations);
+		for (int i = 0; i < destinations; i++)
+			list.add(getString(b));
+		exc.setDestinations(list);
+
+		Request request = null;
+		if (b.get() == 1) {
+			request = new Request();
+			request.setMethod(getString(b));
+			request.setUri(getString(b));
+			request.setVersion(getString(b));
+			request.setHeader(getHeader(b));
+			exc.setRequest(request);
+		}
+		Response response = null;
+		if (b.get() == 1) {
+			response = new Response();
+			response.setStatusCode(b.getInt());
+			response.setStatusMessage(getString(b));
+			response.setVersion(getString(b));
+			response.setHeader(getHeader(b));
+			exc.setResponse(response);
+		}
+		if (request != null)
+			request.setBody(getBody(b));
+		if (response != null)
+			response.setBody(getBody(b));
+		return exc;
+	}
+
+	private static Header getHeader(ByteBuffer b) {
+		Header header = new Header();
+		int fields = b.getInt();
+		for (int i = 0; i < fields; i++)
+			header.add(getString(b), getString(b));
+		return header;
+	}
+
+	private static AbstractBody getBody(ByteBuffer b) {
+		int length = b.getInt();
+		if (length == NONE)
+			return new EmptyBody();
+		byte[] content = new byte[length];
+		b.get(content);
+		return new Body(content);
+	}
+
+	/**
+	 * Reads the prefix of a record up to the rule key.
+	 */
+	private static String getRuleKey(byte[] record) {
+		ByteBuffer b = ByteBuffer.wrap(record);
+		b.position(6 * 8 + 1);
+		getString(b);
+		return getString(b);
+	}
+
+	/**
+	 * @return copies of the records, oldest first
+	 */
+	private List<byte[]> getRecords() {
+		Ring r = getRing();
+		long end = r.next.get();
+		long start = Math.max(0, end - r.slots);
+		List<byte[]> records = new ArrayList<byte[]>();
+		for (long sequence = start; sequence < end; sequence++) {
+			byte[] record = r.read((int) (sequence % r.slots), sequence);
+			if (record != null)
+				records.add(record);
+		}
+		return records;
+	}
+
+	private static AbstractExchange tryRead(byte[] record) {
+		try {
+			return read(record);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			log.debug("Skipping corrupt exchange record.", e);
+			return null;
+		}
+	}
+
+	private List<AbstractExchange> getExchangeList(RuleKey ruleKey) {
+		String key = ruleKey.toString();
+		List<AbstractExchange> result = new ArrayList<AbstractExchange>();
+		for (byte[] record : getRecords()) {
+			if (!key.equals(getRuleKey(record)))
+				continue;
+			AbstractExchange exc = tryRead(record);
+			if (exc != null)
+				result.add(exc);
+		}
+		return result;
+	}
+
+	public void remove(AbstractExchange exc) {
+		Ring r = getRing();
+		for (int slot = 0; slot < r.slots; slot++)
+			if (r.ids.get(slot) == exc.getId() && r.sequences.get(slot) != -1)
+				clear(r, slot);
+	}
+
+	private void clear(Ring r, int slot) {
+		long stamp = r.locks[slot].writeLock();
+		try {
+			r.sequences.set(slot, -1);
+		} finally {
+			r.locks[slot].unlockWrite(stamp);
+		}
+		lastModification = System.currentTimeMillis();
+	}
+
+	public void removeAllExchanges(Rule rule) {
+		String key = rule.getKey().toString();
+		Ring r = getRing();
+		for (int slot = 0; slot < r.slots; slot++) {
+			byte[] record = r.read(slot, -1);
+			if (record != null && key.equals(getRuleKey(record)))
+				clear(r, slot);
+		}
+	}
+
+	public void removeAllExchanges(AbstractExchange[] exchanges) {
+		for (AbstractExchange exc : exchanges)
+			remove(exc);
+	}
+
+	public AbstractExchange[] getExchanges(RuleKey ruleKey) {
+		return getExchangeList(ruleKey).toArray(new AbstractExchange[0]);
+	}
+
+	public int getNumberOfExchanges(RuleKey ruleKey) {
+		String key = ruleKey.toString();
+		int n = 0;
+		for (byte[] record : getRecords())
+			if (key.equals(getRuleKey(record)))
+				n++;
+		return n;
+	}
+
+	public StatisticCollector getStatistics(RuleKey ruleKey) {
+		StatisticCollector statistics = new StatisticCollector(false);
+		for (AbstractExchange exc : getExchangeList(ruleKey))
+			statistics.collectFrom(exc);
+		return statistics;
+	}
+
+	public Object[] getAllExchanges() {
+		return getAllExchangesAsList().toArray(new AbstractExchange[0]);
+	}
+
+	public List<AbstractExchange> getAllExchangesAsList() {
+		List<AbstractExchange> result = new ArrayList<AbstractExchange>();
+		for (byte[] record : getRecords()) {
+			AbstractExchange exc = tryRead(record);
+			if (exc != null)
+				result.add(exc);
+		}
+		return result;
+	}
+
+	@Override
+	public AbstractExchange getExchangeById(int id) {
+		Ring r = getRing();
+		for (int slot = 0; slot < r.slots; slot++) {
+			if (r.ids.get(slot) != id)
+				continue;
+			byte[] record = r.read(slot, -1);
+			if (record == null)
+				continue;
+			AbstractExchange exc = tryRead(record);
+			if (exc != null && exc.getId() == id)
+				return exc;
+		}
+		return null;
+	}
+
+	@Override
+	public List<? extends ClientStatistics> getClientStatistics() {
+		Map<String, ClientStatisticsCollector> clients = new HashMap<String, ClientStatisticsCollector>();
+		for (AbstractExchange exc : getAllExchangesAsList()) {
+			ClientStatisticsCollector client = clients.get(exc.getRemoteAddr());
+			if (client == null) {
+				client = new ClientStatisticsCollector(exc.getRemoteAddr());
+				clients.put(exc.getRemoteAddr(), client);
+			}
+			client.collect(exc);
+		}
+		return new ArrayList<ClientStatistics>(clients.values());
+	}
+
+	@Override
+	public void collect(ExchangeCollector collector) {
+		for (AbstractExchange exc : getAllExchangesAsList())
+			collector.collect(exc);
+	}
+
+	@Override
+	public long getLastModified() {
+		return lastModification;
+	}
+
+	/**
+	 * Polls, so that adding an exchange never has to take the monitor to notify waiting threads.
+	 */
+	@Override
+	public void waitForModification(long lastKnownModification) throws InterruptedException {
+		synchronized (this) {
+			while (lastKnownModification >= lastModification)
+				wait(100);
+		}
+	}
+
+	/**
+	 * @return the number of exchanges which could not be stored, because they did not fit into a slot or because
+	 * the slot was still being written
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @description Size of the ring buffer in bytes. At most 2 GB.
+	 * @default 16777216 <i>(16 MB)</i>
+	 */
+	@MCAttribute
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	public int getSlotSize() {
+		return slotSize;
+	}
+
+	/**
+	 * @description Number of bytes available for each exchange. Bodies are truncated to fit.
+	 * @default 16384
+	 */
+	@MCAttribute
+	public void setSlotSize(int slotSize) {
+		this.slotSize = slotSize;
+	}
+
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * @description If set, the ring buffer is a memory-mapped file instead of off-heap memory.
+	 * @example exchanges.ring
+	 */
+	@MCAttribute
+	public void setFile(String file) {
+		this.file = file;
+	}
+
+}
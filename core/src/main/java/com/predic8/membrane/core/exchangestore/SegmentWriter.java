@@ -0,0 +1,323 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.exchangestore;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.core.Constants;
+import com.predic8.membrane.core.exchangestore.FileExchangeStore.Fsync;
+import com.predic8.membrane.core.util.TextUtil;
+
+/**
+ * Appends messages to segment files on a dedicated thread, used by {@link FileExchangeStore} in asynchronous mode.
+ *
+ * Messages are handed over through a bounded queue. The writer thread drains the queue in batches and appends
+ * each batch to the current segment using a single gather write. For every message, a line
+ * <code>name TAB offset TAB length</code> is appended to the segment's index file (same name, ending in
+ * <code>.idx</code> instead of <code>.seg</code>).
+ *
+ * Segments are stored in the same <code>yyyy/M/d</code> directories as single message files, and are rolled when
+ * they exceed the maximum size or age, or when the day changes. A segment therefore never spans two directories,
+ * so that removing old directories always removes whole segments.
+ */
+class SegmentWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(SegmentWriter.class.getName());
+
+	private static final int MAX_BATCH = 256;
+
+	/**
+	 * A serialized message. The body is formatted on the writer thread, if required.
+	 */
+	static class Record {
+		final String name;
+		final byte[] head;
+		final byte[] body;
+		final String xmlCharset;
+		final CountDownLatch flushed;
+
+		/**
+		 * @param xmlCharset if not null, the body is an XML document in this charset, which will be formatted
+		 */
+		Record(String name, byte[] head, byte[] body, String xmlCharset) {
+			this.name = name;
+			this.head = head;
+			this.body = body;
+			this.xmlCharset = xmlCharset;
+			this.flushed = null;
+		}
+
+		private Record(CountDownLatch flushed) {
+			this.name = null;
+			this.head = null;
+			this.body = null;
+			this.xmlCharset = null;
+			this.flushed = flushed;
+		}
+	}
+
+	private final String dir;
+	private final ArrayBlockingQueue<Record> queue;
+	private final boolean block;
+	private final long maxSegmentSize;
+	private final long maxSegmentAge;
+	private final Fsync fsync;
+
+	private final LongAdder dropped = new LongAdder();
+	private final Thread thread;
+	private volatile boolean stopped;
+
+	// only accessed by the writer thread, except 'currentDirectory'
+	private FileChannel segment;
+	private FileChannel index;
+	private long segmentSize;
+	private long segmentOpened;
+	private int segmentDay;
+	private volatile File currentDirectory;
+	private int segmentNumber;
+
+	SegmentWriter(String dir, int queueSize, boolean block, long maxSegmentSize, long maxSegmentAge, Fsync fsync) {
+		this.dir = dir;
+		this.queue = new ArrayBlockingQueue<Record>(queueSize);
+		this.block = block;
+		this.maxSegmentSize = maxSegmentSize;
+		this.maxSegmentAge = maxSegmentAge;
+		this.fsync = fsync;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				SegmentWriter.this.run();
+			}
+		}, "File Exchange Store Writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a record. If the queue is full, either waits for space or drops the record. Records added after
+	 * {@link #stop(long)} are dropped.
+	 */
+	void add(Record record) {
+		if (stopped) {
+			dropped.increment();
+		} else if (block) {
+			try {
+				queue.put(record);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				dropped.increment();
+			}
+		} else if (!queue.offer(record)) {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * Waits until all records queued so far have been written.
+	 */
+	boolean flush(long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		CountDownLatch latch = new CountDownLatch(1);
+		if (!queue.offer(new Record(latch), timeoutMillis, TimeUnit.MILLISECONDS))
+			return false;
+		return latch.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	long getDropped() {
+		return dropped.sum();
+	}
+
+	int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the directory holding the segment currently written to, or null
+	 */
+	File getCurrentDirectory() {
+		return currentDirectory;
+	}
+
+	private void run() {
+		List<Record> batch = new ArrayList<Record>(MAX_BATCH);
+		while (true) {
+			try {
+				batch.add(queue.take());
+				queue.drainTo(batch, MAX_BATCH - 1);
+				write(batch);
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				log.error("Could not write exchanges.", e);
+				for (Record record : batch)
+					if (record.name != null)
+						dropped.increment();
+				closeSegment();
+			} finally {
+				for (Record record : batch)
+					if (record.flushed != null)
+						record.flushed.countDown();
+				batch.clear();
+			}
+		}
+		closeSegment();
+	}
+
+	private void write(List<Record> batch) throws IOException {
+		long now = System.currentTimeMillis();
+		if (segment != null && (segmentSize >= maxSegmentSize || now - segmentOpened >= maxSegmentAge || getDay(now) != segmentDay))
+			closeSegment();
+		if (segment == null)
+			openSegment(now);
+
+		List<ByteBuffer> data = new ArrayList<ByteBuffer>(2 * batch.size());
+		StringBuilder lines = new StringBuilder();
+		long offset = segmentSize;
+		for (Record record : batch) {
+			if (record.name == null)
+				continue;
+			byte[] body;
+			try {
+				body = format(record);
+			} catch (Exception e) {
+				log.error("Could not format " + record.name + ".", e);
+				dropped.increment();
+				continue;
+			}
+			int length = record.head.length + (body == null ? 0 : body.length);
+			data.add(ByteBuffer.wrap(record.head));
+			if (body != null)
+				data.add(ByteBuffer.wrap(body));
+			lines.append(record.name).append('\t').append(offset).append('\t').append(length).append('\n');
+			offset += length;
+		}
+		if (data.isEmpty())
+			return;
+
+		ByteBuffer[] buffers = data.toArray(new ByteBuffer[0]);
+		long remaining = offset - segmentSize;
+		while (remaining > 0)
+			remaining -= segment.write(buffers);
+		segmentSize = offset;
+
+		ByteBuffer indexBuffer = ByteBuffer.wrap(lines.toString().getBytes(Constants.UTF_8));
+		while (indexBuffer.hasRemaining())
+			index.write(indexBuffer);
+
+		if (fsync == Fsync.BATCH) {
+			segment.force(false);
+			index.force(false);
+		}
+	}
+
+	private static byte[] format(Record record) throws IOException {
+		if (record.body == null || record.xmlCharset == null)
+			return record.body;
+		return TextUtil.formatXML(new InputStreamReader(new ByteArrayInputStream(record.body), record.xmlCharset)).getBytes(Constants.UTF_8);
+	}
+
+	private void openSegment(long now) throws IOException {
+		Calendar time = Calendar.getInstance();
+		time.setTimeInMillis(now);
+		File directory = new File(FileExchangeStore.getDirectoryName(dir, time));
+		directory.mkdirs();
+		if (!directory.isDirectory())
+			throw new IOException("Directory does not exists or file is not a directory: " + directory);
+		String name = FileExchangeStore.getDateFormat().format(time.getTime()) + "-" + (++segmentNumber);
+		segment = FileChannel.open(new File(directory, name + ".seg").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		index = FileChannel.open(new File(directory, name + ".idx").toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segmentSize = segment.size();
+		segmentOpened = now;
+		segmentDay = getDay(now);
+		currentDirectory = directory;
+	}
+
+	private void closeSegment() {
+		try {
+			if (segment != null) {
+				if (fsync != Fsync.NEVER) {
+					segment.force(false);
+					index.force(false);
+				}
+			}
+		} catch (IOException e) {
+			log.error("Could not sync segment.", e);
+		} finally {
+			close(segment);
+			close(index);
+			segment = null;
+			index = null;
+			currentDirectory = null;
+		}
+	}
+
+	private static void close(FileChannel channel) {
+		if (channel == null)
+			return;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			log.error("Could not close segment.", e);
+		}
+	}
+
+	private static int getDay(long time) {
+		Calendar c = Calendar.getInstance();
+		c.setTimeInMillis(time);
+		return c.get(Calendar.YEAR) * 1000 + c.get(Calendar.DAY_OF_YEAR);
+	}
+
+	/**
+	 * Stops the writer thread after the records queued so far have been written, and closes (and syncs) the
+	 * current segment. Records still queued after the timeout are dropped.
+	 *
+	 * @return false, if the timeout elapsed before all records had been written
+	 */
+	synchronized boolean stop(long timeoutMillis) throws InterruptedException {
+		if (stopped)
+			return true;
+		stopped = true;
+		boolean flushed = flush(timeoutMillis);
+		thread.interrupt();
+		thread.join();
+		List<Record> left = new ArrayList<Record>();
+		queue.drainTo(left);
+		for (Record record : left) {
+			if (record.name != null)
+				dropped.increment();
+			else
+				record.flushed.countDown();
+		}
+		return flushed;
+	}
+
+}
@@ -49,6 +49,7 @@ public abstract class AbstractBody {
 	protected List<Chunk> chunks = new ArrayList<Chunk>();
 	protected List<MessageObserver> observers = new ArrayList<MessageObserver>(1);
 	private boolean wasStreamed = false;
+	private List<BodyWriteListener> writeListeners;
 
 	public void read() throws IOException {
 		if (read)
@@ -112,6 +113,8 @@ public abstract class AbstractBody {
 	}
 
 	public void write(AbstractBodyTransferrer out) throws IOException {
+		if (writeListeners != null)
+			out = new ListeningBodyTransferrer(out, writeListeners);
 		if (!read) {
 			boolean relevantObservers = false;
 			for(MessageObserver obs : observers)
@@ -220,6 +223,48 @@ public abstract class AbstractBody {
 		return observers;
 	}
 
+	/**
+	 * Adds a listener which is told about the body bytes each time a part of the body is written by
+	 * {@link #write(AbstractBodyTransferrer)}. Unlike a {@link MessageObserver}, a listener does not prevent the
+	 * body from being streamed.
+	 */
+	public void addWriteListener(BodyWriteListener listener) {
+		if (writeListeners == null)
+			writeListeners = new ArrayList<BodyWriteListener>(1);
+		writeListeners.add(listener);
+	}
+
+	private static class ListeningBodyTransferrer extends AbstractBodyTransferrer {
+		private final AbstractBodyTransferrer out;
+		private final List<BodyWriteListener> listeners;
+
+		ListeningBodyTransferrer(AbstractBodyTransferrer out, List<BodyWriteListener> listeners) {
+			this.out = out;
+			this.listeners = listeners;
+		}
+
+		@Override
+		public void write(byte[] content, int i, int length) throws IOException {
+			out.write(content, i, length);
+			for (BodyWriteListener listener : listeners)
+				listener.written(content, i, length);
+		}
+
+		@Override
+		public void write(Chunk chunk) throws IOException {
+			out.write(chunk);
+			for (BodyWriteListener listener : listeners)
+				listener.written(chunk.getBuffer(), 0, chunk.getLength());
+		}
+
+		@Override
+		public void finish() throws IOException {
+			out.finish();
+			for (BodyWriteListener listener : listeners)
+				listener.finished();
+		}
+	}
+
 	public boolean wasStreamed() {
 		return wasStreamed;
 	}
@@ -21,6 +21,7 @@ import java.io.OutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.predic8.membrane.core.util.BufferPool;
 import com.predic8.membrane.core.util.ByteUtil;
 
 /**
@@ -35,12 +36,9 @@ import com.predic8.membrane.core.util.ByteUtil;
  */
 public class Body extends AbstractBody {
 
-	private final static int BUFFER_SIZE;
 	private final static int MAX_CHUNK_LENGTH;
 
 	static {
-		String bufferSize = System.getProperty("membrane.core.http.body.buffersize");
-		BUFFER_SIZE = bufferSize == null ? 8192 : Integer.parseInt(bufferSize);
 		String maxChunkLength = System.getProperty("membrane.core.http.body.maxchunklength");
 		MAX_CHUNK_LENGTH = maxChunkLength == null ? 1000000000 : Integer.parseInt(maxChunkLength);
 	}
@@ -103,17 +101,21 @@ public class Body extends AbstractBody {
 
 	@Override
 	protected void writeNotRead(AbstractBodyTransferrer out) throws IOException {
-		byte[] buffer = new byte[BUFFER_SIZE];
-
-		long totalLength = 0;
-		int length = 0;
-		chunks.clear();
-		while ((this.length > totalLength || this.length == -1) && (length = inputStream.read(buffer)) > 0) {
-			totalLength += length;
-			out.write(buffer, 0, length);
-			byte[] chunk = new byte[length];
-			System.arraycopy(buffer, 0, chunk, 0, length);
-			chunks.add(new Chunk(chunk));
+		byte[] buffer = BufferPool.BODY.acquire();
+		try {
+			long totalLength = 0;
+			int length = 0;
+			chunks.clear();
+			while ((this.length > totalLength || this.length == -1) && (length = inputStream.read(buffer)) > 0) {
+				totalLength += length;
+				out.write(buffer, 0, length);
+				// the chunks outlive this call (exchange stores keep the message), so they get their own array
+				byte[] chunk = new byte[length];
+				System.arraycopy(buffer, 0, chunk, 0, length);
+				chunks.add(new Chunk(chunk));
+			}
+		} finally {
+			BufferPool.BODY.release(buffer);
 		}
 
 		out.finish();
@@ -122,14 +124,17 @@ public class Body extends AbstractBody {
 
 	@Override
 	protected void writeStreamed(AbstractBodyTransferrer out) throws IOException {
-		byte[] buffer = new byte[BUFFER_SIZE];
-
-		long totalLength = 0;
-		int length = 0;
-		chunks.clear();
-		while ((this.length > totalLength || this.length == -1) && (length = inputStream.read(buffer)) > 0) {
-			totalLength += length;
-			out.write(buffer, 0, length);
+		byte[] buffer = BufferPool.BODY.acquire();
+		try {
+			long totalLength = 0;
+			int length = 0;
+			chunks.clear();
+			while ((this.length > totalLength || this.length == -1) && (length = inputStream.read(buffer)) > 0) {
+				totalLength += length;
+				out.write(buffer, 0, length);
+			}
+		} finally {
+			BufferPool.BODY.release(buffer);
 		}
 		out.finish();
 		markAsRead();
@@ -0,0 +1,35 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.http;
+
+/**
+ * May be added to a message body using {@link AbstractBody#addWriteListener(BodyWriteListener)} to see the body's
+ * bytes while the body is sent, without reading (and buffering) it.
+ */
+public interface BodyWriteListener {
+
+	/**
+	 * Called after a part of the body has been written. The buffer may be reused after the call returns: It must
+	 * neither be kept nor modified.
+	 */
+	void written(byte[] buffer, int offset, int length);
+
+	/**
+	 * Called after the whole body has been written.
+	 */
+	default void finished() {
+	}
+
+}
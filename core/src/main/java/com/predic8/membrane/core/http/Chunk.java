@@ -17,6 +17,7 @@ package com.predic8.membrane.core.http;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 
 import com.predic8.membrane.core.Constants;
 
@@ -31,20 +32,42 @@ import com.predic8.membrane.core.Constants;
 public class Chunk {
 
 	private final byte[] content;
+	private final int length;
 
 	public Chunk(byte[] content) {
 		this.content = content;
+		this.length = content == null ? 0 : content.length;
 	}
 
+	/**
+	 * Creates a chunk consisting of the first <code>length</code> bytes of <code>content</code>.
+	 *
+	 * Used to wrap buffers taken from a {@link com.predic8.membrane.core.util.BufferPool}: Such a chunk must not
+	 * be referenced after the buffer has been released.
+	 */
+	public Chunk(byte[] content, int length) {
+		this.content = content;
+		this.length = length;
+	}
+
+	/**
+	 * @return the chunk's data. If the chunk only covers part of its buffer, this is a copy.
+	 */
 	public byte[] getContent() {
-		return content;
+		if (content == null || length == content.length)
+			return content;
+		return Arrays.copyOf(content, length);
 	}
 
 	public int getLength() {
-		if (content == null ) {
-			return 0;
-		}
-		return content.length;
+		return length;
+	}
+
+	/**
+	 * @return the chunk's buffer, of which the first {@link #getLength()} bytes are the data (without copying)
+	 */
+	byte[] getBuffer() {
+		return content;
 	}
 
 	public void write(OutputStream out) throws IOException {
@@ -53,11 +76,20 @@ public class Chunk {
 
 		out.write(getLengthBytes());
 		out.write(Constants.CRLF_BYTES);
-		out.write(getContent(), 0, getLength());
+		out.write(content, 0, length);
 		out.write(Constants.CRLF_BYTES);
 		out.flush();
 	}
 
+	/**
+	 * Writes the chunk's data without the chunk length and CRLFs.
+	 */
+	public void writeContent(OutputStream out) throws IOException {
+		if (content == null)
+			return;
+		out.write(content, 0, length);
+	}
+
 	/**
 	 * Supposes UTF-8 encoding. Should therefore not be used
 	 * for primary functionality.
@@ -66,7 +98,7 @@ public class Chunk {
 	public String toString() {
 		if (content == null)
 			return "";
-		return new String(content, Constants.UTF_8_CHARSET);
+		return new String(content, 0, length, Constants.UTF_8_CHARSET);
 	}
 
 	public int copyChunk(byte[] raw, int destPos) {
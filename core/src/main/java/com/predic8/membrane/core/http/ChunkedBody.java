@@ -23,6 +23,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.predic8.membrane.core.Constants;
+import com.predic8.membrane.core.util.BufferPool;
 import com.predic8.membrane.core.util.ByteUtil;
 import com.predic8.membrane.core.util.HttpUtil;
 
@@ -139,11 +140,23 @@ public class ChunkedBody extends AbstractBody {
 	protected void writeStreamed(AbstractBodyTransferrer out) throws IOException {
 		log.debug("writeStreamed");
 		int chunkSize;
-		while ((chunkSize = HttpUtil.readChunkSize(inputStream)) > 0) {
-			Chunk chunk = new Chunk(ByteUtil.readByteArray(inputStream, chunkSize));
-			out.write(chunk);
-			inputStream.read(); // CR
-			inputStream.read(); // LF
+		byte[] buffer = BufferPool.BODY.acquire();
+		try {
+			while ((chunkSize = HttpUtil.readChunkSize(inputStream)) > 0) {
+				Chunk chunk;
+				if (chunkSize <= buffer.length) {
+					// the chunk is not retained, so it may reference the pooled buffer
+					ByteUtil.readByteArray(inputStream, buffer, chunkSize);
+					chunk = new Chunk(buffer, chunkSize);
+				} else {
+					chunk = new Chunk(ByteUtil.readByteArray(inputStream, chunkSize));
+				}
+				out.write(chunk);
+				inputStream.read(); // CR
+				inputStream.read(); // LF
+			}
+		} finally {
+			BufferPool.BODY.release(buffer);
 		}
 		inputStream.read(); // CR
 		inputStream.read(); // LF-
@@ -0,0 +1,376 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.core.Constants;
+import com.predic8.membrane.core.transport.http.EOFWhileReadingLineException;
+import com.predic8.membrane.core.transport.http.LineTooLongException;
+import com.predic8.membrane.core.util.HttpUtil;
+
+/**
+ * Reads the head (start line and header fields) of a HTTP message in one pass.
+ *
+ * The head is read in bulk into a reusable per-thread buffer and scanned for line ends and the first colon of each
+ * line. Afterwards, the head is copied into a byte array owned by this object, and the start line and header fields
+ * refer to it by offsets: Header names are shared {@link HeaderName} instances for well-known names, header values
+ * are only turned into {@link String}s when an interceptor asks for them (see {@link HeaderField#getValue()}).
+ *
+ * If the stream supports {@link InputStream#mark(int)} (as the {@link java.io.BufferedInputStream}s used by the
+ * transport do), bytes read beyond the end of the head are given back to the stream. Otherwise, the stream is read
+ * byte-by-byte.
+ *
+ * A line ends at LF, optionally preceded by CR. A bare CR is replaced by SP (RFC 7230, section 3.5), so that it is
+ * not forwarded to servers which might treat it as a line break.
+ */
+public class HeadParser {
+
+	private static final Logger log = LoggerFactory.getLogger(HeadParser.class.getName());
+
+	private static final int MAX_LINE_LENGTH = HttpUtil.getMaxLineLength();
+
+	/**
+	 * The maximum number of bytes read in bulk. Larger heads are read again byte-by-byte.
+	 */
+	private static final int MAX_BULK_LENGTH = 65536;
+
+	private static final int INITIAL_BUFFER_SIZE = 4096;
+
+	private static final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	private static final HeaderName[][] knownNames = createKnownNames(
+			HeaderName.HOST, HeaderName.CONTENT_LENGTH, HeaderName.TRANSFER_ENCODING, HeaderName.CONTENT_TYPE,
+			HeaderName.CONTENT_ENCODING, HeaderName.CONNECTION, HeaderName.KEEP_ALIVE, HeaderName.PROXY_CONNECTION,
+			HeaderName.USER_AGENT, HeaderName.ACCEPT, new HeaderName("Accept-Encoding"), new HeaderName("Accept-Language"),
+			new HeaderName("Accept-Charset"), HeaderName.AUTHORIZATION, HeaderName.PROXY_AUTHORIZATION, HeaderName.COOKIE,
+			HeaderName.SET_COOKIE, HeaderName.CACHE_CONTROL, HeaderName.PRAGMA, HeaderName.EXPIRES,
+			HeaderName.LAST_MODIFIED, HeaderName.IF_MODIFIED_SINCE, new HeaderName("If-None-Match"), new HeaderName("ETag"),
+			new HeaderName("Date"), HeaderName.SERVER, HeaderName.LOCATION, HeaderName.ORIGIN, new HeaderName("Referer"),
+			HeaderName.UPGRADE, HeaderName.EXPECT, HeaderName.X_FORWARDED_FOR, HeaderName.X_FORWARDED_PROTO,
+			HeaderName.X_FORWARDED_HOST, HeaderName.X_REQUESTED_WITH, HeaderName.SOAP_ACTION, HeaderName.WWW_AUTHENTICATE,
+			HeaderName.ACCESS_CONTROL_ALLOW_ORIGIN, new HeaderName("Vary"), new HeaderName("Via"));
+
+	/**
+	 * The per-thread scratch space used while reading.
+	 */
+	private static class Buffers {
+		byte[] data = new byte[INITIAL_BUFFER_SIZE];
+		/** for each line: start, end (excluding CR LF), position of the first colon (or -1) */
+		int[] lines = new int[96];
+	}
+
+	private final byte[] data;
+	private final int[] lines;
+	private final int lineCount;
+	private final int completeLines;
+	private final boolean withStartLine;
+	private final boolean complete;
+
+	private HeadParser(byte[] data, int[] lines, int lineCount, int completeLines, boolean withStartLine, boolean complete) {
+		this.data = data;
+		this.lines = lines;
+		this.lineCount = lineCount;
+		this.completeLines = completeLines;
+		this.withStartLine = withStartLine;
+		this.complete = complete;
+	}
+
+	/**
+	 * Reads the start line and the header fields up to (and including) the empty line terminating them.
+	 *
+	 * If the stream ends prematurely, no exception is thrown: Use {@link #isStartLineComplete()} and
+	 * {@link #parseHeader()} to find out which part of the head is missing.
+	 */
+	public static HeadParser read(InputStream in) throws IOException {
+		return read(in, true);
+	}
+
+	/**
+	 * @param withStartLine whether the head starts with a request or status line
+	 */
+	public static HeadParser read(InputStream in, boolean withStartLine) throws IOException {
+		Buffers b = buffers.get();
+		Scanner s = new Scanner(b);
+		if (in.markSupported()) {
+			in.mark(MAX_BULK_LENGTH);
+			if (readBulk(in, s)) {
+				// give back what was read beyond the end of the head
+				in.reset();
+				skipFully(in, s.end);
+				in.mark(0);
+				return s.toHead(withStartLine);
+			}
+			if (s.eof)
+				return s.toHead(withStartLine);
+			// the head is too large to be read in bulk
+			in.reset();
+			s = new Scanner(b);
+		}
+		readByteByByte(in, s);
+		HeadParser head = s.toHead(withStartLine);
+		if (b.data.length > MAX_BULK_LENGTH)
+			b.data = new byte[INITIAL_BUFFER_SIZE];
+		return head;
+	}
+
+	/**
+	 * @return true, if the end of the head was found.
+	 */
+	private static boolean readBulk(InputStream in, Scanner s) throws IOException {
+		while (s.length < MAX_BULK_LENGTH) {
+			s.ensureCapacity(Math.min(s.length + INITIAL_BUFFER_SIZE, MAX_BULK_LENGTH));
+			int n = in.read(s.b.data, s.length, Math.min(s.b.data.length, MAX_BULK_LENGTH) - s.length);
+			if (n == -1) {
+				s.eof = true;
+				return false;
+			}
+			s.length += n;
+			if (s.scan())
+				return true;
+		}
+		return false;
+	}
+
+	private static void readByteByByte(InputStream in, Scanner s) throws IOException {
+		while (true) {
+			int c = in.read();
+			if (c == -1) {
+				s.eof = true;
+				return;
+			}
+			s.ensureCapacity(s.length + 1);
+			s.b.data[s.length++] = (byte) c;
+			if (s.scan())
+				return;
+		}
+	}
+
+	private static void skipFully(InputStream in, int n) throws IOException {
+		while (n > 0) {
+			long skipped = in.skip(n);
+			if (skipped <= 0) {
+				if (in.read() == -1)
+					throw new IOException("Stream ended while skipping the message head.");
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	/**
+	 * The state while reading a head.
+	 */
+	private static class Scanner {
+		final Buffers b;
+		int length;
+		int pos;
+		int lineStart;
+		int colon = -1;
+		int lineCount;
+		int end;
+		boolean eof;
+
+		Scanner(Buffers b) {
+			this.b = b;
+		}
+
+		void ensureCapacity(int capacity) {
+			if (b.data.length < capacity)
+				b.data = Arrays.copyOf(b.data, Math.max(capacity, b.data.length * 2));
+		}
+
+		/**
+		 * Scans the newly read bytes.
+		 *
+		 * @return true, if the end of the head was found.
+		 */
+		boolean scan() throws LineTooLongException {
+			byte[] data = b.data;
+			for (; pos < length; pos++) {
+				byte c = data[pos];
+				if (c != '\n' && pos > lineStart && data[pos - 1] == '\r')
+					data[pos - 1] = ' ';
+				if (c == ':') {
+					if (colon == -1)
+						colon = pos;
+				} else if (c == '\n') {
+					int lineEnd = pos > lineStart && data[pos - 1] == '\r' ? pos - 1 : pos;
+					if (lineEnd - lineStart >= MAX_LINE_LENGTH)
+						throw new LineTooLongException(string(data, lineStart, lineEnd));
+					if (lineEnd == lineStart) {
+						end = pos + 1;
+						return true;
+					}
+					addLine(lineEnd);
+				}
+			}
+			if (length - lineStart >= MAX_LINE_LENGTH + 1)
+				throw new LineTooLongException(string(data, lineStart, length));
+			return false;
+		}
+
+		private void addLine(int lineEnd) {
+			int i = lineCount * 3;
+			if (b.lines.length < i + 3)
+				b.lines = Arrays.copyOf(b.lines, b.lines.length * 2);
+			b.lines[i] = lineStart;
+			b.lines[i + 1] = lineEnd;
+			b.lines[i + 2] = colon;
+			lineCount++;
+			lineStart = pos + 1;
+			colon = -1;
+		}
+
+		HeadParser toHead(boolean withStartLine) {
+			int completeLines = lineCount;
+			if (eof) {
+				// keep the incomplete last line, for error reporting
+				pos = length;
+				if (length > lineStart)
+					addLine(length);
+				end = length;
+			}
+			return new HeadParser(Arrays.copyOf(b.data, end), Arrays.copyOf(b.lines, lineCount * 3), lineCount,
+					completeLines, withStartLine, !eof);
+		}
+	}
+
+	/**
+	 * @return whether the stream contained a start line terminated by a line break.
+	 */
+	public boolean isStartLineComplete() {
+		return complete || completeLines > 0;
+	}
+
+	/**
+	 * @return true, if the stream ended before anything was read.
+	 */
+	public boolean isEmpty() {
+		return data.length == 0;
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public int getStartLineStart() {
+		return lineCount == 0 ? 0 : lines[0];
+	}
+
+	public int getStartLineEnd() {
+		return lineCount == 0 ? 0 : lines[1];
+	}
+
+	public String getStartLine() {
+		return string(data, getStartLineStart(), getStartLineEnd());
+	}
+
+	/**
+	 * @return a stream containing the start line, as expected by {@link Message#parseStartLine(InputStream)}.
+	 */
+	public InputStream getStartLineAsStream() {
+		int length = getStartLineEnd() - getStartLineStart();
+		if (!isStartLineComplete())
+			return new ByteArrayInputStream(data, getStartLineStart(), length);
+		byte[] line = new byte[length + 2];
+		System.arraycopy(data, getStartLineStart(), line, 0, length);
+		line[length] = '\r';
+		line[length + 1] = '\n';
+		return new ByteArrayInputStream(line);
+	}
+
+	/**
+	 * @throws EOFWhileReadingLineException if the stream ended before the end of the head.
+	 */
+	public Header parseHeader() {
+		Header header = new Header();
+		int first = withStartLine ? 1 : 0;
+		for (int i = first; i < completeLines; i++) {
+			int start = lines[i * 3];
+			int end = lines[i * 3 + 1];
+			int colon = lines[i * 3 + 2];
+			if (colon == -1 || colon >= end) {
+				log.error("Header read line that caused problems: " + string(data, start, end));
+				continue;
+			}
+			int valueStart = colon + 1;
+			int valueEnd = end;
+			while (valueStart < valueEnd && (data[valueStart] & 0xFF) <= ' ')
+				valueStart++;
+			while (valueEnd > valueStart && (data[valueEnd - 1] & 0xFF) <= ' ')
+				valueEnd--;
+			header.add(new HeaderField(getHeaderName(data, start, colon), data, valueStart, valueEnd));
+		}
+		if (!complete)
+			throw new EOFWhileReadingLineException(lineCount > completeLines ?
+					string(data, lines[completeLines * 3], lines[completeLines * 3 + 1]) : "");
+		return header;
+	}
+
+	private static HeaderName getHeaderName(byte[] data, int start, int end) {
+		int length = end - start;
+		if (length < knownNames.length) {
+			HeaderName[] candidates = knownNames[length];
+			if (candidates != null)
+				for (HeaderName candidate : candidates)
+					if (equals(candidate.toString(), data, start, length))
+						return candidate;
+		}
+		return new HeaderName(string(data, start, end));
+	}
+
+	private static boolean equals(String s, byte[] data, int start, int length) {
+		for (int i = 0; i < length; i++)
+			if (s.charAt(i) != (data[start + i] & 0xFF))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Well-known names are only shared, if they are spelled exactly as expected, so that the name is written to the
+	 * wire as it was received.
+	 */
+	private static HeaderName[][] createKnownNames(HeaderName... names) {
+		int max = 0;
+		for (HeaderName name : names)
+			max = Math.max(max, name.toString().length());
+		HeaderName[][] result = new HeaderName[max + 1][];
+		for (HeaderName name : names) {
+			int length = name.toString().length();
+			HeaderName[] old = result[length];
+			HeaderName[] n = old == null ? new HeaderName[1] : Arrays.copyOf(old, old.length + 1);
+			n[n.length - 1] = name;
+			result[length] = n;
+		}
+		return result;
+	}
+
+	static String string(byte[] data, int start, int end) {
+		return new String(data, start, end - start, Constants.ISO_8859_1_CHARSET);
+	}
+
+}
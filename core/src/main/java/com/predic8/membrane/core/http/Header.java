@@ -19,7 +19,6 @@ import com.predic8.membrane.core.http.cookie.Cookies;
 import com.predic8.membrane.core.http.cookie.MimeHeaders;
 import com.predic8.membrane.core.http.cookie.ServerCookie;
 import com.predic8.membrane.core.util.EndOfStreamException;
-import com.predic8.membrane.core.util.HttpUtil;
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +26,7 @@ import org.springframework.http.MediaType;
 
 import javax.mail.internet.ContentType;
 import javax.mail.internet.ParseException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -76,6 +76,8 @@ public class Header {
 
 	public static final String LOCATION = "Location";
 
+	public static final String CONTENT_LOCATION = "Content-Location";
+
 	public static final String AUTHORIZATION = "Authorization";
 
 	public static final String SET_COOKIE = "Set-Cookie";
@@ -106,6 +108,16 @@ public class Header {
 
 	public static final String IF_MODIFIED_SINCE = "If-Modified-Since";
 
+	public static final String IF_NONE_MATCH = "If-None-Match";
+
+	public static final String ETAG = "ETag";
+
+	public static final String VARY = "Vary";
+
+	public static final String AGE = "Age";
+
+	public static final String DATE = "Date";
+
 	public static final String WWW_AUTHENTICATE = "WWW-Authenticate";
 
 	public static final String ACCESS_CONTROL_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
@@ -135,20 +147,17 @@ public class Header {
 
 	private final ArrayList<HeaderField> fields = new ArrayList<HeaderField>();
 
+	/**
+	 * Created on the first lookup, updated when fields are added and discarded when fields are removed.
+	 */
+	private volatile Index index;
+
 	public Header() {
 	}
 
 	public Header(InputStream in) throws IOException, EndOfStreamException {
-		String line;
-
-		while ((line = HttpUtil.readLine(in)).length() > 0) {
-			try {
-
-				add(new HeaderField(line));
-			} catch (StringIndexOutOfBoundsException sie) {
-				log.error("Header read line that caused problems: " + line);
-			}
-		}
+		for (HeaderField field : HeadParser.read(in, false).parseHeader().fields)
+			add(field);
 	}
 
 	public Header(String header) throws IOException, EndOfStreamException {
@@ -164,41 +173,48 @@ public class Header {
 	}
 
 	public void add(String key, String val) {
-		fields.add(new HeaderField(key, val));
+		add(new HeaderField(key, val));
 	}
 
 	public void add(HeaderField field) {
 		fields.add(field);
+		Index i = index;
+		if (i != null)
+			i.add(field);
 	}
 
 	public void remove(HeaderField field) {
-		fields.remove(field);
+		if (fields.remove(field))
+			index = null;
 	}
 
 	public void removeFields(String name) {
-		List<HeaderField> deleteValues = new ArrayList<HeaderField>();
-		for (HeaderField field : fields) {
-			if (field.getHeaderName().equals(name))
-				deleteValues.add(field);
-		}
-		fields.removeAll(deleteValues);
+		Index i = getIndex();
+		Entry e = i.get(name);
+		if (e == null)
+			return;
+		if (e.others == null)
+			fields.remove(e.first);
+		else
+			fields.removeAll(e.getFields());
+		i.remove(e);
 	}
 
 	public List<HeaderField> getValues(HeaderName headerName) {
-		List<HeaderField> res = new ArrayList<HeaderField>();
-		for (HeaderField headerField : fields) {
-			if (headerField.getHeaderName().equals(headerName))
-				res.add(headerField);
-		}
-		return res;
+		Entry e = getIndex().get(headerName);
+		if (e == null)
+			return new ArrayList<HeaderField>();
+		return e.getFields();
 	}
 
 	public String getFirstValue(String name) {
-		for (HeaderField field : fields) {
-			if (field.getHeaderName().equals(name))
-				return field.getValue();
-		}
-		return null;
+		Entry e = getIndex().get(name);
+		return e == null ? null : e.first.getValue();
+	}
+
+	public String getFirstValue(HeaderName name) {
+		Entry e = getIndex().get(name);
+		return e == null ? null : e.first.getValue();
 	}
 
 	public HeaderField[] getAllHeaderFields() {
@@ -206,24 +222,51 @@ public class Header {
 	}
 
 	/**
-	 * Since {@link HttpUtil#readLine(InputStream)} assembles the String byte-by-byte
+	 * Since {@link HeadParser} reads the header byte-by-byte
 	 * converting it to char-by-char, we use ISO-8859-1 for output here.
 	 */
 	public void write(OutputStream out) throws IOException {
-		StringBuilder buffer = new StringBuilder();
-		for (HeaderField field : fields) {
-			String name = field.getHeaderName().toString();
-			String value = field.getValue();
-			buffer.append(name).append(": ").append(value)
-			.append(Constants.CRLF);
-		}
-		out.write(buffer.toString().getBytes(Constants.ISO_8859_1_CHARSET));
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(32 * fields.size() + 16);
+		for (HeaderField field : fields)
+			field.write(buffer);
+		buffer.writeTo(out);
+	}
+
+	/**
+	 * @return the number of bytes {@link #write(OutputStream)} writes, computed without writing the fields
+	 */
+	public int getWireLength() {
+		int length = 0;
+		for (HeaderField field : fields)
+			length += field.getWireLength();
+		return length;
 	}
 
 	public void setValue(String name, String value) {
+		Entry e = getIndex().get(name);
+		if (e == null)
+			add(new HeaderField(name, value));
+		else
+			setValue(e, value);
+	}
+
+	public void setValue(HeaderName name, String value) {
+		Entry e = getIndex().get(name);
+		if (e == null)
+			add(new HeaderField(name, value));
+		else
+			setValue(e, value);
+	}
+
+	private void setValue(Entry e, String value) {
+		if (e.others == null) {
+			e.first.setValue(value);
+			return;
+		}
+		// set the first field, remove the others
 		boolean found = false;
 		for (int i = 0; i < fields.size(); i++) {
-			if (fields.get(i).getHeaderName().equals(name)) {
+			if (fields.get(i).getHeaderName().equals(e.name)) {
 				if (found) {
 					fields.set(i, fields.get(fields.size()-1));
 					fields.remove(fields.size()-1);
@@ -234,37 +277,33 @@ public class Header {
 				}
 			}
 		}
-		if (found)
-			return;
-		HeaderField newField = new HeaderField(name, value);
-		fields.add(newField);
-		return;
+		index = null;
 	}
 
 	public void setHost(String value) {
-		setValue(HOST, value);
+		setValue(HeaderName.HOST, value);
 	}
 
 	public void setContentLength(long length) {
-		setValue(CONTENT_LENGTH, "" + length);
+		setValue(HeaderName.CONTENT_LENGTH, "" + length);
 	}
 
 	public void setProxyAutorization(String value) {
-		setValue(PROXY_AUTHORIZATION, value);
+		setValue(HeaderName.PROXY_AUTHORIZATION, value);
 	}
 
 	public boolean isChunked() {
-		return CHUNKED.equals(getFirstValue(TRANSFER_ENCODING));
+		return CHUNKED.equals(getFirstValue(HeaderName.TRANSFER_ENCODING));
 	}
 
 	public long getContentLength() {
 		if (!hasContentLength())
 			return -1;
-		return Long.parseLong(getFirstValue(CONTENT_LENGTH));
+		return Long.parseLong(getFirstValue(HeaderName.CONTENT_LENGTH));
 	}
 
 	public String getContentType() {
-		return getFirstValue(CONTENT_TYPE);
+		return getFirstValue(HeaderName.CONTENT_TYPE);
 	}
 
 	/**
@@ -278,19 +317,19 @@ public class Header {
 	}
 
 	public void setContentType(String value) {
-		setValue(CONTENT_TYPE, value);
+		setValue(HeaderName.CONTENT_TYPE, value);
 	}
 
 	public String getSOAPAction() {
-		return getFirstValue(SOAP_ACTION);
+		return getFirstValue(HeaderName.SOAP_ACTION);
 	}
 
 	public void setSOAPAction(String value) {
-		setValue(SOAP_ACTION, value);
+		setValue(HeaderName.SOAP_ACTION, value);
 	}
 
 	public String getAccept() {
-		return getFirstValue(ACCEPT);
+		return getFirstValue(HeaderName.ACCEPT);
 	}
 
 	public void setAccept(String value) {
@@ -298,15 +337,15 @@ public class Header {
 	}
 
 	public String getConnection() {
-		return getFirstValue(CONNECTION);
+		return getFirstValue(HeaderName.CONNECTION);
 	}
 
 	public void setConnection(String connection) {
-		setValue(CONNECTION, connection);
+		setValue(HeaderName.CONNECTION, connection);
 	}
 
 	public String getProxyConnection() {
-		return getFirstValue(PROXY_CONNECTION);
+		return getFirstValue(HeaderName.PROXY_CONNECTION);
 	}
 
 	public void setProxyConnection(String connection) {
@@ -328,15 +367,15 @@ public class Header {
 	}
 
 	public boolean hasContentLength() {
-		return getFirstValue(CONTENT_LENGTH) != null;
+		return getFirstValue(HeaderName.CONTENT_LENGTH) != null;
 	}
 
 	public String getHost() {
-		return getFirstValue(HOST);
+		return getFirstValue(HeaderName.HOST);
 	}
 
 	public boolean is100ContinueExpected() {
-		return "100-continue".equalsIgnoreCase(getFirstValue(EXPECT));
+		return "100-continue".equalsIgnoreCase(getFirstValue(HeaderName.EXPECT));
 	}
 
 	@Override
@@ -355,31 +394,31 @@ public class Header {
 				+ new String(Base64.encodeBase64((user + ":" + password)
 						.getBytes("UTF-8")), "UTF-8");
 
-		setValue("Authorization", value);
+		setValue(HeaderName.AUTHORIZATION, value);
 	}
 
 	public void setXForwardedFor(String value) {
-		setValue(X_FORWARDED_FOR, value);
+		setValue(HeaderName.X_FORWARDED_FOR, value);
 	}
 
 	public String getXForwardedFor() {
-		return getFirstValue(X_FORWARDED_FOR);
+		return getFirstValue(HeaderName.X_FORWARDED_FOR);
 	}
 
 	public void setXForwardedProto(String value) {
-		setValue(X_FORWARDED_PROTO, value);
+		setValue(HeaderName.X_FORWARDED_PROTO, value);
 	}
 
 	public String getXForwardedProto() {
-		return getFirstValue(X_FORWARDED_PROTO);
+		return getFirstValue(HeaderName.X_FORWARDED_PROTO);
 	}
 
 	public String getContentEncoding() {
-		return getFirstValue(CONTENT_ENCODING);
+		return getFirstValue(HeaderName.CONTENT_ENCODING);
 	}
 
 	public String getUserAgent() {
-		return getFirstValue(USER_AGENT);
+		return getFirstValue(HeaderName.USER_AGENT);
 	}
 
 	// TODO header value is a complex unit
@@ -449,7 +488,7 @@ public class Header {
 	 * Tries to determines the index of the best content type.
 	 */
 	public int getBestAcceptedType(MediaType[] supported) {
-		String accept = getFirstValue(ACCEPT);
+		String accept = getFirstValue(HeaderName.ACCEPT);
 		if (accept == null)
 			return -1;
 		List<MediaType> m;
@@ -474,11 +513,10 @@ public class Header {
 	}
 
 	public int getNumberOf(String headerName) {
-		int res = 0;
-		for (HeaderField headerField : fields)
-			if (headerField.getHeaderName().equals(headerName))
-				res++;
-		return res;
+		Entry e = getIndex().get(headerName);
+		if (e == null)
+			return 0;
+		return e.others == null ? 1 : 1 + e.others.size();
 	}
 
 	/**
@@ -503,6 +541,7 @@ public class Header {
 
 	public void clear() {
 		fields.clear();
+		index = null;
 	}
 
 	public boolean isUserAgentSupportsSNI() {
@@ -546,28 +585,32 @@ public class Header {
 	}
 
 	public void setNoCacheResponseHeaders() {
-		setValue(EXPIRES, "Tue, 03 Jul 2001 06:00:00 GMT");
-		setValue(CACHE_CONTROL, "no-store, no-cache, must-revalidate, max-age=0");
+		setValue(HeaderName.EXPIRES, "Tue, 03 Jul 2001 06:00:00 GMT");
+		setValue(HeaderName.CACHE_CONTROL, "no-store, no-cache, must-revalidate, max-age=0");
 		add(CACHE_CONTROL, "post-check=0, pre-check=0");
 		add(PRAGMA, "no-cache");
 	}
 
 	public String getAuthorization() {
-		return getFirstValue(AUTHORIZATION);
+		return getFirstValue(HeaderName.AUTHORIZATION);
 	}
 
 	public void setWwwAuthenticate(String params){
-		setValue(WWW_AUTHENTICATE,params);
+		setValue(HeaderName.WWW_AUTHENTICATE,params);
 	}
 
 	public String getWwwAuthenticate(){
-		return getFirstValue(WWW_AUTHENTICATE);
+		return getFirstValue(HeaderName.WWW_AUTHENTICATE);
 	}
 
 	public String getNormalizedValue(String headerName) {
+		Entry e = getIndex().get(headerName);
+		if (e == null)
+			return null;
 		StringBuilder sb = new StringBuilder();
-		for (HeaderField headerField : fields) {
-			if (headerField.getHeaderName().equals(headerName)) {
+		sb.append(e.first.getValue());
+		if (e.others != null) {
+			for (HeaderField headerField : e.others) {
 				if (sb.length() > 0)
 					sb.append(",");
 				sb.append(headerField.getValue());
@@ -576,6 +619,108 @@ public class Header {
 		return sb.length() == 0 ? null : sb.toString();
 	}
 
+	private Index getIndex() {
+		Index i = index;
+		if (i == null) {
+			i = new Index();
+			for (HeaderField field : fields)
+				i.add(field);
+			index = i;
+		}
+		return i;
+	}
+
+	/**
+	 * A case-insensitive hash table of the fields by name. Fields with the same name are kept in the order they
+	 * appear in {@link #fields}.
+	 */
+	private static final class Index {
+		private Entry[] table = new Entry[16];
+		private int size;
+
+		Entry get(String name) {
+			int hash = HeaderName.caseInsensitiveHashCode(name);
+			for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.next)
+				if (e.hash == hash && e.name.equals(name))
+					return e;
+			return null;
+		}
+
+		Entry get(HeaderName name) {
+			int hash = name.hashCode();
+			for (Entry e = table[hash & (table.length - 1)]; e != null; e = e.next)
+				if (e.hash == hash && e.name.equals(name))
+					return e;
+			return null;
+		}
+
+		void add(HeaderField field) {
+			Entry e = get(field.getHeaderName());
+			if (e != null) {
+				if (e.others == null)
+					e.others = new ArrayList<HeaderField>(2);
+				e.others.add(field);
+				return;
+			}
+			if (++size > table.length * 3 / 4)
+				resize();
+			e = new Entry(field);
+			int bucket = e.hash & (table.length - 1);
+			e.next = table[bucket];
+			table[bucket] = e;
+		}
+
+		void remove(Entry entry) {
+			int bucket = entry.hash & (table.length - 1);
+			if (table[bucket] == entry) {
+				table[bucket] = entry.next;
+			} else {
+				Entry e = table[bucket];
+				while (e.next != entry)
+					e = e.next;
+				e.next = entry.next;
+			}
+			size--;
+		}
+
+		private void resize() {
+			Entry[] old = table;
+			table = new Entry[old.length * 2];
+			for (Entry e : old) {
+				while (e != null) {
+					Entry next = e.next;
+					int bucket = e.hash & (table.length - 1);
+					e.next = table[bucket];
+					table[bucket] = e;
+					e = next;
+				}
+			}
+		}
+	}
+
+	private static final class Entry {
+		final HeaderName name;
+		final int hash;
+		final HeaderField first;
+		/** further fields with the same name, or null */
+		ArrayList<HeaderField> others;
+		Entry next;
+
+		Entry(HeaderField first) {
+			this.first = first;
+			this.name = first.getHeaderName();
+			this.hash = name.hashCode();
+		}
+
+		List<HeaderField> getFields() {
+			List<HeaderField> res = new ArrayList<HeaderField>(others == null ? 1 : others.size() + 1);
+			res.add(first);
+			if (others != null)
+				res.addAll(others);
+			return res;
+		}
+	}
+
 	public boolean isBinaryContentType() {
 		String contentType = getContentType();
 		if(contentType == null)
@@ -589,10 +734,10 @@ public class Header {
 	}
 
 	public String getXForwardedHost() {
-		return getFirstValue(X_FORWARDED_HOST);
+		return getFirstValue(HeaderName.X_FORWARDED_HOST);
 	}
 
 	public void setXForwardedHost(String xForwardedHostHeaderValue) {
-		setValue(X_FORWARDED_HOST,xForwardedHostHeaderValue);
+		setValue(HeaderName.X_FORWARDED_HOST,xForwardedHostHeaderValue);
 	}
 }
@@ -15,6 +15,8 @@
 
 package com.predic8.membrane.core.http;
 
+import java.io.ByteArrayOutputStream;
+
 import com.predic8.membrane.core.Constants;
 
 public class HeaderField {
@@ -22,11 +24,25 @@ public class HeaderField {
 	private HeaderName headerName;
 	private String value;
 
+	// the raw value, as long as it has not been changed
+	private byte[] data;
+	private int valueStart, valueEnd;
+
 	public HeaderField(HeaderName headerName,String value) {
 		this.headerName = headerName;
 		this.value = value;
 	}
 
+	/**
+	 * Creates a field whose value is only decoded when it is first requested.
+	 */
+	HeaderField(HeaderName headerName, byte[] data, int valueStart, int valueEnd) {
+		this.headerName = headerName;
+		this.data = data;
+		this.valueStart = valueStart;
+		this.valueEnd = valueEnd;
+	}
+
 	public HeaderField(String line) {
 		headerName = new HeaderName(getName(line));
 		value = getValue(line);
@@ -45,14 +61,44 @@ public class HeaderField {
 	}
 
 	public HeaderField(HeaderField element) {
-		headerName = new HeaderName(element.headerName);
+		headerName = element.headerName;
 		value = element.value;
+		data = element.data;
+		valueStart = element.valueStart;
+		valueEnd = element.valueEnd;
 	}
 	public String getValue() {
-		return value;
+		String v = value;
+		if (v == null && data != null) {
+			v = HeadParser.string(data, valueStart, valueEnd);
+			value = v;
+		}
+		return v;
 	}
 	public void setValue(String value) {
 		this.value = value;
+		data = null;
+	}
+	/**
+	 * Writes the field as ISO-8859-1. A value which was never requested is written without decoding it first.
+	 */
+	void write(ByteArrayOutputStream out) {
+		write(out, headerName.toString());
+		out.write(':');
+		out.write(' ');
+		byte[] d = data;
+		if (d != null)
+			out.write(d, valueStart, valueEnd - valueStart);
+		else
+			write(out, value);
+		out.write('\r');
+		out.write('\n');
+	}
+	private static void write(ByteArrayOutputStream out, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			out.write(c < 256 ? c : '?');
+		}
 	}
 	public HeaderName getHeaderName() {
 		return headerName;
@@ -66,12 +112,19 @@ public class HeaderField {
 		StringBuilder buf = new StringBuilder();
 		buf.append(headerName.toString());
 		buf.append(": ");
-		buf.append(value);
+		buf.append(getValue());
 		buf.append(Constants.CRLF);
 		return buf.toString();
 	}
 
+	/**
+	 * @return the number of bytes written by {@link #write(ByteArrayOutputStream)}, without decoding the value
+	 */
+	int getWireLength() {
+		return headerName.toString().length() + 4 + (data != null ? valueEnd - valueStart : value.length());
+	}
+
 	public int estimateHeapSize() {
-		return 2*(4 + headerName.toString().length() + value.length());
+		return 2*(4 + headerName.toString().length() + (data != null ? valueEnd - valueStart : value.length()));
 	}
 }
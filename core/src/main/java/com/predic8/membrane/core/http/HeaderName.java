@@ -17,18 +17,70 @@ package com.predic8.membrane.core.http;
 /**
  * This class is used by {@link Header} a key for header fields.
  * The {@link #hashCode()} method is overridden so the keys are
- * not case sensitive (as per the HTTP spec).
+ * not case sensitive (as per the HTTP spec). The hash code is
+ * computed once, when the name is created.
  */
 public class HeaderName {
 
+	// Header field names, see the String constants in Header
+
+	public static final HeaderName TRANSFER_ENCODING = new HeaderName(Header.TRANSFER_ENCODING);
+	public static final HeaderName CONTENT_ENCODING = new HeaderName(Header.CONTENT_ENCODING);
+	public static final HeaderName CONTENT_LENGTH = new HeaderName(Header.CONTENT_LENGTH);
+	public static final HeaderName CONTENT_TYPE = new HeaderName(Header.CONTENT_TYPE);
+	public static final HeaderName CONNECTION = new HeaderName(Header.CONNECTION);
+	public static final HeaderName PROXY_CONNECTION = new HeaderName(Header.PROXY_CONNECTION);
+	public static final HeaderName HOST = new HeaderName(Header.HOST);
+	public static final HeaderName EXPECT = new HeaderName(Header.EXPECT);
+	public static final HeaderName X_FORWARDED_FOR = new HeaderName(Header.X_FORWARDED_FOR);
+	public static final HeaderName X_FORWARDED_PROTO = new HeaderName(Header.X_FORWARDED_PROTO);
+	public static final HeaderName X_FORWARDED_HOST = new HeaderName(Header.X_FORWARDED_HOST);
+	public static final HeaderName PROXY_AUTHORIZATION = new HeaderName(Header.PROXY_AUTHORIZATION);
+	public static final HeaderName SOAP_ACTION = new HeaderName(Header.SOAP_ACTION);
+	public static final HeaderName ACCEPT = new HeaderName(Header.ACCEPT);
+	public static final HeaderName LOCATION = new HeaderName(Header.LOCATION);
+	public static final HeaderName AUTHORIZATION = new HeaderName(Header.AUTHORIZATION);
+	public static final HeaderName SET_COOKIE = new HeaderName(Header.SET_COOKIE);
+	public static final HeaderName COOKIE = new HeaderName(Header.COOKIE);
+	public static final HeaderName DESTINATION = new HeaderName(Header.DESTINATION);
+	public static final HeaderName VALIDATION_ERROR_SOURCE = new HeaderName(Header.VALIDATION_ERROR_SOURCE);
+	public static final HeaderName USER_AGENT = new HeaderName(Header.USER_AGENT);
+	public static final HeaderName X_REQUESTED_WITH = new HeaderName(Header.X_REQUESTED_WITH);
+	public static final HeaderName EXPIRES = new HeaderName(Header.EXPIRES);
+	public static final HeaderName KEEP_ALIVE = new HeaderName(Header.KEEP_ALIVE);
+	public static final HeaderName SERVER = new HeaderName(Header.SERVER);
+	public static final HeaderName PRAGMA = new HeaderName(Header.PRAGMA);
+	public static final HeaderName CACHE_CONTROL = new HeaderName(Header.CACHE_CONTROL);
+	public static final HeaderName UPGRADE = new HeaderName(Header.UPGRADE);
+	public static final HeaderName LAST_MODIFIED = new HeaderName(Header.LAST_MODIFIED);
+	public static final HeaderName IF_MODIFIED_SINCE = new HeaderName(Header.IF_MODIFIED_SINCE);
+	public static final HeaderName WWW_AUTHENTICATE = new HeaderName(Header.WWW_AUTHENTICATE);
+	public static final HeaderName ACCESS_CONTROL_ALLOW_ORIGIN = new HeaderName(Header.ACCESS_CONTROL_ALLOW_ORIGIN);
+	public static final HeaderName ORIGIN = new HeaderName(Header.ORIGIN);
+	public static final HeaderName X_HTTP_METHOD_OVERRIDE = new HeaderName(Header.X_HTTP_METHOD_OVERRIDE);
+
 	private final String name;
+	private final int hash;
 
 	public HeaderName(String name) {
 		this.name = name;
+		this.hash = caseInsensitiveHashCode(name);
 	}
 
 	public HeaderName(HeaderName headerName) {
 		name = headerName.name;
+		hash = headerName.hash;
+	}
+
+	/**
+	 * @return a hash code, which is equal for two Strings if {@link String#equalsIgnoreCase(String)} is true. This is
+	 *         the same as {@link #hashCode()} of a {@link HeaderName} with this name.
+	 */
+	public static int caseInsensitiveHashCode(String name) {
+		int h = 0;
+		for (int i = 0; i < name.length(); i++)
+			h = 31 * h + Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+		return h;
 	}
 
 	@Override
@@ -36,11 +88,11 @@ public class HeaderName {
 		if(!(obj instanceof HeaderName))
 			return false;
 
-		return name.equalsIgnoreCase(obj.toString());
+		return equals((HeaderName) obj);
 	}
 
 	public boolean equals(HeaderName other) {
-		return name.equalsIgnoreCase(other.name);
+		return other == this || hash == other.hash && name.equalsIgnoreCase(other.name);
 	}
 
 	public boolean equals(String s) {
@@ -49,7 +101,7 @@ public class HeaderName {
 
 	@Override
 	public int hashCode() {
-		return name.toLowerCase().hashCode();
+		return hash;
 	}
 
 	@Override
@@ -17,7 +17,6 @@ package com.predic8.membrane.core.http;
 import com.predic8.membrane.core.Constants;
 import com.predic8.membrane.core.multipart.XOPReconstitutor;
 import com.predic8.membrane.core.util.EndOfStreamException;
-import com.predic8.membrane.core.util.HttpUtil;
 import com.predic8.membrane.core.util.MessageUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * A HTTP message (request or response).
@@ -39,7 +39,8 @@ public abstract class Message {
 
 	protected String version = "1.1";
 
-	private boolean released = false;
+	private volatile boolean released = false;
+	private volatile Thread releaseWaiter;
 
 	private String errorMessage = "";
 
@@ -59,8 +60,9 @@ public abstract class Message {
 	 * See http://www.ietf.org/rfc/rfc2145.txt
 	 */
 	public void read(InputStream in, boolean createBody) throws IOException, EndOfStreamException {
-		parseStartLine(in);
-		header = new Header(in);
+		HeadParser head = HeadParser.read(in);
+		parseStartLine(head);
+		header = head.parseHeader();
 
 		if (createBody)
 			createBody(in);
@@ -200,16 +202,45 @@ public abstract class Message {
 
 	abstract protected void parseStartLine(InputStream in) throws IOException, EndOfStreamException;
 
+	/**
+	 * Parses the start line of a head read by {@link HeadParser}. Subclasses may override this to parse the start line
+	 * without decoding it into a String first.
+	 */
+	protected void parseStartLine(HeadParser head) throws IOException, EndOfStreamException {
+		parseStartLine(head.getStartLineAsStream());
+	}
+
 	public Header getHeader() {
 		return header;
 	}
 
 	/**
-	 *preserve synchronized keyword, notify method is called
+	 * Wakes up a thread blocked in {@link #awaitRelease()}.
 	 */
-	public synchronized void release() {
-		notify();
+	public void release() {
 		released = true;
+		Thread waiter = releaseWaiter;
+		if (waiter != null)
+			LockSupport.unpark(waiter);
+	}
+
+	/**
+	 * Blocks the calling thread until {@link #release()} is called.
+	 *
+	 * {@link LockSupport} is used instead of {@link Object#wait()}, as waiting on a monitor would pin a virtual thread
+	 * to its carrier thread.
+	 */
+	public void awaitRelease() throws InterruptedException {
+		releaseWaiter = Thread.currentThread();
+		try {
+			while (!released) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			releaseWaiter = null;
+		}
 	}
 
 	public boolean hasMsgReleased() {
@@ -237,7 +268,7 @@ public abstract class Message {
 
 	/**
 	 * The start line supposedly only contains ASCII characters. But since
-	 * {@link HttpUtil#readLine(InputStream)} converts the input byte-by-byte
+	 * {@link HeadParser} converts the input byte-by-byte
 	 * to char-by-char, we use ISO-8859-1 for output.
 	 */
 	public void writeStartLine(OutputStream out) throws IOException {
@@ -68,19 +68,7 @@ public class Request extends Message {
 	@Override
 	public void parseStartLine(InputStream in) throws IOException, EndOfStreamException {
 		try {
-			String firstLine = HttpUtil.readLine(in);
-			Matcher matcher = pattern.matcher(firstLine);
-			if (matcher.find()) {
-				method = matcher.group(1);
-				uri = matcher.group(2);
-				version = matcher.group(3);
-			} else if (stompPattern.matcher(firstLine).find()) {
-				method = firstLine;
-				uri = "";
-				version = "STOMP";
-			} else {
-				throw new EOFWhileReadingFirstLineException(firstLine);
-			}
+			parseStartLine(HttpUtil.readLine(in));
 		} catch (EOFWhileReadingLineException e) {
 			if (e.getLineSoFar().length() == 0)
 				throw new NoMoreRequestsException(); // happens regularly at the end of a keep-alive connection
@@ -88,6 +76,88 @@ public class Request extends Message {
 		}
 	}
 
+	@Override
+	protected void parseStartLine(HeadParser head) throws IOException, EndOfStreamException {
+		if (!head.isStartLineComplete()) {
+			if (head.isEmpty())
+				throw new NoMoreRequestsException(); // happens regularly at the end of a keep-alive connection
+			throw new EOFWhileReadingFirstLineException(head.getStartLine());
+		}
+		if (!parseStartLine(head.getData(), head.getStartLineStart(), head.getStartLineEnd()))
+			parseStartLine(head.getStartLine());
+	}
+
+	private void parseStartLine(String firstLine) {
+		Matcher matcher = pattern.matcher(firstLine);
+		if (matcher.find()) {
+			method = matcher.group(1);
+			uri = matcher.group(2);
+			version = matcher.group(3);
+		} else if (stompPattern.matcher(firstLine).find()) {
+			method = firstLine;
+			uri = "";
+			version = "STOMP";
+		} else {
+			throw new EOFWhileReadingFirstLineException(firstLine);
+		}
+	}
+
+	/**
+	 * Parses the usual "METHOD SP URI SP HTTP/VERSION" directly from the bytes, with the same result as {@link #pattern}.
+	 *
+	 * @return false, if the line does not have the usual form and has to be matched against the pattern.
+	 */
+	private boolean parseStartLine(byte[] data, int start, int end) {
+		int space = -1;
+		for (int i = start; i < end; i++) {
+			byte c = data[i];
+			if (c == '\r' || (c & 0xFF) == 0x85)
+				return false; // line terminators for the pattern
+			if (c == ' ' && space == -1)
+				space = i;
+		}
+		if (space <= start)
+			return false;
+		for (int i = space + 2; i + 6 < end; i++) {
+			if (data[i] == ' ' && data[i + 1] == 'H' && data[i + 2] == 'T' && data[i + 3] == 'T' && data[i + 4] == 'P'
+					&& data[i + 5] == '/') {
+				method = getMethod(data, start, space);
+				uri = HeadParser.string(data, space + 1, i);
+				version = getVersion(data, i + 6, end);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getMethod(byte[] data, int start, int end) {
+		switch (end - start) {
+		case 3:
+			if (data[start] == 'G' && data[start + 1] == 'E' && data[start + 2] == 'T')
+				return METHOD_GET;
+			if (data[start] == 'P' && data[start + 1] == 'U' && data[start + 2] == 'T')
+				return METHOD_PUT;
+			break;
+		case 4:
+			if (data[start] == 'P' && data[start + 1] == 'O' && data[start + 2] == 'S' && data[start + 3] == 'T')
+				return METHOD_POST;
+			if (data[start] == 'H' && data[start + 1] == 'E' && data[start + 2] == 'A' && data[start + 3] == 'D')
+				return METHOD_HEAD;
+			break;
+		}
+		return HeadParser.string(data, start, end);
+	}
+
+	static String getVersion(byte[] data, int start, int end) {
+		if (end - start == 3 && data[start] == '1' && data[start + 1] == '.') {
+			if (data[start + 2] == '1')
+				return "1.1";
+			if (data[start + 2] == '0')
+				return "1.0";
+		}
+		return HeadParser.string(data, start, end);
+	}
+
 	public String getMethod() {
 		return method;
 	}
@@ -339,6 +339,21 @@ public class Response extends Message {
 			throw new EOFWhileReadingFirstLineException(e.getLineSoFar());
 		}
 
+		parseStartLine(line);
+	}
+
+	@Override
+	protected void parseStartLine(HeadParser head) throws IOException, EndOfStreamException {
+		if (!head.isStartLineComplete()) {
+			if (head.isEmpty())
+				throw new NoResponseException(new EOFWhileReadingLineException(""));
+			throw new EOFWhileReadingFirstLineException(head.getStartLine());
+		}
+		if (!parseStartLine(head.getData(), head.getStartLineStart(), head.getStartLineEnd()))
+			parseStartLine(head.getStartLine());
+	}
+
+	private void parseStartLine(String line) {
 		Matcher matcher = pattern.matcher(line);
 		boolean find = matcher.find();
 
@@ -348,20 +363,46 @@ public class Response extends Message {
 		version = matcher.group(1);
 		statusCode = Integer.parseInt(matcher.group(2));
 		statusMessage = matcher.group(4);
+	}
+
+	/**
+	 * Parses the usual "HTTP/D.D SP DDD SP MESSAGE" directly from the bytes, with the same result as {@link #pattern}.
+	 *
+	 * @return false, if the line does not have the usual form and has to be matched against the pattern.
+	 */
+	private boolean parseStartLine(byte[] data, int start, int end) {
+		if (end - start < 12 || data[start] != 'H' || data[start + 1] != 'T' || data[start + 2] != 'T'
+				|| data[start + 3] != 'P' || data[start + 4] != '/' || !isDigit(data[start + 5])
+				|| data[start + 6] != '.' || !isDigit(data[start + 7]) || data[start + 8] != ' '
+				|| !isDigit(data[start + 9]) || !isDigit(data[start + 10]) || !isDigit(data[start + 11]))
+			return false;
+		if (end - start > 12 && data[start + 12] != ' ')
+			return false;
+		for (int i = start + 13; i < end; i++)
+			if (data[i] == '\r' || (data[i] & 0xFF) == 0x85)
+				return false; // line terminators for the pattern
+		version = Request.getVersion(data, start + 5, start + 8);
+		statusCode = (data[start + 9] - '0') * 100 + (data[start + 10] - '0') * 10 + (data[start + 11] - '0');
+		statusMessage = end - start > 12 ? HeadParser.string(data, start + 13, end) : null;
+		return true;
+	}
 
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
 	}
 
 	@Override
 	public void read(InputStream in, boolean createBody) throws IOException,
 	EndOfStreamException {
-		parseStartLine(in);
+		HeadParser head = HeadParser.read(in);
+		parseStartLine(head);
 
 		if (getStatusCode() == 100) {
-			HttpUtil.readLine(in);
+			// the empty line following the status line has already been read
 			return;
 		}
 
-		header = new Header(in);
+		header = head.parseHeader();
 
 		if (createBody)
 			createBody(in);
@@ -15,6 +15,9 @@ package com.predic8.membrane.core.interceptor;
 
 import java.net.ConnectException;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,6 +28,7 @@ import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.Router;
 import com.predic8.membrane.core.exchange.Exchange;
 import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.transport.http.AbstractHttpHandler;
 import com.predic8.membrane.core.transport.http.HttpClient;
 import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
 
@@ -35,6 +39,9 @@ import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
  *              inside a proxy to give the proxy an individual configuration for
  *              its outgoing HTTP connection that is different from the global
  *              configuration in the transport.
+ * @explanation In <tt>&lt;transport mode="NIO"&gt;</tt>, the exchange is suspended while waiting for the
+ *              server: The thread handling the exchange is released, and the response is handled once it has been
+ *              received.
  */
 @MCElement(name="httpClient")
 public class HTTPClientInterceptor extends AbstractInterceptor {
@@ -56,17 +63,57 @@ public class HTTPClientInterceptor extends AbstractInterceptor {
 	public Outcome handleRequest(Exchange exc) throws Exception {
 		exc.blockRequestIfNeeded();
 
+		if (isSuspendable(exc)) {
+			CompletableFuture<Exchange> call = hc.callAsync(exc, adjustHostHeader, failOverOn5XX);
+			if (!isRejected(call)) {
+				exc.getHandler().suspend(call.handle((result, e) -> getOutcome(exc, e)));
+				return Outcome.RETURN;
+			}
+			// too many calls in flight: wait for the response on this thread
+		}
+
 		try {
 			hc.call(exc, adjustHostHeader, failOverOn5XX);
 			return Outcome.RETURN;
-		} catch (ConnectException e) {
+		} catch (ConnectException | UnknownHostException e) {
+			return getOutcome(exc, e);
+		}
+	}
+
+	/**
+	 * Only the transport's own instance suspends exchanges: It is the last interceptor of the main chain, while
+	 * nested chains (e.g. within a proxy) expect the response to be there when the interceptor returns. Connections
+	 * taken over by the client (CONNECT and protocol upgrades) are handled by blocking calls.
+	 */
+	private boolean isSuspendable(Exchange exc) {
+		AbstractHttpHandler handler = exc.getHandler();
+		return handler != null && handler.isSuspendable()
+				&& handler.getTransport().getInterceptors().contains(this)
+				&& !exc.getRequest().isCONNECTRequest()
+				&& exc.getProperty(Exchange.ALLOW_WEBSOCKET) != Boolean.TRUE
+				&& exc.getProperty(Exchange.ALLOW_TCP) != Boolean.TRUE
+				&& exc.getProperty(Exchange.ALLOW_SPDY) != Boolean.TRUE;
+	}
+
+	private boolean isRejected(CompletableFuture<Exchange> call) {
+		return call.isCompletedExceptionally() && call.handle((result, e) -> e).join() instanceof RejectedExecutionException;
+	}
+
+	private Outcome getOutcome(Exchange exc, Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null)
+			e = e.getCause();
+		if (e == null)
+			return Outcome.RETURN;
+		if (e instanceof ConnectException) {
 			exc.setResponse(Response.badGateway("Target " + getDestination(exc) + " is not reachable.").build());
 			log.warn("Target " + getDestination(exc) + " is not reachable. " + e);
 			return Outcome.ABORT;
-		} catch (UnknownHostException e) {
+		}
+		if (e instanceof UnknownHostException) {
 			exc.setResponse(Response.internalServerError("Target host " + getDestination(exc) + " is unknown. DNS was unable to resolve host name.").build());
 			return Outcome.ABORT;
 		}
+		throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
 	}
 
 	private String getDestination(Exchange exc) {
@@ -82,6 +129,7 @@ public class HTTPClientInterceptor extends AbstractInterceptor {
 		else
 			hc = new HttpClient(httpClientConfig);
 		hc.setStreamPumpStats(getRouter().getStatistics().getStreamPumpStats());
+		hc.setDnsCache(router.getDnsCache());
 	}
 
 	public void init(Router router, HttpClient httpClient) throws Exception {
@@ -89,6 +137,7 @@ public class HTTPClientInterceptor extends AbstractInterceptor {
 
 		hc = httpClient;
 		hc.setStreamPumpStats(getRouter().getStatistics().getStreamPumpStats());
+		hc.setDnsCache(router.getDnsCache());
 	}
 
 
@@ -121,6 +170,13 @@ public class HTTPClientInterceptor extends AbstractInterceptor {
 		this.adjustHostHeader = adjustHostHeader;
 	}
 
+	/**
+	 * @return the client used to forward requests, null before {@link #init(Router)}
+	 */
+	public HttpClient getHttpClient() {
+		return hc;
+	}
+
 	public HttpClientConfiguration getHttpClientConfig() {
 		return httpClientConfig;
 	}
@@ -15,6 +15,8 @@ package com.predic8.membrane.core.interceptor;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import com.predic8.membrane.core.exchange.Exchange;
 import com.predic8.membrane.core.interceptor.Interceptor.Flow;
 import com.predic8.membrane.core.transport.http.AbortException;
+import com.predic8.membrane.core.transport.http.AbstractHttpHandler;
 
 /**
  * Controls the flow of an exchange through a chain of interceptors.
@@ -48,6 +51,10 @@ import com.predic8.membrane.core.transport.http.AbortException;
  * When {@link Outcome#ABORT} is hit, handling is aborted: An
  * {@link AbortException} is thrown. The stack is unwound calling
  * {@link Interceptor#handleAbort(Exchange)} on each interceptor on it.
+ *
+ * An interceptor may suspend the exchange's handler (see {@link AbstractHttpHandler#suspend(Future)}) before
+ * returning: The handler's thread is then released, and the chain is continued by
+ * {@link #resumeHandlers(Exchange, Future)} once the outcome is known.
  */
 public class InterceptorFlowController {
 
@@ -67,8 +74,43 @@ public class InterceptorFlowController {
 	 * Runs both the request and response handlers: This executes the main interceptor chain.
 	 */
 	public void invokeHandlers(Exchange exchange, List<Interceptor> interceptors) throws Exception {
+		Outcome outcome;
+		try {
+			outcome = invokeRequestHandlers(exchange, interceptors);
+		} catch (Exception e) {
+			abort(exchange, e);
+			throw e;
+		}
+		AbstractHttpHandler handler = exchange.getHandler();
+		if (handler != null && handler.isSuspended())
+			return;
+		handleOutcome(exchange, outcome);
+	}
+
+	/**
+	 * Continues the main chain of a suspended exchange, once the outcome of its last request handler is known: An
+	 * exception from the future is handled as if it had been thrown by the request handler.
+	 */
+	public void resumeHandlers(Exchange exchange, Future<Outcome> outcome) throws Exception {
+		Outcome o;
 		try {
-			switch (invokeRequestHandlers(exchange, interceptors)) {
+			try {
+				o = outcome.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		} catch (Exception e) {
+			abort(exchange, e);
+			throw e;
+		}
+		handleOutcome(exchange, o);
+	}
+
+	private void handleOutcome(Exchange exchange, Outcome outcome) throws Exception {
+		try {
+			switch (outcome) {
 			case CONTINUE:
 				throw new Exception("The last interceptor in the main chain may not return CONTINUE. Change it to RETURN.");
 			case RETURN:
@@ -78,12 +120,16 @@ public class InterceptorFlowController {
 			}
 			invokeResponseHandlers(exchange);
 		} catch (Exception e) {
-			exchange.setProperty(ABORTION_REASON, e);
-			invokeAbortionHandlers(exchange);
+			abort(exchange, e);
 			throw e;
 		}
 	}
 
+	private void abort(Exchange exchange, Exception e) {
+		exchange.setProperty(ABORTION_REASON, e);
+		invokeAbortionHandlers(exchange);
+	}
+
 	/**
 	 * Runs the request handlers of the given chain. Response handlers are collected as
 	 * the request handlers are executed and appended to the exchange's interceptor stack
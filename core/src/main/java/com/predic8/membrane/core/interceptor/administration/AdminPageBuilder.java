@@ -415,25 +415,25 @@ public class AdminPageBuilder extends Html {
 		table().attr("cellpadding", "0", "cellspacing", "0", "border", "0", "class", "display", "id", "statuscode-table");
 		thead();
 		tr();
-		createThs("Status Code", "Count", "Minimum Time", "Maximum Time", "Average Time",
+		createThs("Status Code", "Count", "Minimum Time", "Maximum Time", "Average Time", "Median Time", "99th Percentile Time",
 				"Total Request Body Bytes", "Total Response Body Bytes");
 		end();
 		end();
 		tbody();
-		synchronized (statusCodes) {
-			for (Map.Entry<Integer, StatisticCollector> codes : statusCodes.entrySet() ) {
-				StatisticCollector statisticCollector = codes.getValue();
-				tr().style("text-align: right;");
-				td().style("text-align:left;").text(""+codes.getKey()).end();
-				createTds(
-						""+statisticCollector.getCount(),
-						""+statisticCollector.getMinTime(),
-						""+statisticCollector.getMaxTime(),
-						""+statisticCollector.getAvgTime(),
-						""+statisticCollector.getBytesSent(),
-						""+statisticCollector.getBytesReceived());
-				end();
-			}
+		for (Map.Entry<Integer, StatisticCollector> codes : statusCodes.entrySet() ) {
+			StatisticCollector statisticCollector = codes.getValue();
+			tr().style("text-align: right;");
+			td().style("text-align:left;").text(""+codes.getKey()).end();
+			createTds(
+					""+statisticCollector.getCount(),
+					""+statisticCollector.getMinTime(),
+					""+statisticCollector.getMaxTime(),
+					""+statisticCollector.getAvgTime(),
+					""+statisticCollector.getPercentileTime(50),
+					""+statisticCollector.getPercentileTime(99),
+					""+statisticCollector.getBytesSent(),
+					""+statisticCollector.getBytesReceived());
+			end();
 		}
 		end();
 		end();
@@ -443,7 +443,7 @@ public class AdminPageBuilder extends Html {
 		table().attr("cellpadding", "0", "cellspacing", "0", "border", "0", "class", "display", "id", "statistics-table");
 		thead();
 		tr();
-		createThs("Name", "Count", "Minimum Time", "Maximum Time", "Average Time",
+		createThs("Name", "Count", "Minimum Time", "Maximum Time", "Average Time", "Median Time", "99th Percentile Time",
 				"Total Request Body Bytes", "Total Response Body Bytes", "Open Connections");
 		end();
 		end();
@@ -457,6 +457,8 @@ public class AdminPageBuilder extends Html {
 					""+statisticCollector.getMinTime(),
 					""+statisticCollector.getMaxTime(),
 					""+statisticCollector.getAvgTime(),
+					""+statisticCollector.getPercentileTime(50),
+					""+statisticCollector.getPercentileTime(99),
 					""+statisticCollector.getBytesSent(),
 					""+statisticCollector.getBytesReceived(),
 					""+getBackendConnections(statisticCollector));
@@ -582,9 +584,7 @@ public class AdminPageBuilder extends Html {
 		HashMap<StatisticCollector,String> backendConnections = new HashMap<>();
 		for (Rule r : router.getRuleManager().getRules()) {
 			if (!(r instanceof AbstractProxy)) continue;
-			StatisticCollector sc = new StatisticCollector(true);
-			for (StatisticCollector s : ((AbstractProxy) r).getStatisticCollector().getStatisticsByStatusCodes().values())
-				sc.collectFrom(s);
+			StatisticCollector sc = ((AbstractProxy) r).getStatisticCollector().getTotal();
 			res.put(r.getName(), sc);
 			backendConnections.put(sc,router.getTransport().getOpenBackendConnections(r.getKey().getPort()));
 		}
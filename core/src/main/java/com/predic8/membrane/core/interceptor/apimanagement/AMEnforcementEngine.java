@@ -0,0 +1,266 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.apimanagement;
+
+import com.predic8.membrane.core.interceptor.apimanagement.policy.Policy;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the request and byte counters of the rate limiter and the quota for every (API key, policy) pair.
+ *
+ * Each counter counts within a window of the policy's interval, and keeps the count of the preceding window. The
+ * usage within the rolling interval ending now is estimated as <code>previous * (1 - elapsed) + current</code>,
+ * where <code>elapsed</code> is the fraction of the current window which has passed (as by
+ * {@link com.predic8.membrane.core.interceptor.ratelimit.SlidingWindowRateLimit}). So a key cannot use twice its
+ * limit around a window boundary. Windows are replaced lazily (using compare-and-set) by the first caller noticing
+ * that the window has passed, so neither a cleanup thread nor locks are needed.
+ *
+ * The counters are kept when the {@link ApiManagementConfiguration} is reloaded: {@link #retain(Map, Map)} only
+ * drops the counters of keys and policies which no longer exist.
+ *
+ * A key is admitted if at least one of its policies covering the requested service has capacity left. Policies
+ * not covering the service are neither checked nor counted.
+ */
+public class AMEnforcementEngine {
+
+    /**
+     * API key -> policy name -> counters
+     */
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Counters>> counters = new ConcurrentHashMap<>();
+
+    private LongSupplier clock = System::currentTimeMillis;
+
+    static final class Window {
+        final long start;
+        /**
+         * the count of the preceding window, or 0 if it has not directly preceded this one
+         */
+        final long previous;
+        final AtomicLong used = new AtomicLong();
+
+        Window(long start) {
+            this(start, 0);
+        }
+
+        Window(long start, long previous) {
+            this.start = start;
+            this.previous = previous;
+        }
+
+        /**
+         * @return the estimated usage within the interval ending now, if <code>used</code> had been counted in
+         * this window
+         */
+        double getEstimate(long used, long intervalMillis, long now) {
+            double elapsed = Math.min(1, (double) (now - start) / intervalMillis);
+            return previous * (1 - elapsed) + used;
+        }
+    }
+
+    static final class Counters {
+        final AtomicReference<Window> requests = new AtomicReference<>(new Window(0));
+        final AtomicReference<Window> bytes = new AtomicReference<>(new Window(0));
+    }
+
+    /**
+     * Counts a request of the key to the service. Rejected requests are not counted.
+     *
+     * @return null, if the request may pass, or the last policy whose limit is exceeded
+     */
+    public Policy acquireRequest(Key key, String service) {
+        if (key == null)
+            return null;
+        long now = clock.getAsLong();
+        Policy exceeded = null;
+        for (Policy policy : key.getPolicies()) {
+            if (!policy.getServiceProxies().contains(service))
+                continue;
+            long interval = getIntervalMillis(policy.getRateLimit().getInterval());
+            Window w = getWindow(getCounters(key.getName(), policy).requests, interval, now);
+            if (tryAcquire(w, policy.getRateLimit().getRequests(), interval, now))
+                return null;
+            exceeded = policy;
+        }
+        return exceeded;
+    }
+
+    private static boolean tryAcquire(Window w, long limit, long intervalMillis, long now) {
+        while (true) {
+            long used = w.used.get();
+            if (w.getEstimate(used + 1, intervalMillis, now) > limit)
+                return false;
+            if (w.used.compareAndSet(used, used + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Adds the bytes to the quota of every policy of the key covering the service.
+     *
+     * @return null, if at least one of these policies still has quota left, or the last policy whose quota is
+     * exceeded
+     */
+    public Policy addBytes(Key key, String service, long bytes) {
+        if (key == null)
+            return null;
+        long now = clock.getAsLong();
+        Policy exceeded = null;
+        boolean available = false;
+        for (Policy policy : key.getPolicies()) {
+            if (!policy.getServiceProxies().contains(service))
+                continue;
+            long interval = getIntervalMillis(policy.getQuota().getInterval());
+            Window w = getWindow(getCounters(key.getName(), policy).bytes, interval, now);
+            if (w.getEstimate(w.used.addAndGet(bytes), interval, now) <= policy.getQuota().getSize())
+                available = true;
+            else
+                exceeded = policy;
+        }
+        return available ? null : exceeded;
+    }
+
+    /**
+     * @return the time (in milliseconds since the epoch) at which the key may make the next request under the
+     * policy's rate limit
+     */
+    public long getRequestsResetTime(String apiKey, Policy policy) {
+        return getResetTime(getCounters(apiKey, policy).requests, getIntervalMillis(policy.getRateLimit().getInterval()),
+                policy.getRateLimit().getRequests());
+    }
+
+    /**
+     * @return the time (in milliseconds since the epoch) at which the key has quota left again under the policy
+     */
+    public long getQuotaResetTime(String apiKey, Policy policy) {
+        return getResetTime(getCounters(apiKey, policy).bytes, getIntervalMillis(policy.getQuota().getInterval()),
+                policy.getQuota().getSize());
+    }
+
+    /**
+     * @return the number of requests counted in the current window, or 0 if there are none
+     */
+    public long getRequestCount(String apiKey, String policyName) {
+        return getUsed(apiKey, policyName, true);
+    }
+
+    /**
+     * @return the number of bytes counted in the current window, or 0 if there are none
+     */
+    public long getByteCount(String apiKey, String policyName) {
+        return getUsed(apiKey, policyName, false);
+    }
+
+    private long getUsed(String apiKey, String policyName, boolean requests) {
+        Map<String, Counters> m = counters.get(apiKey);
+        Counters c = m == null ? null : m.get(policyName);
+        return c == null ? 0 : (requests ? c.requests : c.bytes).get().used.get();
+    }
+
+    /**
+     * Drops the counters of keys and policies which are no longer configured. Policies a key no longer references
+     * are dropped as well.
+     */
+    public void retain(Map<String, Key> keys, Map<String, Policy> policies) {
+        for (Iterator<Map.Entry<String, ConcurrentHashMap<String, Counters>>> it = counters.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, ConcurrentHashMap<String, Counters>> e = it.next();
+            Key key = keys.get(e.getKey());
+            if (key == null) {
+                it.remove();
+                continue;
+            }
+            e.getValue().keySet().removeIf(policyName -> !policies.containsKey(policyName) || !references(key, policyName));
+        }
+    }
+
+    private static boolean references(Key key, String policyName) {
+        for (Policy p : key.getPolicies())
+            if (p.getName().equals(policyName))
+                return true;
+        return false;
+    }
+
+    public int getKeyCount() {
+        return counters.size();
+    }
+
+    private Counters getCounters(String apiKey, Policy policy) {
+        ConcurrentHashMap<String, Counters> m = counters.get(apiKey);
+        if (m == null)
+            m = counters.computeIfAbsent(apiKey, k -> new ConcurrentHashMap<>());
+        Counters c = m.get(policy.getName());
+        if (c == null)
+            c = m.computeIfAbsent(policy.getName(), k -> new Counters());
+        return c;
+    }
+
+    private static long getIntervalMillis(int seconds) {
+        return Math.max(1, seconds) * 1000L;
+    }
+
+    /**
+     * @return the window containing <code>now</code>, replacing the current one if it has passed
+     */
+    static Window getWindow(AtomicReference<Window> ref, long intervalMillis, long now) {
+        while (true) {
+            Window w = ref.get();
+            if (now >= w.start && now - w.start < intervalMillis)
+                return w;
+            Window next;
+            if (now >= w.start && now - w.start < 2 * intervalMillis)
+                next = new Window(w.start + intervalMillis, w.used.get());
+            else
+                // also start a new window if the clock went backwards
+                next = new Window(now);
+            if (ref.compareAndSet(w, next))
+                return next;
+        }
+    }
+
+    /**
+     * @return the earliest time at which the estimated usage leaves room for one more request (or byte)
+     */
+    private long getResetTime(AtomicReference<Window> ref, long intervalMillis, long limit) {
+        long now = clock.getAsLong();
+        Window w = getWindow(ref, intervalMillis, now);
+        long used = w.used.get();
+        // as a fraction of a window from the current window's start
+        double f;
+        if (used + 1 <= limit)
+            f = w.previous == 0 ? 0 : 1 - (double) (limit - 1 - used) / w.previous;
+        else
+            // in the next window, the current count becomes the previous one
+            f = 2 - (double) (limit - 1) / used;
+        long at = w.start + (long) Math.ceil(Math.min(2, Math.max(0, f)) * intervalMillis);
+        return Math.max(now, at);
+    }
+
+    public LongSupplier getClock() {
+        return clock;
+    }
+
+    /**
+     * @param clock the time source in milliseconds since the epoch
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+}
@@ -51,12 +51,14 @@ public class ApiManagementConfiguration {
     private String currentHash = "";
     private ApplicationContext context;
     public HashSet<Runnable> configChangeObservers = new HashSet<Runnable>();
+    private final AMEnforcementEngine enforcementEngine = new AMEnforcementEngine();
     String etcdPathPrefix = "/membrane/";
     private String membraneName;
     private boolean contextLost = false;
     private Thread etcdConfigFingerprintLongPollThread;
 
     private void notifyConfigChangeObservers(){
+        enforcementEngine.retain(getKeys(), getPolicies());
         for(Runnable runner : configChangeObservers){
             runner.run();
         }
@@ -78,6 +80,14 @@ public class ApiManagementConfiguration {
         this.policies = policies;
     }
 
+    /**
+     * @return the counters of the rate limiter and the quota, which are shared by all interceptors using this
+     * configuration and survive reloads
+     */
+    public AMEnforcementEngine getEnforcementEngine() {
+        return enforcementEngine;
+    }
+
     public Map<String, Key> getKeys() {
         return keys;
     }
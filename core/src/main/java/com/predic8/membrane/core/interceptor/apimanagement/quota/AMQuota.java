@@ -17,29 +17,29 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.AbstractBody;
 import com.predic8.membrane.core.http.Header;
 import com.predic8.membrane.core.http.Message;
 import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.interceptor.apimanagement.AMEnforcementEngine;
 import com.predic8.membrane.core.interceptor.apimanagement.ApiManagementConfiguration;
 import com.predic8.membrane.core.interceptor.apimanagement.Key;
 import com.predic8.membrane.core.interceptor.apimanagement.policy.Policy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.joda.time.DateTime;
-import org.joda.time.Duration;
-import org.joda.time.format.DateTimeFormat;
-import org.joda.time.format.DateTimeFormatter;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Unfinished
+ * Limits the number of bytes (headers and bodies of requests and responses) per API key. The counters are kept by
+ * the configuration's {@link AMEnforcementEngine}.
+ *
+ * A message is accounted with its Content-Length. The bytes of a body of unknown length are counted while it is
+ * streamed, so they only count against later requests. Only requests are rejected once the quota is exceeded,
+ * responses are always let through.
  */
 @MCElement(name="amQuota")
 public class AMQuota {
@@ -47,50 +47,14 @@ public class AMQuota {
     private static Logger log = LoggerFactory.getLogger(AMQuota.class);
     private ApiManagementConfiguration amc;
 
-    public ConcurrentHashMap<String, ApiKeyByteCounter> keyByteCounter = new ConcurrentHashMap<String, ApiKeyByteCounter>();
-    public ConcurrentHashMap<String, PolicyQuota> policyQuotas = new ConcurrentHashMap<String, PolicyQuota>();
-
     public ApiManagementConfiguration getAmc() {
         return amc;
     }
 
-    private Runnable observer = new Runnable() {
-        @Override
-        public void run() {
-            log.info("Getting new config");
-            fillPolicyQuotas();
-            keyByteCounter = new ConcurrentHashMap<>();
-        }
-    };
-
     public void setAmc(ApiManagementConfiguration amc) {
-        if(this.amc != null) {
-            this.amc.configChangeObservers.remove(observer);
-        }
         this.amc = amc;
-        fillPolicyQuotas();
-        amc.configChangeObservers.add(observer);
-    }
-
-    private void fillPolicyQuotas() {
-        policyQuotas.clear();
-        for(Policy policy : amc.getPolicies().values()){
-            String name = policy.getName();
-            long quotaSize = policy.getQuota().getSize();
-            int interval = policy.getQuota().getInterval();
-            HashSet<String> services = new HashSet<String>(policy.getServiceProxies());
-            PolicyQuota pq = new PolicyQuota();
-            pq.setName(name);
-            pq.setSize(quotaSize);
-            pq.setInterval(Duration.standardSeconds(interval));
-            pq.incrementNextCleanup();
-            pq.setServices(services);
-            policyQuotas.put(name,pq);
-        }
     }
 
-
-
     public Outcome handleRequest(Exchange exc){
         return handle(exc, exc.getRequest());
     }
@@ -110,20 +74,18 @@ public class AMQuota {
         QuotaReachedAnswer answer = isQuotaReached(msg,requestedService,apiKey);
         if(msg instanceof Request) { // lets responses over the limit always through
             if (answer.isQuotaReached()) {
-                setResponseToServiceUnavailable(exc, answer.getPq());
+                setResponseToServiceUnavailable(exc, answer);
                 return Outcome.RETURN;
             }
         }
         return Outcome.CONTINUE;
     }
 
-    private void setResponseToServiceUnavailable(Exchange exc, PolicyQuota pq) {
-        //TODO do a better response here
-
+    private void setResponseToServiceUnavailable(Exchange exc, QuotaReachedAnswer answer) {
         Header hd = new Header();
+        hd.add("X-QuotaSize", Long.toString(answer.getPolicy().getQuota().getSize()));
+        hd.add("X-QuotaReset", Long.toString(answer.getResetTime()));
 
-
-        DateTimeFormatter dtFormatter = DateTimeFormat.forPattern("HH:mm:ss aa");
         ByteArrayOutputStream os = new ByteArrayOutputStream();
         JsonGenerator jgen = null;
         try {
@@ -142,71 +104,26 @@ public class AMQuota {
     }
 
     private QuotaReachedAnswer isQuotaReached(Message msg, String requestedService, String apiKey) {
-        doCleanup();
-        long size = msg.getHeader().toString().getBytes().length + msg.getHeader().getContentLength();
-        addRequestEntry(apiKey, size);
-        ApiKeyByteCounter info = keyByteCounter.get(apiKey);
-        boolean resultTemp = false;
-        PolicyQuota pqTemp = null;
-        synchronized (info){
-            for (String policy : info.getPolicyByteCounters().keySet()) {
-                PolicyQuota pq = policyQuotas.get(policy);
-                if (!pq.getServices().contains(requestedService)) {
-                    // the service is not in this policy
-                    //System.out.println("service not found in " + policy);
-                    continue;
-                }
-                if (info.getPolicyByteCounters().get(policy).get() > pq.getSize()) {
-                    resultTemp = true;
-                    pqTemp = pq;
-                    //System.out.println("limit reached for " + policy);
-                    continue;
-                }
-                // if atleast one policy has available quota, then let it through
-                resultTemp = false;
-                //System.out.println("limit not reached for " + policy);
-                break;
+        AMEnforcementEngine engine = amc.getEnforcementEngine();
+        Key key = amc.getKeys().get(apiKey);
+        long size = msg.getHeader().getWireLength();
+        long contentLength = msg.getHeader().getContentLength();
+        AbstractBody body = msg.getBody();
+        if (contentLength != -1) {
+            size += contentLength;
+        } else if (body.isRead()) {
+            try {
+                size += body.getLength();
+            } catch (IOException e) {
+                // cannot happen, the body has already been read
             }
+        } else if (key != null) {
+            body.addWriteListener((buffer, offset, length) -> engine.addBytes(key, requestedService, length));
         }
-        if(resultTemp){
-            return QuotaReachedAnswer.createQuotaReached(pqTemp);
-        }else{
+        Policy exceeded = engine.addBytes(key, requestedService, size);
+        if (exceeded == null)
             return QuotaReachedAnswer.createQuotaNotReached();
-        }
+        return QuotaReachedAnswer.createQuotaReached(exceeded, engine.getQuotaResetTime(apiKey, exceeded));
     }
 
-    private void addRequestEntry(String apiKey, long sizeOfBytes) {
-        synchronized (keyByteCounter) {
-            if (!keyByteCounter.containsKey(apiKey)) {
-                ApiKeyByteCounter value = new ApiKeyByteCounter();
-                Key key = amc.getKeys().get(apiKey);
-                for(Policy p : key.getPolicies()){
-                    value.getPolicyByteCounters().put(p.getName(), new AtomicLong());
-                }
-                keyByteCounter.put(apiKey, value);
-            }
-        }
-
-        ApiKeyByteCounter keyInfo = keyByteCounter.get(apiKey);
-        for(AtomicLong counter : keyInfo.getPolicyByteCounters().values()) {
-            counter.addAndGet(sizeOfBytes);
-        }
-    }
-
-    private void doCleanup() {
-        synchronized (policyQuotas) {
-            for (PolicyQuota pq : policyQuotas.values()) {
-                if (DateTime.now().isAfter(pq.getNextCleanup())) {
-                    for(ApiKeyByteCounter keyInfo : keyByteCounter.values()){
-                        if(keyInfo.getPolicyByteCounters().keySet().contains(pq.getName())){
-                            keyInfo.getPolicyByteCounters().get(pq.getName()).set(0);
-                        }
-                    }
-                    pq.incrementNextCleanup();
-                }
-            }
-        }
-    }
-
-
 }
@@ -13,28 +13,41 @@
 
 package com.predic8.membrane.core.interceptor.apimanagement.quota;
 
+import com.predic8.membrane.core.interceptor.apimanagement.policy.Policy;
+
 public class QuotaReachedAnswer {
-    PolicyQuota pq = null;
+    private static final QuotaReachedAnswer NOT_REACHED = new QuotaReachedAnswer();
+
+    Policy policy = null;
+    long resetTime;
 
     private QuotaReachedAnswer(){
 
     }
 
     public static QuotaReachedAnswer createQuotaNotReached(){
-        return new QuotaReachedAnswer();
+        return NOT_REACHED;
     }
 
-    public static QuotaReachedAnswer createQuotaReached(PolicyQuota pq){
+    public static QuotaReachedAnswer createQuotaReached(Policy policy, long resetTime){
         QuotaReachedAnswer result = new QuotaReachedAnswer();
-        result.pq = pq;
+        result.policy = policy;
+        result.resetTime = resetTime;
         return result;
     }
 
     public boolean isQuotaReached(){
-        return pq != null;
+        return policy != null;
+    }
+
+    public Policy getPolicy() {
+        return policy;
     }
 
-    public PolicyQuota getPq() {
-        return pq;
+    /**
+     * @return the time (in milliseconds since the epoch) at which the exceeded policy has quota left again
+     */
+    public long getResetTime() {
+        return resetTime;
     }
 }
@@ -1,30 +0,0 @@
-/*
- * Copyright 2015 predic8 GmbH, www.predic8.com
- *    Licensed under the Apache License, Version 2.0 (the "License");
- *    you may not use this file except in compliance with the License.
- *    You may obtain a copy of the License at
- *    http://www.apache.org/licenses/LICENSE-2.0
- *    Unless required by applicable law or agreed to in writing, software
- *    distributed under the License is distributed on an "AS IS" BASIS,
- *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- *    See the License for the specific language governing permissions and
- *    limitations under the License.
- */
-
-package com.predic8.membrane.core.interceptor.apimanagement.rateLimiter;
-
-import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-
-public class ApiKeyRequestCounter {
-
-    private HashMap<String,AtomicInteger> policyCounters = new HashMap<String, AtomicInteger>();
-
-    public HashMap<String, AtomicInteger> getPolicyCounters() {
-        return policyCounters;
-    }
-
-    public void setPolicyCounters(HashMap<String, AtomicInteger> policyCounters) {
-        this.policyCounters = policyCounters;
-    }
-}
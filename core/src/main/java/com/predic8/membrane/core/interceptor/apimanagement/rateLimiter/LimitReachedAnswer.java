@@ -13,28 +13,41 @@
 
 package com.predic8.membrane.core.interceptor.apimanagement.rateLimiter;
 
+import com.predic8.membrane.core.interceptor.apimanagement.policy.Policy;
+
 public class LimitReachedAnswer {
-    PolicyRateLimit prl = null;
-    
+    private static final LimitReachedAnswer NOT_REACHED = new LimitReachedAnswer();
+
+    Policy policy = null;
+    long resetTime;
+
     private LimitReachedAnswer(){
-        
+
     }
-    
+
     public static LimitReachedAnswer createLimitNotReached(){
-        return new LimitReachedAnswer();
+        return NOT_REACHED;
     }
-    
-    public static LimitReachedAnswer createLimitReached(PolicyRateLimit prl){
+
+    public static LimitReachedAnswer createLimitReached(Policy policy, long resetTime){
         LimitReachedAnswer result = new LimitReachedAnswer();
-        result.prl = prl;
+        result.policy = policy;
+        result.resetTime = resetTime;
         return result;
     }
-    
+
     public boolean isLimitReached(){
-        return prl != null;
+        return policy != null;
+    }
+
+    public Policy getPolicy() {
+        return policy;
     }
 
-    public PolicyRateLimit getPrl() {
-        return prl;
+    /**
+     * @return the time (in milliseconds since the epoch) at which the exceeded policy admits requests again
+     */
+    public long getResetTime() {
+        return resetTime;
     }
 }
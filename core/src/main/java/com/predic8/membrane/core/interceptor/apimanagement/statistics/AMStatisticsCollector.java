@@ -21,7 +21,9 @@ import com.predic8.membrane.core.exchange.Exchange;
 import com.predic8.membrane.core.http.*;
 import com.predic8.membrane.core.interceptor.Outcome;
 import com.predic8.membrane.core.model.AbstractExchangeViewerListener;
+import com.predic8.membrane.core.rules.Rule;
 import com.predic8.membrane.core.rules.StatisticCollector;
+import com.predic8.membrane.core.stats.LatencyHistogram;
 import com.predic8.membrane.core.transport.http.HttpClient;
 import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
 import org.apache.commons.codec.binary.Base64;
@@ -31,19 +33,39 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ships statistics and traces of the exchanges of API keys to the API management backend.
+ *
+ * When an exchange is finished, it is turned into compact, already serialized records: The exchange itself is not
+ * kept. Bodies are captured while they are sent, up to <code>bodyBytes</code> bytes. The records wait in bounded
+ * queues: If a queue is full, records are dropped instead of blocking the exchange. For each queue, a background
+ * thread gathers records for up to <code>collectTimeInSeconds</code> and hands batches of at most
+ * <code>maxBatchRecords</code> records over to up to <code>maxInFlight</code> concurrent requests, whose bodies are
+ * streamed using chunked transfer encoding. While all requests are in flight, the queues fill up: This is the back
+ * pressure.
+ */
 @MCElement(name="amStatisticsCollector")
 public class AMStatisticsCollector {
 
     private static Logger log = LoggerFactory.getLogger(AMStatisticsCollector.class);
     public static final String API_STATISTICS_PATH = "/api/statistics/";
     public static final String API_EXCHANGES_PATH = "/api/exchanges/";
-    boolean shutdown = false;
+    private static final int MAX_BATCH_BYTES = 5 * 1024 * 1024;
+    private static final byte[] COMMA = { ',' };
+
     private int collectTimeInSeconds = 10;
     static final String localHostname;
     static final long startTime = System.currentTimeMillis();
@@ -52,84 +74,282 @@ public class AMStatisticsCollector {
     private String clientId = null;
     private String clientSecret = null;
 
-    JsonFactory jsonFactory = new JsonFactory();
-    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-    JsonGenerator jsonGenerator;
+    final JsonFactory jsonFactory = new JsonFactory();
     HttpClient client;
 
     boolean traceStatistics = true;
     boolean traceExchanges = true;
     boolean traceIncludesHeader = true;
-    int bodyBytes = -1;
+    private int bodyBytes = 4096;
+    private int maxQueueSize = 10000;
+    private int maxBatchRecords = 1000;
+    private int maxInFlight = 2;
 
-    ConcurrentHashMap<String, ConcurrentLinkedQueue<Exchange>> exchangesForApiKey = new ConcurrentHashMap<String, ConcurrentLinkedQueue<Exchange>>();
+    private volatile boolean started;
+    private Shipper statistics;
+    private Shipper exchanges;
+    private Semaphore inFlight;
+    private ExecutorService senders;
 
-    ExecutorService collectorThread = Executors.newFixedThreadPool(1);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder shipped = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
 
     static {
         localHostname = getLocalHostname();
     }
 
     public AMStatisticsCollector() {
+        // the request bodies are streamed from the queue: the client must not retry them
         HttpClientConfiguration conf = new HttpClientConfiguration();
+        conf.setMaxRetries(1);
         client =  new HttpClient(conf);
-        try {
-            jsonGenerator = jsonFactory.createGenerator(baos);
-        } catch (IOException ignored) {
+    }
+
+    /**
+     * Starts the background threads, once the configuration is complete.
+     */
+    private void ensureStarted() {
+        if (started)
+            return;
+        synchronized (this) {
+            if (started)
+                return;
+            inFlight = new Semaphore(maxInFlight);
+            senders = Executors.newFixedThreadPool(maxInFlight, r -> {
+                Thread t = new Thread(r, "API Management Statistics Sender");
+                t.setDaemon(true);
+                return t;
+            });
+            statistics = new Shipper(API_STATISTICS_PATH, true);
+            exchanges = new Shipper(API_EXCHANGES_PATH, false);
+            started = true;
+        }
+    }
+
+    /**
+     * A serialized statistics or exchange record.
+     */
+    private static class Record {
+        final byte[] json;
+        /** the exchange's rule, for statistics records */
+        final Rule rule;
+
+        Record(byte[] json, Rule rule) {
+            this.json = json;
+            this.rule = rule;
+        }
+    }
+
+    /**
+     * Takes the records of one queue and sends them to one path of the backend.
+     */
+    private class Shipper implements Runnable {
+        final String path;
+        /** whether to add the statistics of the records' services */
+        final boolean withServices;
+        final ArrayBlockingQueue<Record> queue = new ArrayBlockingQueue<>(maxQueueSize);
+        final Thread thread;
+
+        Shipper(String path, boolean withServices) {
+            this.path = path;
+            this.withServices = withServices;
+            thread = new Thread(this, "API Management Statistics Collector");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void offer(Record record) {
+            if (!queue.offer(record))
+                dropped.increment();
         }
 
-        collectorThread.submit(new Runnable() {
-            @Override
-            public void run() {
+        @Override
+        public void run() {
+            Record first = null;
+            try {
                 while (true) {
-                    try {
-                        Exchange exc = null;
-                        ArrayList<String> jsonStatisticsForApiKey = new ArrayList<String>();
-                        ArrayList<String> jsonExchangesForApiKey = new ArrayList<String>();
-                        for (String apiKey : exchangesForApiKey.keySet()) {
-                            while ((exc = exchangesForApiKey.get(apiKey).poll()) != null) {
-                                String exchangeStatistics = null;
-                                String exchangeData = null;
-                                if (traceStatistics) {
-                                    try {
-                                        exchangeStatistics = collectStatisticFrom(exc, apiKey);
-                                        jsonStatisticsForApiKey.add(exchangeStatistics);
-                                    } catch (Exception ignored) {
-                                        continue;
-                                    }
-
-                                }
-                                if (traceExchanges) {
-                                    try {
-                                        exchangeData = collectExchangeDataFrom(exc, apiKey);
-                                        jsonExchangesForApiKey.add(exchangeData);
-                                    } catch (Exception ignored) {
-                                        continue;
-                                    }
-                                }
-                            }
+                    inFlight.acquire();
+                    first = queue.take();
+                    // give the batch a chance to fill up
+                    if (queue.size() < maxBatchRecords - 1)
+                        Thread.sleep(getCollectTimeInSeconds() * 1000L);
+                    List<Record> batch = drain(first);
+                    first = null;
+                    senders.execute(() -> {
+                        try {
+                            ship(batch);
+                        } finally {
+                            inFlight.release();
                         }
-                        if (!jsonStatisticsForApiKey.isEmpty())
-                            sendJsonToElasticSearch(API_STATISTICS_PATH, combineJsons(localHostname, jsonStatisticsForApiKey));
-                        if (!jsonExchangesForApiKey.isEmpty())
-                            sendJsonToElasticSearch(API_EXCHANGES_PATH, combineJsons(localHostname, jsonExchangesForApiKey));
-                        runningId.incrementAndGet();
-                        if (shutdown)
-                            break;
-                        Thread.sleep(getCollectTimeInSeconds() * 1000);
-
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                    });
+                }
+            } catch (InterruptedException e) {
+                // shut down: send what is left
+                List<Record> batch;
+                while (!(batch = drain(first)).isEmpty()) {
+                    first = null;
+                    ship(batch);
                 }
             }
-        });
+        }
+
+        private List<Record> drain(Record first) {
+            List<Record> batch = new ArrayList<>();
+            long bytes = 0;
+            if (first != null) {
+                batch.add(first);
+                bytes += first.json.length;
+            }
+            Record record;
+            while (batch.size() < maxBatchRecords && bytes < MAX_BATCH_BYTES && (record = queue.poll()) != null) {
+                batch.add(record);
+                bytes += record.json.length;
+            }
+            return batch;
+        }
+
+        private void ship(List<Record> batch) {
+            try {
+                Response resp = sendJsonToElasticSearch(path, new BatchBody(batch, withServices));
+                if (resp.isOk()) {
+                    shipped.add(batch.size());
+                    return;
+                }
+                log.warn("Could not send statistics to elastic search instance. Response: " + resp.getStatusCode() + " - " + resp.getStatusMessage() + " - " + resp.getBodyAsStringDecoded());
+            } catch (Exception e) {
+                log.warn("Could not send statistics to elastic search instance.", e);
+            }
+            failedRequests.increment();
+            dropped.add(batch.size());
+        }
     }
 
-    private String collectExchangeDataFrom(Exchange exc, String apiKey) throws IOException {
-        JsonGenerator gen = getAndResetJsonGenerator();
+    /**
+     * The body of a batch request, consisting of the records' JSON, which is not copied into one array.
+     */
+    private class BatchBody extends InputStream {
+        private final List<byte[]> parts = new ArrayList<>();
+        private int part;
+        private int pos;
+
+        BatchBody(List<Record> batch, boolean withServices) throws IOException {
+            ByteArrayOutputStream prefix = new ByteArrayOutputStream();
+            JsonGenerator gen = jsonFactory.createGenerator(prefix);
+            gen.writeStartObject();
+            gen.writeArrayFieldStart(localHostname);
+            // not closing the generator, as this would also close the array and the object
+            gen.flush();
+            parts.add(prefix.toByteArray());
+
+            Map<String, Rule> services = new TreeMap<String, Rule>();
+            for (int i = 0; i < batch.size(); i++) {
+                if (i > 0)
+                    parts.add(COMMA);
+                parts.add(batch.get(i).json);
+                if (batch.get(i).rule != null)
+                    services.put(batch.get(i).rule.getName(), batch.get(i).rule);
+            }
 
-        try {
+            StringBuilder suffix = new StringBuilder("]");
+            if (withServices) {
+                suffix.append(",\"services\":[");
+                List<String> serviceStatistics = collectServiceStatistics(services);
+                for (int i = 0; i < serviceStatistics.size(); i++) {
+                    if (i > 0)
+                        suffix.append(',');
+                    suffix.append(serviceStatistics.get(i));
+                }
+                suffix.append(']');
+            }
+            suffix.append('}');
+            parts.add(suffix.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!ensureAvailable())
+                return -1;
+            return parts.get(part)[pos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!ensureAvailable())
+                return -1;
+            byte[] current = parts.get(part);
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        private boolean ensureAvailable() {
+            while (part < parts.size() && pos == parts.get(part).length) {
+                part++;
+                pos = 0;
+            }
+            return part < parts.size();
+        }
+    }
+
+    /**
+     * Keeps the first bytes of a message body while it is sent.
+     */
+    private static class BodyCapture implements BodyWriteListener {
+        final AbstractBody body;
+        final int limit;
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        BodyCapture(AbstractBody body, int limit) {
+            this.body = body;
+            this.limit = limit;
+            body.addWriteListener(this);
+        }
+
+        @Override
+        public void written(byte[] buffer, int offset, int length) {
+            int n = limit == -1 ? length : Math.min(length, limit - data.size());
+            if (n > 0)
+                data.write(buffer, offset, n);
+        }
+    }
+
+    /**
+     * Captures the bodies of an exchange and queues its records when it is finished.
+     */
+    private class ExchangeRecorder extends AbstractExchangeViewerListener {
+        private final Exchange exc;
+        private BodyCapture requestBody;
+        private BodyCapture responseBody;
+
+        ExchangeRecorder(Exchange exc) {
+            this.exc = exc;
+            if (captureBodies() && exc.getRequest() != null)
+                requestBody = new BodyCapture(exc.getRequest().getBody(), bodyBytes);
+        }
+
+        @Override
+        public void addResponse(Response response) {
+            if (captureBodies() && response != null)
+                responseBody = new BodyCapture(response.getBody(), bodyBytes);
+        }
+
+        @Override
+        public void setExchangeFinished() {
+            record(exc, requestBody, responseBody);
+        }
+    }
+
+    private boolean captureBodies() {
+        return traceExchanges && bodyBytes != 0;
+    }
+
+    private byte[] collectExchangeDataFrom(Exchange exc, String apiKey, BodyCapture requestBody, BodyCapture responseBody) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
             gen.writeStartObject();
             gen.writeObjectField("excId", exc.getId());
             gen.writeObjectField("excTime", exc.getTime().toInstant().toString());
@@ -138,93 +358,112 @@ public class AMStatisticsCollector {
             gen.writeObjectField("uri", exc.getOriginalRequestUri());
             gen.writeObjectField("method", exc.getRequest().getMethod());
             gen.writeObjectFieldStart("Request");
-            collectFromMessage(gen, exc.getRequest());
+            collectFromMessage(gen, exc.getRequest(), requestBody);
             gen.writeEndObject();
             gen.writeObjectFieldStart("Response");
-            collectFromMessage(gen, exc.getResponse());
+            collectFromMessage(gen, exc.getResponse(), responseBody);
             gen.writeEndObject();
             gen.writeEndObject();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return getStringFromJsonGenerator();
+        return out.toByteArray();
     }
 
-    private void collectFromMessage(JsonGenerator gen, Message msg) {
-        try {
-            if (traceIncludesHeader) {
-                if (msg.getHeader().getAllHeaderFields().length > 0) {
-                    gen.writeObjectFieldStart("headers");
-                    for (HeaderField hf : msg.getHeader().getAllHeaderFields()) {
-                        gen.writeObjectField(hf.getHeaderName().toString(), hf.getValue());
-                    }
-                    gen.writeEndObject();
+    private void collectFromMessage(JsonGenerator gen, Message msg, BodyCapture capture) throws IOException {
+        if (msg == null)
+            return;
+        if (traceIncludesHeader) {
+            if (msg.getHeader().getAllHeaderFields().length > 0) {
+                gen.writeObjectFieldStart("headers");
+                for (HeaderField hf : msg.getHeader().getAllHeaderFields()) {
+                    gen.writeObjectField(hf.getHeaderName().toString(), hf.getValue());
                 }
+                gen.writeEndObject();
             }
-            String body = getBody(msg);
-            if (body.length() > 0)
-                gen.writeObjectField("body", body);
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        String body = getBody(msg, capture);
+        if (body.length() > 0)
+            gen.writeObjectField("body", body);
     }
 
-    private String getBody(Message msg) {
-        String origBody = msg.getBodyAsStringDecoded();
-        if (bodyBytes == -1)
-            return origBody.substring(0, origBody.length());
-
-        return origBody.substring(0, bodyBytes);
+    /**
+     * @return the first <code>bodyBytes</code> bytes of the body, as far as they were captured while the body was
+     * sent or the body has been read. Encoded (e.g. compressed) bodies are left out.
+     */
+    private String getBody(Message msg, BodyCapture capture) throws IOException {
+        if (bodyBytes == 0 || msg.getHeader().getContentEncoding() != null)
+            return "";
+        AbstractBody body = msg.getBody();
+        byte[] data;
+        int length;
+        if (capture != null && capture.body == body && capture.data.size() > 0) {
+            data = capture.data.toByteArray();
+            length = data.length;
+        } else if (body.isRead()) {
+            data = body.getContent();
+            length = bodyBytes == -1 ? data.length : Math.min(data.length, bodyBytes);
+        } else {
+            return "";
+        }
+        return new String(data, 0, length, getCharset(msg));
     }
 
+    private static Charset getCharset(Message msg) {
+        try {
+            return Charset.forName(msg.getCharset());
+        } catch (Exception e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
 
     private String getLocalMachineNameWithSuffix() {
-        return localHostname + "-" + startTime + "-" + runningId.get();
+        return localHostname + "-" + startTime + "-" + runningId.incrementAndGet();
     }
 
-    private void sendJsonToElasticSearch(String path, String json) throws Exception {
-        Response resp = null;
-        synchronized (client) {
-            Exchange exc = new Request.Builder().put(getElasticSearchPath(path))
-                    .body(json)
-                    .buildExchange();
+    private Response sendJsonToElasticSearch(String path, InputStream json) throws Exception {
+        Exchange exc = new Request.Builder().put(getElasticSearchPath(path))
+                .header(Header.CONTENT_TYPE, "application/json")
+                .header(Header.TRANSFER_ENCODING, Header.CHUNKED)
+                .buildExchange();
+        exc.getRequest().setBody(new Body(json));
 
-            if(clientId != null && clientSecret != null)
-                exc.getRequest().getHeader().add(Header.AUTHORIZATION, "Basic " + new String(Base64.encodeBase64((clientId + ":" + clientSecret).getBytes("UTF-8")), "UTF-8"));
+        if(clientId != null && clientSecret != null)
+            exc.getRequest().getHeader().add(Header.AUTHORIZATION, "Basic " + new String(Base64.encodeBase64((clientId + ":" + clientSecret).getBytes("UTF-8")), "UTF-8"));
 
-            resp = client.call(exc).getResponse();
-        }
-        if (!resp.isOk())
-            log.warn("Could not send statistics to elastic search instance. Response: " + resp.getStatusCode() + " - " + resp.getStatusMessage() + " - " + resp.getBodyAsStringDecoded());
+        Response resp = client.call(exc).getResponse();
+        // consume the response, so that the connection can be reused
+        resp.readBody();
+        return resp;
     }
 
-    private String combineJsons(String name, ArrayList<String> jsonStatisticsForRequests) throws IOException {
-        JsonGenerator gen = getAndResetJsonGenerator();
-
-        try {
-            gen.writeStartObject();
-            gen.writeArrayFieldStart(name);
-            if (!jsonStatisticsForRequests.isEmpty())
-                gen.writeRaw(jsonStatisticsForRequests.get(0));
-            for (int i = 1; i < jsonStatisticsForRequests.size(); i++) {
-                gen.writeRaw("," + jsonStatisticsForRequests.get(i));
+    /**
+     * Reads the statistics the services have collected since startup: the number of exchanges and percentiles of
+     * the time they took (in milliseconds).
+     */
+    private ArrayList<String> collectServiceStatistics(Map<String, Rule> services) throws IOException {
+        ArrayList<String> result = new ArrayList<String>();
+        for (Rule rule : services.values()) {
+            StatisticCollector statistics = rule.getStatisticCollector().getTotal();
+            LatencyHistogram times = statistics.getTimes();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+                gen.writeStartObject();
+                gen.writeObjectField("service", rule.getName());
+                gen.writeNumberField("count", statistics.getCount());
+                gen.writeNumberField("goodCount", statistics.getGoodCount());
+                gen.writeNumberField("p50", times.getValueAtPercentile(50));
+                gen.writeNumberField("p90", times.getValueAtPercentile(90));
+                gen.writeNumberField("p99", times.getValueAtPercentile(99));
+                gen.writeEndObject();
             }
-            gen.writeEndArray();
-            gen.writeEndObject();
-        } catch (IOException e) {
-            e.printStackTrace();
+            result.add(out.toString("UTF-8"));
         }
-        return getStringFromJsonGenerator();
+        return result;
     }
 
-    private String collectStatisticFrom(Exchange exc, String apiKey) throws IOException {
-        StatisticCollector statistics = new StatisticCollector(false);
-        statistics.collectFrom(exc);
-
-        JsonGenerator gen = getAndResetJsonGenerator();
-
-
-        try {
+    private byte[] collectStatisticFrom(Exchange exc, String apiKey) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
             gen.writeStartObject();
             gen.writeObjectField("excId", exc.getId());
             gen.writeObjectField("excTime", exc.getTime().toInstant().toString());
@@ -236,10 +475,8 @@ public class AMStatisticsCollector {
             gen.writeObjectField("code", exc.getResponse().getStatusCode());
             gen.writeObjectField("time", getInflightTime(exc));
             gen.writeEndObject();
-        } catch (IOException e) {
-            e.printStackTrace();
         }
-        return getStringFromJsonGenerator();
+        return out.toByteArray();
     }
 
     private long getInflightTime(Exchange exc) {
@@ -250,8 +487,6 @@ public class AMStatisticsCollector {
     }
 
     private String getElasticSearchPath(String path) {
-//        if(host.equals("localhost"))
-//            return "http://" + getHost() + ":" + elasticSearchPort + normalizePath(path) + getLocalMachineNameWithSuffix();
         return getHost() + normalizePath(path) + getLocalMachineNameWithSuffix();
     }
 
@@ -264,59 +499,48 @@ public class AMStatisticsCollector {
     }
 
     /**
-     * Inits listener and puts exchange in a queue for later processing
+     * Starts capturing the exchange's bodies and queues its records once the exchange is finished.
      *
      * @param exc
      * @param outcome
      * @return always returns the outcome unmodified
      */
     public Outcome handleRequest(final Exchange exc, final Outcome outcome) {
-        exc.addExchangeViewerListener(new AbstractExchangeViewerListener() {
-            @Override
-            public void setExchangeFinished() {
-                addExchangeToQueue(exc);
-            }
-        });
-
-        /* Ask Tobias if this is a better alternative than to wait for body complete
-         exc.getRequest().addObserver(new AbstractMessageObserver() {
-            @Override
-            public void bodyComplete(AbstractBody body) {
-                //statistics.addRequestBody(exc, bodyBytes);
-            }
-        });*/
-
-
+        exc.addExchangeViewerListener(new ExchangeRecorder(exc));
         return outcome;
     }
 
+    /**
+     * Queues the records of the finished exchange. Bodies are only included as far as they have been read.
+     */
     public void addExchangeToQueue(Exchange exc) {
-        String apiKey = (String) exc.getProperty(Exchange.API_KEY);
-
-        if (apiKey != null) {
-            ConcurrentLinkedQueue<Exchange> exchangeQueue = exchangesForApiKey.get(apiKey);
+        record(exc, null, null);
+    }
 
-            // See SO 3752194 for explanation for this
-            if (exchangeQueue == null) {
-                ConcurrentLinkedQueue<Exchange> newValue = new ConcurrentLinkedQueue<Exchange>();
-                exchangeQueue = exchangesForApiKey.putIfAbsent(apiKey, newValue);
-                if (exchangeQueue == null)
-                    exchangeQueue = newValue;
+    private void record(Exchange exc, BodyCapture requestBody, BodyCapture responseBody) {
+        String apiKey = (String) exc.getProperty(Exchange.API_KEY);
+        if (apiKey == null)
+            return;
+        ensureStarted();
+        if (traceStatistics) {
+            try {
+                statistics.offer(new Record(collectStatisticFrom(exc, apiKey), exc.getRule()));
+            } catch (Exception e) {
+                log.debug("Could not collect statistics of exchange " + exc.getId() + ".", e);
+                dropped.increment();
+            }
+        }
+        if (traceExchanges) {
+            try {
+                exchanges.offer(new Record(collectExchangeDataFrom(exc, apiKey, requestBody, responseBody), null));
+            } catch (Exception e) {
+                log.debug("Could not collect data of exchange " + exc.getId() + ".", e);
+                dropped.increment();
             }
-
-            exchangeQueue.add(exc);
         }
     }
 
     public Outcome handleResponse(Exchange exc, Outcome outcome) {
-        /* Ask Tobias if this is a better alternative than to wait for body complete
-        exc.getResponse().addObserver(new AbstractMessageObserver() {
-            @Override
-            public void bodyComplete(AbstractBody body) {
-                //statistics.addResponseBody(exc,bodyBytes);
-            }
-        });*/
-
         return outcome;
     }
 
@@ -328,13 +552,23 @@ public class AMStatisticsCollector {
         this.collectTimeInSeconds = collectTimeInSeconds;
     }
 
+    /**
+     * Sends the queued records and stops the background threads.
+     */
     public void shutdown() {
-        shutdown = true;
+        synchronized (this) {
+            if (!started)
+                return;
+        }
         try {
-            collectorThread.shutdown();
-            collectorThread.awaitTermination(5, TimeUnit.SECONDS);
+            for (Shipper shipper : new Shipper[] { statistics, exchanges }) {
+                shipper.thread.interrupt();
+                shipper.thread.join(5000);
+            }
+            senders.shutdown();
+            senders.awaitTermination(5, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -351,17 +585,6 @@ public class AMStatisticsCollector {
         }
     }
 
-    protected JsonGenerator getAndResetJsonGenerator(){
-        baos.reset();
-        return jsonGenerator;
-    }
-
-    protected String getStringFromJsonGenerator() throws IOException {
-        jsonGenerator.flush();
-        return baos.toString();
-    }
-
-
     public String getHost() {
         return host;
     }
@@ -390,4 +613,80 @@ public class AMStatisticsCollector {
     public void setClientSecret(String clientSecret) {
         this.clientSecret = clientSecret;
     }
+
+    public int getBodyBytes() {
+        return bodyBytes;
+    }
+
+    /**
+     * @description Maximum number of bytes of each body included in the exchange traces. -1 includes whole bodies.
+     * @default 4096
+     */
+    @MCAttribute
+    public void setBodyBytes(int bodyBytes) {
+        this.bodyBytes = bodyBytes;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    /**
+     * @description Maximum number of statistics (and, separately, exchange traces) waiting to be sent. Further
+     *              records are dropped.
+     * @default 10000
+     */
+    @MCAttribute
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxBatchRecords() {
+        return maxBatchRecords;
+    }
+
+    /**
+     * @description Maximum number of records sent in one request.
+     * @default 1000
+     */
+    @MCAttribute
+    public void setMaxBatchRecords(int maxBatchRecords) {
+        this.maxBatchRecords = maxBatchRecords;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * @description Maximum number of concurrent requests.
+     * @default 2
+     */
+    @MCAttribute
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * @return the number of records dropped because a queue was full, the exchange could not be serialized or the
+     * request failed
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of records sent successfully
+     */
+    public long getShipped() {
+        return shipped.sum();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.sum();
+    }
+
+    public int getQueueDepth() {
+        return started ? statistics.queue.size() + exchanges.queue.size() : 0;
+    }
 }
@@ -0,0 +1,147 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.authentication.session;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.predic8.membrane.annot.MCAttribute;
+import com.predic8.membrane.annot.MCElement;
+import com.predic8.membrane.core.Router;
+import com.predic8.membrane.core.interceptor.authentication.session.SessionManager.Session;
+
+/**
+ * @description Saves sessions to a local JSON file, so that they survive restarts.
+ * @explanation The file is replaced atomically on every save. User attributes holding credentials ("password" and
+ *              "client_secret") are not saved.
+ */
+@MCElement(name="fileSessionStore", topLevel=false)
+public class FileSessionStore implements SessionStore {
+
+	private static final String[] CREDENTIALS = { "password", "client_secret" };
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private String location;
+
+	@Override
+	public void init(Router router) {
+		if (location == null)
+			throw new IllegalStateException("fileSessionStore requires the 'location' attribute to be set.");
+	}
+
+	@Override
+	public Map<String, Session> load() throws IOException {
+		Map<String, Session> result = new HashMap<String, Session>();
+		File file = new File(location);
+		if (!file.exists() || file.length() == 0)
+			return result;
+		for (JsonNode s : objectMapper.readTree(file).path("sessions")) {
+			Map<String, String> userAttributes = new HashMap<String, String>();
+			for (Iterator<Map.Entry<String, JsonNode>> it = s.path("userAttributes").fields(); it.hasNext(); ) {
+				Map.Entry<String, JsonNode> e = it.next();
+				userAttributes.put(e.getKey(), e.getValue().asText());
+			}
+			JsonNode userName = s.get("userName");
+			Session session = new Session(userName == null || userName.isNull() ? null : userName.asText(),
+					s.path("level").asInt(), s.path("lastUse").asLong(), userAttributes);
+			for (JsonNode id : s.path("ids"))
+				result.put(id.asText(), session);
+		}
+		return result;
+	}
+
+	@Override
+	public void save(Map<String, Session> sessions) throws IOException {
+		// group the IDs by session
+		Map<Session, List<String>> ids = new IdentityHashMap<Session, List<String>>();
+		for (Map.Entry<String, Session> e : sessions.entrySet()) {
+			List<String> l = ids.get(e.getValue());
+			if (l == null) {
+				l = new ArrayList<String>();
+				ids.put(e.getValue(), l);
+			}
+			l.add(e.getKey());
+		}
+
+		File file = new File(location);
+		File tmp = new File(location + ".tmp");
+		try (JsonGenerator gen = jsonFactory.createGenerator(tmp, JsonEncoding.UTF8)) {
+			gen.writeStartObject();
+			gen.writeArrayFieldStart("sessions");
+			for (Map.Entry<Session, List<String>> e : ids.entrySet())
+				write(gen, e.getKey(), e.getValue());
+			gen.writeEndArray();
+			gen.writeEndObject();
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void write(JsonGenerator gen, Session session, List<String> ids) throws IOException {
+		gen.writeStartObject();
+		gen.writeArrayFieldStart("ids");
+		for (String id : ids)
+			gen.writeString(id);
+		gen.writeEndArray();
+		synchronized (session) {
+			gen.writeStringField("userName", session.getUserName());
+			gen.writeNumberField("level", session.getLevel());
+			gen.writeNumberField("lastUse", session.getLastUse());
+			gen.writeObjectFieldStart("userAttributes");
+			Map<String, String> userAttributes = session.getUserAttributes();
+			synchronized (userAttributes) {
+				for (Map.Entry<String, String> e : userAttributes.entrySet())
+					if (!isCredential(e.getKey()))
+						gen.writeStringField(e.getKey(), e.getValue());
+			}
+			gen.writeEndObject();
+		}
+		gen.writeEndObject();
+	}
+
+	private static boolean isCredential(String name) {
+		for (String c : CREDENTIALS)
+			if (c.equals(name))
+				return true;
+		return false;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * @description The file the sessions are saved to.
+	 * @example sessions.json
+	 */
+	@MCAttribute
+	public void setLocation(String location) {
+		this.location = location;
+	}
+}
@@ -13,19 +13,22 @@
    limitations under the License. */
 package com.predic8.membrane.core.interceptor.authentication.session;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 
 import javax.xml.stream.XMLStreamReader;
 
-import com.github.fge.jsonschema.core.keyword.syntax.checkers.common.ExclusiveMaximumSyntaxChecker;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.predic8.membrane.annot.MCAttribute;
+import com.predic8.membrane.annot.MCChildElement;
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.Router;
 import com.predic8.membrane.core.config.AbstractXmlElement;
@@ -45,15 +48,35 @@ import com.predic8.membrane.core.interceptor.authentication.session.CleanupThrea
  *              The session timeout can be specified in milliseconds using the <i>timeout</i> attribute. The default
  *              timeout is 5 minutes.
  *              </p>
+ *              <p>
+ *              At most <i>maxSessions</i> sessions are kept: When more sessions are created, the sessions closest
+ *              to their timeout are dropped.
+ *              </p>
+ *              <p>
+ *              Using a store (for example a <i>fileSessionStore</i>), sessions survive restarts: They are saved
+ *              every minute.
+ *              </p>
  */
 @MCElement(name="sessionManager", topLevel=false)
 public class SessionManager extends AbstractXmlElement implements Cleaner {
+	private static Logger log = LoggerFactory.getLogger(SessionManager.class.getName());
+
 	private String cookieName;
 	private long timeout;
 	private String domain;
+	private int maxSessions = 100000;
+	private SessionStore store;
+	private LongSupplier clock = System::currentTimeMillis;
 
 	// TODO: bind session also to remote IP (for public Membrane release)
-	HashMap<String, Session> sessions = new HashMap<String, SessionManager.Session>();
+	private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<String, SessionManager.Session>();
+	private volatile TimerWheel<String> expiry = new TimerWheel<String>(1000, 1024, clock.getAsLong());
+	private final TimerWheel.Handler<String> expirer = new TimerWheel.Handler<String>() {
+		@Override
+		public void expire(String id, long until) {
+			SessionManager.this.expire(id, until);
+		}
+	};
 	private final static String SESSION_ID = "SESSION_ID";
 	private final static String SESSION = "SESSION";
 
@@ -62,11 +85,25 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 		cookieName = token.getAttributeValue("", "cookieName");
 		timeout = Long.parseLong(StringUtils.defaultIfEmpty(token.getAttributeValue("", "timeout"), "300000"));
 		domain = token.getAttributeValue("", "domain");
+		maxSessions = Integer.parseInt(StringUtils.defaultIfEmpty(token.getAttributeValue("", "maxSessions"), "100000"));
 	}
 
 	public void init(Router router) {
 		cookieName = StringUtils.defaultIfEmpty(cookieName, "SESSIONID");
 		timeout = timeout == 0 ? 300000 : timeout;
+		// about 1/16 of the timeout per tick, one turn of the wheel covering the timeout
+		expiry = new TimerWheel<String>(Math.max(1, Math.min(1000, timeout / 16)), 1024, clock.getAsLong());
+		for (Map.Entry<String, Session> e : sessions.entrySet())
+			expiry.schedule(e.getKey(), e.getValue().getLastUse() + timeout);
+		if (store != null) {
+			store.init(router);
+			try {
+				for (Map.Entry<String, Session> e : store.load().entrySet())
+					add(e.getKey(), e.getValue());
+			} catch (Exception e) {
+				log.error("Could not load sessions, starting without them.", e);
+			}
+		}
 	}
 
 	/**
@@ -89,9 +126,9 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
     public void removeSession(Exchange exc) {
 		String id = exc.getRequest().getHeader().getFirstCookie(cookieName);
 		if(id != null) {
-			synchronized (sessions) {
-				sessions.remove(id);
-			}
+			Session s = sessions.remove(id);
+			if (s != null)
+				s.ids.remove(id);
 			return;
 		}
 		Session s = getSession(exc);
@@ -100,23 +137,38 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 
     public void removeSession(Session s){
 		if(s != null){
-
-			synchronized (sessions){
-				List<String> remove = sessions.keySet().stream().filter(sId -> {
-					Session other = sessions.get(sId);
-					return s == other;
-				}).collect(Collectors.toList());
-				remove.forEach(sId -> sessions.remove(sId));
-			}
+			for (String id : s.ids)
+				remove(id, s);
 		}
 	}
 
+	private void remove(String id, Session s) {
+		if (sessions.remove(id, s))
+			s.ids.remove(id);
+	}
+
     public static class Session {
+		/** the IDs this session is known by */
+		private final Set<String> ids = ConcurrentHashMap.newKeySet();
 		private Map<String, String> userAttributes = new HashMap<String, String>();
 		private int level = 0;
-		private long lastUse;
+		private volatile long lastUse;
 		private String userName;
 
+		public Session() {
+		}
+
+		Session(String userName, int level, long lastUse, Map<String, String> userAttributes) {
+			this.userName = userName;
+			this.level = level;
+			this.lastUse = lastUse;
+			this.userAttributes.putAll(userAttributes);
+		}
+
+		synchronized int getLevel() {
+			return level;
+		}
+
 		public synchronized boolean isAuthorized() {
 			return level == 2;
 		}
@@ -143,11 +195,15 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 			level = 2;
 		}
 
-		public synchronized void touch() {
-			lastUse = System.currentTimeMillis();
+		public void touch() {
+			touch(System.currentTimeMillis());
+		}
+
+		void touch(long now) {
+			lastUse = now;
 		}
 
-		public synchronized long getLastUse() {
+		public long getLastUse() {
 			return lastUse;
 		}
 
@@ -177,12 +233,15 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 	}
 
 	private Session getSession(String id){
-		Session s;
-		synchronized (sessions) {
-			s = sessions.get(id);
-		}
+		long now = clock.getAsLong();
+		expiry.advance(now, expirer);
+		Session s = sessions.get(id);
 		if (s != null) {
-			s.touch();
+			if (s.getLastUse() + timeout <= now) {
+				remove(id, s);
+				return null;
+			}
+			s.touch(now);
 		}
 		return s;
 	}
@@ -195,9 +254,9 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 	private Session createSession(Exchange exc, String id)
 	{
 		Session s = new Session();
-		synchronized (sessions) {
-			sessions.put(id, s);
-		}
+		s.touch(clock.getAsLong());
+		expiry.advance(s.getLastUse(), expirer);
+		add(id, s);
 		String cookieValue = id + "; " +
 				(domain != null ? "Domain=" + domain + "; " : "") +
 				"Path=/" +
@@ -209,18 +268,64 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 		return s;
 	}
 
+	private void add(String id, Session s) {
+		s.ids.add(id);
+		Session old = sessions.put(id, s);
+		if (old != null && old != s)
+			old.ids.remove(id);
+		expiry.schedule(id, s.getLastUse() + timeout);
+		if (sessions.size() > maxSessions)
+			evict();
+	}
+
+	/**
+	 * Called by the {@link TimerWheel} for session IDs whose slot has come.
+	 */
+	private void expire(String id, long until) {
+		Session s = sessions.get(id);
+		if (s == null)
+			return;
+		long deadline = s.getLastUse() + timeout;
+		if (deadline <= until)
+			remove(id, s);
+		else
+			expiry.schedule(id, deadline);
+	}
+
+	/**
+	 * Drops the sessions closest to their timeout, until there are 10% less than {@link #maxSessions}.
+	 */
+	private void evict() {
+		final int target = maxSessions - maxSessions / 10;
+		if (expiry.evict(expirer, () -> sessions.size() <= target))
+			return;
+		// sessions not tracked by the wheel (another thread is advancing it, or sessions beyond one turn)
+		for (Iterator<String> it = sessions.keySet().iterator(); it.hasNext() && sessions.size() > maxSessions; ) {
+			String id = it.next();
+			Session s = sessions.get(id);
+			if (s != null)
+				remove(id, s);
+		}
+	}
+
+	/**
+	 * Removes expired sessions (usually done while handling requests) and saves the sessions to the store.
+	 */
 	public void cleanup() {
-		long death = System.currentTimeMillis() - timeout;
-		List<String> removeUs = new ArrayList<String>();
-		synchronized (sessions) {
-			for (Map.Entry<String, Session> e : sessions.entrySet())
-				if (e.getValue().getLastUse() < death)
-					removeUs.add(e.getKey());
-			for (String sessionId : removeUs)
-				sessions.remove(sessionId);
+		expiry.advance(clock.getAsLong(), expirer);
+		if (store != null) {
+			try {
+				store.save(sessions);
+			} catch (Exception e) {
+				log.error("Could not save sessions.", e);
+			}
 		}
 	}
 
+	public int getSessionCount() {
+		return sessions.size();
+	}
+
 	public String getCookieName() {
 		return cookieName;
 	}
@@ -247,4 +352,41 @@ public class SessionManager extends AbstractXmlElement implements Cleaner {
 	public void setDomain(String domain) {
 		this.domain = domain;
 	}
+
+	public int getMaxSessions() {
+		return maxSessions;
+	}
+
+	/**
+	 * @description The maximum number of sessions.
+	 * @default 100000
+	 */
+	@MCAttribute
+	public void setMaxSessions(int maxSessions) {
+		this.maxSessions = maxSessions;
+	}
+
+	public LongSupplier getClock() {
+		return clock;
+	}
+
+	/**
+	 * @param clock the time source in milliseconds, {@link System#currentTimeMillis()} by default. Has to be set
+	 *              before {@link #init(Router)}.
+	 */
+	public void setClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	public SessionStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @description Saves the sessions, so that they survive restarts.
+	 */
+	@MCChildElement
+	public void setStore(SessionStore store) {
+		this.store = store;
+	}
 }
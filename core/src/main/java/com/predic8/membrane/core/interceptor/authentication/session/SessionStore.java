@@ -0,0 +1,41 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.authentication.session;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.predic8.membrane.core.Router;
+import com.predic8.membrane.core.interceptor.authentication.session.SessionManager.Session;
+
+/**
+ * Persists the sessions of a {@link SessionManager}, so that they survive restarts.
+ */
+public interface SessionStore {
+
+	public void init(Router router);
+
+	/**
+	 * @return the sessions saved before by session ID. Session IDs belonging to the same session map to the same
+	 *         object.
+	 */
+	public Map<String, Session> load() throws IOException;
+
+	/**
+	 * Replaces the sessions saved before.
+	 */
+	public void save(Map<String, Session> sessions) throws IOException;
+
+}
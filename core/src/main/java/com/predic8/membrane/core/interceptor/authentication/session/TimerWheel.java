@@ -0,0 +1,122 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.authentication.session;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A hashed timer wheel tracking when keys expire.
+ *
+ * A key is put into the slot of its deadline. Advancing the wheel hands the keys of all slots passed to a
+ * {@link Handler}, which either drops them or schedules them again. As the handler checks the key's actual
+ * deadline, a deadline moving to a later time (e.g. when a session is used) does not require any update of the
+ * wheel. Deadlines beyond one turn of the wheel are handled the same way.
+ *
+ * Scheduling is lock-free. Advancing is done by one thread at a time: Other threads return immediately.
+ */
+class TimerWheel<K> {
+
+	interface Handler<K> {
+		/**
+		 * Drops the key, if it expires not after <code>until</code>, or schedules it again.
+		 */
+		void expire(K key, long until);
+	}
+
+	private final long tickMillis;
+	private final ConcurrentLinkedQueue<K>[] slots;
+	private final AtomicBoolean busy = new AtomicBoolean();
+	/** the last tick handled */
+	private volatile long currentTick;
+
+	@SuppressWarnings("unchecked")
+	TimerWheel(long tickMillis, int slots, long now) {
+		this.tickMillis = tickMillis;
+		this.slots = new ConcurrentLinkedQueue[slots];
+		for (int i = 0; i < slots; i++)
+			this.slots[i] = new ConcurrentLinkedQueue<K>();
+		currentTick = now / tickMillis;
+	}
+
+	void schedule(K key, long deadline) {
+		long tick = Math.max(deadline / tickMillis, currentTick + 1);
+		getSlot(tick).add(key);
+	}
+
+	private ConcurrentLinkedQueue<K> getSlot(long tick) {
+		return slots[(int) (tick % slots.length)];
+	}
+
+	/**
+	 * Hands the keys of all slots up to <code>now</code> to the handler.
+	 */
+	void advance(long now, Handler<K> handler) {
+		long target = now / tickMillis;
+		if (target <= currentTick || !busy.compareAndSet(false, true))
+			return;
+		try {
+			// one turn visits every slot
+			long tick = Math.max(currentTick, target - slots.length);
+			while (tick < target) {
+				currentTick = ++tick;
+				drain(getSlot(tick), now, handler, null);
+			}
+		} finally {
+			busy.set(false);
+		}
+	}
+
+	/**
+	 * Hands the keys expiring next to the handler (pretending the time of their slot had come), until
+	 * <code>done</code> returns true or one turn of the wheel has been visited.
+	 *
+	 * @return whether <code>done</code> returned true
+	 */
+	boolean evict(Handler<K> handler, BooleanSupplier done) {
+		if (!busy.compareAndSet(false, true))
+			return false;
+		try {
+			long tick = currentTick;
+			for (int i = 0; i < slots.length; i++) {
+				tick++;
+				if (drain(getSlot(tick), (tick + 1) * tickMillis - 1, handler, done))
+					return true;
+			}
+			return done.getAsBoolean();
+		} finally {
+			busy.set(false);
+		}
+	}
+
+	/**
+	 * Handles the keys in the slot (oldest first), but not the ones added while doing so.
+	 *
+	 * @return whether <code>done</code> returned true
+	 */
+	private boolean drain(ConcurrentLinkedQueue<K> slot, long until, Handler<K> handler, BooleanSupplier done) {
+		for (int n = slot.size(); n > 0; n--) {
+			if (done != null && done.getAsBoolean())
+				return true;
+			K key = slot.poll();
+			if (key == null)
+				break;
+			handler.expire(key, until);
+		}
+		return done != null && done.getAsBoolean();
+	}
+
+}
@@ -0,0 +1,76 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.predic8.membrane.core.config.AbstractXmlElement;
+import com.predic8.membrane.core.exchange.AbstractExchange;
+
+/**
+ * Base class for strategies choosing from {@link LoadBalancingInterceptor#getNodeSnapshot()}: The node list is
+ * neither copied nor locked, and the node state is only read through atomic fields. Nodes may therefore change
+ * their status while a node is chosen.
+ */
+public abstract class AbstractNodeSnapshotStrategy extends AbstractXmlElement implements DispatchingStrategy {
+
+	public Node dispatch(LoadBalancingInterceptor interceptor) throws EmptyNodeListException {
+		Node[] nodes = interceptor.getNodeSnapshot();
+		int up = 0;
+		for (Node n : nodes)
+			if (n.isUp())
+				up++;
+		if (up == 0)
+			throw new EmptyNodeListException();
+		Node n = dispatch(nodes, up);
+		if (n == null) // all nodes went down in the meantime
+			throw new EmptyNodeListException();
+		return n;
+	}
+
+	/**
+	 * @param nodes all nodes, including those which are not UP
+	 * @param up the number of nodes which were UP just before
+	 * @return the chosen node, or null if there is no node UP (anymore)
+	 */
+	protected abstract Node dispatch(Node[] nodes, int up);
+
+	/**
+	 * @return the n-th (counting from 0) node which is UP, or the last one which is UP if there are less than
+	 *         n+1 now. null, if no node is UP.
+	 */
+	protected static Node getUpNode(Node[] nodes, int n) {
+		Node last = null;
+		for (Node node : nodes) {
+			if (!node.isUp())
+				continue;
+			if (n-- == 0)
+				return node;
+			last = node;
+		}
+		return last;
+	}
+
+	public void done(AbstractExchange exc) {
+	}
+
+	@Override
+	public void write(XMLStreamWriter out) throws XMLStreamException {
+		out.writeStartElement(getElementName());
+		out.writeEndElement();
+	}
+
+}
@@ -15,9 +15,10 @@
 package com.predic8.membrane.core.interceptor.balancer;
 
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,7 +32,7 @@ public class Balancer extends AbstractXmlElement {
 	public static final String DEFAULT_NAME = "Default";
 	private static Logger log = LoggerFactory.getLogger(Balancer.class.getName());
 
-	private final Map<String, Cluster> clusters = new Hashtable<String, Cluster>();
+	private final Map<String, Cluster> clusters = new ConcurrentHashMap<String, Cluster>();
 	private String name = DEFAULT_NAME;
 	private long timeout = 0;
 	private SessionCleanupThread sct;
@@ -136,6 +137,19 @@ public class Balancer extends AbstractXmlElement {
 		return getCluster(cName).getAvailableNodes(timeout);
 	}
 
+	/**
+	 * Returns the nodes of the only cluster (or of the default cluster, if there are several) without copying or
+	 * locking, see {@link Cluster#getNodeSnapshot(long)}.
+	 */
+	public Node[] getNodeSnapshot() {
+		if (clusters.size() == 1) {
+			Iterator<Cluster> i = clusters.values().iterator();
+			if (i.hasNext())
+				return i.next().getNodeSnapshot(timeout);
+		}
+		return getCluster(Cluster.DEFAULT_NAME).getNodeSnapshot(timeout);
+	}
+
 	public void addSession2Cluster(String sessionId, String cName, Node n) {
 		getCluster(cName).addSession(sessionId, n);
 	}
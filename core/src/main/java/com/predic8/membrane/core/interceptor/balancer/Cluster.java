@@ -15,6 +15,7 @@
 package com.predic8.membrane.core.interceptor.balancer;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +33,8 @@ public class Cluster {
 	public static final String DEFAULT_NAME = "Default";
 
 	private String name = DEFAULT_NAME;
-	private List<Node> nodes = Collections.synchronizedList(new LinkedList<Node>());
+	private final CopyOnWriteArrayList<Node> nodes = new CopyOnWriteArrayList<Node>();
+	private volatile Node[] snapshot = new Node[0];
 	private Map<String, Session> sessions = new Hashtable<String, Session>();
 
 	public Cluster() {
@@ -60,43 +62,58 @@ public class Cluster {
 	}
 
 	public boolean removeNode(Node node) {
-		return nodes.remove(node);
+		boolean removed = nodes.remove(node);
+		updateSnapshot();
+		return removed;
 	}
 
 	public List<Node> getAvailableNodes(long timeout) {
 		List<Node> l = new LinkedList<Node>();
-		synchronized (nodes) {
-			for (Node n : getAllNodes(timeout)) {
-				if ( n.isUp() ) l.add(n);
-			}
+		for (Node n : getNodeSnapshot(timeout)) {
+			if ( n.isUp() ) l.add(n);
 		}
 		return l;
 	}
 
 	public List<Node> getAllNodes(long timeout) {
-		if (timeout <= 0) {
-			return nodes;
-		}
-		synchronized (nodes) {
-			for (Node n : nodes) {
-				if ( System.currentTimeMillis()-n.getLastUpTime() > timeout ) n.setStatus(Status.DOWN);
+		getNodeSnapshot(timeout);
+		return nodes;
+	}
+
+	/**
+	 * Returns all nodes (whatever their status) without copying or locking. The array must not be modified.
+	 *
+	 * Nodes whose last "up" notification is older than <code>timeout</code> milliseconds are set to DOWN first,
+	 * if <code>timeout</code> is positive.
+	 */
+	public Node[] getNodeSnapshot(long timeout) {
+		Node[] s = snapshot;
+		if (timeout > 0) {
+			long now = System.currentTimeMillis();
+			for (Node n : s) {
+				if ( now-n.getLastUpTime() > timeout && !n.isDown() ) n.setStatus(Status.DOWN);
 			}
 		}
-		return nodes;
+		return s;
+	}
+
+	private synchronized void updateSnapshot() {
+		snapshot = nodes.toArray(new Node[0]);
 	}
 
 	public Node getNode(Node ep) {
-		synchronized (nodes) {
-			return nodes.get(nodes.indexOf(ep));
-		}
+		for (Node n : nodes)
+			if (n.equals(ep))
+				return n;
+		throw new IndexOutOfBoundsException("No node " + ep + " in cluster " + name + ".");
 	}
 
 	private Node getNodeCreateIfNeeded(Node ep) {
-		if ( nodes.contains(ep) ) {
-			return getNode(ep);
+		if ( !nodes.contains(ep) ) {
+			log.debug("creating endpoint: "+ep);
+			if (nodes.addIfAbsent(new Node(ep.getHost(), ep.getPort())))
+				updateSnapshot();
 		}
-		log.debug("creating endpoint: "+ep);
-		nodes.add(new Node(ep.getHost(), ep.getPort()));
 		return getNode(ep);
 	}
 
@@ -107,6 +124,7 @@ public class Cluster {
 			@Override
 			public boolean add(Node e) {
 				nodes.add(e);
+				updateSnapshot();
 				return super.add(e);
 			}
 		};
@@ -119,6 +137,7 @@ public class Cluster {
 	public void setNodes(List<Node> nodes) {
 		this.nodes.clear();
 		this.nodes.addAll(nodes);
+		updateSnapshot();
 	}
 
 	public String getName() {
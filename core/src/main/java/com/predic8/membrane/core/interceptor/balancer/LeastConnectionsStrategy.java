@@ -0,0 +1,53 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.predic8.membrane.annot.MCElement;
+
+/**
+ * @description Chooses the node which is UP and has the least outstanding requests (see "Current threads" on the
+ *              admin console). Ties are broken randomly.
+ * @topic 7. Clustering and Loadbalancing
+ */
+@MCElement(name="leastConnectionsStrategy")
+public class LeastConnectionsStrategy extends AbstractNodeSnapshotStrategy {
+
+	@Override
+	protected Node dispatch(Node[] nodes, int up) {
+		// start at a random position, so that nodes with equal counts are chosen evenly
+		int offset = ThreadLocalRandom.current().nextInt(nodes.length);
+		Node best = null;
+		int bestThreads = Integer.MAX_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			Node n = nodes[(offset + i) % nodes.length];
+			if (!n.isUp())
+				continue;
+			int threads = n.getThreads();
+			if (threads < bestThreads) {
+				best = n;
+				bestThreads = threads;
+			}
+		}
+		return best;
+	}
+
+	@Override
+	protected String getElementName() {
+		return "leastConnectionsStrategy";
+	}
+
+}
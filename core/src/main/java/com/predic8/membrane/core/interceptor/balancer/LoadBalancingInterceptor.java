@@ -41,6 +41,11 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 	private static Logger log = LoggerFactory.getLogger(LoadBalancingInterceptor.class
 			.getName());
 
+	/**
+	 * Exchange property set while the request counts as outstanding on the dispatched node.
+	 */
+	private static final String OUTSTANDING = "dispatchedNodeOutstanding";
+
 	/**
 	 * Round-robin is the default, but it's configurable.
 	 */
@@ -84,6 +89,7 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 		dispatchedNode.addThread();
 
 		exc.setProperty("dispatchedNode", dispatchedNode);
+		exc.setProperty(OUTSTANDING, Boolean.TRUE);
 
 		exc.setOriginalRequestUri(dispatchedNode.getDestinationURL(exc));
 
@@ -99,7 +105,10 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 	public void handleAbort(Exchange exc) {
 		if(nodeOnlineChecker != null){
 			nodeOnlineChecker.handle(exc);
-		}		
+		}
+		Node n = (Node) exc.getProperty("dispatchedNode");
+		if (n != null && exc.getProperties().remove(OUTSTANDING) != null)
+			n.removeThread();
 	}
 
 	@Override
@@ -130,8 +139,8 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 		if (!failOver)
 			return;
 
-		for (Node ep : getEndpoints()) {
-			if (!ep.equals(dispatchedNode)) { //don't add the primary one again
+		for (Node ep : getNodeSnapshot()) {
+			if (ep.isUp() && !ep.equals(dispatchedNode)) { //don't add the primary one again
 				exc.getDestinations().add(ep.getDestinationURL(exc));
 			}
 		}
@@ -139,7 +148,8 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 
 	private void updateDispatchedNode(Exchange exc) {
 		Node n = (Node) exc.getProperty("dispatchedNode");
-		n.removeThread();
+		if (exc.getProperties().remove(OUTSTANDING) != null)
+			n.removeThread();
 		// exc.timeResSent will be overridden later as exc really
 		// completes, but to collect the statistics we use the current time
 		exc.setTimeResSent(System.currentTimeMillis());
@@ -213,6 +223,14 @@ public class LoadBalancingInterceptor extends AbstractInterceptor {
 		return balancer.getAvailableNodesByCluster(BalancerUtil.getSingleClusterNameOrDefault(balancer)); // fallback
 	}
 
+	/**
+	 * Like {@link #getEndpoints()}, but returns all nodes (including those which are not UP) without copying or
+	 * locking. The array must not be modified.
+	 */
+	public Node[] getNodeSnapshot() {
+		return balancer.getNodeSnapshot();
+	}
+
 	public AbstractSessionIdExtractor getSessionIdExtractor() {
 		return sessionIdExtractor;
 	}
@@ -17,6 +17,7 @@ package com.predic8.membrane.core.interceptor.balancer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -38,14 +39,24 @@ public class Node extends AbstractXmlElement {
 		UP, DOWN, TAKEOUT;
 	}
 
+	/**
+	 * Time constant (in nanoseconds) of the exponentially weighted moving average of the response time.
+	 */
+	public static final long LATENCY_DECAY_TIME = 10L * 1000 * 1000 * 1000;
+
 	private String host;
 	private int port;
+	private int weight = 1;
 
 	private volatile long lastUpTime;
 	private volatile Status status;
 	private AtomicInteger counter = new AtomicInteger();
 	private AtomicInteger threads = new AtomicInteger();
 
+	/** peak EWMA of the response time in nanoseconds, as the bits of a double */
+	private final AtomicLong latency = new AtomicLong(Double.doubleToRawLongBits(0));
+	private volatile long latencyTimestamp;
+
 	private ConcurrentHashMap<Integer, StatisticCollector> statusCodes = new ConcurrentHashMap<Integer, StatisticCollector>();
 
 	public Node(String host, int port) {
@@ -125,6 +136,22 @@ public class Node extends AbstractXmlElement {
 		this.port = port;
 	}
 
+	public int getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @description The node's weight, used by the weightedRoundRobinStrategy.
+	 * @default 1
+	 * @example 3
+	 */
+	@MCAttribute
+	public void setWeight(int weight) {
+		if (weight < 1)
+			throw new IllegalArgumentException("The weight of a node must be at least 1.");
+		this.weight = weight;
+	}
+
 	public boolean isUp() {
 		return status == Status.UP;
 	}
@@ -177,10 +204,42 @@ public class Node extends AbstractXmlElement {
 	}
 
 	public void collectStatisticsFrom(Exchange exc) {
-		StatisticCollector sc = getStatisticCollectorByStatusCode(exc.getResponse().getStatusCode());
-		synchronized(sc) {
-			sc.collectFrom(exc);
+		getStatisticCollectorByStatusCode(exc.getResponse().getStatusCode()).collectFrom(exc);
+		if (exc.getTimeReqSent() > 0 && exc.getTimeResReceived() >= exc.getTimeReqSent())
+			updateLatency((exc.getTimeResReceived() - exc.getTimeReqSent()) * 1000000);
+	}
+
+	/**
+	 * Adds a response time to the peak EWMA: A response time above the average replaces it, lower ones are
+	 * averaged in, weighted by the time passed since the last update.
+	 */
+	void updateLatency(long nanos) {
+		long now = System.nanoTime();
+		while (true) {
+			long bits = latency.get();
+			double previous = Double.longBitsToDouble(bits);
+			double next;
+			if (nanos > previous) {
+				next = nanos;
+			} else {
+				double w = Math.exp(-(double) (now - latencyTimestamp) / LATENCY_DECAY_TIME);
+				next = previous * w + nanos * (1 - w);
+			}
+			if (latency.compareAndSet(bits, Double.doubleToRawLongBits(next)))
+				break;
 		}
+		latencyTimestamp = now;
+	}
+
+	/**
+	 * @return the peak EWMA of the response time in nanoseconds, decayed towards 0 for the time passed since the
+	 * last response. 0 if no response time has been recorded.
+	 */
+	public double getLatency() {
+		double l = Double.longBitsToDouble(latency.get());
+		if (l == 0)
+			return 0;
+		return l * Math.exp(-(double) Math.max(0, System.nanoTime() - latencyTimestamp) / LATENCY_DECAY_TIME);
 	}
 
 	public void addThread() {
@@ -190,7 +249,13 @@ public class Node extends AbstractXmlElement {
 
 	public void removeThread() {
 		if (!isUp()) return;
-		threads.incrementAndGet();
+		// the counter is reset when the node goes down, so it must not become negative
+		int t;
+		do {
+			t = threads.get();
+			if (t == 0)
+				return;
+		} while (!threads.compareAndSet(t, t - 1));
 	}
 
 	public int getThreads() {
@@ -0,0 +1,46 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import com.predic8.membrane.annot.MCElement;
+
+/**
+ * @description Picks two random nodes which are UP and chooses the one with the lower expected latency: its
+ *              response time average multiplied by its outstanding requests plus one.
+ * @explanation The average is a "peak EWMA": A slow response immediately raises it, while fast responses lower
+ *              it gradually (with a time constant of 10 seconds). The average of a node not receiving requests
+ *              decays, so that it will be tried again. Nodes without any recorded response are preferred.
+ * @topic 7. Clustering and Loadbalancing
+ */
+@MCElement(name="peakEwmaStrategy")
+public class PeakEwmaStrategy extends PowerOfTwoChoicesStrategy {
+
+	@Override
+	protected Node choose(Node a, Node b) {
+		int ta = a.getThreads();
+		int tb = b.getThreads();
+		double ca = a.getLatency() * (ta + 1);
+		double cb = b.getLatency() * (tb + 1);
+		if (ca == cb)
+			return tb < ta ? b : a;
+		return cb < ca ? b : a;
+	}
+
+	@Override
+	protected String getElementName() {
+		return "peakEwmaStrategy";
+	}
+
+}
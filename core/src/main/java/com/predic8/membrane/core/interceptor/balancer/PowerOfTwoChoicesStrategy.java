@@ -0,0 +1,58 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.predic8.membrane.annot.MCElement;
+
+/**
+ * @description Picks two random nodes which are UP and chooses the one with less outstanding requests. This
+ *              approaches the balance of the leastConnectionsStrategy without looking at every node, and avoids
+ *              sending all new requests to the same node while the counts are being updated.
+ * @topic 7. Clustering and Loadbalancing
+ */
+@MCElement(name="powerOfTwoChoicesStrategy")
+public class PowerOfTwoChoicesStrategy extends AbstractNodeSnapshotStrategy {
+
+	@Override
+	protected Node dispatch(Node[] nodes, int up) {
+		if (up == 1)
+			return getUpNode(nodes, 0);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int a = random.nextInt(up);
+		int b = random.nextInt(up - 1);
+		if (b >= a)
+			b++;
+		Node na = getUpNode(nodes, a);
+		Node nb = getUpNode(nodes, b);
+		if (na == null || nb == null || na == nb)
+			return na;
+		return choose(na, nb);
+	}
+
+	/**
+	 * @return the better one of two different nodes
+	 */
+	protected Node choose(Node a, Node b) {
+		return b.getThreads() < a.getThreads() ? b : a;
+	}
+
+	@Override
+	protected String getElementName() {
+		return "powerOfTwoChoicesStrategy";
+	}
+
+}
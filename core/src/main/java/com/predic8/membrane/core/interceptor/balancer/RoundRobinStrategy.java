@@ -13,13 +13,9 @@
    limitations under the License. */
 package com.predic8.membrane.core.interceptor.balancer;
 
-import javax.xml.stream.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.predic8.membrane.annot.MCElement;
-import com.predic8.membrane.core.config.AbstractXmlElement;
-import com.predic8.membrane.core.exchange.AbstractExchange;
-
-import java.util.List;
 
 /**
  * Strategy that iterates the endpoints according to https://en.wikipedia.org/wiki/Round-robin
@@ -27,41 +23,13 @@ import java.util.List;
  * All endpoints that are considered to be UP are in.
  */
 @MCElement(name="roundRobinStrategy")
-public class RoundRobinStrategy extends AbstractXmlElement implements DispatchingStrategy {
-
-	private int last = -1;
+public class RoundRobinStrategy extends AbstractNodeSnapshotStrategy {
 
-	public void done(AbstractExchange exc) {
-	}
-
-	public synchronized Node dispatch(LoadBalancingInterceptor interceptor) throws EmptyNodeListException {
-		//getting a decoupled copy to avoid index out of bounds in case of concurrent modification (dynamic config files reload...)
-		List<Node> endpoints = interceptor.getEndpoints(); //this calls synchronizes access internally.
-		if (endpoints.isEmpty()) {
-			throw new EmptyNodeListException();
-		}
-		int i = incrementAndGet(endpoints.size());
-		return endpoints.get(i);
-	}
-
-	/**
-	 * Must be atomic, therefore synchronized.
-	 */
-	private synchronized int incrementAndGet(int numEndpoints) {
-		last ++;
-		if (last >= numEndpoints) {
-			last = 0;
-		}
-		return last;
-	}
+	private final AtomicInteger last = new AtomicInteger(-1);
 
 	@Override
-	public void write(XMLStreamWriter out)
-			throws XMLStreamException {
-
-		out.writeStartElement("roundRobinStrategy");
-
-		out.writeEndElement();
+	protected Node dispatch(Node[] nodes, int up) {
+		return getUpNode(nodes, (last.incrementAndGet() & Integer.MAX_VALUE) % up);
 	}
 
 	@Override
@@ -0,0 +1,111 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.predic8.membrane.annot.MCElement;
+
+/**
+ * @description Iterates the nodes which are UP, choosing each node in proportion to its weight. The sequence is
+ *              interleaved ("smooth" weighted round-robin): For weights 5, 1 and 1 it is a a b a c a a.
+ * @explanation The sequence is computed once whenever the set of UP nodes or their weights change, so the sum of
+ *              the weights (divided by their greatest common divisor) should stay reasonably small.
+ * @topic 7. Clustering and Loadbalancing
+ */
+@MCElement(name="weightedRoundRobinStrategy")
+public class WeightedRoundRobinStrategy extends AbstractNodeSnapshotStrategy {
+
+	private final AtomicInteger position = new AtomicInteger();
+	private volatile Schedule schedule;
+
+	@Override
+	protected Node dispatch(Node[] nodes, int up) {
+		Schedule s = schedule;
+		if (s == null || !s.isFor(nodes))
+			schedule = s = new Schedule(nodes);
+		if (s.sequence.length == 0)
+			return null;
+		return s.sequence[(position.getAndIncrement() & Integer.MAX_VALUE) % s.sequence.length];
+	}
+
+	private static class Schedule {
+		private final Node[] nodes;
+		private final boolean[] up;
+		private final int[] weights;
+		private final Node[] sequence;
+
+		Schedule(Node[] nodes) {
+			this.nodes = nodes;
+			up = new boolean[nodes.length];
+			weights = new int[nodes.length];
+			int gcd = 0;
+			for (int i = 0; i < nodes.length; i++) {
+				up[i] = nodes[i].isUp();
+				weights[i] = nodes[i].getWeight();
+				if (up[i])
+					gcd = gcd(gcd, weights[i]);
+			}
+
+			int total = 0;
+			int[] w = new int[nodes.length];
+			for (int i = 0; i < nodes.length; i++) {
+				if (up[i]) {
+					w[i] = weights[i] / gcd;
+					total += w[i];
+				}
+			}
+
+			sequence = new Node[total];
+			int[] current = new int[nodes.length];
+			for (int k = 0; k < total; k++) {
+				int best = -1;
+				for (int i = 0; i < nodes.length; i++) {
+					if (!up[i])
+						continue;
+					current[i] += w[i];
+					if (best == -1 || current[i] > current[best])
+						best = i;
+				}
+				current[best] -= total;
+				sequence[k] = nodes[best];
+			}
+		}
+
+		boolean isFor(Node[] nodes) {
+			if (nodes != this.nodes)
+				return false;
+			for (int i = 0; i < nodes.length; i++)
+				if (nodes[i].isUp() != up[i] || nodes[i].getWeight() != weights[i])
+					return false;
+			return true;
+		}
+
+		private static int gcd(int a, int b) {
+			while (b != 0) {
+				int t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+	}
+
+	@Override
+	protected String getElementName() {
+		return "weightedRoundRobinStrategy";
+	}
+
+}
@@ -0,0 +1,132 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.cache;
+
+import java.util.Locale;
+
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.HeaderField;
+
+/**
+ * The directives of the "Cache-Control" header fields of a message, see RFC 7234 section 5.2.
+ *
+ * Directives qualified by field names (e.g. <code>private="Set-Cookie"</code>) are treated like their unqualified
+ * form, which is more restrictive. Delta-seconds are stored as seconds, -1 meaning absent.
+ */
+class CacheControl {
+
+	boolean noStore;
+	boolean noCache;
+	boolean isPrivate;
+	boolean isPublic;
+	boolean mustRevalidate;
+	boolean onlyIfCached;
+	long maxAge = -1;
+	long sMaxAge = -1;
+	/**
+	 * {@link Long#MAX_VALUE} if "max-stale" was given without a value.
+	 */
+	long maxStale = -1;
+	long minFresh = -1;
+
+	static CacheControl parse(Header header) {
+		CacheControl cc = new CacheControl();
+		boolean found = false;
+		for (HeaderField field : header.getAllHeaderFields()) {
+			if (!field.getHeaderName().equals(Header.CACHE_CONTROL))
+				continue;
+			found = true;
+			for (String directive : field.getValue().split(","))
+				cc.parseDirective(directive.trim());
+		}
+		if (!found) {
+			// "Pragma: no-cache" is only considered in the absence of Cache-Control, see section 5.4
+			String pragma = header.getFirstValue(Header.PRAGMA);
+			if (pragma != null && pragma.toLowerCase(Locale.US).contains("no-cache"))
+				cc.noCache = true;
+		}
+		return cc;
+	}
+
+	private void parseDirective(String directive) {
+		String name = directive;
+		String value = null;
+		int eq = directive.indexOf('=');
+		if (eq != -1) {
+			name = directive.substring(0, eq).trim();
+			value = directive.substring(eq + 1).trim();
+			if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+				value = value.substring(1, value.length() - 1);
+		}
+		name = name.toLowerCase(Locale.US);
+		switch (name) {
+		case "no-store":
+			noStore = true;
+			break;
+		case "no-cache":
+			noCache = true;
+			break;
+		case "private":
+			isPrivate = true;
+			break;
+		case "public":
+			isPublic = true;
+			break;
+		case "must-revalidate":
+		case "proxy-revalidate":
+			mustRevalidate = true;
+			break;
+		case "only-if-cached":
+			onlyIfCached = true;
+			break;
+		case "max-age":
+			// an invalid max-age makes the response stale, see section 4.2.1
+			maxAge = parseSeconds(value, 0);
+			break;
+		case "s-maxage":
+			sMaxAge = parseSeconds(value, 0);
+			break;
+		case "max-stale":
+			maxStale = value == null ? Long.MAX_VALUE : parseSeconds(value, -1);
+			break;
+		case "min-fresh":
+			minFresh = parseSeconds(value, -1);
+			break;
+		default:
+			break;
+		}
+	}
+
+	private static long parseSeconds(String value, long invalid) {
+		if (value == null)
+			return invalid;
+		try {
+			long seconds = Long.parseLong(value);
+			return seconds < 0 ? invalid : seconds;
+		} catch (NumberFormatException e) {
+			// values exceeding the range are to be treated as "infinity", see section 1.2.1
+			return value.matches("\\d+") ? Integer.MAX_VALUE : invalid;
+		}
+	}
+
+	/**
+	 * @return whether the response carries explicit freshness information or may be stored by a shared cache
+	 *         regardless of its status code
+	 */
+	boolean isExplicit() {
+		return maxAge >= 0 || sMaxAge >= 0 || isPublic;
+	}
+
+}
@@ -0,0 +1,349 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.HeaderField;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+
+/**
+ * A stored response, see RFC 7234.
+ *
+ * The body is either held in memory or stored in a file (see {@link FileStore}), starting at an offset. Entries
+ * are immutable: The header returned by {@link #getHeader()} must not be modified.
+ *
+ * Responses varying by request header fields are stored as variants: The entry for the request URI is a
+ * "vary marker" ({@link #isVaryMarker()}) only holding the names of the fields, and each variant is stored under a
+ * key including the request's values of these fields (see {@link #getVariantKey(String, Request)}). The key also
+ * includes the marker's unique creation time, so that removing the marker invalidates all variants.
+ */
+public class CacheEntry {
+
+	/**
+	 * Status codes whose responses may be stored and heuristically considered fresh without explicit freshness
+	 * information, see RFC 7231 section 6.1.
+	 */
+	static final Set<Integer> CACHEABLE_BY_DEFAULT = new HashSet<Integer>(Arrays.asList(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501));
+
+	private static final Set<String> HOP_BY_HOP = new HashSet<String>(Arrays.asList("connection", "keep-alive",
+			"proxy-connection", "proxy-authenticate", "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade"));
+
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+	private static final String[] NO_VARY = new String[0];
+
+	private static final AtomicLong lastMarkerTime = new AtomicLong();
+
+	private final int status;
+	private final String statusMessage;
+	private final Header header;
+	private final String[] varyNames;
+	private final long requestTime;
+	private final long responseTime;
+
+	private final byte[] content;
+	private final File file;
+	private final long bodyOffset;
+	private final long bodyLength;
+
+	private final CacheControl cacheControl;
+	private final long correctedInitialAge;
+	private final long freshnessLifetime;
+
+	CacheEntry(int status, String statusMessage, Header header, String[] varyNames, long requestTime, long responseTime,
+			byte[] content, File file, long bodyOffset, long bodyLength) {
+		this.status = status;
+		this.statusMessage = statusMessage;
+		this.header = header;
+		this.varyNames = varyNames;
+		this.requestTime = requestTime;
+		this.responseTime = responseTime;
+		this.content = content;
+		this.file = file;
+		this.bodyOffset = bodyOffset;
+		this.bodyLength = bodyLength;
+
+		cacheControl = CacheControl.parse(header);
+		long date = parseDate(header.getFirstValue(Header.DATE), responseTime);
+		correctedInitialAge = getCorrectedInitialAge(date);
+		freshnessLifetime = getFreshnessLifetime(date);
+	}
+
+	/**
+	 * Creates an entry from a response received from the server. Hop-by-hop header fields are dropped, and a
+	 * "Date" field is added, if missing.
+	 */
+	public static CacheEntry create(Response response, byte[] content, long requestTime, long responseTime) {
+		return create(response, requestTime, responseTime).withContent(content);
+	}
+
+	/**
+	 * Creates an entry without a body from a response received from the server. The body is added using
+	 * {@link #withContent(byte[])} or {@link #withFile(File, long, long)} once it has been received.
+	 */
+	static CacheEntry create(Response response, long requestTime, long responseTime) {
+		Header header = new Header();
+		for (HeaderField field : response.getHeader().getAllHeaderFields())
+			if (isStored(field))
+				header.add(new HeaderField(field));
+		if (header.getFirstValue(Header.DATE) == null)
+			header.add(Header.DATE, CacheInterceptor.toRFC(responseTime));
+		return new CacheEntry(response.getStatusCode(), response.getStatusMessage(), header,
+				getVaryNames(response.getHeader()), requestTime, responseTime, null, null, 0, -1);
+	}
+
+	static CacheEntry createVaryMarker(String[] varyNames) {
+		long time;
+		while (true) {
+			long last = lastMarkerTime.get();
+			time = Math.max(System.currentTimeMillis(), last + 1);
+			if (lastMarkerTime.compareAndSet(last, time))
+				break;
+		}
+		return new CacheEntry(0, "", new Header(), varyNames, time, time, new byte[0], null, 0, 0);
+	}
+
+	private static boolean isStored(HeaderField field) {
+		String name = field.getHeaderName().toString().toLowerCase(Locale.US);
+		return !HOP_BY_HOP.contains(name) && !name.equals("content-length") && !name.equals("age");
+	}
+
+	/**
+	 * @return a copy of the entry with its header fields updated by a "304 Not Modified" response, see RFC 7234
+	 *         section 4.3.4
+	 */
+	CacheEntry revalidate(Response notModified, long requestTime, long responseTime) {
+		Header updated = new Header();
+		for (HeaderField field : header.getAllHeaderFields())
+			if (notModified.getHeader().getFirstValue(field.getHeaderName().toString()) == null
+					|| field.getHeaderName().equals(Header.CONTENT_LENGTH))
+				updated.add(new HeaderField(field));
+		for (HeaderField field : notModified.getHeader().getAllHeaderFields())
+			if (isStored(field) && !field.getHeaderName().equals(Header.CONTENT_ENCODING))
+				updated.add(new HeaderField(field));
+		if (updated.getFirstValue(Header.DATE) == null)
+			updated.add(Header.DATE, CacheInterceptor.toRFC(responseTime));
+		return new CacheEntry(status, statusMessage, updated, varyNames, requestTime, responseTime, content, file, bodyOffset, bodyLength);
+	}
+
+	CacheEntry withContent(byte[] content) {
+		return new CacheEntry(status, statusMessage, header, varyNames, requestTime, responseTime, content, null, 0, content.length);
+	}
+
+	CacheEntry withFile(File file, long bodyOffset, long bodyLength) {
+		return new CacheEntry(status, statusMessage, header, varyNames, requestTime, responseTime, null, file, bodyOffset, bodyLength);
+	}
+
+	static String[] getVaryNames(Header header) {
+		List<String> names = new ArrayList<String>();
+		for (HeaderField field : header.getAllHeaderFields()) {
+			if (!field.getHeaderName().equals(Header.VARY))
+				continue;
+			for (String name : field.getValue().split(","))
+				if (name.trim().length() > 0)
+					names.add(name.trim().toLowerCase(Locale.US));
+		}
+		return names.isEmpty() ? NO_VARY : names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * @return the key of the variant matching the request. Only to be called on vary markers.
+	 */
+	String getVariantKey(String key, Request request) {
+		StringBuilder sb = new StringBuilder(getVariantKeyPrefix(key)).append(requestTime);
+		for (String name : varyNames) {
+			sb.append('\n').append(name).append(':');
+			boolean first = true;
+			for (HeaderField field : request.getHeader().getAllHeaderFields()) {
+				if (!field.getHeaderName().equals(name))
+					continue;
+				if (!first)
+					sb.append(',');
+				// whitespace is not significant, see RFC 7234 section 4.1
+				sb.append(field.getValue().replaceAll("\\s+", ""));
+				first = false;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the prefix shared by the keys of all variants stored for the key
+	 */
+	static String getVariantKeyPrefix(String key) {
+		return key + '\n';
+	}
+
+	private long getCorrectedInitialAge(long date) {
+		long apparentAge = Math.max(0, responseTime - date);
+		long ageValue = 0;
+		String age = header.getFirstValue(Header.AGE);
+		if (age != null) {
+			try {
+				ageValue = Long.parseLong(age.trim()) * 1000;
+			} catch (NumberFormatException e) {
+				// ignore invalid Age
+			}
+		}
+		long correctedAgeValue = ageValue + (responseTime - requestTime);
+		return Math.max(apparentAge, correctedAgeValue);
+	}
+
+	/**
+	 * Determines the freshness lifetime for a shared cache, see RFC 7234 section 4.2.1.
+	 */
+	private long getFreshnessLifetime(long date) {
+		if (cacheControl.sMaxAge >= 0)
+			return cacheControl.sMaxAge * 1000;
+		if (cacheControl.maxAge >= 0)
+			return cacheControl.maxAge * 1000;
+		String expires = header.getFirstValue(Header.EXPIRES);
+		if (expires != null)
+			return Math.max(0, parseDate(expires, date) - date);
+		String lastModified = header.getFirstValue(Header.LAST_MODIFIED);
+		if (lastModified != null && (CACHEABLE_BY_DEFAULT.contains(status) || cacheControl.isPublic))
+			return Math.min(MAX_HEURISTIC_LIFETIME, Math.max(0, (date - parseDate(lastModified, date)) / 10));
+		return 0;
+	}
+
+	static long parseDate(String date, long invalid) {
+		if (date == null)
+			return invalid;
+		try {
+			return CacheInterceptor.fromRFC(date.trim());
+		} catch (ParseException e) {
+			return invalid;
+		}
+	}
+
+	/**
+	 * @return the current age in milliseconds, see RFC 7234 section 4.2.3
+	 */
+	public long getCurrentAge(long now) {
+		return correctedInitialAge + Math.max(0, now - responseTime);
+	}
+
+	public long getFreshnessLifetime() {
+		return freshnessLifetime;
+	}
+
+	public boolean isFresh(long now) {
+		return freshnessLifetime > getCurrentAge(now);
+	}
+
+	CacheControl getCacheControl() {
+		return cacheControl;
+	}
+
+	public boolean hasValidators() {
+		return getETag() != null || header.getFirstValue(Header.LAST_MODIFIED) != null;
+	}
+
+	public String getETag() {
+		return header.getFirstValue(Header.ETAG);
+	}
+
+	public boolean isVaryMarker() {
+		return status == 0;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public String getStatusMessage() {
+		return statusMessage;
+	}
+
+	public Header getHeader() {
+		return header;
+	}
+
+	public String[] getVaryNames() {
+		return varyNames;
+	}
+
+	public long getRequestTime() {
+		return requestTime;
+	}
+
+	public long getResponseTime() {
+		return responseTime;
+	}
+
+	/**
+	 * @return the body, or null if it is stored in a file
+	 */
+	public byte[] getContent() {
+		return content;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public long getBodyOffset() {
+		return bodyOffset;
+	}
+
+	public long getBodyLength() {
+		return bodyLength;
+	}
+
+	/**
+	 * @return a stream reading the body. The caller has to close it.
+	 */
+	public InputStream openBody() throws IOException {
+		if (content != null)
+			return new ByteArrayInputStream(content);
+		FileInputStream in = new FileInputStream(file);
+		try {
+			long toSkip = bodyOffset;
+			while (toSkip > 0) {
+				long skipped = in.skip(toSkip);
+				if (skipped <= 0)
+					throw new IOException("Unexpected end of " + file + ".");
+				toSkip -= skipped;
+			}
+			return in;
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the approximate number of bytes of heap used by the entry
+	 */
+	public long getSize() {
+		return (content == null ? 0 : content.length) + header.estimateHeapSize() + 100;
+	}
+
+}
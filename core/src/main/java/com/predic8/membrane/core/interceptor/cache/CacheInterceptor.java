@@ -13,20 +13,23 @@
    limitations under the License. */
 package com.predic8.membrane.core.interceptor.cache;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
-import org.apache.commons.codec.binary.Base64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
@@ -34,27 +37,39 @@ import org.springframework.beans.factory.annotation.Required;
 import com.predic8.membrane.annot.MCAttribute;
 import com.predic8.membrane.annot.MCChildElement;
 import com.predic8.membrane.annot.MCElement;
-import com.predic8.membrane.core.Constants;
 import com.predic8.membrane.core.Router;
 import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.AbstractBody;
+import com.predic8.membrane.core.http.AbstractMessageObserver;
+import com.predic8.membrane.core.http.Body;
+import com.predic8.membrane.core.http.BodyWriteListener;
 import com.predic8.membrane.core.http.Header;
 import com.predic8.membrane.core.http.HeaderField;
+import com.predic8.membrane.core.http.NonRelevantBodyObserver;
 import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.interceptor.AbstractInterceptor;
 import com.predic8.membrane.core.interceptor.Outcome;
-import com.predic8.membrane.core.resolver.ResolverMap;
+import com.predic8.membrane.core.model.AbstractExchangeViewerListener;
 
 /**
  * @description <p>
- *              Don't use, this does NOT implement valid HTTP caching.
+ *              A shared HTTP cache following RFC 7234.
  *              </p>
  *              <p>
- *                  We currently just use this class to cache a bunch of Debian and Ubuntu Repositories as well as
- *                  the Docker Registry for offline use.
- *                  The cache does not revalidate any responses, so machines querying the cache for Debian
- *                  package updates will be stuck in the past until the cache (on disk) is cleared manually. -
- *                  This is - simply put - the only use case, where using this class makes any sense.
+ *              Responses to GET requests are stored, if the "Cache-Control", "Expires" and "Vary" header fields
+ *              and the status code allow it. Fresh responses are served from the store (also for HEAD requests),
+ *              stale responses carrying an "ETag" or "Last-Modified" field are revalidated using a conditional
+ *              request. Successful unsafe requests (e.g. POST) invalidate the stored response, as well as the
+ *              responses stored for the same-origin URIs in their "Location" and "Content-Location" fields.
+ *              </p>
+ *              <p>
+ *              Concurrent requests missing the same response are coalesced: Only the first one is forwarded, the
+ *              others wait up to <i>coalescingTimeout</i> milliseconds for its response to be stored.
+ *              </p>
+ *              <p>
+ *              Response bodies which have not been read by other interceptors are passed to the store while they
+ *              are forwarded to the client. Responses larger than the store's maximum entry size are not stored.
  *              </p>
  * @topic 4. Interceptors/Features
  */
@@ -63,96 +78,129 @@ public class CacheInterceptor extends AbstractInterceptor {
 
 	static final Logger log = LoggerFactory.getLogger(CacheInterceptor.class.getName());
 
+	private static final String KEY = "cache.key";
+	private static final String REQUEST_TIME = "cache.requestTime";
+	private static final String STALE_ENTRY = "cache.staleEntry";
+	private static final String CLIENT_IF_NONE_MATCH = "cache.ifNoneMatch";
+	private static final String CLIENT_IF_MODIFIED_SINCE = "cache.ifModifiedSince";
+	private static final String COALESCING_LATCH = "cache.latch";
+
 	private Store store;
+	private long coalescingTimeout = 10000;
+
+	private final ConcurrentHashMap<String, CountDownLatch> inFlight = new ConcurrentHashMap<String, CountDownLatch>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+	private final AtomicInteger waiting = new AtomicInteger();
+	private final LongAdder bytesServed = new LongAdder();
+	private final LongAdder bytesStored = new LongAdder();
 
 	public static abstract class Store {
 		public void init(Router router) {}
 
-		public abstract Node get(String url);
-		public abstract void put(String url, Node node);
-	}
+		public abstract CacheEntry get(String key);
+		public abstract void put(String key, CacheEntry entry);
+		public abstract void remove(String key);
 
-	@MCElement(name="inMemoryStore")
-	public static class InMemoryStore extends Store {
-		HashMap<String, Node> cache = new HashMap<String, Node>();
+		/**
+		 * Removes the entry, if it is still stored under the key.
+		 */
+		public void remove(String key, CacheEntry entry) {
+			remove(key);
+		}
 
-		@Override
-		public Node get(String url) {
-			return cache.get(url);
+		/**
+		 * Removes all entries whose keys start with the prefix. The default implementation does nothing: Variants
+		 * are unreachable once their vary marker has been removed, see {@link CacheEntry}.
+		 */
+		public void removeByPrefix(String prefix) {
 		}
 
-		@Override
-		public void put(String url, Node node) {
-			cache.put(url, node);
+		/**
+		 * @return the maximum body length of an entry in bytes
+		 */
+		public long getMaxEntrySize() {
+			return Long.MAX_VALUE;
 		}
-	}
 
-	@MCElement(name="fileStore")
-	public static class FileStore extends Store {
-		private String dir;
+		/**
+		 * Starts storing an entry whose body is passed to the returned writer while it is received. The default
+		 * implementation collects the body in memory.
+		 *
+		 * @param entry
+		 *            the entry without its body, see {@link CacheEntry#create(Response, long, long)}
+		 */
+		public EntryWriter openEntry(String key, CacheEntry entry) throws IOException {
+			return new BufferingEntryWriter(this, key, entry);
+		}
 
-		public String getDir() {
-			return dir;
+		/**
+		 * @return the number of bytes stored
+		 */
+		public long getSize() {
+			return 0;
 		}
 
-		@MCAttribute
-		public void setDir(String dir) {
-			this.dir = dir;
+		public long getEntryCount() {
+			return 0;
+		}
+
+		public long getEvictions() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Receives the body of a new entry. The entry is only stored by {@link #commit(long)}.
+	 */
+	public static abstract class EntryWriter {
+		public abstract void write(byte[] buffer, int offset, int length) throws IOException;
+
+		/**
+		 * Stores the entry.
+		 */
+		public abstract void commit(long bodyLength);
+
+		/**
+		 * Discards the entry.
+		 */
+		public abstract void abort();
+	}
+
+	private static class BufferingEntryWriter extends EntryWriter {
+		private final Store store;
+		private final String key;
+		private final CacheEntry entry;
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		BufferingEntryWriter(Store store, String key, CacheEntry entry) {
+			this.store = store;
+			this.key = key;
+			this.entry = entry;
 		}
 
 		@Override
-		public void init(Router router) {
-			dir = ResolverMap.combine(router.getBaseLocation(), dir);
-			File d = new File(dir);
-			if (!d.exists())
-				if (!d.mkdirs())
-					throw new RuntimeException("Could not create directory " + dir);
-		}
-
-		private String encode(String url) {
-			String res = Base64.encodeBase64String(url.getBytes(Constants.UTF_8_CHARSET));
-			if (res.length() > 120) {
-				res = res.substring(0, 100) + "-" + res.hashCode();
-			}
-			return res;
+		public void write(byte[] buffer, int offset, int length) {
+			body.write(buffer, offset, length);
 		}
 
 		@Override
-		public Node get(String url) {
-			File f = new File(dir, encode(url));
-			if (!f.exists())
-				return null;
-			try {
-				FileInputStream fis = new FileInputStream(f);
-				try {
-					return (Node) new ObjectInputStream(fis).readObject();
-				} finally {
-					fis.close();
-				}
-			} catch (Exception e) {
-				log.warn("", e);
-				return null;
-			}
+		public void commit(long bodyLength) {
+			store.put(key, entry.withContent(body.toByteArray()));
 		}
 
 		@Override
-		public void put(String url, Node node) {
-			File f = new File(dir, encode(url));
-			try {
-				FileOutputStream fos = new FileOutputStream(f);
-				try {
-					ObjectOutputStream oos = new ObjectOutputStream(fos);
-					oos.writeObject(node);
-					oos.close();
-				} finally {
-					fos.close();
-				}
-			} catch (Exception e) {
-				log.warn("", e);
-			}
+		public void abort() {
 		}
 	}
 
+	public CacheInterceptor() {
+		name = "Cache";
+	}
+
 	public Store getStore() {
 		return store;
 	}
@@ -163,23 +211,25 @@ public class CacheInterceptor extends AbstractInterceptor {
 		this.store = store;
 	}
 
+	public long getCoalescingTimeout() {
+		return coalescingTimeout;
+	}
+
+	/**
+	 * @description How long (in milliseconds) a request waits for a concurrent request for the same response to
+	 *              complete, before it is forwarded itself. 0 disables coalescing.
+	 * @default 10000
+	 */
+	@MCAttribute
+	public void setCoalescingTimeout(long coalescingTimeout) {
+		this.coalescingTimeout = coalescingTimeout;
+	}
+
 	@Override
 	public void init(Router router) throws Exception {
 		store.init(router);
 	}
 
-	/*
-	 * HTTP/1.1 200 OK
-	 * Date: Tue, 10 Mar 2015 13:10:30 GMT
-	 * Server: ATS/5.1.1
-	 * Last-Modified: Thu, 08 May 2014 14:20:33 GMT
-	 * ETag: "a841adf-3a5-4f8e42f154e40"
-	 * Accept-Ranges: bytes
-	 * Content-Length: 933
-	 * Age: 13570
-	 * Connection: keep-alive
-	 */
-
 	static String toRFC(long timestamp) {
 		SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
 		dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -195,150 +245,488 @@ public class CacheInterceptor extends AbstractInterceptor {
 
 	@Override
 	public Outcome handleRequest(Exchange exc) throws Exception {
-		String dest = exc.getDestinations().get(0);
-		Node node = store.get(dest);
-		if (node != null && node.canSatisfy(exc.getRequest())) {
-			exc.setResponse(node.toResponse(exc.getRequest()));
+		Request request = exc.getRequest();
+		String key = exc.getDestinations().get(0);
+		exc.setProperty(KEY, key);
+		exc.setProperty(REQUEST_TIME, System.currentTimeMillis());
+		if (!request.isGETRequest() && !request.isHEADRequest())
+			return Outcome.CONTINUE;
+
+		CacheControl cc = CacheControl.parse(request.getHeader());
+		CacheEntry entry = lookup(key, request);
+		if (entry != null && canServe(entry, cc, System.currentTimeMillis())) {
+			if (serve(exc, key, entry))
+				return Outcome.RETURN;
+			entry = null;
+		}
+		if (cc.onlyIfCached) {
+			exc.setResponse(Response.gatewayTimeout("The response is not cached.").build());
 			return Outcome.RETURN;
 		}
 
-		if (canCache(exc.getRequest(), true)) {
-			// simplify request to allow caching
-			exc.getRequest().getHeader().removeFields(Header.IF_MODIFIED_SINCE);
+		if (coalescingTimeout > 0 && request.isGETRequest()) {
+			CountDownLatch latch = new CountDownLatch(1);
+			CountDownLatch running = inFlight.putIfAbsent(key, latch);
+			if (running == null) {
+				exc.setProperty(COALESCING_LATCH, latch);
+			} else {
+				waiting.incrementAndGet();
+				try {
+					if (!running.await(coalescingTimeout, TimeUnit.MILLISECONDS))
+						inFlight.remove(key, running);
+				} finally {
+					waiting.decrementAndGet();
+				}
+				entry = lookup(key, request);
+				if (entry != null && canServe(entry, cc, System.currentTimeMillis())) {
+					if (serve(exc, key, entry)) {
+						coalesced.increment();
+						return Outcome.RETURN;
+					}
+					entry = null;
+				}
+			}
+		}
+
+		misses.increment();
+		if (entry != null && entry.hasValidators() && request.isGETRequest())
+			addConditions(exc, entry);
+		return Outcome.CONTINUE;
+	}
+
+	private CacheEntry lookup(String key, Request request) {
+		CacheEntry entry = store.get(key);
+		if (entry == null || !entry.isVaryMarker())
+			return entry;
+		return store.get(entry.getVariantKey(key, request));
+	}
+
+	/**
+	 * @return the key the response to the request is stored under
+	 */
+	private String getStorageKey(String key, Request request) {
+		CacheEntry marker = store.get(key);
+		return marker == null || !marker.isVaryMarker() ? key : marker.getVariantKey(key, request);
+	}
+
+	/**
+	 * @return whether the entry may be served without revalidation, see RFC 7234 sections 4.2.4 and 5.2.1
+	 */
+	private boolean canServe(CacheEntry entry, CacheControl request, long now) {
+		if (request.noCache || entry.getCacheControl().noCache)
+			return false;
+		long age = entry.getCurrentAge(now);
+		long lifetime = entry.getFreshnessLifetime();
+		if (request.maxAge >= 0 && age > request.maxAge * 1000)
+			return false;
+		if (request.minFresh >= 0 && lifetime - age < request.minFresh * 1000)
+			return false;
+		if (lifetime > age)
+			return true;
+		// stale
+		if (entry.getCacheControl().mustRevalidate || entry.getCacheControl().sMaxAge >= 0 || request.maxStale < 0)
+			return false;
+		return request.maxStale == Long.MAX_VALUE || age - lifetime <= request.maxStale * 1000;
+	}
+
+	/**
+	 * Replaces the client's conditions by the stored validators. The client's conditions are evaluated when the
+	 * response is served.
+	 */
+	private void addConditions(Exchange exc, CacheEntry entry) {
+		Header header = exc.getRequest().getHeader();
+		exc.setProperty(STALE_ENTRY, entry);
+		exc.setProperty(CLIENT_IF_NONE_MATCH, header.getFirstValue(Header.IF_NONE_MATCH));
+		exc.setProperty(CLIENT_IF_MODIFIED_SINCE, header.getFirstValue(Header.IF_MODIFIED_SINCE));
+		header.removeFields(Header.IF_NONE_MATCH);
+		header.removeFields(Header.IF_MODIFIED_SINCE);
+		if (entry.getETag() != null)
+			header.add(Header.IF_NONE_MATCH, entry.getETag());
+		String lastModified = entry.getHeader().getFirstValue(Header.LAST_MODIFIED);
+		if (lastModified != null)
+			header.add(Header.IF_MODIFIED_SINCE, lastModified);
+	}
+
+	/**
+	 * @return whether the response has been set. If the entry's body cannot be read, the entry is removed.
+	 */
+	private boolean serve(Exchange exc, String key, CacheEntry entry) {
+		Response response;
+		try {
+			response = toResponse(exc, entry, exc.getRequest().getHeader().getFirstValue(Header.IF_NONE_MATCH),
+					exc.getRequest().getHeader().getFirstValue(Header.IF_MODIFIED_SINCE));
+		} catch (IOException e) {
+			// the file might have been evicted or replaced since the lookup
+			log.debug("Could not read cached body.", e);
+			store.remove(getStorageKey(key, exc.getRequest()), entry);
+			return false;
+		}
+		hits.increment();
+		exc.setResponse(response);
+		return true;
+	}
+
+	Response toResponse(Exchange exc, CacheEntry entry, String ifNoneMatch, String ifModifiedSince) throws IOException {
+		Response response = new Response();
+		Header header = new Header(entry.getHeader());
+		header.setContentLength(entry.getBodyLength());
+		header.setValue(Header.AGE, Long.toString(entry.getCurrentAge(System.currentTimeMillis()) / 1000));
+		response.setHeader(header);
+
+		if (entry.getStatus() == 200 && isNotModified(entry, ifNoneMatch, ifModifiedSince)) {
+			response.setStatusCode(304);
+			response.setStatusMessage("Not Modified");
+			// only keep the fields listed in RFC 7232 section 4.1
+			for (HeaderField field : header.getAllHeaderFields()) {
+				String name = field.getHeaderName().toString().toLowerCase(Locale.US);
+				if (!name.equals("cache-control") && !name.equals("content-location") && !name.equals("date")
+						&& !name.equals("etag") && !name.equals("expires") && !name.equals("vary")
+						&& !name.equals("last-modified") && !name.equals("age"))
+					header.remove(field);
+			}
+			return response;
 		}
 
-		return super.handleRequest(exc);
+		response.setStatusCode(entry.getStatus());
+		response.setStatusMessage(entry.getStatusMessage());
+		if (exc.getRequest().isHEADRequest())
+			return response;
+		if (entry.getContent() != null) {
+			response.setBody(new Body(entry.getContent()));
+		} else {
+			InputStream in = entry.openBody();
+			response.setBody(new Body(in, entry.getBodyLength()));
+			response.addObserver(new StreamClosingObserver(in));
+		}
+		bytesServed.add(entry.getBodyLength());
+		return response;
 	}
 
+	private static class StreamClosingObserver extends AbstractMessageObserver implements NonRelevantBodyObserver {
+		private final InputStream stream;
 
+		StreamClosingObserver(InputStream stream) {
+			this.stream = stream;
+		}
+
+		@Override
+		public void bodyComplete(AbstractBody body) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				log.warn("Could not close cached body.", e);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates the conditions of the client's request, see RFC 7232 section 6.
+	 */
+	private static boolean isNotModified(CacheEntry entry, String ifNoneMatch, String ifModifiedSince) {
+		if (ifNoneMatch != null) {
+			if (ifNoneMatch.trim().equals("*"))
+				return true;
+			String etag = entry.getETag();
+			if (etag == null)
+				return false;
+			for (String tag : ifNoneMatch.split(","))
+				if (weakTag(tag).equals(weakTag(etag)))
+					return true;
+			return false;
+		}
+		if (ifModifiedSince != null) {
+			long lastModified = CacheEntry.parseDate(entry.getHeader().getFirstValue(Header.LAST_MODIFIED), -1);
+			long since = CacheEntry.parseDate(ifModifiedSince, -1);
+			return lastModified != -1 && since != -1 && lastModified <= since;
+		}
+		return false;
+	}
+
+	private static String weakTag(String tag) {
+		tag = tag.trim();
+		return tag.startsWith("W/") ? tag.substring(2) : tag;
+	}
 
 	@Override
 	public Outcome handleResponse(Exchange exc) throws Exception {
 		try {
-			if (canCache(exc.getRequest(), false)) {
-				if (canCache(exc.getResponse(), true)) {
-					String dest = exc.getDestinations().get(0);
-					switch (exc.getResponse().getStatusCode()) {
-					case 200:
-						store.put(dest, new PositiveNode(exc));
-						break;
-					case 401:
-					case 404:
-						store.put(dest, new NegativeNode(exc));
-						break;
-					case 301:
-					case 302:
-					case 307:
-						store.put(dest, new PositiveNode(exc));
-						break;
-					default:
-						log.warn("Could not cache HTTP response because of its status code " + exc.getResponse().getStatusCode() + ".");
-						break;
-					}
-				}
-			}
+			handleResponseInternal(exc);
 		} catch (Exception e) {
 			log.warn("Exception during cache handling.", e);
+		} finally {
+			releaseLatch(exc);
 		}
+		return Outcome.CONTINUE;
+	}
 
-		// we drop some headers so the client does not get the idea we support
-		// any fancy HTTP features
-		// TODO: check whether dropping these headers is valid
-		exc.getResponse().getHeader().removeFields(name);
-		exc.getResponse().getHeader().removeFields("ETag");
-		exc.getResponse().getHeader().removeFields("Accept-Ranges");
-		exc.getResponse().getHeader().removeFields("Age");
-		exc.getResponse().getHeader().removeFields("Connection");
-		exc.getResponse().getHeader().removeFields("Vary");
-		exc.getResponse().getHeader().removeFields("Expires");
-		exc.getResponse().getHeader().removeFields("Cache-Control");
-
-
-		return super.handleResponse(exc);
-	}
-
-	private boolean force = true;
-
-	private HashSet<String> allowedRequestHeaders = new HashSet<String>();
-	private HashSet<String> allowedResponseHeaders = new HashSet<String>();
-
-	{
-		allowedRequestHeaders.add("host");
-		allowedRequestHeaders.add("cache-control");
-		allowedRequestHeaders.add("if-modified-since");
-		allowedRequestHeaders.add("user-agent");
-		allowedRequestHeaders.add("accept");
-		if (force) {
-			allowedRequestHeaders.add("accept-encoding");
-			allowedRequestHeaders.add("authorization");
-			allowedRequestHeaders.add("pragma");
-		}
-		allowedRequestHeaders.add("referer");
-
-		allowedResponseHeaders.add("date");
-		allowedResponseHeaders.add("server");
-		allowedResponseHeaders.add("last-modified");
-		allowedResponseHeaders.add("etag");
-		allowedResponseHeaders.add("accept-ranges");
-		allowedResponseHeaders.add("content-length");
-		allowedResponseHeaders.add("age");
-		allowedResponseHeaders.add("connection");
-		allowedResponseHeaders.add("vary");
-		allowedResponseHeaders.add("content-type");
-		allowedResponseHeaders.add("expires");
-		allowedResponseHeaders.add("cache-control");
-		allowedResponseHeaders.add("location");
-		allowedResponseHeaders.add("link");
-		allowedResponseHeaders.add("transfer-encoding");
-		allowedResponseHeaders.add("status");
-		allowedResponseHeaders.add("content-disposition");
-		allowedResponseHeaders.add("content-security-policy");
-		allowedResponseHeaders.add("strict-transport-security");
-		allowedResponseHeaders.add("via");
-		allowedResponseHeaders.add("fastly-debug-digest");
-		allowedResponseHeaders.add("access-control-allow-origin");
-
-		if (force) {
-			allowedResponseHeaders.add("set-cookie");
-			allowedResponseHeaders.add("docker-distribution-api-version");
-			allowedResponseHeaders.add("www-authenticate");
-			allowedResponseHeaders.add("docker-content-digest");
-			allowedResponseHeaders.add("cookie");
-		}
-	}
-
-	private boolean canCache(Request request, boolean emitWarning) {
-		for (HeaderField header : request.getHeader().getAllHeaderFields()) {
-			String headerName = header.getHeaderName().toString().toLowerCase(Locale.US);
-			if (headerName.startsWith("x-"))
-				continue;
-			if (!allowedRequestHeaders.contains(headerName)) {
-				if (headerName.equals("connection") && Header.CLOSE.equals(header.getValue().toLowerCase(Locale.US)))
-					continue;
-				if (headerName.equals("connection") && "keep-alive".equals(header.getValue().toLowerCase(Locale.US)))
-					continue;
-				if (headerName.equals("accept-encoding") && "identity".equals(header.getValue().toLowerCase(Locale.US)))
-					continue;
-				if (emitWarning)
-					log.warn("Could not cache request because of '" + header.getHeaderName() + "' header:\n" + request.getStartLine() + request.getHeader());
-				return false;
+	private void handleResponseInternal(Exchange exc) throws Exception {
+		Request request = exc.getRequest();
+		Response response = exc.getResponse();
+		String key = (String) exc.getProperty(KEY);
+		if (key == null || response == null)
+			return;
+		int status = response.getStatusCode();
+
+		if (!request.isGETRequest()) {
+			// unsafe methods invalidate the stored responses, see RFC 7234 section 4.4
+			if (!request.isHEADRequest() && !Request.METHOD_OPTIONS.equals(request.getMethod())
+					&& !Request.METHOD_TRACE.equals(request.getMethod()) && status >= 200 && status < 400) {
+				invalidate(key);
+				invalidate(key, response.getHeader().getFirstValue(Header.LOCATION));
+				invalidate(key, response.getHeader().getFirstValue(Header.CONTENT_LOCATION));
 			}
+			return;
 		}
-		return true;
+
+		long requestTime = (Long) exc.getProperty(REQUEST_TIME);
+		long responseTime = System.currentTimeMillis();
+
+		CacheEntry stale = (CacheEntry) exc.getProperty(STALE_ENTRY);
+		if (stale != null && status == 304) {
+			revalidations.increment();
+			CacheEntry entry = stale.revalidate(response, requestTime, responseTime);
+			put(key, request, entry);
+			exc.setResponse(toResponse(exc, entry, (String) exc.getProperty(CLIENT_IF_NONE_MATCH),
+					(String) exc.getProperty(CLIENT_IF_MODIFIED_SINCE)));
+			return;
+		}
+
+		if (!isStorable(request, response))
+			return;
+		long maxLength = store.getMaxEntrySize();
+		long length = response.getHeader().hasContentLength() ? response.getHeader().getContentLength() : -1;
+		if (length > maxLength)
+			return;
+		AbstractBody body = response.getBody();
+		if (body.isRead()) {
+			byte[] content = body.getContent();
+			if (content.length > maxLength)
+				return;
+			CacheEntry entry = CacheEntry.create(response, content, requestTime, responseTime);
+			bytesStored.add(entry.getBodyLength());
+			put(key, request, entry);
+			return;
+		}
+
+		// the body is stored while it is forwarded: the waiting requests are released once it is complete
+		CacheEntry entry = CacheEntry.create(response, requestTime, responseTime);
+		EntryWriter writer = store.openEntry(prepareKey(key, request, entry), entry);
+		BodyStorer storer = new BodyStorer(key, takeLatch(exc), writer, length, maxLength);
+		body.addWriteListener(storer);
+		exc.addExchangeViewerListener(storer);
 	}
 
-	private boolean canCache(Response response, boolean emitWarning) {
-		for (HeaderField header : response.getHeader().getAllHeaderFields()) {
-			String headerName = header.getHeaderName().toString().toLowerCase(Locale.US);
-			if (headerName.startsWith("x-"))
-				continue;
-			if (!allowedResponseHeaders.contains(headerName)) {
-				if (emitWarning)
-					log.warn("Could not cache response because of '" + header.getHeaderName() + "' header:\n" + response.getStartLine() + response.getHeader());
-				return false;
+	/**
+	 * Removes the entry stored for the key, including all variants, if it is a vary marker.
+	 */
+	private void invalidate(String key) {
+		CacheEntry entry = store.get(key);
+		store.remove(key);
+		if (entry != null && entry.isVaryMarker())
+			store.removeByPrefix(CacheEntry.getVariantKeyPrefix(key));
+	}
+
+	/**
+	 * Invalidates the URI from a "Location" or "Content-Location" header field, if it has the same origin as the
+	 * request URI.
+	 */
+	private void invalidate(String key, String location) {
+		if (location == null)
+			return;
+		try {
+			URI base = new URI(key);
+			URI uri = base.resolve(location.trim());
+			if (base.getScheme() == null || !base.getScheme().equalsIgnoreCase(uri.getScheme())
+					|| base.getHost() == null || !base.getHost().equalsIgnoreCase(uri.getHost())
+					|| base.getPort() != uri.getPort())
+				return;
+			String target = uri.toString();
+			if (!target.equals(key))
+				invalidate(target);
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			log.debug("Could not parse " + location + ".");
+		}
+	}
+
+	private void put(String key, Request request, CacheEntry entry) {
+		store.put(prepareKey(key, request, entry), entry);
+	}
+
+	/**
+	 * Stores a vary marker for the key, if the entry varies.
+	 *
+	 * @return the key to store the entry under
+	 */
+	private String prepareKey(String key, Request request, CacheEntry entry) {
+		if (entry.getVaryNames().length == 0)
+			return key;
+		CacheEntry marker = store.get(key);
+		if (marker == null || !marker.isVaryMarker() || !Arrays.equals(marker.getVaryNames(), entry.getVaryNames())) {
+			marker = CacheEntry.createVaryMarker(entry.getVaryNames());
+			store.put(key, marker);
+		}
+		return marker.getVariantKey(key, request);
+	}
+
+	/**
+	 * Passes the body to the store's writer while it is forwarded to the client. The entry is discarded, if the
+	 * body exceeds the maximum length, or if the exchange finishes before the whole body has been forwarded.
+	 */
+	private class BodyStorer extends AbstractExchangeViewerListener implements BodyWriteListener {
+		private final String key;
+		private final CountDownLatch latch;
+		private final EntryWriter writer;
+		private final long expectedLength;
+		private final long maxLength;
+		private long length;
+		private boolean done;
+
+		BodyStorer(String key, CountDownLatch latch, EntryWriter writer, long expectedLength, long maxLength) {
+			this.key = key;
+			this.latch = latch;
+			this.writer = writer;
+			this.expectedLength = expectedLength;
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		public void written(byte[] buffer, int offset, int n) {
+			if (done)
+				return;
+			length += n;
+			if (length > maxLength) {
+				finish(false);
+				return;
+			}
+			try {
+				writer.write(buffer, offset, n);
+			} catch (IOException e) {
+				log.warn("Could not store response body.", e);
+				finish(false);
+			}
+		}
+
+		@Override
+		public void finished() {
+			if (!done)
+				finish(expectedLength == -1 || expectedLength == length);
+		}
+
+		@Override
+		public void setExchangeFinished() {
+			if (!done)
+				finish(false);
+		}
+
+		private void finish(boolean complete) {
+			done = true;
+			try {
+				if (complete) {
+					writer.commit(length);
+					bytesStored.add(length);
+				} else {
+					writer.abort();
+				}
+			} finally {
+				releaseLatch(key, latch);
 			}
 		}
+	}
+
+	/**
+	 * Determines whether a shared cache may store the response, see RFC 7234 section 3.
+	 */
+	private boolean isStorable(Request request, Response response) {
+		CacheControl requestCc = CacheControl.parse(request.getHeader());
+		CacheControl responseCc = CacheControl.parse(response.getHeader());
+		if (requestCc.noStore || responseCc.noStore || responseCc.isPrivate)
+			return false;
+		if (request.getHeader().getAuthorization() != null && !responseCc.isPublic && !responseCc.mustRevalidate
+				&& responseCc.sMaxAge < 0)
+			return false;
+		if (response.getHeader().getFirstValue(Header.SET_COOKIE) != null && !responseCc.isPublic)
+			return false;
+		for (String name : CacheEntry.getVaryNames(response.getHeader()))
+			if (name.equals("*"))
+				return false;
+		if (!CacheEntry.CACHEABLE_BY_DEFAULT.contains(response.getStatusCode())
+				&& !(responseCc.isExplicit() || response.getHeader().getFirstValue(Header.EXPIRES) != null)
+				|| response.getStatusCode() == 206 || response.getStatusCode() == 304)
+			return false;
 		return true;
 	}
 
+	@Override
+	public void handleAbort(Exchange exc) {
+		releaseLatch(exc);
+	}
+
+	private CountDownLatch takeLatch(Exchange exc) {
+		CountDownLatch latch = (CountDownLatch) exc.getProperty(COALESCING_LATCH);
+		exc.setProperty(COALESCING_LATCH, null);
+		return latch;
+	}
+
+	/**
+	 * Wakes up the requests waiting for this exchange's response.
+	 */
+	private void releaseLatch(Exchange exc) {
+		releaseLatch((String) exc.getProperty(KEY), takeLatch(exc));
+	}
+
+	private void releaseLatch(String key, CountDownLatch latch) {
+		if (latch == null)
+			return;
+		inFlight.remove(key, latch);
+		latch.countDown();
+	}
+
+	/**
+	 * @return the number of requests served from the store
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of GET and HEAD requests forwarded to the server
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of stale responses successfully revalidated
+	 */
+	public long getRevalidations() {
+		return revalidations.sum();
+	}
+
+	/**
+	 * @return the number of requests served after waiting for a concurrent request for the same response
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return the number of requests currently waiting for a concurrent request for the same response
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	public long getBytesServed() {
+		return bytesServed.sum();
+	}
+
+	public long getBytesStored() {
+		return bytesStored.sum();
+	}
+
+	@Override
+	public String getShortDescription() {
+		return "Caches responses following RFC 7234.";
+	}
+
 }
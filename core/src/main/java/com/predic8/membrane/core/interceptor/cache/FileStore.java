@@ -0,0 +1,575 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.annot.MCAttribute;
+import com.predic8.membrane.annot.MCElement;
+import com.predic8.membrane.core.Router;
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.HeaderField;
+import com.predic8.membrane.core.resolver.ResolverMap;
+import com.predic8.membrane.core.util.BufferPool;
+import com.predic8.membrane.core.util.ByteUtil;
+
+/**
+ * @description Stores responses in files, bounded by their total size. Recently used small responses are
+ *              additionally kept in memory.
+ * @explanation <p>
+ *              Each response is stored in a file of its own: a short binary head holding the request key, status
+ *              line and header fields is followed by the body as received. Bodies are written to the file while
+ *              they are forwarded to the client, and streamed from the file when serving a response. Complete
+ *              files are never modified: A new version of a response is written to a new file, replacing the old
+ *              one.
+ *              </p>
+ *              <p>
+ *              When the total size exceeds <i>maxSize</i>, the least recently used files are deleted.
+ *              </p>
+ */
+@MCElement(name="fileStore")
+public class FileStore extends CacheInterceptor.Store {
+
+	private static final Logger log = LoggerFactory.getLogger(FileStore.class.getName());
+
+	private static final int MAGIC = 0x4d434332; // "MCC2"
+	private static final String SUFFIX = ".cache";
+	private static final int MAX_HEAD_LENGTH = 1024 * 1024;
+
+	private static class FileItem {
+		final File file;
+		final long length;
+		volatile long lastAccess;
+
+		FileItem(File file, long length, long lastAccess) {
+			this.file = file;
+			this.length = length;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	private String dir;
+	private long maxSize = 1024L * 1024 * 1024;
+	private long maxEntrySize = 64 * 1024 * 1024;
+	private long memorySize = 16 * 1024 * 1024;
+
+	private File directory;
+	private InMemoryStore memory;
+	private final ConcurrentHashMap<String, FileItem> index = new ConcurrentHashMap<String, FileItem>();
+	private final AtomicLong size = new AtomicLong();
+	private final AtomicLong sequence = new AtomicLong();
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	/**
+	 * Files which could not be deleted yet, because they were still open (e.g. on Windows). They are counted in
+	 * the total size until their deletion is retried successfully.
+	 */
+	private final ConcurrentLinkedQueue<FileItem> undeleted = new ConcurrentLinkedQueue<FileItem>();
+	private final LongAdder evictions = new LongAdder();
+
+	public String getDir() {
+		return dir;
+	}
+
+	/**
+	 * @description The directory to store the responses in.
+	 * @example cache
+	 */
+	@MCAttribute
+	public void setDir(String dir) {
+		this.dir = dir;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @description The maximum total size of the files in bytes.
+	 * @default 1073741824
+	 */
+	@MCAttribute
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	@Override
+	public long getMaxEntrySize() {
+		return Math.min(maxEntrySize, maxSize);
+	}
+
+	/**
+	 * @description The maximum size of a single response body in bytes. Larger responses are not stored.
+	 * @default 67108864
+	 */
+	@MCAttribute
+	public void setMaxEntrySize(long maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+	}
+
+	public long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * @description The size of the memory tier in bytes (see inMemoryStore). 0 disables it.
+	 * @default 16777216
+	 */
+	@MCAttribute
+	public void setMemorySize(long memorySize) {
+		this.memorySize = memorySize;
+	}
+
+	@Override
+	public void init(Router router) {
+		init(ResolverMap.combine(router.getBaseLocation(), dir));
+	}
+
+	void init(String path) {
+		directory = new File(path);
+		if (!directory.exists())
+			if (!directory.mkdirs())
+				throw new RuntimeException("Could not create directory " + path);
+		if (memorySize > 0)
+			memory = new InMemoryStore(memorySize);
+		loadIndex();
+	}
+
+	/**
+	 * Reads the keys of the files left by a previous run.
+	 */
+	private void loadIndex() {
+		File[] files = directory.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			if (!f.getName().endsWith(SUFFIX))
+				continue;
+			try {
+				FileItem item = new FileItem(f, f.length(), f.lastModified());
+				FileItem old = index.put(readEntry(f).key, item);
+				size.addAndGet(item.length);
+				if (old != null)
+					delete(old);
+			} catch (IOException e) {
+				log.warn("Deleting unreadable cache file " + f + ".");
+				if (!f.delete())
+					log.warn("Could not delete " + f + ".");
+			}
+		}
+		evictIfNecessary();
+	}
+
+	@Override
+	public CacheEntry get(String key) {
+		if (memory != null) {
+			CacheEntry entry = memory.get(key);
+			if (entry != null)
+				return entry;
+		}
+		FileItem item = index.get(key);
+		if (item == null)
+			return null;
+		item.lastAccess = System.currentTimeMillis();
+		try {
+			CacheEntry entry = readEntry(item.file).entry;
+			if (memory != null && entry.getBodyLength() <= memory.getMaxEntrySize()) {
+				entry = entry.withContent(readBody(entry));
+				memory.put(key, entry);
+			}
+			return entry;
+		} catch (IOException e) {
+			// the file might have been replaced or evicted concurrently
+			log.debug("Could not read cache file " + item.file + ".", e);
+			return null;
+		}
+	}
+
+	@Override
+	public void put(String key, CacheEntry entry) {
+		File f = newFile();
+		try {
+			writeEntry(f, key, entry);
+		} catch (IOException e) {
+			log.warn("Could not write cache file " + f + ".", e);
+			deleteFile(f);
+			return;
+		}
+		add(key, f, entry.getContent() != null ? entry : null);
+	}
+
+	/**
+	 * Writes the head, leaving the body length open, and then the body as it is received. The body length is
+	 * filled in on commit: Until then, the file is invalid (see {@link #readEntry(File)}).
+	 */
+	@Override
+	public CacheInterceptor.EntryWriter openEntry(final String key, CacheEntry entry) throws IOException {
+		final File f = newFile();
+		final OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+		final int headLength;
+		try {
+			ByteArrayOutputStream head = writeHead(key, entry, -1);
+			headLength = head.size();
+			new DataOutputStream(out).writeInt(headLength);
+			head.writeTo(out);
+		} catch (IOException e) {
+			out.close();
+			deleteFile(f);
+			throw e;
+		}
+		return new CacheInterceptor.EntryWriter() {
+			@Override
+			public void write(byte[] buffer, int offset, int length) throws IOException {
+				out.write(buffer, offset, length);
+			}
+
+			@Override
+			public void commit(long bodyLength) {
+				try {
+					out.close();
+					RandomAccessFile raf = new RandomAccessFile(f, "rw");
+					try {
+						raf.seek(4 + headLength - 8);
+						raf.writeLong(bodyLength);
+					} finally {
+						raf.close();
+					}
+				} catch (IOException e) {
+					log.warn("Could not write cache file " + f + ".", e);
+					deleteFile(f);
+					return;
+				}
+				add(key, f, null);
+			}
+
+			@Override
+			public void abort() {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// ignore
+				}
+				deleteFile(f);
+			}
+		};
+	}
+
+	private File newFile() {
+		return new File(directory, Long.toString(System.currentTimeMillis(), 36) + "-" + sequence.incrementAndGet() + SUFFIX);
+	}
+
+	private static void deleteFile(File f) {
+		if (f.exists() && !f.delete())
+			log.warn("Could not delete " + f + ".");
+	}
+
+	/**
+	 * Makes the completely written file the current one for the key.
+	 *
+	 * @param entry
+	 *            the entry including its body to put into the memory tier, or null
+	 */
+	private void add(String key, File f, CacheEntry entry) {
+		FileItem item = new FileItem(f, f.length(), System.currentTimeMillis());
+		size.addAndGet(item.length);
+		FileItem old = index.put(key, item);
+		if (old != null)
+			delete(old);
+		if (memory != null) {
+			if (entry != null)
+				memory.put(key, entry);
+			else
+				memory.remove(key);
+		}
+		evictIfNecessary();
+	}
+
+	@Override
+	public void remove(String key) {
+		if (memory != null)
+			memory.remove(key);
+		FileItem old = index.remove(key);
+		if (old != null)
+			delete(old);
+	}
+
+	@Override
+	public void remove(String key, CacheEntry entry) {
+		if (entry.getFile() == null) {
+			remove(key);
+			return;
+		}
+		FileItem item = index.get(key);
+		if (item != null && item.file.equals(entry.getFile()) && index.remove(key, item)) {
+			if (memory != null)
+				memory.remove(key);
+			delete(item);
+		}
+	}
+
+	@Override
+	public void removeByPrefix(String prefix) {
+		if (memory != null)
+			memory.removeByPrefix(prefix);
+		for (Map.Entry<String, FileItem> e : index.entrySet())
+			if (e.getKey().startsWith(prefix) && index.remove(e.getKey(), e.getValue()))
+				delete(e.getValue());
+	}
+
+	/**
+	 * Deletes the file of an item removed from the index, or queues it to be retried later.
+	 */
+	private void delete(FileItem item) {
+		if (!tryDelete(item)) {
+			log.debug("Could not delete " + item.file + " yet.");
+			undeleted.add(item);
+		}
+	}
+
+	/**
+	 * On POSIX systems, open streams still read the file's content: it is only unlinked.
+	 *
+	 * @return whether the file has been deleted
+	 */
+	private boolean tryDelete(FileItem item) {
+		if (!item.file.delete() && item.file.exists())
+			return false;
+		size.addAndGet(-item.length);
+		return true;
+	}
+
+	/**
+	 * Deletes the least recently used files until the total size is below 90% of the maximum. Only one thread
+	 * evicts at a time.
+	 */
+	private void evictIfNecessary() {
+		if (size.get() <= maxSize && undeleted.isEmpty() || !evictionLock.tryLock())
+			return;
+		try {
+			for (Iterator<FileItem> it = undeleted.iterator(); it.hasNext();)
+				if (tryDelete(it.next()))
+					it.remove();
+			if (size.get() <= maxSize)
+				return;
+			List<Map.Entry<String, FileItem>> items = new ArrayList<Map.Entry<String, FileItem>>(index.entrySet());
+			Collections.sort(items, new Comparator<Map.Entry<String, FileItem>>() {
+				@Override
+				public int compare(Map.Entry<String, FileItem> o1, Map.Entry<String, FileItem> o2) {
+					return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+				}
+			});
+			long target = maxSize / 10 * 9;
+			for (Map.Entry<String, FileItem> e : items) {
+				if (size.get() <= target)
+					break;
+				if (index.remove(e.getKey(), e.getValue())) {
+					if (memory != null)
+						memory.remove(e.getKey());
+					delete(e.getValue());
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	private static class KeyedEntry {
+		final String key;
+		final CacheEntry entry;
+
+		KeyedEntry(String key, CacheEntry entry) {
+			this.key = key;
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * Writes the head (prefixed by its length) followed by the body.
+	 */
+	private void writeEntry(File f, String key, CacheEntry entry) throws IOException {
+		ByteArrayOutputStream head = writeHead(key, entry, entry.getBodyLength());
+		OutputStream fos = new BufferedOutputStream(new FileOutputStream(f));
+		try {
+			DataOutputStream dos = new DataOutputStream(fos);
+			dos.writeInt(head.size());
+			head.writeTo(dos);
+			if (entry.getContent() != null) {
+				dos.write(entry.getContent());
+			} else {
+				InputStream in = entry.openBody();
+				try {
+					copy(in, dos, entry.getBodyLength());
+				} finally {
+					in.close();
+				}
+			}
+			dos.flush();
+		} finally {
+			fos.close();
+		}
+	}
+
+	/**
+	 * @return the head, ending with the body length
+	 */
+	private static ByteArrayOutputStream writeHead(String key, CacheEntry entry, long bodyLength) throws IOException {
+		ByteArrayOutputStream head = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(head);
+		out.writeInt(MAGIC);
+		writeString(out, key);
+		out.writeInt(entry.getStatus());
+		writeString(out, entry.getStatusMessage() == null ? "" : entry.getStatusMessage());
+		out.writeLong(entry.getRequestTime());
+		out.writeLong(entry.getResponseTime());
+		out.writeInt(entry.getVaryNames().length);
+		for (String name : entry.getVaryNames())
+			writeString(out, name);
+		HeaderField[] fields = entry.getHeader().getAllHeaderFields();
+		out.writeInt(fields.length);
+		for (HeaderField field : fields) {
+			writeString(out, field.getHeaderName().toString());
+			writeString(out, field.getValue());
+		}
+		out.writeLong(bodyLength);
+		out.close();
+		if (head.size() > MAX_HEAD_LENGTH)
+			throw new IOException("The header of the response is too large to be stored.");
+		return head;
+	}
+
+	/**
+	 * Writes the string as length-prefixed UTF-8: {@link DataOutputStream#writeUTF(String)} is limited to 64KB.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > in.available())
+			throw new IOException("Invalid string length " + length + ".");
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void copy(InputStream in, OutputStream out, long length) throws IOException {
+		byte[] buffer = BufferPool.BODY.acquire();
+		try {
+			while (length > 0) {
+				int n = in.read(buffer, 0, (int) Math.min(buffer.length, length));
+				if (n < 0)
+					throw new IOException("Unexpected end of stream.");
+				out.write(buffer, 0, n);
+				length -= n;
+			}
+		} finally {
+			BufferPool.BODY.release(buffer);
+		}
+	}
+
+	private static KeyedEntry readEntry(File f) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(f));
+		try {
+			int headLength = in.readInt();
+			if (headLength < 0 || headLength > MAX_HEAD_LENGTH)
+				throw new IOException("Invalid cache file " + f + ".");
+			byte[] head = new byte[headLength];
+			in.readFully(head);
+			DataInputStream h = new DataInputStream(new ByteArrayInputStream(head));
+			if (h.readInt() != MAGIC)
+				throw new IOException("Invalid cache file " + f + ".");
+			String key = readString(h);
+			int status = h.readInt();
+			String statusMessage = readString(h);
+			long requestTime = h.readLong();
+			long responseTime = h.readLong();
+			String[] varyNames = new String[h.readInt()];
+			for (int i = 0; i < varyNames.length; i++)
+				varyNames[i] = readString(h);
+			Header header = new Header();
+			int fields = h.readInt();
+			for (int i = 0; i < fields; i++)
+				header.add(readString(h), readString(h));
+			long bodyLength = h.readLong();
+			if (bodyLength < 0 || f.length() != 4 + headLength + bodyLength)
+				throw new IOException("Truncated cache file " + f + ".");
+			return new KeyedEntry(key, new CacheEntry(status, statusMessage, header, varyNames, requestTime, responseTime,
+					null, f, 4 + headLength, bodyLength));
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] readBody(CacheEntry entry) throws IOException {
+		InputStream in = entry.openBody();
+		try {
+			return ByteUtil.readByteArray(in, (int) entry.getBodyLength());
+		} finally {
+			in.close();
+		}
+	}
+
+	@Override
+	public long getSize() {
+		return size.get();
+	}
+
+	@Override
+	public long getEntryCount() {
+		return index.size();
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return the memory tier, or null
+	 */
+	public InMemoryStore getMemory() {
+		return memory;
+	}
+
+}
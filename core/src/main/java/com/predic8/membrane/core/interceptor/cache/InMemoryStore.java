@@ -0,0 +1,270 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.predic8.membrane.annot.MCAttribute;
+import com.predic8.membrane.annot.MCElement;
+
+/**
+ * @description Stores responses in memory, bounded by their total size.
+ * @explanation <p>
+ *              Entries are evicted using the W-TinyLFU policy: New entries are put into a small LRU window. Entries
+ *              leaving the window are only admitted to the main area, if they were requested more frequently than
+ *              the entry which would be evicted in turn. This protects frequently requested responses against
+ *              being flushed out by a sequence of responses requested only once.
+ *              </p>
+ */
+@MCElement(name="inMemoryStore")
+public class InMemoryStore extends CacheInterceptor.Store {
+
+	private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+	private static class Item {
+		final String key;
+		final CacheEntry entry;
+		final long weight;
+		int queue;
+
+		Item(String key, CacheEntry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.weight = entry.getSize();
+		}
+	}
+
+	private long maxSize = 64 * 1024 * 1024;
+	private long maxEntrySize = 1024 * 1024;
+
+	private final ConcurrentHashMap<String, Item> data = new ConcurrentHashMap<String, Item>();
+
+	/**
+	 * Guards the policy state below. Reads only update it, if the lock is free: Dropping some of these updates
+	 * only makes the policy less accurate.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private FrequencySketch sketch;
+	@SuppressWarnings("unchecked")
+	private final LinkedHashMap<String, Item>[] queues = new LinkedHashMap[] {
+			new LinkedHashMap<String, Item>(), new LinkedHashMap<String, Item>(), new LinkedHashMap<String, Item>() };
+	private final long[] queueSizes = new long[3];
+	private volatile long size;
+
+	private final LongAdder evictions = new LongAdder();
+
+	public InMemoryStore() {
+		updateSketch();
+	}
+
+	public InMemoryStore(long maxSize) {
+		this.maxSize = maxSize;
+		updateSketch();
+	}
+
+	private void updateSketch() {
+		lock.lock();
+		try {
+			sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(1024, maxSize / 4096)));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public CacheEntry get(String key) {
+		Item item = data.get(key);
+		if (lock.tryLock()) {
+			try {
+				sketch.increment(key);
+				if (item != null && data.get(key) == item)
+					onHit(item);
+			} finally {
+				lock.unlock();
+			}
+		}
+		return item == null ? null : item.entry;
+	}
+
+	@Override
+	public void put(String key, CacheEntry entry) {
+		Item item = new Item(key, entry);
+		if (item.weight > maxEntrySize) {
+			remove(key);
+			return;
+		}
+		lock.lock();
+		try {
+			sketch.increment(key);
+			Item old = data.put(key, item);
+			if (old != null)
+				unlink(old);
+			link(item, WINDOW);
+			evict();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void remove(String key) {
+		lock.lock();
+		try {
+			Item old = data.remove(key);
+			if (old != null)
+				unlink(old);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void removeByPrefix(String prefix) {
+		lock.lock();
+		try {
+			for (Iterator<Item> it = data.values().iterator(); it.hasNext();) {
+				Item item = it.next();
+				if (item.key.startsWith(prefix)) {
+					it.remove();
+					unlink(item);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void link(Item item, int queue) {
+		item.queue = queue;
+		queues[queue].put(item.key, item);
+		queueSizes[queue] += item.weight;
+		size += item.weight;
+	}
+
+	private void unlink(Item item) {
+		queues[item.queue].remove(item.key);
+		queueSizes[item.queue] -= item.weight;
+		size -= item.weight;
+	}
+
+	private void onHit(Item item) {
+		unlink(item);
+		if (item.queue == PROBATION) {
+			link(item, PROTECTED);
+			// demote the least recently used protected entries
+			long protectedMax = getMainMax() * 4 / 5;
+			while (queueSizes[PROTECTED] > protectedMax) {
+				Item demoted = first(PROTECTED);
+				unlink(demoted);
+				link(demoted, PROBATION);
+			}
+		} else {
+			link(item, item.queue);
+		}
+	}
+
+	private Item first(int queue) {
+		Iterator<Item> it = queues[queue].values().iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+
+	private long getWindowMax() {
+		return Math.max(maxEntrySize, maxSize / 100);
+	}
+
+	private long getMainMax() {
+		return Math.max(0, maxSize - getWindowMax());
+	}
+
+	private void evict() {
+		while (queueSizes[WINDOW] > getWindowMax()) {
+			Item candidate = first(WINDOW);
+			unlink(candidate);
+			link(candidate, PROBATION);
+			admit(candidate);
+		}
+	}
+
+	/**
+	 * Lets the candidate, which has just left the window, compete with the least recently used entries of the
+	 * main area until everything fits.
+	 */
+	private void admit(Item candidate) {
+		while (queueSizes[PROBATION] + queueSizes[PROTECTED] > getMainMax()) {
+			Item victim = first(PROBATION);
+			if (victim == candidate)
+				victim = first(PROTECTED);
+			if (victim == null || sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+				evict(candidate);
+				return;
+			}
+			evict(victim);
+		}
+	}
+
+	private void evict(Item item) {
+		unlink(item);
+		data.remove(item.key, item);
+		evictions.increment();
+	}
+
+	@Override
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public long getEntryCount() {
+		return data.size();
+	}
+
+	@Override
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @description The maximum total size of the stored responses in bytes.
+	 * @default 67108864
+	 */
+	@MCAttribute
+	public void setMaxSize(long maxSize) {
+		this.maxSize = maxSize;
+		updateSketch();
+	}
+
+	@Override
+	public long getMaxEntrySize() {
+		return maxEntrySize;
+	}
+
+	/**
+	 * @description The maximum size of a single response in bytes. Larger responses are not stored.
+	 * @default 1048576
+	 */
+	@MCAttribute
+	public void setMaxEntrySize(long maxEntrySize) {
+		this.maxEntrySize = maxEntrySize;
+	}
+
+}
@@ -106,6 +106,13 @@ public class ConditionalInterceptor extends AbstractFlowInterceptor {
 		this.language = language;
 	}
 
+	/**
+	 * @return the compiled condition, null before {@link #init(Router)}
+	 */
+	public Function<Map<String, Object>, Boolean> getCondition() {
+		return condition;
+	}
+
 	public String getTest() {
 		return test;
 	}
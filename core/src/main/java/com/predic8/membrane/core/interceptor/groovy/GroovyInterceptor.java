@@ -128,6 +128,13 @@ public class GroovyInterceptor extends AbstractInterceptor {
 		}
 	}
 
+	/**
+	 * @return the compiled script, null before {@link #init()}
+	 */
+	public Function<Map<String, Object>, Object> getScript() {
+		return script;
+	}
+
 	public String getSrc() {
 		return src;
 	}
@@ -144,6 +144,13 @@ public class JavascriptInterceptor extends AbstractInterceptor {
         return result;
     }
 
+    /**
+     * @return the compiled script, null before {@link #init()}
+     */
+    public Function<Map<String, Object>, Object> getScript() {
+        return script;
+    }
+
     public String getSrc() {
         return src;
     }
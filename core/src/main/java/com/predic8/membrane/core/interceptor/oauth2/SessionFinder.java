@@ -19,54 +19,42 @@ import java.util.concurrent.ConcurrentHashMap;
 
 public class SessionFinder {
 
-    private ConcurrentHashMap<String, SessionManager.Session> authCodesToSession = new ConcurrentHashMap<String, SessionManager.Session>();
-    private ConcurrentHashMap<String, SessionManager.Session> tokensToSession = new ConcurrentHashMap<String, SessionManager.Session>();
+    private final ConcurrentHashMap<String, SessionManager.Session> authCodesToSession = new ConcurrentHashMap<String, SessionManager.Session>();
+    private final ConcurrentHashMap<String, SessionManager.Session> tokensToSession = new ConcurrentHashMap<String, SessionManager.Session>();
 
     public void addSessionForCode(String code, SessionManager.Session session){
-        synchronized (authCodesToSession) {
-            authCodesToSession.put(code, session);
-        }
+        authCodesToSession.put(code, session);
     }
 
     public void addSessionForToken(String token, SessionManager.Session session){
-        synchronized (tokensToSession){
-            tokensToSession.put(token,session);
-        }
+        tokensToSession.put(token,session);
     }
 
     public boolean hasSessionForCode(String code){
-        synchronized (authCodesToSession){
-            return authCodesToSession.containsKey(code);
-        }
+        return authCodesToSession.containsKey(code);
     }
 
     public boolean hasSessionForToken(String token){
-        synchronized (tokensToSession){
-            return tokensToSession.containsKey(token);
-        }
+        return tokensToSession.containsKey(token);
     }
 
     public SessionManager.Session getSessionForCode(String code){
-        synchronized(authCodesToSession){
-            return authCodesToSession.get(code);
-        }
+        return authCodesToSession.get(code);
     }
 
     public SessionManager.Session getSessionForToken(String token){
-        synchronized(tokensToSession){
-            return tokensToSession.get(token);
-        }
+        return tokensToSession.get(token);
     }
 
-    public void removeSessionForCode(String code){
-        synchronized(authCodesToSession){
-            authCodesToSession.remove(code);
-        }
+    /**
+     * @return the session the code belonged to, or null. Only one of several concurrent calls for the same code gets
+     * the session.
+     */
+    public SessionManager.Session removeSessionForCode(String code){
+        return authCodesToSession.remove(code);
     }
 
     public void removeSessionForToken(String token){
-        synchronized(tokensToSession){
-            tokensToSession.remove(token);
-        }
+        tokensToSession.remove(token);
     }
 }
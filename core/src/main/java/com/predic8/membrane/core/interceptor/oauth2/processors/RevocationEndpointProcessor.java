@@ -86,12 +86,8 @@ public class RevocationEndpointProcessor extends EndpointProcessor {
         synchronized(session) {
             session.clear();
         }
-        synchronized (authServer.getSessionManager()){
-            authServer.getSessionManager().removeSession(session);
-        }
-        synchronized (authServer.getSessionFinder()){
-            authServer.getSessionFinder().removeSessionForToken(params.get("token"));
-        }
+        authServer.getSessionManager().removeSession(session);
+        authServer.getSessionFinder().removeSessionForToken(params.get("token"));
         exc.setResponse(Response
                 .ok()
                 .bodyEmpty()
@@ -0,0 +1,130 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.oauth2.tokenvalidation;
+
+import java.io.IOException;
+import java.security.Key;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwx.JsonWebStructure;
+import org.jose4j.keys.resolvers.JwksVerificationKeyResolver;
+import org.jose4j.keys.resolvers.VerificationKeyResolver;
+import org.jose4j.lang.UnresolvableKeyException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.transport.http.HttpClient;
+
+/**
+ * Resolves the keys to verify JWT signatures from a JSON Web Key Set, which is downloaded from the authorization
+ * server and cached.
+ *
+ * The key set is refreshed every {@link #refreshInterval} milliseconds by a single request thread, while the others
+ * keep using the old keys. A signature using an unknown key triggers a refresh as well, as the authorization server
+ * might have rotated its keys, but at most every {@link #MIN_REFRESH_INTERVAL} milliseconds.
+ */
+class JwksKeyResolver implements VerificationKeyResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(JwksKeyResolver.class.getName());
+
+    static final long MIN_REFRESH_INTERVAL = 10 * 1000;
+
+    /**
+     * Thrown if the key set has never been loaded successfully: The token's key is not known to be wrong, it could
+     * just not be checked.
+     */
+    static class KeySetUnavailableException extends UnresolvableKeyException {
+        KeySetUnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final HttpClient client;
+    private final String url;
+    private final long refreshInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile JwksVerificationKeyResolver resolver;
+    /** in milliseconds since the epoch */
+    private volatile long nextRefresh;
+    private volatile long lastAttempt;
+
+    JwksKeyResolver(HttpClient client, String url, long refreshInterval) {
+        this.client = client;
+        this.url = url;
+        this.refreshInterval = refreshInterval;
+    }
+
+    @Override
+    public Key resolveKey(JsonWebSignature jws, List<JsonWebStructure> nestingContext) throws UnresolvableKeyException {
+        JwksVerificationKeyResolver current = resolver;
+        if (current == null || System.currentTimeMillis() >= nextRefresh)
+            current = refresh(current, current == null);
+        try {
+            return current.resolveKey(jws, nestingContext);
+        } catch (UnresolvableKeyException e) {
+            if (System.currentTimeMillis() - lastAttempt < MIN_REFRESH_INTERVAL)
+                throw e;
+            JwksVerificationKeyResolver refreshed = refresh(current, true);
+            if (refreshed == current)
+                throw e;
+            return refreshed.resolveKey(jws, nestingContext);
+        }
+    }
+
+    /**
+     * Downloads the key set, unless another thread did so since <code>seen</code> was read.
+     *
+     * @param wait whether to wait for a refresh running on another thread, or to return <code>seen</code>
+     */
+    private JwksVerificationKeyResolver refresh(JwksVerificationKeyResolver seen, boolean wait) throws UnresolvableKeyException {
+        if (wait)
+            lock.lock();
+        else if (!lock.tryLock())
+            return seen;
+        try {
+            if (resolver != seen)
+                return resolver;
+            if (seen == null && System.currentTimeMillis() < nextRefresh)
+                throw new KeySetUnavailableException("The JSON Web Key Set from " + url + " is not available.", null);
+            lastAttempt = System.currentTimeMillis();
+            try {
+                resolver = load();
+                nextRefresh = lastAttempt + refreshInterval;
+            } catch (Exception e) {
+                nextRefresh = lastAttempt + MIN_REFRESH_INTERVAL;
+                if (seen == null)
+                    throw new KeySetUnavailableException("Could not load the JSON Web Key Set from " + url + ".", e);
+                log.warn("Could not refresh the JSON Web Key Set from " + url + ", still using the old keys.", e);
+            }
+            return resolver;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private JwksVerificationKeyResolver load() throws Exception {
+        Exchange exc = client.call(new Request.Builder().get(url).buildExchange());
+        if (exc.getResponse().getStatusCode() != 200)
+            throw new IOException("Status code " + exc.getResponse().getStatusCode() + ".");
+        return new JwksVerificationKeyResolver(new JsonWebKeySet(exc.getResponse().getBodyAsStringDecoded()).getJsonWebKeys());
+    }
+}
@@ -13,6 +13,8 @@
 
 package com.predic8.membrane.core.interceptor.oauth2.tokenvalidation;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.predic8.membrane.annot.MCAttribute;
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.Router;
@@ -22,15 +24,44 @@ import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.interceptor.AbstractInterceptor;
 import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.interceptor.oauth2.tokenvalidation.TokenValidationCache.Validation;
 import com.predic8.membrane.core.transport.http.HttpClient;
-import org.springframework.beans.factory.annotation.Required;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
 
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
+/**
+ * @description Grants access to resources with valid access tokens.
+ * @explanation Tokens are validated by calling the <i>endpoint</i> of the authorization server, or, if
+ *              <i>jwksUrl</i> is set, JWTs are verified locally using the authorization server's keys. Validations
+ *              run concurrently. Their results are cached (never beyond the token's expiry), and concurrent requests
+ *              carrying the same token wait for a single validation.
+ * @topic 6. Security
+ */
 @MCElement(name="tokenValidator")
 public class OAuth2TokenValidatorInterceptor extends AbstractInterceptor {
 
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     private String endpoint;
+    private String jwksUrl;
+    private int jwksRefreshInterval = 3600;
+    private String issuer;
+    private String audience;
+
+    private final TokenValidationCache cache = new TokenValidationCache();
+    private JwtConsumer jwtConsumer;
+    private final AtomicLong remoteValidations = new AtomicLong();
+    private final AtomicLong localValidations = new AtomicLong();
 
     HttpClient client = new HttpClient();
 
@@ -38,6 +69,24 @@ public class OAuth2TokenValidatorInterceptor extends AbstractInterceptor {
     public void init(Router router) throws Exception {
         setFlow(Flow.Set.REQUEST);
         name = "Token validator";
+        if (endpoint == null && jwksUrl == null)
+            throw new Exception("tokenValidator requires 'endpoint' or 'jwksUrl' to be set.");
+        if (jwksUrl != null)
+            jwtConsumer = createJwtConsumer(new JwksKeyResolver(client, jwksUrl, jwksRefreshInterval * 1000L));
+    }
+
+    private JwtConsumer createJwtConsumer(JwksKeyResolver resolver) {
+        JwtConsumerBuilder builder = new JwtConsumerBuilder()
+                .setRequireExpirationTime()
+                .setAllowedClockSkewInSeconds(30)
+                .setVerificationKeyResolver(resolver);
+        if (issuer != null)
+            builder.setExpectedIssuer(issuer);
+        if (audience != null)
+            builder.setExpectedAudience(audience);
+        else
+            builder.setSkipDefaultAudienceValidation();
+        return builder.build();
     }
 
     @Override
@@ -47,41 +96,232 @@ public class OAuth2TokenValidatorInterceptor extends AbstractInterceptor {
 
     @Override
     public Outcome handleRequest(Exchange exc) throws Exception {
-        synchronized (client){
-            if(callExchangeAndCheckFor200(buildAccessTokenValidationExchange(exc)))
-                return Outcome.CONTINUE;
-        }
+        String authorization = getAuthorizationHeaderValue(exc);
+        if (authorization != null && cache.isValid(authorization, this::validate))
+            return Outcome.CONTINUE;
         setResponseToBadRequest(exc);
         return Outcome.RETURN;
     }
 
-    private boolean callExchangeAndCheckFor200(Exchange e) throws Exception {
-        return client.call(e).getResponse().getStatusCode() == 200;
+    private Validation validate(String authorization) throws Exception {
+        String jwt = getJwt(authorization);
+        if (jwtConsumer != null && jwt != null)
+            return validateLocally(jwt);
+        if (endpoint == null)
+            return Validation.INVALID;
+        return validateRemotely(authorization, jwt);
+    }
+
+    private Validation validateLocally(String jwt) {
+        localValidations.incrementAndGet();
+        try {
+            JwtClaims claims = jwtConsumer.processToClaims(jwt);
+            return Validation.valid(claims.getExpirationTime().getValueInMillis());
+        } catch (InvalidJwtException | MalformedClaimException e) {
+            // not being able to check the signature does not say anything about the token
+            return isKeySetUnavailable(e) ? Validation.FAILED : Validation.INVALID;
+        }
+    }
+
+    private static boolean isKeySetUnavailable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause())
+            if (t instanceof JwksKeyResolver.KeySetUnavailableException)
+                return true;
+        return false;
+    }
+
+    private Validation validateRemotely(String authorization, String jwt) throws Exception {
+        remoteValidations.incrementAndGet();
+        Response response = client.call(buildAccessTokenValidationExchange(authorization)).getResponse();
+        int status = response.getStatusCode();
+        if (status != 200) {
+            response.discardBody();
+            // an error of the authorization server does not say anything about the token
+            return status >= 500 ? Validation.FAILED : Validation.INVALID;
+        }
+        long expires = Long.MAX_VALUE;
+        if (response.isJSON())
+            expires = getExpiry(response.getBodyAsStringDecoded());
+        else
+            response.discardBody();
+        if (expires == Long.MAX_VALUE && jwt != null)
+            expires = getExpiry(new String(decode(jwt.split("\\.")[1]), StandardCharsets.UTF_8));
+        return Validation.valid(expires);
+    }
+
+    /**
+     * @return the "exp" claim of a JWT payload or token introspection response in milliseconds, or
+     * Long.MAX_VALUE if there is none
+     */
+    private static long getExpiry(String json) {
+        try {
+            JsonNode exp = objectMapper.readTree(json).get("exp");
+            if (exp == null || !exp.isNumber())
+                return Long.MAX_VALUE;
+            return exp.asLong() * 1000;
+        } catch (IOException | RuntimeException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * @return the bearer token, if it looks like a JWT (three parts, the payload being valid base64url)
+     */
+    private static String getJwt(String authorization) {
+        if (!authorization.regionMatches(true, 0, "Bearer ", 0, 7))
+            return null;
+        String token = authorization.substring(7).trim();
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 3 || decode(parts[1]) == null)
+            return null;
+        return token;
+    }
+
+    private static byte[] decode(String base64url) {
+        try {
+            return Base64.getUrlDecoder().decode(base64url);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 
     private void setResponseToBadRequest(Exchange exc) {
         exc.setResponse(new Response().badRequest().build());
     }
 
-    private Exchange buildAccessTokenValidationExchange(Exchange exc) throws URISyntaxException {
-        return new Request.Builder().get(endpoint).header(Header.AUTHORIZATION, getAuthorizationHeaderValue(exc)).buildExchange();
+    private Exchange buildAccessTokenValidationExchange(String authorization) throws URISyntaxException {
+        return new Request.Builder().get(endpoint).header(Header.AUTHORIZATION, authorization).buildExchange();
     }
 
     private String getAuthorizationHeaderValue(Exchange exc) {
         return exc.getRequest().getHeader().getFirstValue(Header.AUTHORIZATION);
     }
 
+    public long getRemoteValidations() {
+        return remoteValidations.get();
+    }
+
+    public long getLocalValidations() {
+        return localValidations.get();
+    }
+
+    public int getCachedTokens() {
+        return cache.size();
+    }
+
     public String getEndpoint() {
         return endpoint;
     }
 
     /**
      *
-     * @description the endpoint that validates the access token
+     * @description the endpoint that validates the access token. Required, unless jwksUrl is set.
      */
-    @Required
     @MCAttribute
     public void setEndpoint(String endpoint) {
         this.endpoint = endpoint;
     }
+
+    public String getJwksUrl() {
+        return jwksUrl;
+    }
+
+    /**
+     * @description the URL of the authorization server's JSON Web Key Set. If set, JWT access tokens are verified
+     *              locally instead of calling the endpoint.
+     * @example http://localhost:7000/oauth2/certs
+     */
+    @MCAttribute
+    public void setJwksUrl(String jwksUrl) {
+        this.jwksUrl = jwksUrl;
+    }
+
+    public int getJwksRefreshInterval() {
+        return jwksRefreshInterval;
+    }
+
+    /**
+     * @description the number of seconds after which the JSON Web Key Set is downloaded again. It is also
+     *              downloaded again when a token is signed with an unknown key.
+     * @default 3600
+     */
+    @MCAttribute
+    public void setJwksRefreshInterval(int jwksRefreshInterval) {
+        this.jwksRefreshInterval = jwksRefreshInterval;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * @description the expected "iss" claim of JWTs verified using jwksUrl.
+     */
+    @MCAttribute
+    public void setIssuer(String issuer) {
+        this.issuer = issuer;
+    }
+
+    public String getAudience() {
+        return audience;
+    }
+
+    /**
+     * @description the expected "aud" claim of JWTs verified using jwksUrl.
+     */
+    @MCAttribute
+    public void setAudience(String audience) {
+        this.audience = audience;
+    }
+
+    public LongSupplier getClock() {
+        return cache.getClock();
+    }
+
+    /**
+     * @param clock the time source in milliseconds since the epoch used to expire cached validations,
+     *              {@link System#currentTimeMillis()} by default
+     */
+    public void setClock(LongSupplier clock) {
+        cache.setClock(clock);
+    }
+
+    public int getCacheSize() {
+        return cache.getMaxEntries();
+    }
+
+    /**
+     * @description the maximum number of tokens whose validation result is cached.
+     * @default 10000
+     */
+    @MCAttribute
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxEntries(cacheSize);
+    }
+
+    public long getCacheTtl() {
+        return cache.getTtl() / 1000;
+    }
+
+    /**
+     * @description the number of seconds a valid token is cached (at most until it expires). 0 disables caching.
+     * @default 60
+     */
+    @MCAttribute
+    public void setCacheTtl(long cacheTtl) {
+        cache.setTtl(cacheTtl * 1000);
+    }
+
+    public long getNegativeCacheTtl() {
+        return cache.getNegativeTtl() / 1000;
+    }
+
+    /**
+     * @description the number of seconds a rejected token is cached.
+     * @default 10
+     */
+    @MCAttribute
+    public void setNegativeCacheTtl(long negativeCacheTtl) {
+        cache.setNegativeTtl(negativeCacheTtl * 1000);
+    }
 }
@@ -0,0 +1,181 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.oauth2.tokenvalidation;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the results of token validations.
+ *
+ * Holds at most {@link #getMaxEntries()} tokens. Valid tokens are cached for {@link #getTtl()} milliseconds, but
+ * never beyond their expiry. Rejected tokens are cached for {@link #getNegativeTtl()} milliseconds. Concurrent
+ * validations of the same token are coalesced: The first thread validates the token, the others wait for its
+ * result.
+ */
+class TokenValidationCache {
+
+    interface Validator {
+        Validation validate(String token) throws Exception;
+    }
+
+    /**
+     * The result of validating a token.
+     */
+    static class Validation {
+        static final Validation INVALID = new Validation(false, Long.MAX_VALUE, true);
+        /** the token could not be validated, e.g. because the authorization server failed */
+        static final Validation FAILED = new Validation(false, Long.MAX_VALUE, false);
+
+        final boolean valid;
+        /** in milliseconds since the epoch, or Long.MAX_VALUE if unknown */
+        final long expires;
+        final boolean cacheable;
+
+        private Validation(boolean valid, long expires, boolean cacheable) {
+            this.valid = valid;
+            this.expires = expires;
+            this.cacheable = cacheable;
+        }
+
+        static Validation valid(long expires) {
+            return new Validation(true, expires, true);
+        }
+    }
+
+    private static class Entry {
+        final CompletableFuture<Boolean> valid = new CompletableFuture<Boolean>();
+        /** in milliseconds since the epoch, set when the validation has completed */
+        volatile long expires = Long.MAX_VALUE;
+
+        boolean isExpired(long now) {
+            return expires != Long.MAX_VALUE && now - expires >= 0;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private int maxEntries = 10000;
+    private long ttl = 60 * 1000;
+    private long negativeTtl = 10 * 1000;
+    private LongSupplier clock = System::currentTimeMillis;
+
+    public boolean isValid(String token, Validator validator) throws Exception {
+        long now = clock.getAsLong();
+        while (true) {
+            Entry entry = entries.get(token);
+            if (entry != null && !entry.isExpired(now))
+                return join(entry);
+            Entry created = new Entry();
+            if (entry == null ? entries.putIfAbsent(token, created) != null : !entries.replace(token, entry, created))
+                continue;
+            if (entries.size() > maxEntries)
+                evict(now);
+            return validate(token, created, validator);
+        }
+    }
+
+    private boolean validate(String token, Entry entry, Validator validator) throws Exception {
+        Validation validation;
+        try {
+            validation = validator.validate(token);
+        } catch (Throwable t) {
+            entries.remove(token, entry);
+            entry.valid.completeExceptionally(t);
+            throw t;
+        }
+        if (validation.cacheable)
+            entry.expires = getExpiry(validation);
+        else
+            entries.remove(token, entry);
+        entry.valid.complete(validation.valid);
+        return validation.valid;
+    }
+
+    private long getExpiry(Validation validation) {
+        long now = clock.getAsLong();
+        long expires = now + (validation.valid ? ttl : negativeTtl);
+        return Math.min(expires, validation.expires);
+    }
+
+    private boolean join(Entry entry) throws Exception {
+        try {
+            return entry.valid.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
+        }
+    }
+
+    /**
+     * Removes expired entries, and then arbitrary entries, until the map is 10% below its limit.
+     */
+    private void evict(long now) {
+        int target = maxEntries - maxEntries / 10;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+            if (it.next().isExpired(now))
+                it.remove();
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext() && entries.size() > target; ) {
+            // entries still being validated are needed by the threads waiting for them
+            if (it.next().getValue().valid.isDone())
+                it.remove();
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    public void setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    public LongSupplier getClock() {
+        return clock;
+    }
+
+    /**
+     * @param clock the time source in milliseconds since the epoch, {@link System#currentTimeMillis()} by default
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+}
@@ -0,0 +1,157 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.prometheus;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * The body of a scrape in the Prometheus text format. Metric families are rendered one at a time, when the
+ * previous one has been read, so that the exposition is never held in memory as a whole.
+ *
+ * Names and label sets are expected to be valid already; only label values appended using
+ * {@link #appendLabelValue(String)} are escaped.
+ */
+class ExpositionStream extends InputStream {
+
+    private final ArrayDeque<Runnable> families = new ArrayDeque<>();
+
+    private byte[] buf = new byte[4096];
+    private int pos;
+    private int count;
+
+    /**
+     * @param family renders the family by calling the append methods of this stream
+     */
+    void addFamily(Runnable family) {
+        families.add(family);
+    }
+
+    private boolean fill() {
+        while (pos == count) {
+            Runnable family = families.poll();
+            if (family == null)
+                return false;
+            pos = 0;
+            count = 0;
+            family.run();
+        }
+        return true;
+    }
+
+    @Override
+    public int read() {
+        if (!fill())
+            return -1;
+        return buf[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+        int n = Math.min(len, count - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    private void ensureCapacity(int n) {
+        if (count + n > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(2 * buf.length, count + n));
+    }
+
+    ExpositionStream append(byte[] b) {
+        ensureCapacity(b.length);
+        System.arraycopy(b, 0, buf, count, b.length);
+        count += b.length;
+        return this;
+    }
+
+    ExpositionStream append(char c) {
+        ensureCapacity(1);
+        buf[count++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends a string consisting of US-ASCII characters only.
+     */
+    ExpositionStream append(String s) {
+        ensureCapacity(s.length());
+        for (int i = 0; i < s.length(); i++)
+            buf[count++] = (byte) s.charAt(i);
+        return this;
+    }
+
+    ExpositionStream append(long v) {
+        if (v == Long.MIN_VALUE)
+            return append(Long.toString(v));
+        ensureCapacity(20);
+        if (v < 0) {
+            buf[count++] = '-';
+            v = -v;
+        }
+        int start = count;
+        do {
+            buf[count++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a label value, escaping backslashes, double quotes and line feeds.
+     */
+    ExpositionStream appendLabelValue(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '"')
+                append('\\').append(c);
+            else if (c == '\n')
+                append("\\n");
+            else if (c < 0x80)
+                append(c);
+            else {
+                int codePoint = s.codePointAt(i);
+                append(new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8));
+                i += Character.charCount(codePoint) - 1;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the "# TYPE" line of a metric family.
+     */
+    ExpositionStream type(String name, String type) {
+        return append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
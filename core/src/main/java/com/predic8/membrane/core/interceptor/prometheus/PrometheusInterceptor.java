@@ -18,119 +18,407 @@ package com.predic8.membrane.core.interceptor.prometheus;
 
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.exchangestore.ElasticSearchExchangeStore;
+import com.predic8.membrane.core.exchangestore.ExchangeStore;
 import com.predic8.membrane.core.http.Header;
-import com.predic8.membrane.core.http.MimeType;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.HTTPClientInterceptor;
+import com.predic8.membrane.core.interceptor.Interceptor;
 import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.interceptor.cache.CacheInterceptor;
+import com.predic8.membrane.core.interceptor.flow.AbstractFlowInterceptor;
+import com.predic8.membrane.core.interceptor.flow.ConditionalInterceptor;
+import com.predic8.membrane.core.interceptor.groovy.GroovyInterceptor;
+import com.predic8.membrane.core.interceptor.javascript.JavascriptInterceptor;
+import com.predic8.membrane.core.lang.ScriptExecutorPool;
 import com.predic8.membrane.core.rules.Rule;
 import com.predic8.membrane.core.rules.StatisticCollector;
+import com.predic8.membrane.core.stats.LatencyHistogram;
+import com.predic8.membrane.core.transport.Transport;
+import com.predic8.membrane.core.transport.http.ConnectionManager;
+import com.predic8.membrane.core.transport.http.HttpClient;
+import com.predic8.membrane.core.transport.http.HttpEndpointListener;
+import com.predic8.membrane.core.transport.http.HttpTransport;
+import com.predic8.membrane.core.transport.http.IpPort;
+import com.predic8.membrane.core.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
 
+/**
+ * Exports the statistics of all rules and some numbers about the transport in the Prometheus text format.
+ *
+ * The exposition is rendered while the response body is being sent (see {@link ExpositionStream}), reading the
+ * statistics without blocking the exchanges being counted.
+ */
 @MCElement(name = "prometheus")
 public class PrometheusInterceptor extends AbstractInterceptor {
 
     static final Logger LOG = LoggerFactory.getLogger(PrometheusInterceptor.class);
     static volatile boolean issuedDuplicateRuleNameWarning = false;
 
-    @Override
-    public Outcome handleRequest(Exchange exc) throws Exception {
-        Context ctx = new Context();
-        buildPrometheusStyleResponse(ctx);
-        exc.setResponse(Response.ok(ctx.sb.toString()).header(Header.CONTENT_TYPE, "text/plain; version=0.0.4").build());
-        return Outcome.RETURN;
-    }
+    private enum StatusCodeMetric {
+        COUNT("membrane_count", StatisticCollector::getCount),
+        GOOD_COUNT("membrane_good_count", StatisticCollector::getGoodCount),
+        GOOD_TIME("membrane_good_time", StatisticCollector::getGoodTotalTime),
+        GOOD_BYTES_REQ_BODY("membrane_good_bytes_req_body", StatisticCollector::getGoodTotalBytesSent),
+        GOOD_BYTES_RES_BODY("membrane_good_bytes_res_body", StatisticCollector::getGoodTotalBytesReceived);
 
-    private class Context {
-        StringBuilder sb = new StringBuilder();
+        final String name;
+        final byte[] prefix;
+        final ToLongFunction<StatisticCollector> value;
 
-        StringBuilder s1 = new StringBuilder();
-        StringBuilder s2 = new StringBuilder();
-        StringBuilder s3 = new StringBuilder();
-        StringBuilder s4 = new StringBuilder();
-        StringBuilder s5 = new StringBuilder();
+        StatusCodeMetric(String name, ToLongFunction<StatisticCollector> value) {
+            this.name = name;
+            this.prefix = ExpositionStream.ascii(name + "{");
+            this.value = value;
+        }
+    }
 
-        HashSet<String> seenRules = new HashSet<>();
+    private enum HistogramMetric {
+        DURATION("membrane_duration_milliseconds", new long[] { 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 }, StatisticCollector::getTimes),
+        REQUEST_BODY("membrane_request_body_bytes", new long[] { 100, 1000, 10000, 100000, 1000000, 10000000 }, StatisticCollector::getRequestSizes),
+        RESPONSE_BODY("membrane_response_body_bytes", new long[] { 100, 1000, 10000, 100000, 1000000, 10000000 }, StatisticCollector::getResponseSizes);
 
-        private void reset() {
-            s1.setLength(0);
-            s2.setLength(0);
-            s3.setLength(0);
-            s4.setLength(0);
-            s5.setLength(0);
-        }
+        final String name;
+        final long[] bounds;
+        final byte[][] le;
+        final byte[] bucket;
+        final byte[] sum;
+        final byte[] count;
+        final Function<StatisticCollector, LatencyHistogram> histogram;
 
-        private void resetAll() {
-            sb.setLength(0);
-            seenRules.clear();
+        HistogramMetric(String name, long[] bounds, Function<StatisticCollector, LatencyHistogram> histogram) {
+            this.name = name;
+            this.bounds = bounds;
+            this.histogram = histogram;
+            le = new byte[bounds.length + 1][];
+            for (int i = 0; i < bounds.length; i++)
+                le[i] = ExpositionStream.ascii(",le=\"" + bounds[i] + "\"} ");
+            le[bounds.length] = ExpositionStream.ascii(",le=\"+Inf\"} ");
+            bucket = ExpositionStream.ascii(name + "_bucket{");
+            sum = ExpositionStream.ascii(name + "_sum{");
+            count = ExpositionStream.ascii(name + "_count{");
         }
+    }
 
-        private void collect() {
-            sb.append(s1);
-            sb.append(s2);
-            sb.append(s3);
-            sb.append(s4);
-            sb.append(s5);
-        }
+    private static final byte[] CODE = ExpositionStream.ascii(",code=\"");
+    private static final byte[] LABELS_END = ExpositionStream.ascii("\"} ");
+
+    /**
+     * rule name to its label set, e.g. <code>rule="name"</code>
+     */
+    private final ConcurrentHashMap<String, byte[]> ruleLabels = new ConcurrentHashMap<>();
+
+    @Override
+    public Outcome handleRequest(Exchange exc) throws Exception {
+        List<Rule> rules = getRules();
+        ExpositionStream out = new ExpositionStream();
+        for (StatusCodeMetric metric : StatusCodeMetric.values())
+            out.addFamily(() -> writeStatusCodeFamily(out, rules, metric));
+        for (HistogramMetric metric : HistogramMetric.values())
+            out.addFamily(() -> writeHistogramFamily(out, rules, metric));
+        out.addFamily(() -> writeBufferPoolFamilies(out));
+        out.addFamily(() -> writeCacheFamilies(out, rules));
+        out.addFamily(() -> writeTransportFamilies(out));
+        out.addFamily(() -> writeConnectionPoolFamilies(out, rules));
+        out.addFamily(() -> writeExchangeStoreFamilies(out));
+        out.addFamily(() -> writeScriptFamily(out, rules));
+
+        exc.setResponse(Response.ok().header(Header.CONTENT_TYPE, "text/plain; version=0.0.4").body(out, false).build());
+        return Outcome.RETURN;
     }
 
-    private void buildPrometheusStyleResponse(Context ctx) {
-        ctx.resetAll();
-        ctx.reset();
+    /**
+     * @return the rules, skipping rules whose name has already been seen: the prometheus format is not allowed to
+     * contain the same metric more than once
+     */
+    private List<Rule> getRules() {
+        List<Rule> rules = new ArrayList<>();
+        HashSet<String> seenRules = new HashSet<>();
         for (Rule r : router.getRuleManager().getRules()) {
-            if (!ctx.seenRules.add(prometheusCompatibleName(r.getName()))) {
-                // the prometheus format is not allowed to contain the same metric more than once
+            if (!seenRules.add(prometheusCompatibleName(r.getName()))) {
                 if (issuedDuplicateRuleNameWarning)
                     continue;
                 LOG.warn("The prometheus interceptor detected the same rule name more than once: " + r.getName());
                 issuedDuplicateRuleNameWarning = true;
                 continue;
             }
+            rules.add(r);
+        }
+        return rules;
+    }
+
+    private byte[] getRuleLabel(Rule rule) {
+        byte[] label = ruleLabels.get(rule.getName());
+        if (label == null) {
+            label = ExpositionStream.ascii("rule=\"" + prometheusCompatibleName(rule.getName()) + "\"");
+            ruleLabels.put(rule.getName(), label);
+        }
+        return label;
+    }
+
+    /**
+     * see https://prometheus.io/docs/instrumenting/exposition_formats/ .
+     */
+    private void writeStatusCodeFamily(ExpositionStream out, List<Rule> rules, StatusCodeMetric metric) {
+        out.type(metric.name, "counter");
+        for (Rule r : rules) {
+            byte[] label = getRuleLabel(r);
+            for (Map.Entry<Integer, StatisticCollector> e : r.getStatisticCollector().getStatisticsByStatusCodes().entrySet())
+                out.append(metric.prefix).append(label).append(CODE).append(e.getKey()).append(LABELS_END)
+                        .append(metric.value.applyAsLong(e.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Writes a histogram per rule, adding up the histograms of all status codes.
+     */
+    private void writeHistogramFamily(ExpositionStream out, List<Rule> rules, HistogramMetric metric) {
+        out.type(metric.name, "histogram");
+        long[] counts = new long[metric.bounds.length + 1];
+        for (Rule r : rules) {
+            Arrays.fill(counts, 0);
+            long sum = 0;
+            for (StatisticCollector sc : r.getStatisticCollector().getStatisticsByStatusCodes().values()) {
+                LatencyHistogram histogram = metric.histogram.apply(sc);
+                histogram.addCounts(metric.bounds, counts);
+                sum += histogram.getSum();
+            }
+            byte[] label = getRuleLabel(r);
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                out.append(metric.bucket).append(label).append(metric.le[i]).append(cumulative).append('\n');
+            }
+            out.append(metric.sum).append(label).append("} ").append(sum).append('\n');
+            out.append(metric.count).append(label).append("} ").append(cumulative).append('\n');
+        }
+    }
+
+    private void writeBufferPoolFamilies(ExpositionStream out) {
+        String[] names = { "body", "stream" };
+        BufferPool[] pools = { BufferPool.BODY, BufferPool.STREAM };
+        out.type("membrane_buffer_pool_hits", "counter");
+        for (int i = 0; i < pools.length; i++)
+            writePoolLine(out, "membrane_buffer_pool_hits", names[i], pools[i].getHits());
+        out.type("membrane_buffer_pool_misses", "counter");
+        for (int i = 0; i < pools.length; i++)
+            writePoolLine(out, "membrane_buffer_pool_misses", names[i], pools[i].getMisses());
+        out.type("membrane_buffer_pool_discarded", "counter");
+        for (int i = 0; i < pools.length; i++)
+            writePoolLine(out, "membrane_buffer_pool_discarded", names[i], pools[i].getDiscarded());
+        out.type("membrane_buffer_pool_pooled", "gauge");
+        for (int i = 0; i < pools.length; i++)
+            writePoolLine(out, "membrane_buffer_pool_pooled", names[i], pools[i].getPooled());
+    }
+
+    private void writePoolLine(ExpositionStream out, String name, String pool, long value) {
+        out.append(name).append("{pool=\"").append(pool).append(LABELS_END).append(value).append('\n');
+    }
 
-            buildStatuscodeLines(ctx, r);
+    private void writeCacheFamilies(ExpositionStream out, List<Rule> rules) {
+        List<Rule> cacheRules = new ArrayList<>();
+        List<CacheInterceptor> caches = new ArrayList<>();
+        for (Rule r : rules) {
+            for (Interceptor i : r.getInterceptors()) {
+                if (i instanceof CacheInterceptor) {
+                    cacheRules.add(r);
+                    caches.add((CacheInterceptor) i);
+                    break;
+                }
+            }
         }
-        ctx.collect();
+        if (caches.isEmpty())
+            return;
+
+        writeCacheFamily(out, "membrane_cache_hits", "counter", cacheRules, caches, CacheInterceptor::getHits);
+        writeCacheFamily(out, "membrane_cache_misses", "counter", cacheRules, caches, CacheInterceptor::getMisses);
+        writeCacheFamily(out, "membrane_cache_revalidations", "counter", cacheRules, caches, CacheInterceptor::getRevalidations);
+        writeCacheFamily(out, "membrane_cache_coalesced", "counter", cacheRules, caches, CacheInterceptor::getCoalesced);
+        writeCacheFamily(out, "membrane_cache_bytes_served", "counter", cacheRules, caches, CacheInterceptor::getBytesServed);
+        writeCacheFamily(out, "membrane_cache_bytes_stored", "counter", cacheRules, caches, CacheInterceptor::getBytesStored);
+        writeCacheFamily(out, "membrane_cache_evictions", "counter", cacheRules, caches, c -> c.getStore().getEvictions());
+        writeCacheFamily(out, "membrane_cache_size_bytes", "gauge", cacheRules, caches, c -> c.getStore().getSize());
+        writeCacheFamily(out, "membrane_cache_entries", "gauge", cacheRules, caches, c -> c.getStore().getEntryCount());
+    }
+
+    private void writeCacheFamily(ExpositionStream out, String name, String type, List<Rule> rules, List<CacheInterceptor> caches, ToLongFunction<CacheInterceptor> value) {
+        out.type(name, type);
+        for (int i = 0; i < caches.size(); i++)
+            out.append(name).append('{').append(getRuleLabel(rules.get(i))).append("} ").append(value.applyAsLong(caches.get(i))).append('\n');
+    }
+
+    private void writeTransportFamilies(ExpositionStream out) {
+        out.type("membrane_stream_pumps_running", "gauge");
+        out.append("membrane_stream_pumps_running ").append(router.getStatistics().getStreamPumpStats().getRunning()).append('\n');
+
+        Transport transport = router.getTransport();
+        if (!(transport instanceof HttpTransport))
+            return;
+        HttpTransport httpTransport = (HttpTransport) transport;
+
+        ExecutorService executorService = httpTransport.getExecutorService();
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) executorService;
+            writeGauge(out, "membrane_transport_threads_active", executor.getActiveCount());
+            writeGauge(out, "membrane_transport_threads", executor.getPoolSize());
+            writeGauge(out, "membrane_transport_threads_max", executor.getMaximumPoolSize());
+            writeGauge(out, "membrane_transport_queue_size", executor.getQueue().size());
+        }
+
+        // the Hashtable's entry set is synchronized: copying it does not throw ConcurrentModificationException
+        List<Map.Entry<IpPort, HttpEndpointListener>> listeners = new ArrayList<>(httpTransport.portListenerMapping.entrySet());
+        out.type("membrane_endpoint_open_connections", "gauge");
+        for (Map.Entry<IpPort, HttpEndpointListener> e : listeners)
+            writeEndpointLine(out, "membrane_endpoint_open_connections", e.getKey(), e.getValue().getNumberOfOpenConnections());
+        out.type("membrane_endpoint_idle_connections", "gauge");
+        for (Map.Entry<IpPort, HttpEndpointListener> e : listeners)
+            writeEndpointLine(out, "membrane_endpoint_idle_connections", e.getKey(), e.getValue().getNumberOfIdleConnections());
+    }
 
+    private void writeGauge(ExpositionStream out, String name, long value) {
+        writeSingle(out, name, "gauge", value);
     }
 
-    private void buildStatuscodeLines(Context ctx, Rule rule) {
-        Map<Integer, StatisticCollector> stats = rule.getStatisticCollector().getStatisticsByStatusCodes();
+    private void writeSingle(ExpositionStream out, String name, String type, long value) {
+        out.type(name, type);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private void writeExchangeStoreFamilies(ExpositionStream out) {
+        ExchangeStore store = router.getExchangeStore();
+        if (!(store instanceof ElasticSearchExchangeStore))
+            return;
+        ElasticSearchExchangeStore es = (ElasticSearchExchangeStore) store;
+        writeSingle(out, "membrane_elasticsearch_shipped", "counter", es.getShipped());
+        writeSingle(out, "membrane_elasticsearch_dropped", "counter", es.getDropped());
+        writeSingle(out, "membrane_elasticsearch_failed_bulks", "counter", es.getFailedBulks());
+        writeGauge(out, "membrane_elasticsearch_queue_depth", es.getQueueDepth());
 
-        for (Integer code : stats.keySet()) {
-            buildLine(ctx.s1, rule.getName(), stats.get(code).getCount(), "code", code, "count");
-            buildLine(ctx.s2, rule.getName(), stats.get(code).getGoodCount(), "code", code, "good_count");
-            buildLine(ctx.s3, rule.getName(), stats.get(code).getGoodTotalTime(), "code", code, "good_time");
-            buildLine(ctx.s4, rule.getName(), stats.get(code).getGoodTotalBytesSent(), "code", code, "good_bytes_req_body");
-            buildLine(ctx.s5, rule.getName(), stats.get(code).getGoodTotalBytesReceived(), "code", code, "good_bytes_res_body");
+        HistogramMetric metric = HistogramMetric.DURATION;
+        String name = "membrane_elasticsearch_bulk_duration_milliseconds";
+        LatencyHistogram histogram = es.getBulkLatency();
+        long[] counts = new long[metric.bounds.length + 1];
+        histogram.addCounts(metric.bounds, counts);
+        out.type(name, "histogram");
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            out.append(name).append("_bucket{le=\"").append(i < metric.bounds.length ? Long.toString(metric.bounds[i]) : "+Inf")
+                    .append(LABELS_END).append(cumulative).append('\n');
         }
+        out.append(name).append("_sum ").append(histogram.getSum()).append('\n');
+        out.append(name).append("_count ").append(cumulative).append('\n');
+    }
 
+    private static final long[] SCRIPT_BOUNDS = { 10, 50, 100, 500, 1000, 5000, 10000, 50000, 100000, 1000000 };
+
+    /**
+     * Writes the invocation durations of the Groovy and Javascript scripts, numbered per rule in the order they
+     * appear in the rule's interceptor chain (including nested flows).
+     */
+    private void writeScriptFamily(ExpositionStream out, List<Rule> rules) {
+        String name = "membrane_script_duration_microseconds";
+        boolean typeWritten = false;
+        for (Rule r : rules) {
+            List<ScriptExecutorPool<?, ?>> scripts = new ArrayList<>();
+            collectScripts(r.getInterceptors(), scripts);
+            for (int s = 0; s < scripts.size(); s++) {
+                if (!typeWritten) {
+                    out.type(name, "histogram");
+                    typeWritten = true;
+                }
+                LatencyHistogram histogram = scripts.get(s).getLatency();
+                long[] counts = new long[SCRIPT_BOUNDS.length + 1];
+                histogram.addCounts(SCRIPT_BOUNDS, counts);
+                long cumulative = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    cumulative += counts[i];
+                    out.append(name).append("_bucket{").append(getRuleLabel(r)).append(",script=\"").append(s)
+                            .append("\",le=\"").append(i < SCRIPT_BOUNDS.length ? Long.toString(SCRIPT_BOUNDS[i]) : "+Inf")
+                            .append(LABELS_END).append(cumulative).append('\n');
+                }
+                out.append(name).append("_sum{").append(getRuleLabel(r)).append(",script=\"").append(s).append(LABELS_END)
+                        .append(histogram.getSum()).append('\n');
+                out.append(name).append("_count{").append(getRuleLabel(r)).append(",script=\"").append(s).append(LABELS_END)
+                        .append(cumulative).append('\n');
+            }
+        }
+    }
+
+    private void collectScripts(List<Interceptor> interceptors, List<ScriptExecutorPool<?, ?>> scripts) {
+        for (Interceptor i : interceptors) {
+            Object script = null;
+            if (i instanceof GroovyInterceptor)
+                script = ((GroovyInterceptor) i).getScript();
+            else if (i instanceof JavascriptInterceptor)
+                script = ((JavascriptInterceptor) i).getScript();
+            else if (i instanceof ConditionalInterceptor)
+                script = ((ConditionalInterceptor) i).getCondition();
+            if (script instanceof ScriptExecutorPool)
+                scripts.add((ScriptExecutorPool<?, ?>) script);
+            if (i instanceof AbstractFlowInterceptor)
+                collectScripts(((AbstractFlowInterceptor) i).getInterceptors(), scripts);
+        }
+    }
+
+    private void writeEndpointLine(ExpositionStream out, String name, IpPort ipPort, long value) {
+        out.append(name).append("{ip=\"").appendLabelValue(ipPort.ip == null ? "*" : ipPort.ip)
+                .append("\",port=\"").append(ipPort.port).append(LABELS_END).append(value).append('\n');
     }
 
     /**
-     * see https://prometheus.io/docs/instrumenting/exposition_formats/ .
+     * Writes the connection pool sizes per destination, adding up the pools of all HTTP clients in use.
      */
-    private StringBuilder buildLine(StringBuilder sb, String ruleName, long value, String labelName, int labelValue, String postFix) {
-        String prometheusName = prometheusCompatibleName("membrane_" + postFix);
-        if (sb.length() == 0) {
-            sb.append("# TYPE " + prometheusName + " counter\n");
+    private void writeConnectionPoolFamilies(ExpositionStream out, List<Rule> rules) {
+        Set<HttpClient> clients = Collections.newSetFromMap(new IdentityHashMap<>());
+        clients.add(router.getResolverMap().getHTTPSchemaResolver().getHttpClient());
+        for (Rule r : rules)
+            for (Interceptor i : r.getInterceptors())
+                if (i instanceof HTTPClientInterceptor && ((HTTPClientInterceptor) i).getHttpClient() != null)
+                    clients.add(((HTTPClientInterceptor) i).getHttpClient());
+
+        // destination to { total, idle, hits, misses }
+        TreeMap<String, long[]> destinations = new TreeMap<>();
+        for (HttpClient client : clients) {
+            for (Map.Entry<String, ConnectionManager.Destination> e : client.getConnectionManager().getDestinations().entrySet()) {
+                long[] values = destinations.computeIfAbsent(e.getKey(), k -> new long[4]);
+                ConnectionManager.Destination d = e.getValue();
+                values[0] += d.getTotal();
+                values[1] += d.getIdle();
+                values[2] += d.getHits();
+                values[3] += d.getMisses();
+            }
         }
-        sb.append(prometheusName);
-        sb.append("{rule=\"");
-        sb.append(prometheusCompatibleName(ruleName));
-        sb.append("\",");
-        sb.append(prometheusCompatibleName(labelName));
-        sb.append("=\"");
-        sb.append(labelValue);
-        sb.append("\"} ");
-        sb.append(value);
-        sb.append("\n");
-        return sb;
+
+        writeDestinationFamily(out, "membrane_connection_pool_connections", "gauge", destinations, 0);
+        writeDestinationFamily(out, "membrane_connection_pool_idle", "gauge", destinations, 1);
+        writeDestinationFamily(out, "membrane_connection_pool_hits", "counter", destinations, 2);
+        writeDestinationFamily(out, "membrane_connection_pool_misses", "counter", destinations, 3);
+    }
+
+    private void writeDestinationFamily(ExpositionStream out, String name, String type, TreeMap<String, long[]> destinations, int index) {
+        out.type(name, type);
+        for (Map.Entry<String, long[]> e : destinations.entrySet())
+            out.append(name).append("{destination=\"").appendLabelValue(e.getKey()).append(LABELS_END)
+                    .append(e.getValue()[index]).append('\n');
     }
 
     ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
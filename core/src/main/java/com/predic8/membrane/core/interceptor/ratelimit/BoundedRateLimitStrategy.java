@@ -0,0 +1,83 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import java.util.function.LongSupplier;
+
+import org.joda.time.Duration;
+
+/**
+ * Base class for rate limits keeping per-key state in an {@link ExpiringKeyMap}. Keys are dropped once their
+ * state would have returned to its initial value anyway, by default after twice the request limit duration.
+ *
+ * Changing the configuration resets the state of all keys.
+ */
+public abstract class BoundedRateLimitStrategy<V> extends RateLimitStrategy implements ExpiringKeyMap.Factory<V> {
+
+	public static final int DEFAULT_MAX_KEYS = 100000;
+
+	protected int maxKeys = DEFAULT_MAX_KEYS;
+	protected LongSupplier clock = System::nanoTime;
+	protected volatile ExpiringKeyMap<V> keys;
+
+	protected BoundedRateLimitStrategy(Duration requestLimitDuration, int requestLimit) {
+		this.requestLimitDuration = requestLimitDuration;
+		this.requestLimit = requestLimit;
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	public void setMaxKeys(int maxKeys) {
+		this.maxKeys = maxKeys;
+		updateAfterConfigChange();
+	}
+
+	public LongSupplier getClock() {
+		return clock;
+	}
+
+	/**
+	 * @param clock the time source in nanoseconds, {@link System#nanoTime()} by default
+	 */
+	public void setClock(LongSupplier clock) {
+		this.clock = clock;
+		updateAfterConfigChange();
+	}
+
+	public ExpiringKeyMap<V> getKeys() {
+		return keys;
+	}
+
+	protected long getDurationNanos() {
+		return requestLimitDuration.getMillis() * 1000000L;
+	}
+
+	/**
+	 * @return the time after which an unused key is dropped
+	 */
+	protected long getExpiryNanos() {
+		return 2 * getDurationNanos();
+	}
+
+	@Override
+	public void updateAfterConfigChange() {
+		if (requestLimit <= 0)
+			throw new IllegalArgumentException("requestLimit must be positive.");
+		keys = new ExpiringKeyMap<V>(this, maxKeys, getExpiryNanos(), clock);
+	}
+
+}
@@ -0,0 +1,152 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded map from rate limit keys to per-key state, dropping keys not used for some time.
+ *
+ * Expired keys are removed lazily: Every now and then, one of the calling threads sweeps the map. Once the map
+ * holds {@link #getMaxKeys()} keys, new keys share a single overflow state, so that clients sending requests from
+ * many addresses (or with many keys) can neither exhaust the memory nor displace clients already being tracked.
+ * The clients falling into the overflow are limited collectively.
+ */
+public class ExpiringKeyMap<V> {
+
+	/**
+	 * Creates the initial state of a key.
+	 */
+	public interface Factory<V> {
+		V create();
+	}
+
+	/**
+	 * The last access time of an entry is only updated when it is older than this, to avoid writing to shared
+	 * memory on every request.
+	 */
+	private static final long TOUCH_GRANULARITY = 100000000L; // 100ms
+	private static final long MIN_FULL_SWEEP_INTERVAL = 1000000000L; // 1s
+
+	private static class Entry<V> {
+		final V value;
+		volatile long lastAccess;
+
+		Entry(V value, long now) {
+			this.value = value;
+			this.lastAccess = now;
+		}
+
+		void touch(long now) {
+			if (now - lastAccess > TOUCH_GRANULARITY)
+				lastAccess = now;
+		}
+	}
+
+	private final ConcurrentHashMap<String, Entry<V>> map = new ConcurrentHashMap<String, Entry<V>>();
+	private final Factory<V> factory;
+	private final LongSupplier clock;
+	private final int maxKeys;
+	private final long expiryNanos;
+	private final long sweepIntervalNanos;
+	private final Entry<V> overflow;
+
+	private final AtomicLong lastSweep;
+	private final LongAdder overflowRequests = new LongAdder();
+
+	public ExpiringKeyMap(Factory<V> factory, int maxKeys, long expiryNanos) {
+		this(factory, maxKeys, expiryNanos, System::nanoTime);
+	}
+
+	/**
+	 * @param maxKeys the maximum number of keys tracked individually
+	 * @param expiryNanos the time after which an unused key is dropped
+	 * @param clock the time source in nanoseconds, see {@link System#nanoTime()}
+	 */
+	public ExpiringKeyMap(Factory<V> factory, int maxKeys, long expiryNanos, LongSupplier clock) {
+		if (maxKeys <= 0)
+			throw new IllegalArgumentException("maxKeys must be positive.");
+		long now = clock.getAsLong();
+		this.factory = factory;
+		this.clock = clock;
+		this.maxKeys = maxKeys;
+		this.expiryNanos = expiryNanos;
+		this.sweepIntervalNanos = Math.max(expiryNanos / 2, MIN_FULL_SWEEP_INTERVAL);
+		this.overflow = new Entry<V>(factory.create(), now);
+		this.lastSweep = new AtomicLong(now);
+	}
+
+	/**
+	 * @return the state of the key, creating it if necessary
+	 */
+	public V get(String key) {
+		long now = clock.getAsLong();
+		trySweep(now, false);
+		Entry<V> e = map.get(key);
+		if (e == null) {
+			if (map.size() >= maxKeys) {
+				trySweep(now, true);
+				if (map.size() >= maxKeys) {
+					overflowRequests.increment();
+					return overflow.value;
+				}
+			}
+			Entry<V> created = new Entry<V>(factory.create(), now);
+			e = map.putIfAbsent(key, created);
+			if (e == null)
+				return created.value;
+		}
+		e.touch(now);
+		return e.value;
+	}
+
+	/**
+	 * Removes expired keys, if the last sweep is long enough ago. When the map is full, sweeps are done more often.
+	 */
+	private void trySweep(long now, boolean full) {
+		long last = lastSweep.get();
+		if (now - last < (full ? MIN_FULL_SWEEP_INTERVAL : sweepIntervalNanos))
+			return;
+		// only one thread sweeps at a time: the others go on without waiting
+		if (!lastSweep.compareAndSet(last, now))
+			return;
+		for (Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, Entry<V>> e = it.next();
+			if (now - e.getValue().lastAccess > expiryNanos)
+				map.remove(e.getKey(), e.getValue());
+		}
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * @return the number of requests whose key could not be tracked individually, as the map was full
+	 */
+	public long getOverflowRequests() {
+		return overflowRequests.sum();
+	}
+
+}
@@ -0,0 +1,113 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Generic cell rate algorithm: Requests are spaced by an emission interval of
+ * <code>requestLimitDuration / requestLimit</code>, allowing <code>burst</code> requests at once. By default, the
+ * burst is 1, spreading the requests evenly over the duration.
+ *
+ * The only state per key is the theoretical arrival time (TAT) of the next request, updated using
+ * compare-and-set. A request arriving at <code>now</code> is allowed, if
+ * <code>TAT - now &lt;= (burst - 1) * interval</code>; the TAT then advances by one interval.
+ */
+public class GcraRateLimit extends BoundedRateLimitStrategy<AtomicLong> {
+
+	/**
+	 * Marks a TAT in the past: {@link System#nanoTime()} may be negative.
+	 */
+	private static final long IDLE = Long.MIN_VALUE;
+
+	protected int burst;
+
+	private volatile long interval;
+	private volatile long tolerance;
+
+	public GcraRateLimit(Duration requestLimitDuration, int requestLimit) {
+		this(requestLimitDuration, requestLimit, 0);
+	}
+
+	/**
+	 * @param burst the number of requests allowed at once, or 0 to use the default
+	 */
+	public GcraRateLimit(Duration requestLimitDuration, int requestLimit, int burst) {
+		super(requestLimitDuration, requestLimit);
+		this.burst = burst;
+		updateAfterConfigChange();
+	}
+
+	@Override
+	public AtomicLong create() {
+		return new AtomicLong(IDLE);
+	}
+
+	@Override
+	public boolean isRequestLimitReached(String key) {
+		AtomicLong tat = keys.get(key);
+		long interval = this.interval;
+		long now = clock.getAsLong();
+		while (true) {
+			long t = tat.get();
+			long base = t == IDLE || t - now < 0 ? now : t;
+			if (base - now > tolerance)
+				return true;
+			if (tat.compareAndSet(t, base + interval))
+				return false;
+		}
+	}
+
+	@Override
+	public DateTime getServiceAvailableAgainTime(String key) {
+		long t = keys.get(key).get();
+		long wait = t == IDLE ? 0 : t - tolerance - clock.getAsLong();
+		return DateTime.now().plus(Math.max(0, wait) / 1000000L);
+	}
+
+	public int getBurst() {
+		return burst > 0 ? burst : getDefaultBurst();
+	}
+
+	protected int getDefaultBurst() {
+		return 1;
+	}
+
+	public void setBurst(int burst) {
+		this.burst = burst;
+		updateAfterConfigChange();
+	}
+
+	@Override
+	public void updateAfterConfigChange() {
+		if (burst < 0)
+			throw new IllegalArgumentException("burst must not be negative.");
+		if (requestLimit <= 0)
+			throw new IllegalArgumentException("requestLimit must be positive.");
+		interval = Math.max(1, getDurationNanos() / requestLimit);
+		tolerance = interval * (getBurst() - 1);
+		super.updateAfterConfigChange();
+	}
+
+	@Override
+	protected long getExpiryNanos() {
+		// the TAT is at most tolerance + interval ahead
+		return Math.max(super.getExpiryNanos(), tolerance + interval);
+	}
+
+}
@@ -16,13 +16,22 @@ package com.predic8.membrane.core.interceptor.ratelimit;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
+/**
+ * Counts the requests per key in fixed windows of <code>requestLimitDuration</code>. At the end of a window, all
+ * counters are dropped.
+ *
+ * Note that up to twice the limit may pass within one duration around the end of a window. See
+ * {@link SlidingWindowRateLimit}, {@link TokenBucketRateLimit} and {@link GcraRateLimit} for strategies avoiding
+ * this, which also bound the number of keys tracked.
+ */
 public class LazyRateLimit extends RateLimitStrategy {
 
-	private DateTime nextCleanup = new DateTime();
+	private final AtomicLong nextCleanup = new AtomicLong();
 	public ConcurrentHashMap<String, AtomicInteger> requestCounterFromIP = new ConcurrentHashMap<String, AtomicInteger>();
 
 	public LazyRateLimit(Duration requestLimitDuration, int requestLimit) {
@@ -33,41 +42,37 @@ public class LazyRateLimit extends RateLimitStrategy {
 
 	@Override
 	public boolean isRequestLimitReached(String ip) {
-		synchronized (nextCleanup) {
-			if (DateTime.now().isAfter(nextCleanup)) {
-				for (AtomicInteger info : requestCounterFromIP.values()) {
-					info.set(0);
-				}
-				incrementNextCleanupTime();
-			}
-		}
-		addRequestEntry(ip);
-		return requestCounterFromIP.get(ip).get() > requestLimit;
+		long next = nextCleanup.get();
+		long now = System.currentTimeMillis();
+		// only the thread advancing the cleanup time clears the counters
+		if (now > next && nextCleanup.compareAndSet(next, now + requestLimitDuration.getMillis()))
+			requestCounterFromIP.clear();
+		return addRequestEntry(ip) > requestLimit;
 	}
 
-	private void addRequestEntry(String addr) {
-		synchronized (requestCounterFromIP) {
-			if (!requestCounterFromIP.containsKey(addr)) {
-				requestCounterFromIP.put(addr, new AtomicInteger());
-			}
+	private int addRequestEntry(String addr) {
+		AtomicInteger counter = requestCounterFromIP.get(addr);
+		if (counter == null) {
+			AtomicInteger created = new AtomicInteger();
+			counter = requestCounterFromIP.putIfAbsent(addr, created);
+			if (counter == null)
+				counter = created;
 		}
-		requestCounterFromIP.get(addr).incrementAndGet();
+		return counter.incrementAndGet();
 	}
 
 	private void incrementNextCleanupTime() {
-		nextCleanup = DateTime.now().plus(requestLimitDuration);
+		nextCleanup.set(System.currentTimeMillis() + requestLimitDuration.getMillis());
 	}
 
 	@Override
 	public DateTime getServiceAvailableAgainTime(String ip) {
-		return nextCleanup;
+		return new DateTime(nextCleanup.get());
 	}
 
 	@Override
 	public void updateAfterConfigChange() {
-		for (AtomicInteger info : requestCounterFromIP.values()) {
-			info.set(0);
-		}
+		requestCounterFromIP.clear();
 		incrementNextCleanupTime();
 	}
 
@@ -14,7 +14,10 @@
 
 package com.predic8.membrane.core.interceptor.ratelimit;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 import java.util.Locale;
 
 import org.joda.time.DateTime;
@@ -25,6 +28,8 @@ import org.joda.time.format.PeriodFormat;
 import org.joda.time.format.PeriodFormatter;
 import org.joda.time.format.PeriodFormatterBuilder;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.predic8.membrane.annot.MCAttribute;
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.exchange.Exchange;
@@ -37,12 +42,39 @@ import com.predic8.membrane.core.interceptor.Outcome;
 
 /**
  * @description Allows rate limiting (Experimental)
+ * @explanation Requests are counted per key, by default the client's IP address. The algorithm determines how
+ *              requests are counted: <i>fixedWindow</i> resets the counts after every duration,
+ *              <i>slidingWindow</i> approximates the number of requests within the last duration,
+ *              <i>tokenBucket</i> and <i>gcra</i> refill the allowance continuously. Except for
+ *              <i>fixedWindow</i>, at most <i>maxKeys</i> keys are tracked individually.
  */
 @MCElement(name = "rateLimiter")
 public class RateLimitInterceptor extends AbstractInterceptor {
 
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	public enum Algorithm {
+		FIXED_WINDOW,
+		SLIDING_WINDOW,
+		TOKEN_BUCKET,
+		GCRA
+	}
+
+	public enum KeyType {
+		IP,
+		HEADER,
+		JWT_CLAIM,
+		API_KEY
+	}
+
 	public RateLimitStrategy rateLimitStrategy;
 
+	private Algorithm algorithm = Algorithm.FIXED_WINDOW;
+	private KeyType keyType = KeyType.IP;
+	private String keyName;
+	private int burst;
+	private int maxKeys = BoundedRateLimitStrategy.DEFAULT_MAX_KEYS;
+
 	public RateLimitInterceptor() {
 		this(Duration.standardHours(1), 1000);
 	}
@@ -55,8 +87,7 @@ public class RateLimitInterceptor extends AbstractInterceptor {
 
 	@Override
 	public Outcome handleRequest(Exchange exc) throws Exception {
-		String addr = exc.getRemoteAddrIp();
-		if (rateLimitStrategy.isRequestLimitReached(addr)) {
+		if (rateLimitStrategy.isRequestLimitReached(getKey(exc))) {
 			setResponseToServiceUnavailable(exc);
 			return Outcome.RETURN;
 		}
@@ -72,13 +103,13 @@ public class RateLimitInterceptor extends AbstractInterceptor {
 		hd.add("Date", dateFormatter.print(DateTime.now()));
 		hd.add("X-LimitDuration", PeriodFormat.getDefault().print(rateLimitStrategy.requestLimitDuration.toPeriod()));
 		hd.add("X-LimitRequests", Integer.toString(rateLimitStrategy.requestLimit));
-		String ip = exc.getRemoteAddrIp();
-		DateTime availableAgainDateTime = rateLimitStrategy.getServiceAvailableAgainTime(ip);
+		String key = getKey(exc);
+		DateTime availableAgainDateTime = rateLimitStrategy.getServiceAvailableAgainTime(key);
 		hd.add("X-LimitReset", Long.toString(availableAgainDateTime.getMillis()));
 
 		StringBuilder bodyString = new StringBuilder();
 		DateTimeFormatter dtFormatter = DateTimeFormat.forPattern("HH:mm:ss aa");
-		bodyString.append(ip).append(" exceeded the rate limit of ").append(rateLimitStrategy.requestLimit)
+		bodyString.append(key).append(" exceeded the rate limit of ").append(rateLimitStrategy.requestLimit)
 				.append(" requests per ")
 				.append(PeriodFormat.getDefault().print(rateLimitStrategy.requestLimitDuration.toPeriod()))
 				.append(". The next request can be made at ").append(dtFormatter.print(availableAgainDateTime));
@@ -88,6 +119,142 @@ public class RateLimitInterceptor extends AbstractInterceptor {
 		exc.setResponse(resp);
 	}
 
+	/**
+	 * @return the key the request is counted for. If the configured key is not present, the client's IP address
+	 *         is used.
+	 */
+	protected String getKey(Exchange exc) {
+		String key = null;
+		switch (keyType) {
+		case HEADER:
+			key = exc.getRequest().getHeader().getFirstValue(keyName);
+			break;
+		case JWT_CLAIM:
+			key = getJwtClaim(exc);
+			break;
+		case API_KEY:
+			Object apiKey = exc.getProperty(Exchange.API_KEY);
+			key = apiKey == null ? null : apiKey.toString();
+			break;
+		default:
+			break;
+		}
+		return key != null ? key : exc.getRemoteAddrIp();
+	}
+
+	/**
+	 * Reads the claim from the bearer token in the "Authorization" header. The token's signature is not checked:
+	 * This has to be done by an interceptor running before.
+	 */
+	private String getJwtClaim(Exchange exc) {
+		String auth = exc.getRequest().getHeader().getAuthorization();
+		if (auth == null || !auth.regionMatches(true, 0, "Bearer ", 0, 7))
+			return null;
+		String[] parts = auth.substring(7).trim().split("\\.");
+		if (parts.length < 2)
+			return null;
+		try {
+			JsonNode claim = objectMapper.readTree(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8)).get(keyName);
+			return claim == null || claim.isContainerNode() ? null : claim.asText();
+		} catch (IOException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private void updateStrategy() {
+		Duration duration = rateLimitStrategy.getRequestLimitDuration();
+		int limit = rateLimitStrategy.getRequestLimit();
+		switch (algorithm) {
+		case SLIDING_WINDOW:
+			rateLimitStrategy = new SlidingWindowRateLimit(duration, limit);
+			break;
+		case TOKEN_BUCKET:
+			rateLimitStrategy = new TokenBucketRateLimit(duration, limit, burst);
+			break;
+		case GCRA:
+			rateLimitStrategy = new GcraRateLimit(duration, limit, burst);
+			break;
+		default:
+			rateLimitStrategy = new LazyRateLimit(duration, limit);
+			break;
+		}
+		if (rateLimitStrategy instanceof BoundedRateLimitStrategy)
+			((BoundedRateLimitStrategy<?>) rateLimitStrategy).setMaxKeys(maxKeys);
+	}
+
+	public Algorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @description The algorithm used to count requests: FIXED_WINDOW, SLIDING_WINDOW, TOKEN_BUCKET or GCRA.
+	 * @default FIXED_WINDOW
+	 * @example SLIDING_WINDOW
+	 */
+	@MCAttribute
+	public void setAlgorithm(Algorithm algorithm) {
+		this.algorithm = algorithm;
+		updateStrategy();
+	}
+
+	public KeyType getKeyType() {
+		return keyType;
+	}
+
+	/**
+	 * @description What requests are counted for: the client's IP, the value of a HEADER, a JWT_CLAIM of the bearer
+	 *              token, or the API_KEY determined by the apiManagement interceptor.
+	 * @default IP
+	 * @example JWT_CLAIM
+	 */
+	@MCAttribute
+	public void setKeyType(KeyType keyType) {
+		this.keyType = keyType;
+	}
+
+	public String getKeyName() {
+		return keyName;
+	}
+
+	/**
+	 * @description The name of the header (for keyType HEADER) or claim (for keyType JWT_CLAIM).
+	 * @example sub
+	 */
+	@MCAttribute
+	public void setKeyName(String keyName) {
+		this.keyName = keyName;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * @description The number of requests allowed at once (for TOKEN_BUCKET and GCRA). 0 means requestLimit for
+	 *              TOKEN_BUCKET and 1 for GCRA.
+	 * @default 0
+	 */
+	@MCAttribute
+	public void setBurst(int burst) {
+		this.burst = burst;
+		updateStrategy();
+	}
+
+	public int getMaxKeys() {
+		return maxKeys;
+	}
+
+	/**
+	 * @description The maximum number of keys tracked individually (except for FIXED_WINDOW). Requests with further
+	 *              keys are limited collectively.
+	 * @default 100000
+	 */
+	@MCAttribute
+	public void setMaxKeys(int maxKeys) {
+		this.maxKeys = maxKeys;
+		updateStrategy();
+	}
+
 	public int getRequestLimit() {
 		return rateLimitStrategy.requestLimit;
 	}
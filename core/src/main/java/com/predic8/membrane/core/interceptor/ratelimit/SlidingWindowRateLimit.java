@@ -0,0 +1,114 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Approximates a sliding window log: Requests are counted in fixed windows of <code>requestLimitDuration</code>,
+ * and the number of requests in the sliding window ending now is estimated as
+ * <code>previous * (1 - elapsed) + current</code>, where <code>elapsed</code> is the fraction of the current window
+ * which has passed. Unlike the fixed window of {@link LazyRateLimit}, this does not let twice the limit pass
+ * around a window boundary.
+ *
+ * The state per key (the window number and both counts) is packed into a single long and updated using
+ * compare-and-set. Counts are therefore limited to {@value #MAX_COUNT}, which is also the maximum request limit.
+ */
+public class SlidingWindowRateLimit extends BoundedRateLimitStrategy<AtomicLong> {
+
+	public static final int MAX_COUNT = (1 << 20) - 1;
+	private static final long WINDOW_MASK = (1L << 24) - 1;
+
+	private volatile long origin;
+	private volatile long window;
+
+	public SlidingWindowRateLimit(Duration requestLimitDuration, int requestLimit) {
+		super(requestLimitDuration, requestLimit);
+		updateAfterConfigChange();
+	}
+
+	@Override
+	public AtomicLong create() {
+		return new AtomicLong();
+	}
+
+	@Override
+	public boolean isRequestLimitReached(String key) {
+		AtomicLong state = keys.get(key);
+		long window = this.window;
+		long elapsed = clock.getAsLong() - origin;
+		long current = elapsed / window;
+		double fraction = (double) (elapsed % window) / window;
+		while (true) {
+			long s = state.get();
+			long previousCount = getPreviousCount(s, current);
+			long currentCount = getCurrentCount(s, current);
+			if (previousCount * (1 - fraction) + currentCount + 1 > requestLimit)
+				return true;
+			if (state.compareAndSet(s, pack(current, previousCount, Math.min(currentCount + 1, MAX_COUNT))))
+				return false;
+		}
+	}
+
+	@Override
+	public DateTime getServiceAvailableAgainTime(String key) {
+		long s = keys.get(key).get();
+		long elapsed = clock.getAsLong() - origin;
+		long current = elapsed / window;
+		long previousCount = getPreviousCount(s, current);
+		long currentCount = getCurrentCount(s, current);
+
+		// the earliest point in time (as a fraction of a window from the current window's start) at which
+		// previous * (1 - f) + current + 1 <= limit holds
+		double f;
+		if (currentCount + 1 <= requestLimit)
+			f = previousCount == 0 ? 0 : 1 - (double) (requestLimit - 1 - currentCount) / previousCount;
+		else
+			// in the next window, the current count becomes the previous one
+			f = 2 - (double) (requestLimit - 1) / currentCount;
+		long at = (long) (current * window + f * window);
+		return DateTime.now().plus(Math.max(0, at - elapsed) / 1000000L);
+	}
+
+	private static long pack(long window, long previousCount, long currentCount) {
+		return (window & WINDOW_MASK) << 40 | previousCount << 20 | currentCount;
+	}
+
+	private static long getPreviousCount(long s, long current) {
+		long d = (current - (s >>> 40)) & WINDOW_MASK;
+		if (d == 0)
+			return (s >>> 20) & MAX_COUNT;
+		if (d == 1)
+			return s & MAX_COUNT;
+		return 0;
+	}
+
+	private static long getCurrentCount(long s, long current) {
+		return ((current - (s >>> 40)) & WINDOW_MASK) == 0 ? s & MAX_COUNT : 0;
+	}
+
+	@Override
+	public void updateAfterConfigChange() {
+		if (requestLimit > MAX_COUNT)
+			throw new IllegalArgumentException("requestLimit must not exceed " + MAX_COUNT + ".");
+		super.updateAfterConfigChange();
+		origin = clock.getAsLong();
+		window = Math.max(1, getDurationNanos());
+	}
+
+}
@@ -0,0 +1,43 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import org.joda.time.Duration;
+
+/**
+ * Token bucket: Every key has a bucket holding up to <code>burst</code> tokens (by default
+ * <code>requestLimit</code>), refilled at <code>requestLimit</code> tokens per <code>requestLimitDuration</code>.
+ * Each request takes one token; requests finding the bucket empty are rejected.
+ *
+ * A token bucket limits exactly the same requests as the {@link GcraRateLimit} with the same burst: the time the
+ * bucket will be full again is the TAT. This class therefore only differs in its default burst, allowing a client
+ * idle for a whole period to use up its limit at once.
+ */
+public class TokenBucketRateLimit extends GcraRateLimit {
+
+	public TokenBucketRateLimit(Duration requestLimitDuration, int requestLimit) {
+		super(requestLimitDuration, requestLimit);
+	}
+
+	public TokenBucketRateLimit(Duration requestLimitDuration, int requestLimit, int burst) {
+		super(requestLimitDuration, requestLimit, burst);
+	}
+
+	@Override
+	protected int getDefaultBurst() {
+		return requestLimit;
+	}
+
+}
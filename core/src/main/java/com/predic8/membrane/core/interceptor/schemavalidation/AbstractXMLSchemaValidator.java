@@ -17,8 +17,9 @@ package com.predic8.membrane.core.interceptor.schemavalidation;
 import java.io.InputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.transform.Source;
@@ -40,10 +41,19 @@ import com.predic8.membrane.core.multipart.XOPReconstitutor;
 import com.predic8.membrane.core.resolver.ResolverMap;
 import com.predic8.schema.Schema;
 
+/**
+ * Validates messages against one or more XML Schemas, which are compiled once and shared by all threads (see
+ * {@link ValidatorPool}).
+ *
+ * If there is more than one schema (e.g. the schemas embedded into a WSDL), the schemas are selected by the
+ * namespace of the message's root element (see {@link #getRootElementNamespace(Message)}): Only if no schema has
+ * this target namespace, the message is validated against every schema until one succeeds.
+ */
 public abstract class AbstractXMLSchemaValidator implements IValidator {
 	private static Logger log = LoggerFactory.getLogger(AbstractXMLSchemaValidator.class.getName());
 
-	private final ArrayBlockingQueue<List<Validator>> validators;
+	private final List<ValidatorPool> validators;
+	private final Map<String, List<ValidatorPool>> validatorsByNamespace = new HashMap<String, List<ValidatorPool>>();
 	protected final XOPReconstitutor xopr;
 	protected final String location;
 	protected final ResolverMap resourceResolver;
@@ -62,21 +72,28 @@ public abstract class AbstractXMLSchemaValidator implements IValidator {
 		this.resourceResolver = resourceResolver;
 		this.failureHandler = failureHandler;
 		this.skipFaults = skipFaults;
-		int concurrency = Runtime.getRuntime().availableProcessors() * 2;
-		validators = new ArrayBlockingQueue<List<Validator>>(concurrency);
-		for (int i = 0; i < concurrency; i++)
-			validators.add(createValidators());
 		xopr = new XOPReconstitutor();
+		validators = createValidators();
+		for (ValidatorPool pool : validators) {
+			if (pool.getTargetNamespace() == null)
+				continue;
+			List<ValidatorPool> pools = validatorsByNamespace.get(pool.getTargetNamespace());
+			if (pools == null) {
+				pools = new ArrayList<ValidatorPool>(1);
+				validatorsByNamespace.put(pool.getTargetNamespace(), pools);
+			}
+			pools.add(pool);
+		}
 	}
 
 	public Outcome validateMessage(Exchange exc, Message msg, String source) throws Exception {
 		List<Exception> exceptions = new ArrayList<Exception>();
 		String preliminaryError = getPreliminaryError(xopr, msg);
 		if (preliminaryError == null) {
-			List<Validator> vals = validators.take();
 			try {
 				// the message must be valid for one schema embedded into WSDL
-				for (Validator validator: vals) {
+				for (ValidatorPool pool : getCandidates(msg)) {
+					Validator validator = pool.acquire();
 					SchemaValidatorErrorHandler handler = (SchemaValidatorErrorHandler)validator.getErrorHandler();
 					try {
 						validator.validate(getMessageBody(xopr.reconstituteIfNecessary(msg)));
@@ -86,13 +103,11 @@ public abstract class AbstractXMLSchemaValidator implements IValidator {
 						}
 						exceptions.add(handler.getException());
 					} finally {
-						handler.reset();
+						pool.release(validator);
 					}
 				}
 			} catch (Exception e) {
 				exceptions.add(e);
-			} finally {
-				validators.put(vals);
 			}
 		} else {
 			exceptions.add(new Exception(preliminaryError));
@@ -114,22 +129,37 @@ public abstract class AbstractXMLSchemaValidator implements IValidator {
 		return Outcome.ABORT;
 	}
 
-	protected List<Validator> createValidators() throws Exception {
+	private List<ValidatorPool> getCandidates(Message msg) {
+		if (validators.size() < 2 || validatorsByNamespace.isEmpty())
+			return validators;
+		String namespace = getRootElementNamespace(msg);
+		if (namespace == null)
+			return validators;
+		List<ValidatorPool> pools = validatorsByNamespace.get(namespace);
+		return pools == null ? validators : pools;
+	}
+
+	protected List<ValidatorPool> createValidators() throws Exception {
 		SchemaFactory sf = SchemaFactory.newInstance(Constants.XSD_NS);
-		List<Validator> validators = new ArrayList<Validator>();
+		sf.setResourceResolver(resourceResolver.toLSResourceResolver());
+		List<ValidatorPool> validators = new ArrayList<ValidatorPool>();
 		for (Schema schema : getSchemas()) {
 			log.debug("Creating validator for schema: " + schema);
 			StreamSource ss = new StreamSource(new StringReader(schema.getAsString()));
 			ss.setSystemId(location);
-			sf.setResourceResolver(resourceResolver.toLSResourceResolver());
-			Validator validator = sf.newSchema(ss).newValidator();
-			validator.setResourceResolver(resourceResolver.toLSResourceResolver());
-			validator.setErrorHandler(new SchemaValidatorErrorHandler());
-			validators.add(validator);
+			validators.add(new ValidatorPool(sf.newSchema(ss), schema.getTargetNamespace(), resourceResolver));
 		}
 		return validators;
 	}
 
+	/**
+	 * @return the namespace of the element validated by the schemas, or null if it cannot be determined (the
+	 *         message is then validated against all schemas)
+	 */
+	protected String getRootElementNamespace(Message msg) {
+		return null;
+	}
+
 	private String getErrorMsg(List<Exception> excs) {
 		StringBuilder buf = new StringBuilder();
 		buf.append("Validation failed: ");
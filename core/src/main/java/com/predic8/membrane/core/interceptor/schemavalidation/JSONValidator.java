@@ -20,14 +20,22 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParseException;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jackson.JacksonUtils;
 import com.github.fge.jackson.JsonLoader;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
 import com.github.fge.jsonschema.core.report.ProcessingMessage;
@@ -41,10 +49,37 @@ import com.predic8.membrane.core.interceptor.Outcome;
 import com.predic8.membrane.core.interceptor.schemavalidation.ValidatorInterceptor.FailureHandler;
 import com.predic8.membrane.core.resolver.ResolverMap;
 
+/**
+ * Validates JSON messages against a JSON Schema.
+ *
+ * The body is parsed straight from the message's byte stream. If the schema only describes an array of items (the
+ * root schema uses no keywords but "type": "array", "items" with a single schema, "minItems" and "maxItems", besides
+ * annotations and definitions), the body is validated in a streaming fashion: Every item is parsed and validated
+ * on its own, so only one item is held in memory at a time. Otherwise, the whole body is parsed into a tree first.
+ */
 public class JSONValidator implements IValidator {
 	private static final Charset UTF8 = Charset.forName("UTF-8");
 
+	/**
+	 * Uses BigDecimal for floating point numbers, just like {@link JsonLoader}.
+	 */
+	private static final ObjectMapper mapper = JacksonUtils.newMapper();
+
+	private static final Set<String> STREAMABLE_ARRAY_SCHEMA_KEYWORDS = new HashSet<String>(Arrays.asList(
+			"$schema", "id", "title", "description", "definitions", "type", "items", "minItems", "maxItems"));
+
+	/**
+	 * The number of error messages reported at most when validating in a streaming fashion.
+	 */
+	private static final int MAX_STREAMING_ERRORS = 100;
+
 	private JsonSchema schema;
+	/**
+	 * the schema of the array items, if the body can be validated in a streaming fashion
+	 */
+	private JsonSchema itemSchema;
+	private int minItems;
+	private int maxItems = -1;
 	private final ResolverMap resourceResolver;
 	private final String jsonSchema;
 	private final ValidatorInterceptor.FailureHandler failureHandler;
@@ -66,17 +101,18 @@ public class JSONValidator implements IValidator {
 	public Outcome validateMessage(Exchange exc, InputStream body, Charset charset, String source) throws Exception {
 		List<String> errors;
 		boolean success = true;
+		JsonParser parser = UTF8.equals(charset) ?
+				mapper.getFactory().createParser(body) :
+				mapper.getFactory().createParser(new InputStreamReader(body, charset));
 		try {
-			JsonNode node = JsonLoader.fromReader(new InputStreamReader(body, charset));
-			ProcessingReport report = schema.validateUnchecked(node);
-			success = report.isSuccess();
-			errors = new ArrayList<String>();
-			for (ProcessingMessage message : report)
-				errors.add(message.getMessage());
+			errors = itemSchema != null ? validateItems(parser) : validateTree(parser);
+			success = errors.isEmpty();
 		} catch (JsonParseException e) {
 			success = false;
 			errors = new ArrayList<String>();
 			errors.add(e.getMessage());
+		} finally {
+			parser.close();
 		}
 
 		if (success) {
@@ -124,17 +160,84 @@ public class JSONValidator implements IValidator {
 		return Outcome.ABORT;
 	}
 
+	private List<String> validateTree(JsonParser parser) throws IOException {
+		List<String> errors = new ArrayList<String>();
+		JsonNode node = mapper.readTree(parser);
+		if (node == null)
+			throw new JsonParseException("No content", parser.getCurrentLocation());
+		if (parser.nextToken() != null)
+			throw new JsonParseException("Trailing input after the JSON value", parser.getCurrentLocation());
+		ProcessingReport report = schema.validateUnchecked(node);
+		if (!report.isSuccess())
+			for (ProcessingMessage message : report)
+				errors.add(message.getMessage());
+		return errors;
+	}
+
+	private List<String> validateItems(JsonParser parser) throws IOException {
+		List<String> errors = new ArrayList<String>();
+		JsonToken token = parser.nextToken();
+		if (token == null)
+			throw new JsonParseException("No content", parser.getCurrentLocation());
+		if (token != JsonToken.START_ARRAY) {
+			// report the same error the tree validation would report
+			JsonNode node = mapper.readTree(parser);
+			for (ProcessingMessage message : schema.validateUnchecked(node))
+				errors.add(message.getMessage());
+			return errors;
+		}
+		int count = 0;
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			JsonNode item = mapper.readTree(parser);
+			if (errors.size() < MAX_STREAMING_ERRORS) {
+				ProcessingReport report = itemSchema.validateUnchecked(item);
+				if (!report.isSuccess())
+					for (ProcessingMessage message : report)
+						errors.add("/" + count + ": " + message.getMessage());
+			}
+			count++;
+		}
+		if (parser.nextToken() != null)
+			throw new JsonParseException("Trailing input after the JSON value", parser.getCurrentLocation());
+		if (count < minItems)
+			errors.add("array is too short: must have at least " + minItems + " elements but instance has " + count + " elements");
+		if (maxItems != -1 && count > maxItems)
+			errors.add("array is too long: must have at most " + maxItems + " elements but instance has " + count + " elements");
+		return errors;
+	}
+
 
 	private void createValidators() throws IOException {
 		JsonSchemaFactory factory = JsonSchemaFactory.byDefault();
 		JsonNode schemaNode = JsonLoader.fromReader(new InputStreamReader(resourceResolver.resolve(jsonSchema)));
 		try {
 			schema = factory.getJsonSchema(schemaNode);
+			if (isStreamable(schemaNode)) {
+				itemSchema = factory.getJsonSchema(schemaNode, "/items");
+				minItems = schemaNode.path("minItems").asInt(0);
+				maxItems = schemaNode.has("maxItems") ? schemaNode.get("maxItems").asInt() : -1;
+			}
 		} catch (ProcessingException e) {
 			throw new IOException(e);
 		}
 	}
 
+	private static boolean isStreamable(JsonNode schemaNode) {
+		if (!schemaNode.isObject() || !"array".equals(schemaNode.path("type").asText()) || !schemaNode.path("items").isObject())
+			return false;
+		for (Iterator<String> it = schemaNode.fieldNames(); it.hasNext(); )
+			if (!STREAMABLE_ARRAY_SCHEMA_KEYWORDS.contains(it.next()))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return whether bodies are validated in a streaming fashion, see {@link JSONValidator}
+	 */
+	public boolean isStreaming() {
+		return itemSchema != null;
+	}
+
 	@Override
 	public long getValid() {
 		return valid.get();
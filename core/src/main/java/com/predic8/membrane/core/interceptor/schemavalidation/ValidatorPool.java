@@ -0,0 +1,67 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.schemavalidation;
+
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+
+import com.predic8.membrane.core.resolver.ResolverMap;
+import com.predic8.membrane.core.util.IdlePool;
+
+/**
+ * Validators for one compiled {@link Schema}, which is thread-safe and shared. Validators are not: Idle ones are
+ * kept in an {@link IdlePool}, and new ones are created from the schema when it is empty.
+ */
+class ValidatorPool {
+
+	private final Schema schema;
+	private final String targetNamespace;
+	private final ResolverMap resourceResolver;
+	private final IdlePool<Validator> validators = new IdlePool<Validator>();
+
+	/**
+	 * @param targetNamespace the target namespace of the schema, or null if unknown
+	 */
+	ValidatorPool(Schema schema, String targetNamespace, ResolverMap resourceResolver) {
+		this.schema = schema;
+		this.targetNamespace = targetNamespace;
+		this.resourceResolver = resourceResolver;
+		release(acquire());
+	}
+
+	/**
+	 * @return a validator using a {@link SchemaValidatorErrorHandler}, to be used by the calling thread only
+	 */
+	Validator acquire() {
+		Validator validator = validators.poll();
+		if (validator != null)
+			return validator;
+		validator = schema.newValidator();
+		validator.setResourceResolver(resourceResolver.toLSResourceResolver());
+		validator.setErrorHandler(new SchemaValidatorErrorHandler());
+		return validator;
+	}
+
+	void release(Validator validator) {
+		((SchemaValidatorErrorHandler) validator.getErrorHandler()).reset();
+		validators.release(validator);
+	}
+
+	String getTargetNamespace() {
+		return targetNamespace;
+	}
+
+}
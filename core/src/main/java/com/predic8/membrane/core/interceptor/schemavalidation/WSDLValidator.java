@@ -85,6 +85,11 @@ public class WSDLValidator extends AbstractXMLSchemaValidator {
 		return SOAPUtil.isFault(xmlInputFactory, xopr, msg);
 	}
 
+	@Override
+	protected String getRootElementNamespace(Message msg) {
+		return SOAPUtil.getBodyElementNamespace(xmlInputFactory, xopr, msg);
+	}
+
 	@Override
 	protected String getPreliminaryError(XOPReconstitutor xopr, Message msg) {
 		if (SOAPUtil.isSOAP(xmlInputFactory, xopr, msg))
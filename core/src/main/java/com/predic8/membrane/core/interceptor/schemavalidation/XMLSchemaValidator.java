@@ -21,7 +21,6 @@ import java.util.List;
 import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.SchemaFactory;
-import javax.xml.validation.Validator;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
@@ -48,17 +47,14 @@ public class XMLSchemaValidator extends AbstractXMLSchemaValidator {
 	}
 
 	@Override
-	protected List<Validator> createValidators() throws Exception {
+	protected List<ValidatorPool> createValidators() throws Exception {
 		SchemaFactory sf = SchemaFactory.newInstance(Constants.XSD_NS);
 		sf.setResourceResolver(resourceResolver.toLSResourceResolver());
-		List<Validator> validators = new ArrayList<Validator>();
+		List<ValidatorPool> validators = new ArrayList<ValidatorPool>();
 		log.debug("Creating validator for schema: " + location);
 		StreamSource ss = new StreamSource(resourceResolver.resolve(location));
 		ss.setSystemId(location);
-		Validator validator = sf.newSchema(ss).newValidator();
-		validator.setResourceResolver(resourceResolver.toLSResourceResolver());
-		validator.setErrorHandler(new SchemaValidatorErrorHandler());
-		validators.add(validator);
+		validators.add(new ValidatorPool(sf.newSchema(ss), null, resourceResolver));
 		return validators;
 	}
 
@@ -0,0 +1,159 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.xslt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+import javax.xml.transform.Source;
+
+import com.predic8.membrane.core.http.AbstractBody;
+import com.predic8.membrane.core.http.AbstractBodyTransferrer;
+import com.predic8.membrane.core.http.Chunk;
+import com.predic8.membrane.core.util.BufferPool;
+
+/**
+ * A body holding the result of an XSLT transformation, which is only run when the body is written or read.
+ *
+ * When the body is written without being read before, the transformation writes directly into the
+ * {@link AbstractBodyTransferrer} (through a buffer taken from {@link BufferPool#BODY}), so the result is never
+ * held in memory as a whole. As the message head has already been sent at that time, an error during the
+ * transformation aborts the connection instead of producing an error response.
+ *
+ * The message must use "Transfer-Encoding: chunked", as the length is not known in advance. The source is consumed
+ * by the transformation, which can therefore only run once.
+ */
+public class XSLTBody extends AbstractBody {
+
+	private final XSLTTransformer transformer;
+	private final Source source;
+	private final Map<String, String> parameters;
+
+	public XSLTBody(XSLTTransformer transformer, Source source, Map<String, String> parameters) {
+		this.transformer = transformer;
+		this.source = source;
+		this.parameters = parameters;
+	}
+
+	@Override
+	protected void readLocal() throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		transform(baos);
+		chunks.add(new Chunk(baos.toByteArray()));
+	}
+
+	@Override
+	protected void writeAlreadyRead(AbstractBodyTransferrer out) throws IOException {
+		for (Chunk chunk : chunks)
+			out.write(chunk);
+		out.finish();
+	}
+
+	@Override
+	protected void writeNotRead(AbstractBodyTransferrer out) throws IOException {
+		// observers get to see the content
+		chunks.clear();
+		transform(new TransferrerOutputStream(out, true));
+		out.finish();
+		markAsRead();
+	}
+
+	@Override
+	protected void writeStreamed(AbstractBodyTransferrer out) throws IOException {
+		chunks.clear();
+		transform(new TransferrerOutputStream(out, false));
+		out.finish();
+		markAsRead();
+	}
+
+	private void transform(OutputStream out) throws IOException {
+		try {
+			transformer.transform(source, parameters, out);
+			out.close();
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("XSLT transformation failed.", e);
+		}
+	}
+
+	@Override
+	protected byte[] getRawLocal() throws IOException {
+		return getContent();
+	}
+
+	/**
+	 * Collects the many small writes of a transformer into chunks of {@link BufferPool#BODY}'s buffer size.
+	 */
+	private class TransferrerOutputStream extends OutputStream {
+		private final AbstractBodyTransferrer out;
+		private final boolean keepChunks;
+		private byte[] buf = BufferPool.BODY.acquire();
+		private int count;
+
+		TransferrerOutputStream(AbstractBodyTransferrer out, boolean keepChunks) {
+			this.out = out;
+			this.keepChunks = keepChunks;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buf.length)
+				flushBuffer();
+			buf[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buf.length)
+					flushBuffer();
+				int n = Math.min(len, buf.length - count);
+				System.arraycopy(b, off, buf, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		private void flushBuffer() throws IOException {
+			if (count == 0)
+				return;
+			out.write(buf, 0, count);
+			if (keepChunks) {
+				byte[] chunk = new byte[count];
+				System.arraycopy(buf, 0, chunk, 0, count);
+				chunks.add(new Chunk(chunk));
+			}
+			count = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (buf == null)
+				return;
+			try {
+				flushBuffer();
+			} finally {
+				BufferPool.BODY.release(buf);
+				buf = null;
+			}
+		}
+	}
+
+}
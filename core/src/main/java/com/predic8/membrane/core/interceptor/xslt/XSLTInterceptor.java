@@ -20,6 +20,7 @@ import javax.xml.transform.stream.StreamSource;
 import com.predic8.membrane.annot.MCAttribute;
 import com.predic8.membrane.annot.MCElement;
 import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Header;
 import com.predic8.membrane.core.http.Message;
 import com.predic8.membrane.core.interceptor.AbstractInterceptor;
 import com.predic8.membrane.core.interceptor.Outcome;
@@ -37,6 +38,7 @@ import com.predic8.membrane.core.util.TextUtil;
 public class XSLTInterceptor extends AbstractInterceptor {
 
 	private String xslt;
+	private boolean streaming;
 	private volatile XSLTTransformer xsltTransformer;
 	private XOPReconstitutor xopr = new XOPReconstitutor();
 
@@ -46,21 +48,31 @@ public class XSLTInterceptor extends AbstractInterceptor {
 
 	@Override
 	public Outcome handleRequest(Exchange exc) throws Exception {
-		transformMsg(exc.getRequest(), xslt, exc.getStringProperties());
+		transformMsg(exc.getRequest(), xslt, exc.getStringProperties(), false);
 		return Outcome.CONTINUE;
 	}
 
 	@Override
 	public Outcome handleResponse(Exchange exc) throws Exception {
-		transformMsg(exc.getResponse(), xslt, exc.getStringProperties());
+		transformMsg(exc.getResponse(), xslt, exc.getStringProperties(), streaming);
 		return Outcome.CONTINUE;
 	}
 
-	private void transformMsg(Message msg, String ss, Map<String, String> parameter) throws Exception {
+	/**
+	 * @param stream whether to transform while the body is sent. Only used for responses: A request body might be
+	 *        sent more than once (when the HTTP client retries), but the transformation can only run once.
+	 */
+	private void transformMsg(Message msg, String ss, Map<String, String> parameter, boolean stream) throws Exception {
 		if (msg.isBodyEmpty())
 			return;
-		msg.setBodyContent(xsltTransformer.transform(
-				new StreamSource(xopr.reconstituteIfNecessary(msg)), parameter));
+		StreamSource source = new StreamSource(xopr.reconstituteIfNecessary(msg));
+		if (stream) {
+			msg.getHeader().removeFields(Header.CONTENT_LENGTH);
+			msg.getHeader().setValue(Header.TRANSFER_ENCODING, Header.CHUNKED);
+			msg.setBody(new XSLTBody(xsltTransformer, source, parameter));
+			return;
+		}
+		msg.setBodyContent(xsltTransformer.transform(source, parameter));
 	}
 
 	@Override
@@ -83,6 +95,22 @@ public class XSLTInterceptor extends AbstractInterceptor {
 		this.xsltTransformer = null;
 	}
 
+	public boolean isStreaming() {
+		return streaming;
+	}
+
+	/**
+	 * @description Whether the transformed response is written directly to the connection (using chunked
+	 *              transfer encoding) instead of being held in memory as a whole. Requests are always transformed
+	 *              in memory. Errors during the
+	 *              transformation then abort the connection instead of producing an error response.
+	 * @default false
+	 */
+	@MCAttribute
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 	@Override
 	public String getShortDescription() {
 		return "Applies an XSLT transformation.";
@@ -16,11 +16,12 @@ package com.predic8.membrane.core.interceptor.xslt;
 import static com.predic8.membrane.core.util.TextUtil.isNullOrEmpty;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
@@ -32,45 +33,55 @@ import org.slf4j.LoggerFactory;
 
 import com.predic8.membrane.core.Router;
 import com.predic8.membrane.core.resolver.ResolverMap;
-import com.predic8.membrane.core.resolver.ResourceRetrievalException;
-
+import com.predic8.membrane.core.util.IdlePool;
+
+/**
+ * Applies a stylesheet, which is compiled once into {@link Templates} shared by all threads.
+ *
+ * Transformers created from the templates are cheap, but not thread-safe: Up to <code>concurrency</code> idle
+ * transformers are kept in an {@link IdlePool}, and new ones are created when it is empty, so transformations
+ * never wait for each other.
+ */
 public class XSLTTransformer {
 	private static Logger log = LoggerFactory.getLogger(XSLTTransformer.class.getName());
 
 	private final TransformerFactory fac;
-	private final ArrayBlockingQueue<Transformer> transformers;
+	/**
+	 * null for the identity transformation
+	 */
+	private final Templates templates;
+	private final IdlePool<Transformer> transformers;
 	private final String styleSheet;
 
 	public XSLTTransformer(String styleSheet, final Router router, final int concurrency) throws Exception {
 		fac = TransformerFactory.newInstance();
 
 		this.styleSheet = styleSheet;
-		log.debug("using " + concurrency + " parallel transformer instances for " + styleSheet);
-		transformers = new ArrayBlockingQueue<Transformer>(concurrency);
-		createOneTransformer(router.getResolverMap(), router.getBaseLocation());
-		router.getBackgroundInitializator().execute(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					for (int i = 1; i < concurrency; i++)
-						createOneTransformer(router.getResolverMap(), router.getBaseLocation());
-				} catch (Exception e) {
-					log.error("Error creating XSLT transformer:", e);
-				}
-			}
-		});
+		transformers = new IdlePool<Transformer>(concurrency);
+		log.debug("keeping up to " + concurrency + " idle transformer instances for " + styleSheet);
+		if (isNullOrEmpty(styleSheet)) {
+			templates = null;
+		} else {
+			ResolverMap rr = router.getResolverMap();
+			StreamSource source = new StreamSource(rr.resolve(ResolverMap.combine(router.getBaseLocation(), styleSheet)));
+			source.setSystemId(styleSheet);
+			templates = fac.newTemplates(source);
+		}
+		transformers.release(createTransformer());
 	}
 
-	private void createOneTransformer(ResolverMap rr, String baseLocation) throws TransformerConfigurationException, InterruptedException, ResourceRetrievalException {
-		Transformer t;
-		if (isNullOrEmpty(styleSheet))
-			t = fac.newTransformer();
-		else {
-			StreamSource source = new StreamSource(rr.resolve(ResolverMap.combine(baseLocation, styleSheet)));
-			source.setSystemId(styleSheet);
-			t = fac.newTransformer(source);
+	private Transformer createTransformer() throws TransformerConfigurationException {
+		if (templates != null)
+			return templates.newTransformer();
+		// TransformerFactory is not thread-safe
+		synchronized (fac) {
+			return fac.newTransformer();
 		}
-		transformers.put(t);
+	}
+
+	private Transformer acquire() throws TransformerConfigurationException {
+		Transformer t = transformers.poll();
+		return t != null ? t : createTransformer();
 	}
 
 	public byte[] transform(Source xml) throws Exception {
@@ -79,10 +90,18 @@ public class XSLTTransformer {
 
 	public byte[] transform(Source xml, Map<String, String> parameters)
 			throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		transform(xml, parameters, baos);
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Writes the result of the transformation to the stream, as it is produced.
+	 */
+	public void transform(Source xml, Map<String, String> parameters, OutputStream out) throws Exception {
 		log.debug("applying transformation: " + styleSheet);
 
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		Transformer t = transformers.take();
+		Transformer t = acquire();
 		try {
 			try {
 				t.clearParameters();
@@ -92,11 +111,15 @@ public class XSLTTransformer {
 			for (Map.Entry<String, String> e : parameters.entrySet()) {
 				t.setParameter(e.getKey(), e.getValue());
 			}
-			t.transform(xml, new StreamResult(baos));
+			t.transform(xml, new StreamResult(out));
+		} catch (Exception e) {
+			// the transformer might be left in an inconsistent state: do not reuse it
+			t = null;
+			throw e;
 		} finally {
-			transformers.put(t);
+			if (t != null)
+				transformers.release(t);
 		}
-		return baos.toByteArray();
 	}
 
 }
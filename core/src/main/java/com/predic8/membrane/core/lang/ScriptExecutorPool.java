@@ -15,50 +15,62 @@
 package com.predic8.membrane.core.lang;
 
 import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Function;
 import com.predic8.membrane.core.Router;
+import com.predic8.membrane.core.stats.LatencyHistogram;
+import com.predic8.membrane.core.util.IdlePool;
 
+/**
+ * Executes a script which has been compiled once and is shared by all threads.
+ *
+ * Only the state of a single invocation (e.g. the variable binding) is confined to one thread at a time: It is
+ * kept in a context of type T. Idle contexts are kept in an {@link IdlePool} and new ones are created when it is
+ * empty, so invocations never wait for each other.
+ *
+ * The duration of every invocation is recorded in microseconds, see {@link #getLatency()}.
+ */
 public abstract class ScriptExecutorPool<T, R> implements Function<Map<String, Object>, R> {
-	private static final Logger log = LoggerFactory.getLogger(ScriptExecutorPool.class);
 
-	private static final int concurrency = Runtime.getRuntime().availableProcessors() * 2;
-	ArrayBlockingQueue<T> scripts = new ArrayBlockingQueue<T>(concurrency);
+	private final IdlePool<T> contexts = new IdlePool<T>();
+	private final LatencyHistogram latency = new LatencyHistogram();
 
+	/**
+	 * Called by subclasses after the script has been compiled: Creates the first context, so that errors surface
+	 * during initialization.
+	 */
 	public void init(Router router) {
-		scripts.add(createOneScript());
-		router.getBackgroundInitializator().execute(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					for (int i = 1; i < concurrency; i++)
-						scripts.add(createOneScript());
-				} catch (Exception e) {
-					log.error("Error compiling script:", e);
-				}
-			}
-		});
+		contexts.release(createContext());
 	}
 
 	public final Object execute(Map<String, Object> parameters) {
+		long start = System.nanoTime();
+		T context = contexts.poll();
+		if (context == null)
+			context = createContext();
 		try {
-			T script = scripts.take();
-			try {
-				return invoke(script, parameters);
-			} finally {
-				scripts.put(script);
-			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-			return null;
+			return invoke(context, parameters);
+		} finally {
+			contexts.release(context);
+			latency.record((System.nanoTime() - start) / 1000);
 		}
 	}
 
-	protected abstract Object invoke(T script, Map<String, Object> parameters);
-	protected abstract T createOneScript();
+	/**
+	 * @return the durations of the invocations, in microseconds
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Runs the script. The context is used by the calling thread only.
+	 */
+	protected abstract Object invoke(T context, Map<String, Object> parameters);
+
+	/**
+	 * Creates the state needed to run the compiled script once. Must not block.
+	 */
+	protected abstract T createContext();
 
 }
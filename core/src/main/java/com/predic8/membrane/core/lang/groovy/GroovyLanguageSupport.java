@@ -20,6 +20,8 @@ import groovy.lang.Script;
 
 import java.util.Map;
 
+import org.codehaus.groovy.runtime.InvokerHelper;
+
 import com.google.common.base.Function;
 import com.predic8.membrane.core.Router;
 import com.predic8.membrane.core.lang.LanguageSupport;
@@ -29,18 +31,18 @@ public class GroovyLanguageSupport extends LanguageSupport {
 
 	private abstract class GroovyScriptExecutorPool<R> extends
 	ScriptExecutorPool<Script, R> {
-		private final String groovyCode;
+		private final Class<? extends Script> scriptClass;
 
 		private GroovyScriptExecutorPool(Router router, String expression) {
-			this.groovyCode = expression;
+			synchronized (shell) {
+				scriptClass = shell.parse(expression).getClass();
+			}
 			init(router);
 		}
 
 		@Override
-		protected Script createOneScript() {
-			synchronized (shell) {
-				return shell.parse(groovyCode);
-			}
+		protected Script createContext() {
+			return InvokerHelper.createScript(scriptClass, new Binding());
 		}
 
 		@Override
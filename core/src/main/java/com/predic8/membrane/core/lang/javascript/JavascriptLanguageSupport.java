@@ -20,6 +20,9 @@ import com.predic8.membrane.core.lang.ScriptExecutorPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
@@ -29,35 +32,40 @@ public class JavascriptLanguageSupport extends LanguageSupport {
 
     private static final Logger log = LoggerFactory.getLogger(JavascriptLanguageSupport.class);
 
-    private abstract class JavascriptScriptExecutorPool<R> extends ScriptExecutorPool<ScriptEngine,R>{
-        private final String javascriptCode;
+    private abstract class JavascriptScriptExecutorPool<R> extends ScriptExecutorPool<Bindings,R>{
+        private final ScriptEngine engine;
+        private final CompiledScript compiledScript;
 
-        ScriptEngineManager sce;
         final static String javascriptEngineName = "nashorn";
 
         private JavascriptScriptExecutorPool(Router router, String expression) {
-            this.javascriptCode = expression;
-            sce = new ScriptEngineManager();
+            engine = new ScriptEngineManager().getEngineByName(javascriptEngineName);
+            try {
+                compiledScript = ((Compilable) engine).compile(expression);
+            } catch (ScriptException e) {
+                log.error("Error compiling script:", e);
+                throw new RuntimeException("Error compiling script:", e);
+            }
             init(router);
         }
 
         @Override
-        protected Object invoke(ScriptEngine script, Map<String, Object> parameters) {
-            for(String name : parameters.keySet())
-                script.put(name,parameters.get(name));
+        protected Object invoke(Bindings bindings, Map<String, Object> parameters) {
+            bindings.putAll(parameters);
             try {
-                return script.eval(javascriptCode);
+                return compiledScript.eval(bindings);
             } catch (ScriptException e) {
-                log.error("Error compiling script:", e);
-                throw new RuntimeException("Error compiling script:", e);
+                log.error("Error executing script:", e);
+                throw new RuntimeException("Error executing script:", e);
             }
         }
 
+        /**
+         * Each context has its own global scope, so that the compiled script can run concurrently.
+         */
         @Override
-        protected ScriptEngine createOneScript() {
-            synchronized (sce){
-                return sce.getEngineByName(javascriptEngineName);
-            }
+        protected Bindings createContext() {
+            return engine.createBindings();
         }
     }
 
@@ -112,6 +112,7 @@ public abstract class AbstractProxy implements Rule {
 
 	public void setKey(RuleKey ruleKey) {
 		this.key = ruleKey;
+		AbstractRuleKey.keyModified();
 	}
 
 	/**
@@ -13,6 +13,7 @@
    limitations under the License. */
 package com.predic8.membrane.core.rules;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.slf4j.Logger;
@@ -22,6 +23,8 @@ public abstract class AbstractRuleKey implements RuleKey {
 
 	private static Logger log = LoggerFactory.getLogger(AbstractRuleKey.class.getName());
 
+	private static final AtomicInteger modifications = new AtomicInteger();
+
 	/**
 	 * -1 is used as a wildcard. It is used by HttpServletHandler, since its port
 	 * is determined by the webserver and not by the proxies.xml
@@ -66,6 +69,7 @@ public abstract class AbstractRuleKey implements RuleKey {
 
 	public void setPort(int port) {
 		this.port = port;
+		keyModified();
 	}
 
 	public boolean isPathRegExp() {
@@ -74,6 +78,7 @@ public abstract class AbstractRuleKey implements RuleKey {
 
 	public void setPathRegExp(boolean pathRegExp) {
 		this.pathRegExp = pathRegExp;
+		keyModified();
 	}
 
 	public boolean isUsePathPattern() {
@@ -83,11 +88,13 @@ public abstract class AbstractRuleKey implements RuleKey {
 	public void setUsePathPattern(boolean usePathPattern) {
 		this.usePathPattern = usePathPattern;
 		pathPattern = null;
+		keyModified();
 	}
 
 	public void setPath(String path) {
 		this.path = path;
 		pathPattern = null;
+		keyModified();
 	}
 
 	public String getPath() {
@@ -126,6 +133,21 @@ public abstract class AbstractRuleKey implements RuleKey {
 		this.ip = ip;
 	}
 
+	/**
+	 * Called whenever a property used to route requests changes, so that the {@link com.predic8.membrane.core.RuleManager}
+	 * can update its routing table.
+	 */
+	protected static void keyModified() {
+		modifications.incrementAndGet();
+	}
+
+	/**
+	 * @return a counter incremented on every modification of any key's routing properties
+	 */
+	public static int getModificationCount() {
+		return modifications.get();
+	}
+
 	@Override
 	public boolean matchesHostHeader(String hostHeader) {
 		return false;
@@ -128,6 +128,7 @@ public class ServiceProxyKey extends AbstractRuleKey {
 		} else {
 			this.hostPattern = null;
 		}
+		keyModified();
 	}
 
 	public static String createHostPattern(String host) {
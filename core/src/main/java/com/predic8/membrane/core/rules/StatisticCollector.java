@@ -17,37 +17,44 @@ package com.predic8.membrane.core.rules;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.predic8.membrane.core.exchange.AbstractExchange;
 import com.predic8.membrane.core.exchange.Exchange;
 import com.predic8.membrane.core.exchange.ExchangeState;
 import com.predic8.membrane.core.exchangestore.MemoryExchangeStore;
 import com.predic8.membrane.core.http.AbstractBody;
+import com.predic8.membrane.core.stats.LatencyHistogram;
 import com.predic8.membrane.core.transport.http.AbstractHttpHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * {@link StatisticCollector} counts {@link Exchange} objects, tracks the time they took
- * to complete, the number of bytes they sent, and some more numbers.
+ * to complete (including a histogram to derive percentiles from), the number of bytes they
+ * sent, and some more numbers.
  *
- * Instances are not thread-safe.
+ * Instances are thread-safe: Collecting never blocks, as all numbers are kept in
+ * {@link LongAdder}s. Each number read is up to date, but numbers read one after another
+ * may not reflect exactly the same set of exchanges.
  */
 public class StatisticCollector {
 	private static Logger log = LoggerFactory.getLogger(StatisticCollector.class.getName());
 
-	private final NumberFormat nf = NumberFormat.getInstance(Locale.US);
-
 	private final boolean countErrorExchanges;
 
-	private int totalCount = 0;
-	private int goodCount = 0;
-	private int errorCount = 0;
-	private int minTime = Integer.MAX_VALUE;
-	private int maxTime = -1;
-	private long totalTime = 0;
-	private long totalBytesSent = 0;
-	private long totalBytesReceived = 0;
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder goodCount = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAccumulator minTime = new LongAccumulator(Math::min, Integer.MAX_VALUE);
+	private final LongAccumulator maxTime = new LongAccumulator(Math::max, -1);
+	private final LongAdder totalTime = new LongAdder();
+	private final LongAdder totalBytesSent = new LongAdder();
+	private final LongAdder totalBytesReceived = new LongAdder();
+	private final LatencyHistogram times = new LatencyHistogram();
+	private final LatencyHistogram requestSizes = new LatencyHistogram();
+	private final LatencyHistogram responseSizes = new LatencyHistogram();
 
 	/**
 	 * @param countErrorExchanges whether to count failed Exchange objects. Since
@@ -59,14 +66,20 @@ public class StatisticCollector {
 	 */
 	public StatisticCollector(boolean countErrorExchanges) {
 		this.countErrorExchanges = countErrorExchanges;
+	}
+
+	private static NumberFormat getNumberFormat() {
+		// NumberFormat is not thread-safe
+		NumberFormat nf = NumberFormat.getInstance(Locale.US);
 		nf.setMaximumFractionDigits(3);
+		return nf;
 	}
 
 	public void collectFrom(AbstractExchange exc) {
-		totalCount++;
+		totalCount.increment();
 
 		if (exc.getStatus() == ExchangeState.FAILED) {
-			errorCount++;
+			errorCount.increment();
 			if (!countErrorExchanges)
 				return;
 		}
@@ -79,74 +92,113 @@ public class StatisticCollector {
 		if (timeResSent == 0)
 			return; // this Exchange is not yet completed
 
-		goodCount++;
+		goodCount.increment();
 
 		int time = (int) (timeResSent - timeReqSent);
-		if (time < minTime)
-			minTime = time;
-		if (time > maxTime)
-			maxTime = time;
-		totalTime += time;
+		minTime.accumulate(time);
+		maxTime.accumulate(time);
+		totalTime.add(time);
+		times.record(time);
 
 		try {
 			AbstractBody requestBody = exc.getRequest().getBody();
-			totalBytesSent += requestBody.isRead() ? requestBody.getLength() : 0;
+			if (requestBody.isRead()) {
+				totalBytesSent.add(requestBody.getLength());
+				requestSizes.record(requestBody.getLength());
+			}
 			AbstractBody responseBody = exc.getResponse().getBody();
-			totalBytesReceived += responseBody.isRead() ? responseBody.getLength() : 0;
+			if (responseBody.isRead()) {
+				totalBytesReceived.add(responseBody.getLength());
+				responseSizes.record(responseBody.getLength());
+			}
 		} catch (IOException e) {
 			log.warn("", e);
 		}
 	}
 
 	public void collectFrom(StatisticCollector s) {
-		totalCount += s.totalCount;
-		goodCount += s.goodCount;
-		errorCount += s.errorCount;
-		minTime = Math.min(minTime, s.minTime);
-		maxTime = Math.max(maxTime, s.maxTime);
-		totalTime += s.totalTime;
-		totalBytesSent += s.totalBytesSent;
-		totalBytesReceived += s.totalBytesReceived;
+		totalCount.add(s.totalCount.sum());
+		goodCount.add(s.goodCount.sum());
+		errorCount.add(s.errorCount.sum());
+		minTime.accumulate(s.minTime.get());
+		maxTime.accumulate(s.maxTime.get());
+		totalTime.add(s.totalTime.sum());
+		totalBytesSent.add(s.totalBytesSent.sum());
+		totalBytesReceived.add(s.totalBytesReceived.sum());
+		times.add(s.times);
+		requestSizes.add(s.requestSizes);
+		responseSizes.add(s.responseSizes);
 	}
 
 	public int getCount() {
-		return totalCount;
+		return totalCount.intValue();
 	}
 
 	public int getGoodCount() {
-		return goodCount;
+		return goodCount.intValue();
 	}
 
 	public String getMinTime() {
-		return minTime == Integer.MAX_VALUE ? "" : "" + nf.format(minTime) + " ms";
+		long min = minTime.get();
+		return min == Integer.MAX_VALUE ? "" : "" + getNumberFormat().format(min) + " ms";
 	}
 
 	public String getMaxTime() {
-		return maxTime == -1 ? "" : "" + nf.format(maxTime) + " ms";
+		long max = maxTime.get();
+		return max == -1 ? "" : "" + getNumberFormat().format(max) + " ms";
 	}
 
 	public String getAvgTime() {
-		return goodCount == 0 ? "" : "" + nf.format(((double)totalTime)/goodCount) + " ms";
+		long good = goodCount.sum();
+		return good == 0 ? "" : "" + getNumberFormat().format(((double)totalTime.sum())/good) + " ms";
+	}
+
+	/**
+	 * @param percentile between 0 and 100, e.g. 99 for the time 99% of the good exchanges took at most
+	 */
+	public String getPercentileTime(double percentile) {
+		return goodCount.sum() == 0 ? "" : "" + getNumberFormat().format(times.getValueAtPercentile(percentile)) + " ms";
+	}
+
+	/**
+	 * @return the histogram of the times (in milliseconds) the good exchanges took
+	 */
+	public LatencyHistogram getTimes() {
+		return times;
+	}
+
+	/**
+	 * @return the histogram of the request body sizes of the good exchanges, as far as the bodies have been read
+	 */
+	public LatencyHistogram getRequestSizes() {
+		return requestSizes;
+	}
+
+	/**
+	 * @return the histogram of the response body sizes of the good exchanges, as far as the bodies have been read
+	 */
+	public LatencyHistogram getResponseSizes() {
+		return responseSizes;
 	}
 
 	public long getGoodTotalTime() {
-		return totalTime;
+		return totalTime.sum();
 	}
 
 	public long getGoodTotalBytesReceived() {
-		return totalBytesReceived;
+		return totalBytesReceived.sum();
 	}
 
 	public long getGoodTotalBytesSent() {
-		return totalBytesSent;
+		return totalBytesSent.sum();
 	}
 
 	public String getBytesSent() {
-		return goodCount == 0 ? "" : "" + nf.format(totalBytesSent);
+		return goodCount.sum() == 0 ? "" : "" + getNumberFormat().format(totalBytesSent.sum());
 	}
 
 	public String getBytesReceived() {
-		return goodCount == 0 ? "" : "" + nf.format(totalBytesReceived);
+		return goodCount.sum() == 0 ? "" : "" + getNumberFormat().format(totalBytesReceived.sum());
 	}
 
 	@Override
@@ -159,7 +211,7 @@ public class StatisticCollector {
 	}
 
 	public String getErrorCount() {
-		return ""+errorCount;
+		return ""+errorCount.sum();
 	}
 
 }
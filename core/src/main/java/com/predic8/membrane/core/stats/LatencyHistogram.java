@@ -0,0 +1,159 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.stats;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative values (e.g. response times in milliseconds), using HDR-style
+ * log-linear buckets: Values below 16 have their own bucket, every power-of-two range above is split into 16
+ * buckets. The value reported for a bucket is therefore at most 1/16 (6.25%) above the recorded value.
+ *
+ * Recording never blocks. Histograms with the same layout can be merged using {@link #add(LatencyHistogram)}.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Larger values are recorded as 2^MAX_EXPONENT - 1 (about 50 days, if recording milliseconds).
+	 */
+	private static final int MAX_EXPONENT = 32;
+	private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+	public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final LongAdder sum = new LongAdder();
+
+	static int getBucket(long value) {
+		if (value < SUB_BUCKETS)
+			return value < 0 ? 0 : (int) value;
+		if (value > MAX_VALUE)
+			value = MAX_VALUE;
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return the lowest value recorded into the bucket
+	 */
+	public static long getLowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * @return the highest value recorded into the bucket
+	 */
+	public static long getUpperBound(int bucket) {
+		return bucket == BUCKETS - 1 ? MAX_VALUE : getLowerBound(bucket + 1) - 1;
+	}
+
+	public void record(long value) {
+		counts.incrementAndGet(getBucket(value));
+		sum.add(Math.max(0, value));
+	}
+
+	/**
+	 * Adds the values recorded by another histogram to this one.
+	 */
+	public void add(LatencyHistogram other) {
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = other.counts.get(i);
+			if (c != 0)
+				counts.addAndGet(i, c);
+		}
+		sum.add(other.sum.sum());
+	}
+
+	public long getCount(int bucket) {
+		return counts.get(bucket);
+	}
+
+	/**
+	 * @return a copy of the bucket counts
+	 */
+	public long[] getCounts() {
+		long[] result = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++)
+			result[i] = counts.get(i);
+		return result;
+	}
+
+	/**
+	 * Adds the number of recorded values to <code>result</code>, split by the given ascending bounds:
+	 * <code>result[i]</code> receives the values above <code>bounds[i - 1]</code> up to <code>bounds[i]</code>,
+	 * <code>result[bounds.length]</code> the values above the last bound.
+	 *
+	 * As values are only known up to their bucket, a bucket is counted at the first bound not below its lowest
+	 * value: Bounds below 16 are exact, values up to 1/16 above higher bounds may be counted at the bound.
+	 */
+	public void addCounts(long[] bounds, long[] result) {
+		int j = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			long c = counts.get(i);
+			if (c == 0)
+				continue;
+			long lower = getLowerBound(i);
+			while (j < bounds.length && bounds[j] < lower)
+				j++;
+			result[j] += c;
+		}
+	}
+
+	public long getCount() {
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++)
+			n += counts.get(i);
+		return n;
+	}
+
+	/**
+	 * @return the sum of all recorded values
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the highest value of the bucket holding the value at the given percentile, or 0 if nothing has been
+	 * recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = getCounts();
+		long total = 0;
+		for (long c : snapshot)
+			total += c;
+		if (total == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+		long n = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			n += snapshot[i];
+			if (n >= rank)
+				return getUpperBound(i);
+		}
+		return MAX_VALUE;
+	}
+
+}
@@ -20,6 +20,10 @@ import com.predic8.membrane.core.rules.StatisticCollector;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Collects the statistics of a rule, separately for each response status code. Collecting does not block: See
+ * {@link StatisticCollector}.
+ */
 public class RuleStatisticCollector {
 
     /**
@@ -43,11 +47,17 @@ public class RuleStatisticCollector {
     }
 
     public void collect(Exchange exc) {
-        StatisticCollector sc = getStatisticCollectorByStatusCode(exc
-                .getResponse().getStatusCode());
-        synchronized (sc) {
-            sc.collectFrom(exc);
-        }
+        getStatisticCollectorByStatusCode(exc.getResponse().getStatusCode()).collectFrom(exc);
+    }
+
+    /**
+     * @return a new collector holding the statistics of all status codes
+     */
+    public StatisticCollector getTotal() {
+        StatisticCollector total = new StatisticCollector(true);
+        for (StatisticCollector statisticCollector : statusCodes.values())
+            total.collectFrom(statisticCollector);
+        return total;
     }
 
     public int getCount() {
@@ -20,6 +20,7 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.URISyntaxException;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
@@ -34,6 +35,7 @@ import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.http.Response.ResponseBuilder;
 import com.predic8.membrane.core.interceptor.InterceptorFlowController;
+import com.predic8.membrane.core.interceptor.Outcome;
 import com.predic8.membrane.core.transport.Transport;
 import com.predic8.membrane.core.util.ContentTypeDetector;
 import com.predic8.membrane.core.util.EndOfStreamException;
@@ -51,6 +53,9 @@ public abstract class AbstractHttpHandler  {
 
 	private final Transport transport;
 
+	/** the outcome of the last request handler of a suspended exchange, or null */
+	protected CompletableFuture<Outcome> suspendedOn;
+
 	public AbstractHttpHandler(Transport transport) {
 		this.transport = transport;
 	}
@@ -72,31 +77,75 @@ public abstract class AbstractHttpHandler  {
   
 
 
+	/**
+	 * @return whether the current exchange may be suspended, see {@link #suspend(CompletableFuture)}
+	 */
+	public boolean isSuspendable() {
+		return false;
+	}
+
+	/**
+	 * Suspends the current exchange: Called by the last request handler of the main chain (instead of waiting
+	 * for a result itself), the handler's thread returns after the request handlers have run. The response
+	 * handlers are run (see {@link InterceptorFlowController#resumeHandlers(Exchange, java.util.concurrent.Future)})
+	 * once <code>outcome</code> is done.
+	 *
+	 * Only allowed if {@link #isSuspendable()}.
+	 */
+	public void suspend(CompletableFuture<Outcome> outcome) {
+		if (!isSuspendable())
+			throw new IllegalStateException("This handler cannot suspend exchanges.");
+		suspendedOn = outcome;
+	}
+
+	public boolean isSuspended() {
+		return suspendedOn != null;
+	}
+
 	protected void invokeHandlers() throws IOException, EndOfStreamException, AbortException, NoMoreRequestsException, EOFWhileReadingFirstLineException {
 		try {
 			flowController.invokeHandlers(exchange, transport.getInterceptors());
-			if (exchange.getResponse() == null)
+			if (exchange.getResponse() == null && !isSuspended())
 				throw new AbortException("No response was generated by the interceptor chain.");
 		} catch (Exception e) {
+			handleException(e);
+		}
+	}
+
+	/**
+	 * Continues the suspended exchange, see {@link #invokeHandlers()}.
+	 */
+	protected void resumeHandlers() throws IOException, EndOfStreamException, AbortException, NoMoreRequestsException, EOFWhileReadingFirstLineException {
+		CompletableFuture<Outcome> outcome = suspendedOn;
+		suspendedOn = null;
+		try {
+			flowController.resumeHandlers(exchange, outcome);
 			if (exchange.getResponse() == null)
-				exchange.setResponse(generateErrorResponse(e));
-
-			if (e instanceof IOException)
-				throw (IOException)e;
-			if (e instanceof EndOfStreamException)
-				throw (EndOfStreamException)e;
-			if (e instanceof AbortException)
-				throw (AbortException)e; // TODO: migrate catch logic into this method
-			if (e instanceof NoMoreRequestsException)
-				throw (NoMoreRequestsException)e;
-			if (e instanceof NoResponseException)
-				throw (NoResponseException)e;
-			if (e instanceof EOFWhileReadingFirstLineException)
-				throw (EOFWhileReadingFirstLineException)e;
-			log.warn("An exception occured while handling a request: ", e);
+				throw new AbortException("No response was generated by the interceptor chain.");
+		} catch (Exception e) {
+			handleException(e);
 		}
 	}
 
+	private void handleException(Exception e) throws IOException, EndOfStreamException, AbortException, NoMoreRequestsException, EOFWhileReadingFirstLineException {
+		if (exchange.getResponse() == null)
+			exchange.setResponse(generateErrorResponse(e));
+
+		if (e instanceof IOException)
+			throw (IOException)e;
+		if (e instanceof EndOfStreamException)
+			throw (EndOfStreamException)e;
+		if (e instanceof AbortException)
+			throw (AbortException)e; // TODO: migrate catch logic into this method
+		if (e instanceof NoMoreRequestsException)
+			throw (NoMoreRequestsException)e;
+		if (e instanceof NoResponseException)
+			throw (NoResponseException)e;
+		if (e instanceof EOFWhileReadingFirstLineException)
+			throw (EOFWhileReadingFirstLineException)e;
+		log.warn("An exception occured while handling a request: ", e);
+	}
+
 	private Response generateErrorResponse(Exception e) {
 		String msg;
 		boolean printStackTrace = transport.isPrintStackTrace();
@@ -32,6 +32,7 @@ import org.slf4j.LoggerFactory;
 
 import com.predic8.membrane.core.exchange.Exchange;
 import com.predic8.membrane.core.transport.ssl.SSLProvider;
+import com.predic8.membrane.core.util.DNSCache;
 
 /**
  * A {@link Connection} is an outbound TCP/IP connection, possibly managed
@@ -67,6 +68,7 @@ public class Connection implements MessageObserver, NonRelevantBodyObserver {
 
 	private Exchange exchange;
 	private boolean keepAttachedToExchange;
+	private ConnectionManager.Destination destination;
 
 	public static Connection open(String host, int port, String localHost, SSLProvider sslProvider, int connectTimeout) throws UnknownHostException, IOException {
 		return open(host, port, localHost, sslProvider, null, connectTimeout);
@@ -88,7 +90,16 @@ public class Connection implements MessageObserver, NonRelevantBodyObserver {
 			sniServername = null;
 		}
 
-		if (sslProvider != null) {
+		DNSCache dnsCache = mgr == null ? null : mgr.getDnsCache();
+		if (dnsCache != null) {
+			// connect to the cached address, then layer TLS on top (using the host name for verification and SNI)
+			con.socket = new Socket();
+			if (!isNullOrEmpty(localHost))
+				con.socket.bind(new InetSocketAddress(InetAddress.getByName(localHost), 0));
+			con.socket.connect(new InetSocketAddress(dnsCache.resolve(host), port), connectTimeout);
+			if (sslProvider != null)
+				con.socket = sslProvider.createSocket(con.socket, host, port, connectTimeout, sniServername);
+		} else if (sslProvider != null) {
 			if (isNullOrEmpty(localHost))
 				con.socket = sslProvider.createSocket(host, port, connectTimeout, sniServername);
 			else
@@ -244,6 +255,14 @@ public class Connection implements MessageObserver, NonRelevantBodyObserver {
 		this.exchange = exchange;
 	}
 
+	ConnectionManager.Destination getDestination() {
+		return destination;
+	}
+
+	void setDestination(ConnectionManager.Destination destination) {
+		this.destination = destination;
+	}
+
 	@Override
 	public String toString() {
 		return socket.getRemoteSocketAddress().toString();
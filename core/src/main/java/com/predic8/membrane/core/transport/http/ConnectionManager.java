@@ -1,4 +1,4 @@
-/* Copyright 2011, 2012 predic8 GmbH, www.predic8.com
+/* Copyright 2009, 2012 predic8 GmbH, www.predic8.com
 
    Licensed under the Apache License, Version 2.0 (the "License");
    you may not use this file except in compliance with the License.
@@ -11,17 +11,26 @@
    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
    See the License for the specific language governing permissions and
    limitations under the License. */
+
 package com.predic8.membrane.core.transport.http;
 
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.predic8.membrane.core.transport.http.client.ProxyConfiguration;
 import com.predic8.membrane.core.transport.ssl.SSLContext;
@@ -30,6 +39,7 @@ import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
 import com.predic8.membrane.core.transport.ssl.SSLProvider;
+import com.predic8.membrane.core.util.DNSCache;
 
 import javax.annotation.Nullable;
 
@@ -50,34 +60,66 @@ import javax.annotation.Nullable;
  *
  * Note that you should call {@link Connection#release()} exactly once, or alternatively
  * {@link Connection#close()} at least once.
+ *
+ * Idle connections are kept per destination (see {@link Destination}) in a lock-free deque and are reused
+ * last-in-first-out, so that the most recently used (and therefore most likely still healthy) connection is handed out
+ * first, and rarely used connections expire. Expiry is driven by a hashed timer wheel: each released connection is put
+ * into the bucket of the tick it expires in, and each tick only looks at the connections in its bucket. Destinations
+ * without any connections are forgotten after a while.
  */
 public class ConnectionManager {
 
 	private static Logger log = LoggerFactory.getLogger(ConnectionManager.class.getName());
 
+	private static final int WHEEL_SIZE = 64;
+
 	private final long keepAliveTimeout;
 	private final long autoCloseInterval;
+	private final int maxIdlePerDestination;
+	private final int maxTotalPerDestination;
 
-	private static class ConnectionKey {
+	static class ConnectionKey {
 		// SSLProvider and ProxyConfiguration do not override equals() or hashCode(), but this is OK, as only a few will exist and are used read-only
 
-		public final String host;
-		public final int port;
+		private String host;
+		private int port;
 		@Nullable private SSLProvider sslProvider;
-		@Nullable public String serverName;
-		@Nullable public ProxyConfiguration proxy;
+		@Nullable private String serverName;
+		@Nullable private ProxyConfiguration proxy;
+		private int hash;
+
+		ConnectionKey() {
+		}
 
 		public ConnectionKey(String host, int port, SSLProvider sslProvider, String serverName, ProxyConfiguration proxy) {
+			set(host, port, sslProvider, serverName, proxy);
+		}
+
+		/**
+		 * Only to be used on lookup keys, which are never stored in a map.
+		 */
+		ConnectionKey set(String host, int port, SSLProvider sslProvider, String serverName, ProxyConfiguration proxy) {
 			this.host = host;
 			this.port = port;
 			this.sslProvider = sslProvider;
 			this.serverName = serverName;
 			this.proxy = proxy;
+			int h = host.hashCode();
+			h = 31 * h + port;
+			h = 31 * h + (sslProvider == null ? 0 : sslProvider.hashCode());
+			h = 31 * h + (serverName == null ? 0 : serverName.hashCode());
+			h = 31 * h + (proxy == null ? 0 : proxy.hashCode());
+			this.hash = h;
+			return this;
+		}
+
+		ConnectionKey copy() {
+			return new ConnectionKey(host, port, sslProvider, serverName, proxy);
 		}
 
 		@Override
 		public int hashCode() {
-			return Objects.hashCode(host, port, sslProvider, serverName, proxy);
+			return hash;
 		}
 
 		@Override
@@ -85,7 +127,8 @@ public class ConnectionManager {
 			if (!(obj instanceof ConnectionKey) || obj == null)
 				return false;
 			ConnectionKey other = (ConnectionKey)obj;
-			return host.equals(other.host)
+			return hash == other.hash
+					&& host.equals(other.host)
 					&& port == other.port
 					&& Objects.equal(sslProvider,other.sslProvider)
 					&& Objects.equal(serverName, other.serverName)
@@ -99,11 +142,18 @@ public class ConnectionManager {
 	}
 
 	private static class OldConnection {
+		private static final int IDLE = 0;
+		private static final int TAKEN = 1;
+		private static final int EXPIRED = 2;
+
 		public final Connection connection;
+		public final Destination destination;
 		public final long deathTime;
+		private final AtomicInteger state = new AtomicInteger(IDLE);
 
-		public OldConnection(Connection connection, long defaultKeepAliveTimeout) {
+		public OldConnection(Connection connection, Destination destination, long defaultKeepAliveTimeout) {
 			this.connection = connection;
+			this.destination = destination;
 			long lastUse = connection.getLastUse();
 			if (lastUse == 0)
 				lastUse = System.currentTimeMillis();
@@ -118,17 +168,151 @@ public class ConnectionManager {
 				delta = 0; // let the background closer do its job
 			this.deathTime = lastUse + delta;
 		}
+
+		/**
+		 * @return whether the connection was idle and is now exclusively owned by the caller
+		 */
+		boolean take(int newState) {
+			return state.compareAndSet(IDLE, newState);
+		}
+	}
+
+	/**
+	 * The connections to one destination (host, port, SSL, SNI server name and proxy) and their statistics.
+	 */
+	public static class Destination {
+		private final ConnectionKey key;
+		private final ConcurrentLinkedDeque<OldConnection> idle = new ConcurrentLinkedDeque<OldConnection>();
+		private final AtomicInteger idleCount = new AtomicInteger();
+		private final AtomicInteger total = new AtomicInteger();
+
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder misses = new LongAdder();
+		private final LongAdder opened = new LongAdder();
+		private final LongAdder evictions = new LongAdder();
+		private final LongAdder waitTimeMs = new LongAdder();
+
+		// only used when maxTotalPerDestination is reached
+		private final ReentrantLock waitLock = new ReentrantLock();
+		private final Condition connectionAvailable = waitLock.newCondition();
+		private final AtomicInteger waiting = new AtomicInteger();
+
+		/** only updated when older than a second, to avoid writing to shared memory on every request */
+		private volatile long lastUse;
+
+		Destination(ConnectionKey key) {
+			this.key = key;
+			this.lastUse = System.currentTimeMillis();
+		}
+
+		private void touch(long now) {
+			if (now - lastUse > 1000)
+				lastUse = now;
+		}
+
+		private boolean isUnused(long now, long timeout) {
+			return total.get() == 0 && idleCount.get() == 0 && waiting.get() == 0 && now - lastUse > timeout;
+		}
+
+		/**
+		 * @return an idle connection, which has been removed from the pool, or null
+		 */
+		private OldConnection poll() {
+			OldConnection o;
+			while ((o = idle.pollFirst()) != null) {
+				if (o.take(OldConnection.TAKEN)) {
+					idleCount.decrementAndGet();
+					return o;
+				}
+				// expired concurrently by the timer wheel
+			}
+			return null;
+		}
+
+		private void signalWaiting() {
+			if (waiting.get() == 0)
+				return;
+			waitLock.lock();
+			try {
+				connectionAvailable.signalAll();
+			} finally {
+				waitLock.unlock();
+			}
+		}
+
+		/** @return the number of times an idle connection could be reused */
+		public long getHits() {
+			return hits.sum();
+		}
+
+		/** @return the number of times no idle connection was available */
+		public long getMisses() {
+			return misses.sum();
+		}
+
+		/** @return the number of connections opened */
+		public long getOpened() {
+			return opened.sum();
+		}
+
+		/** @return the number of idle connections closed because they expired, were unhealthy or exceeded the idle limit */
+		public long getEvictions() {
+			return evictions.sum();
+		}
+
+		/** @return the total time in milliseconds callers waited because the connection limit was reached */
+		public long getWaitTimeMs() {
+			return waitTimeMs.sum();
+		}
+
+		public int getIdle() {
+			return idleCount.get();
+		}
+
+		/** @return the number of open connections, idle or in use */
+		public int getTotal() {
+			return total.get();
+		}
+
+		@Override
+		public String toString() {
+			return key.toString();
+		}
 	}
 
 	private AtomicInteger numberInPool = new AtomicInteger();
-	private HashMap<ConnectionKey, ArrayList<OldConnection>> availableConnections =
-			new HashMap<ConnectionManager.ConnectionKey, ArrayList<OldConnection>>(); // guarded by this
+	private final ConcurrentHashMap<ConnectionKey, Destination> destinations = new ConcurrentHashMap<ConnectionKey, Destination>();
+	private final ThreadLocal<ConnectionKey> lookupKey = new ThreadLocal<ConnectionKey>() {
+		@Override
+		protected ConnectionKey initialValue() {
+			return new ConnectionKey();
+		}
+	};
+
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedQueue<OldConnection>[] wheel = new ConcurrentLinkedQueue[WHEEL_SIZE];
+	private final long startTime = System.currentTimeMillis();
+	private volatile long lastTick; // only written by the timer thread
+
 	private Timer timer;
 	private volatile boolean shutdownWhenDone = false;
+	private volatile DNSCache dnsCache;
 
 	public ConnectionManager(long keepAliveTimeout) {
+		this(keepAliveTimeout, 0, 0);
+	}
+
+	/**
+	 * @param maxIdlePerDestination the maximum number of idle connections kept per destination, or 0 for no limit
+	 * @param maxTotalPerDestination the maximum number of open connections per destination, or 0 for no limit
+	 */
+	public ConnectionManager(long keepAliveTimeout, int maxIdlePerDestination, int maxTotalPerDestination) {
 		this.keepAliveTimeout = keepAliveTimeout;
 		this.autoCloseInterval = keepAliveTimeout * 2;
+		this.maxIdlePerDestination = maxIdlePerDestination;
+		this.maxTotalPerDestination = maxTotalPerDestination;
+		for (int i = 0; i < WHEEL_SIZE; i++)
+			wheel[i] = new ConcurrentLinkedQueue<OldConnection>();
 		timer = new Timer("Connection Closer", true);
 		timer.schedule(new TimerTask() {
 			@Override
@@ -139,12 +323,25 @@ public class ConnectionManager {
 		}, autoCloseInterval, autoCloseInterval);
 	}
 
+	@Nullable
+	public DNSCache getDnsCache() {
+		return dnsCache;
+	}
+
+	/**
+	 * @param dnsCache used to resolve the host names of new connections, or null to resolve them on every connect
+	 */
+	public void setDnsCache(@Nullable DNSCache dnsCache) {
+		this.dnsCache = dnsCache;
+	}
+
 	public Connection getConnection(String host, int port, String localHost, SSLProvider sslProvider, int connectTimeout, @Nullable String sniServerName,
 		@Nullable ProxyConfiguration proxy, @Nullable SSLContext proxySSLContext) throws UnknownHostException, IOException {
 
-		log.debug("connection requested for " + host + ":" + port + (proxy != null ? " via " + proxy.getHost() + ":" + proxy.getPort() : ""));
-
-		log.debug("Number of connections in pool: " + numberInPool.get());
+		if (log.isDebugEnabled()) {
+			log.debug("connection requested for " + host + ":" + port + (proxy != null ? " via " + proxy.getHost() + ":" + proxy.getPort() : ""));
+			log.debug("Number of connections in pool: " + numberInPool.get());
+		}
 
 		String cacheHost = host;
 		int cachePort = port;
@@ -155,98 +352,236 @@ public class ConnectionManager {
 			cachePort = 0;
 		}
 
-		ConnectionKey key = new ConnectionKey(cacheHost, cachePort, sslProvider, sniServerName, proxy);
-		long now = System.currentTimeMillis();
+		Destination d = getDestination(lookupKey.get().set(cacheHost, cachePort, sslProvider, sniServerName, proxy));
+		long waitStart = 0;
+
+		while (true) {
+			long now = System.currentTimeMillis();
+			d.touch(now);
+			OldConnection o;
+			while ((o = d.poll()) != null) {
+				if (isReusable(o, now)) {
+					d.hits.increment();
+					addWaitTime(d, waitStart);
+					return o.connection;
+				}
+				d.evictions.increment();
+				closeQuietly(o.connection);
+			}
 
-		synchronized(this) {
-			ArrayList<OldConnection> l = availableConnections.get(key);
-			if (l != null) {
-				int i = l.size() - 1;
-				while(i >= 0) {
-					OldConnection c = l.get(i);
-					if (c.deathTime > now) {
-						l.remove(i);
-						return c.connection;
-					}
-					Collections.swap(l, 0, i);
-					i--;
+			if (reserve(d)) {
+				d.misses.increment();
+				addWaitTime(d, waitStart);
+				Connection result;
+				try {
+					result = Connection.open(host, port, localHost, sslProvider, this, connectTimeout, sniServerName, proxy, proxySSLContext);
+				} catch (IOException e) {
+					unreserve(d);
+					throw e;
+				} catch (RuntimeException e) {
+					unreserve(d);
+					throw e;
 				}
+				result.setDestination(d);
+				d.opened.increment();
+				numberInPool.incrementAndGet();
+				return result;
 			}
-		}
 
-		Connection result = Connection.open(host, port, localHost, sslProvider, this, connectTimeout,sniServerName,proxy,proxySSLContext);
-		numberInPool.incrementAndGet();
-		return result;
+			// maxTotalPerDestination reached: wait for a connection to be released or closed
+			if (waitStart == 0)
+				waitStart = now;
+			long remaining = connectTimeout <= 0 ? Long.MAX_VALUE : waitStart + connectTimeout - now;
+			if (remaining <= 0) {
+				addWaitTime(d, waitStart);
+				throw new SocketTimeoutException("Timed out waiting for a connection to " + d + " (limit of " + maxTotalPerDestination + " connections reached).");
+			}
+			awaitConnection(d, Math.min(remaining, 1000));
+		}
 	}
 
 	public Connection getConnection(String host, int port, String localHost, SSLProvider sslProvider, int connectTimeout) throws UnknownHostException, IOException {
 		return getConnection(host,port,localHost,sslProvider,connectTimeout,null,null,null);
 	}
 
+	private Destination getDestination(ConnectionKey lookup) {
+		Destination d = destinations.get(lookup);
+		if (d != null)
+			return d;
+		ConnectionKey key = lookup.copy();
+		d = new Destination(key);
+		Destination existing = destinations.putIfAbsent(key, d);
+		return existing != null ? existing : d;
+	}
+
+	/**
+	 * A connection is only reused, if it did not expire, is still open and the server did not send any unexpected data
+	 * (which usually is a sign of the server closing the connection).
+	 */
+	private boolean isReusable(OldConnection o, long now) {
+		if (o.deathTime <= now)
+			return false;
+		Connection c = o.connection;
+		if (c.isClosed() || c.getCompletedExchanges() >= c.getMaxExchanges())
+			return false;
+		try {
+			return c.in.available() == 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private boolean reserve(Destination d) {
+		if (maxTotalPerDestination <= 0) {
+			d.total.incrementAndGet();
+			return true;
+		}
+		while (true) {
+			int t = d.total.get();
+			if (t >= maxTotalPerDestination)
+				return false;
+			if (d.total.compareAndSet(t, t + 1))
+				return true;
+		}
+	}
+
+	private void unreserve(Destination d) {
+		d.total.decrementAndGet();
+		d.signalWaiting();
+	}
+
+	private void awaitConnection(Destination d, long timeoutMs) throws IOException {
+		d.waitLock.lock();
+		try {
+			d.waiting.incrementAndGet();
+			try {
+				// re-check after registering as waiting, to not miss a signal
+				if (d.idleCount.get() > 0 || d.total.get() < maxTotalPerDestination)
+					return;
+				d.connectionAvailable.await(timeoutMs, TimeUnit.MILLISECONDS);
+			} finally {
+				d.waiting.decrementAndGet();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a connection to " + d + ".", e);
+		} finally {
+			d.waitLock.unlock();
+		}
+	}
+
+	private void addWaitTime(Destination d, long waitStart) {
+		if (waitStart != 0)
+			d.waitTimeMs.add(System.currentTimeMillis() - waitStart);
+	}
+
 	public void releaseConnection(Connection connection) {
 		if (connection == null)
 			return;
 
+		Destination d = connection.getDestination();
+
 		if (connection.isClosed()) {
 			numberInPool.decrementAndGet();
+			if (d != null)
+				unreserve(d);
 			return;
 		}
 
-		ConnectionKey key = new ConnectionKey(connection.getHost(), connection.socket.getPort(), connection.getSslProvider(), connection.getSniServerName(),connection.getProxyConfiguration());
-		OldConnection o = new OldConnection(connection, keepAliveTimeout);
-		ArrayList<OldConnection> l;
-		synchronized(this) {
-			l = availableConnections.get(key);
-			if (l == null) {
-				l = new ArrayList<OldConnection>();
-				availableConnections.put(key, l);
-			}
-			l.add(o);
+		if (d == null) {
+			// not opened by this manager
+			closeQuietly(connection);
+			return;
 		}
+
+		if (maxIdlePerDestination > 0 && d.idleCount.get() >= maxIdlePerDestination) {
+			d.evictions.increment();
+			closeQuietly(connection);
+			return;
+		}
+
+		OldConnection o = new OldConnection(connection, d, keepAliveTimeout);
+		if (o.deathTime <= System.currentTimeMillis()) {
+			// expired already, e.g. because it reached its maximum number of exchanges
+			d.evictions.increment();
+			closeQuietly(connection);
+			return;
+		}
+		d.idleCount.incrementAndGet();
+		d.idle.offerFirst(o);
+		// never file into a bucket which has already been swept: it would only be looked at a full turn later
+		wheel[(int) (Math.max(tickOf(o.deathTime), lastTick + 1) % WHEEL_SIZE)].add(o);
+		d.signalWaiting();
+	}
+
+	/**
+	 * @return the tick of the timer wheel which is the first to run after the given time
+	 */
+	private long tickOf(long time) {
+		long t = time - startTime;
+		if (t <= 0)
+			return 1;
+		return t / autoCloseInterval + 1;
 	}
 
 	private int closeOldConnections() {
-		ArrayList<ConnectionKey> toRemove = new ArrayList<ConnectionKey>();
 		ArrayList<Connection> toClose = new ArrayList<Connection>();
 		long now = System.currentTimeMillis();
 		log.trace("closing old connections");
-		int closed = 0, remaining;
-		synchronized(this) {
-			// close connections after their timeout
-			for (Map.Entry<ConnectionKey, ArrayList<OldConnection>> e : availableConnections.entrySet()) {
-				ArrayList<OldConnection> l = e.getValue();
-				for (int i = 0; i < l.size(); i++) {
-					OldConnection o = l.get(i);
-					if (o.deathTime < now) {
-						// replace [i] by [last]
-						if (i == l.size() - 1)
-							l.remove(i);
-						else
-							l.set(i, l.remove(l.size() - 1));
-						--i;
-						closed++;
-						toClose.add(o.connection);
-					}
+		int closed = 0;
+
+		long tick = tickOf(now) - 1; // the last tick which is complete
+		long from = Math.max(lastTick + 1, tick - WHEEL_SIZE + 1);
+		lastTick = tick;
+		for (long t = from; t <= tick; t++) {
+			ConcurrentLinkedQueue<OldConnection> bucket = wheel[(int) (t % WHEEL_SIZE)];
+			ArrayList<OldConnection> notYetDue = null;
+			OldConnection o;
+			while ((o = bucket.poll()) != null) {
+				if (o.deathTime >= now) {
+					// due in a later round of the wheel
+					if (notYetDue == null)
+						notYetDue = new ArrayList<OldConnection>();
+					notYetDue.add(o);
+					continue;
 				}
-				if (l.isEmpty())
-					toRemove.add(e.getKey());
-			}
-			for (ConnectionKey remove : toRemove)
-				availableConnections.remove(remove);
-			remaining = availableConnections.size();
-		}
-		for (Connection c : toClose) {
-			try {
-				c.close();
-			} catch (Exception e) {
-				// do nothing
+				if (!o.take(OldConnection.EXPIRED))
+					continue; // reused in the meantime
+				Destination d = o.destination;
+				d.idle.removeLastOccurrence(o);
+				d.idleCount.decrementAndGet();
+				d.evictions.increment();
+				closed++;
+				toClose.add(o.connection);
 			}
+			if (notYetDue != null)
+				bucket.addAll(notYetDue);
 		}
+		for (Connection c : toClose)
+			closeQuietly(c);
 		if (closed != 0)
 			log.debug("closed " + closed + " connections");
+
+		int remaining = 0;
+		for (Destination d : destinations.values()) {
+			remaining += d.idleCount.get();
+			if (d.isUnused(now, autoCloseInterval) && destinations.remove(d.key, d)) {
+				// re-add the destination, if it has been used concurrently
+				if (!d.isUnused(now, autoCloseInterval))
+					destinations.putIfAbsent(d.key, d);
+			}
+		}
 		return remaining;
 	}
 
+	private void closeQuietly(Connection c) {
+		try {
+			c.close();
+		} catch (Exception e) {
+			// do nothing
+		}
+	}
+
 	public void shutdownWhenDone() {
 		shutdownWhenDone = true;
 	}
@@ -255,14 +590,23 @@ public class ConnectionManager {
 		return numberInPool.get();
 	}
 
+	/**
+	 * @return the destinations this manager has connected to, sorted by their name
+	 */
+	public Map<String, Destination> getDestinations() {
+		TreeMap<String, Destination> result = new TreeMap<String, Destination>();
+		for (Destination d : destinations.values())
+			result.put(d.toString(), d);
+		return Collections.unmodifiableMap(result);
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("Number in pool: " + numberInPool.get() + "\n");
-		synchronized(this) {
-			for (Map.Entry<ConnectionKey, ArrayList<OldConnection>> e : availableConnections.entrySet()) {
-				sb.append("To " + e.getKey() + ": " + e.getValue().size() + "\n");
-			}
+		for (Destination d : destinations.values()) {
+			if (d.getIdle() > 0)
+				sb.append("To " + d + ": " + d.getIdle() + "\n");
 		}
 		return sb.toString();
 	}
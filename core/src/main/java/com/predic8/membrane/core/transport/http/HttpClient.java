@@ -21,11 +21,13 @@ import com.predic8.membrane.core.http.*;
 import com.predic8.membrane.core.model.AbstractExchangeViewerListener;
 import com.predic8.membrane.core.resolver.ResolverMap;
 import com.predic8.membrane.core.transport.http.client.AuthenticationConfiguration;
+import com.predic8.membrane.core.transport.http.client.ConnectionConfiguration;
 import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
 import com.predic8.membrane.core.transport.http.client.ProxyConfiguration;
 import com.predic8.membrane.core.transport.ssl.SSLContext;
 import com.predic8.membrane.core.transport.ssl.SSLProvider;
 import com.predic8.membrane.core.transport.ssl.StaticSSLContext;
+import com.predic8.membrane.core.util.DNSCache;
 import com.predic8.membrane.core.util.EndOfStreamException;
 import com.predic8.membrane.core.util.HttpUtil;
 import com.predic8.membrane.core.util.Util;
@@ -37,6 +39,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HttpClient with possibly multiple selectable destinations, with internal logic to auto-retry and to
@@ -75,6 +87,14 @@ public class HttpClient {
 	private final ConnectionManager conMgr;
 	private StreamPump.StreamPumpStats streamPumpStats;
 
+	/**
+	 * See {@link HttpClientConfiguration#setMaxAsyncCalls(int)}
+	 */
+	private final int maxAsyncCalls;
+	private final Semaphore asyncCalls;
+	@GuardedBy("this")
+	private ExecutorService asyncExecutor;
+
 	public HttpClient() {
 		this(new HttpClientConfiguration());
 	}
@@ -93,20 +113,32 @@ public class HttpClient {
 			sslContext = null;
 		authentication = configuration.getAuthentication();
 		maxRetries = configuration.getMaxRetries();
+		maxAsyncCalls = configuration.getMaxAsyncCalls();
+		asyncCalls = new Semaphore(maxAsyncCalls);
 
 		connectTimeout = configuration.getConnection().getTimeout();
 		localAddr = configuration.getConnection().getLocalAddr();
 
-		conMgr = new ConnectionManager(configuration.getConnection().getKeepAliveTimeout());
+		ConnectionConfiguration connection = configuration.getConnection();
+		conMgr = new ConnectionManager(connection.getKeepAliveTimeout(), connection.getMaxIdlePerDestination(),
+				connection.getMaxTotalPerDestination());
 	}
 
 	public void setStreamPumpStats(StreamPump.StreamPumpStats streamPumpStats) {
 		this.streamPumpStats = streamPumpStats;
 	}
 
+	public void setDnsCache(DNSCache dnsCache) {
+		conMgr.setDnsCache(dnsCache);
+	}
+
 	@Override
 	protected void finalize() throws Throwable {
 		conMgr.shutdownWhenDone();
+		synchronized (this) {
+			if (asyncExecutor != null)
+				asyncExecutor.shutdown();
+		}
 	}
 
 	private void setRequestURI(Request req, String dest) throws MalformedURLException {
@@ -169,126 +201,288 @@ public class HttpClient {
 		if (exc.getDestinations().isEmpty())
 			throw new IllegalStateException("List of destinations is empty. Please specify at least one destination.");
 
-		int counter = 0;
-		Exception exception = null;
-		Object trackNodeStatusObj = exc.getProperty(Exchange.TRACK_NODE_STATUS);
-		boolean trackNodeStatus = trackNodeStatusObj != null && trackNodeStatusObj instanceof Boolean && (Boolean)trackNodeStatusObj;
+		Attempts a = new Attempts(exc, adjustHostHeader, failOverOn5XX);
 		disableStreamingForRetries(exc);
-		while (counter < maxRetries) {
-			Connection con = null;
-			String dest = getDestination(exc, counter);
-			HostColonPort target = null;
-			try {
-				log.debug("try # " + counter + " to " + dest);
-				target = init(exc, dest, adjustHostHeader);
-				if (counter == 0) {
-					con = exc.getTargetConnection();
-					if (con != null) {
-						if (!con.isSame(target.host, target.port)) {
-							con.close();
-							con = null;
-						} else {
-							con.setKeepAttachedToExchange(true);
-						}
-					}
+		while (a.counter < maxRetries) {
+			Exchange result = attempt(a);
+			if (result != null)
+				return result;
+			if (a.giveUp)
+				break;
+			a.counter++;
+			if (exc.getDestinations().size() == 1) {
+				//as documented above, the sleep timeout is only applied between successive calls to the same destination.
+				delay().get();
+			}
+		}
+		throw a.exception;
+	}
+
+	/**
+	 * @return a future completed by the timer after {@link #timeBetweenTriesMs}
+	 */
+	private CompletableFuture<Void> delay() {
+		CompletableFuture<Void> delay = new CompletableFuture<Void>();
+		Async.TIMER.schedule(new Runnable() {
+			@Override
+			public void run() {
+				delay.complete(null);
+			}
+		}, timeBetweenTriesMs, TimeUnit.MILLISECONDS);
+		return delay;
+	}
+
+	public CompletableFuture<Exchange> callAsync(Exchange exc) {
+		return callAsync(exc, true, true);
+	}
+
+	/**
+	 * Like {@link #call(Exchange, boolean, boolean)}, but returns immediately.
+	 *
+	 * Each attempt runs on a virtual thread (on Java 21 or newer, otherwise on a bounded pool of daemon threads
+	 * owned by this client), which is unmounted from its carrier thread while waiting for the network. The delay
+	 * between retries is scheduled on a timer instead of blocking a thread. The returned future completes with the
+	 * exchange (which then has its response set), or exceptionally with the exception
+	 * {@link #call(Exchange, boolean, boolean)} would have thrown.
+	 *
+	 * At most {@link HttpClientConfiguration#getMaxAsyncCalls()} calls of this client are in flight at a time:
+	 * Further calls fail immediately with a {@link RejectedExecutionException}, so a slow upstream cannot make the
+	 * number of threads grow without limit.
+	 */
+	public CompletableFuture<Exchange> callAsync(Exchange exc, boolean adjustHostHeader, boolean failOverOn5XX) {
+		CompletableFuture<Exchange> future = new CompletableFuture<Exchange>();
+		if (exc.getDestinations().isEmpty()) {
+			future.completeExceptionally(new IllegalStateException("List of destinations is empty. Please specify at least one destination."));
+			return future;
+		}
+		if (!asyncCalls.tryAcquire()) {
+			future.completeExceptionally(new RejectedExecutionException("More than " + maxAsyncCalls + " asynchronous calls in flight."));
+			return future;
+		}
+		// the caller sees the call complete only once its permit has been returned
+		CompletableFuture<Exchange> released = future.whenComplete((result, e) -> asyncCalls.release());
+		Attempts a = new Attempts(exc, adjustHostHeader, failOverOn5XX);
+		disableStreamingForRetries(exc);
+		submitAttempt(a, future);
+		return released;
+	}
+
+	private void submitAttempt(final Attempts a, final CompletableFuture<Exchange> future) {
+		try {
+			getAsyncExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					runAttempt(a, future);
 				}
-				SSLProvider sslProvider = getOutboundSSLProvider(exc, target);
-				if (con == null) {
-					con = conMgr.getConnection(target.host, target.port, localAddr, sslProvider, connectTimeout, getSNIServerName(exc), proxy, proxySSLContext);
-					con.setKeepAttachedToExchange(exc.getRequest().isBindTargetConnectionToIncoming());
-					exc.setTargetConnection(con);
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	private void runAttempt(final Attempts a, final CompletableFuture<Exchange> future) {
+		try {
+			Exchange result = attempt(a);
+			if (result != null) {
+				future.complete(result);
+				return;
+			}
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			return;
+		}
+		a.counter++;
+		if (a.giveUp || a.counter >= maxRetries) {
+			future.completeExceptionally(a.exception);
+			return;
+		}
+		if (a.exc.getDestinations().size() == 1) {
+			delay().thenRun(new Runnable() {
+				@Override
+				public void run() {
+					submitAttempt(a, future);
 				}
-				if (proxy != null && sslProvider == null)
-					// if we use a proxy for a plain HTTP (=non-HTTPS) request, attach the proxy credentials.
-					exc.getRequest().getHeader().setProxyAutorization(proxy.getCredentials());
-				Response response;
-				String newProtocol = null;
-
-				if (exc.getRequest().isCONNECTRequest()) {
-					handleConnectRequest(exc, con);
-					response = Response.ok().build();
-					newProtocol = "CONNECT";
-				} else {
-					response = doCall(exc, con);
-					if (trackNodeStatus)
-						exc.setNodeStatusCode(counter, response.getStatusCode());
-
-					if (exc.getProperty(Exchange.ALLOW_WEBSOCKET) == Boolean.TRUE && isUpgradeToResponse(response, "websocket")) {
-						log.debug("Upgrading to WebSocket protocol.");
-						newProtocol = "WebSocket";
-					}
-					if (exc.getProperty(Exchange.ALLOW_TCP) == Boolean.TRUE && isUpgradeToResponse(response, "tcp")) {
-						log.debug("Upgrading to TCP protocol.");
-						newProtocol = "TCP";
-					}
-					if (exc.getProperty(Exchange.ALLOW_SPDY) == Boolean.TRUE && isUpgradeToResponse(response, "SPDY/3.1")) {
-						log.debug("Upgrading to SPDY/3.1 protocol.");
-						newProtocol = "SPDY/3.1";
+			});
+		} else {
+			submitAttempt(a, future);
+		}
+	}
+
+	/**
+	 * The state of a call, shared by its attempts. Attempts run one after the other (handed over through an
+	 * executor when calling asynchronously), so no synchronization is needed.
+	 */
+	private static class Attempts {
+		final Exchange exc;
+		final boolean adjustHostHeader;
+		final boolean failOverOn5XX;
+		final boolean trackNodeStatus;
+		int counter;
+		Exception exception;
+		/** whether retrying is useless */
+		boolean giveUp;
+
+		Attempts(Exchange exc, boolean adjustHostHeader, boolean failOverOn5XX) {
+			this.exc = exc;
+			this.adjustHostHeader = adjustHostHeader;
+			this.failOverOn5XX = failOverOn5XX;
+			Object trackNodeStatusObj = exc.getProperty(Exchange.TRACK_NODE_STATUS);
+			trackNodeStatus = trackNodeStatusObj != null && trackNodeStatusObj instanceof Boolean && (Boolean)trackNodeStatusObj;
+		}
+	}
+
+	/**
+	 * @return the executor running the attempts of {@link #callAsync(Exchange, boolean, boolean)}, created on first use
+	 */
+	private synchronized ExecutorService getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			if (VirtualThreadFactory.isSupported()) {
+				asyncExecutor = new VirtualThreadFactory("HttpClient Call").newThreadPerTaskExecutor();
+			} else {
+				// calls are bounded by asyncCalls; an attempt handing over to the next one briefly needs a second thread
+				asyncExecutor = new ThreadPoolExecutor(0, 2 * maxAsyncCalls, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "HttpClient Call");
+						t.setDaemon(true);
+						return t;
 					}
-				}
+				});
+			}
+		}
+		return asyncExecutor;
+	}
 
-				if (newProtocol != null) {
-					setupConnectionForwarding(exc, con, newProtocol, streamPumpStats);
-					exc.getDestinations().clear();
-					exc.getDestinations().add(dest);
-					con.setExchange(exc);
-					exc.setResponse(response);
-					return exc;
-				}
+	/**
+	 * The timer scheduling the delays between retries, shared by all clients and created on first use.
+	 */
+	private static class Async {
+		static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "HttpClient Retry Timer");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
 
-				boolean is5XX = 500 <= response.getStatusCode() && response.getStatusCode() < 600;
-				if (!failOverOn5XX || !is5XX || counter == maxRetries-1) {
-					applyKeepAliveHeader(response, con);
-					exc.getDestinations().clear();
-					exc.getDestinations().add(dest);
-					con.setExchange(exc);
-					response.addObserver(con);
-					exc.setResponse(response);
-					return exc;
+	/**
+	 * Makes one attempt to send the request.
+	 *
+	 * @return the exchange, if the call is complete, or null if it should be retried: In this case,
+	 * {@link Attempts#exception} has been set.
+	 */
+	private Exchange attempt(Attempts a) throws Exception {
+		Exchange exc = a.exc;
+		Connection con = null;
+		String dest = getDestination(exc, a.counter);
+		HostColonPort target = null;
+		try {
+			log.debug("try # " + a.counter + " to " + dest);
+			target = init(exc, dest, a.adjustHostHeader);
+			if (a.counter == 0) {
+				con = exc.getTargetConnection();
+				if (con != null) {
+					if (!con.isSame(target.host, target.port)) {
+						con.close();
+						con = null;
+					} else {
+						con.setKeepAttachedToExchange(true);
+					}
 				}
-				// java.net.SocketException: Software caused connection abort: socket write error
-			} catch (ConnectException e) {
-				exception = e;
-				log.info("Connection to " + (target == null ? dest : target ) + " refused.");
-			} catch(SocketException e){
-				if ( e.getMessage().contains("Software caused connection abort")) {
-					log.info("Connection to " + dest + " was aborted externally. Maybe by the server or the OS Membrane is running on.");
-				} else if (e.getMessage().contains("Connection reset") ) {
-					log.info("Connection to " + dest + " was reset externally. Maybe by the server or the OS Membrane is running on.");
-				} else {
-					logException(exc, counter, e);
+			}
+			SSLProvider sslProvider = getOutboundSSLProvider(exc, target);
+			if (con == null) {
+				con = conMgr.getConnection(target.host, target.port, localAddr, sslProvider, connectTimeout, getSNIServerName(exc), proxy, proxySSLContext);
+				con.setKeepAttachedToExchange(exc.getRequest().isBindTargetConnectionToIncoming());
+				exc.setTargetConnection(con);
+			}
+			if (proxy != null && sslProvider == null)
+				// if we use a proxy for a plain HTTP (=non-HTTPS) request, attach the proxy credentials.
+				exc.getRequest().getHeader().setProxyAutorization(proxy.getCredentials());
+			Response response;
+			String newProtocol = null;
+
+			if (exc.getRequest().isCONNECTRequest()) {
+				handleConnectRequest(exc, con);
+				response = Response.ok().build();
+				newProtocol = "CONNECT";
+			} else {
+				response = doCall(exc, con);
+				if (a.trackNodeStatus)
+					exc.setNodeStatusCode(a.counter, response.getStatusCode());
+
+				if (exc.getProperty(Exchange.ALLOW_WEBSOCKET) == Boolean.TRUE && isUpgradeToResponse(response, "websocket")) {
+					log.debug("Upgrading to WebSocket protocol.");
+					newProtocol = "WebSocket";
 				}
-				exception = e;
-			} catch (UnknownHostException e) {
-				log.warn("Unknown host: " + (target == null ? dest : target ));
-				exception = e;
-				if (exc.getDestinations().size() < 2) {
-					//don't retry this host, it's useless. (it's very unlikely that it will work after timeBetweenTriesMs)
-					break;
+				if (exc.getProperty(Exchange.ALLOW_TCP) == Boolean.TRUE && isUpgradeToResponse(response, "tcp")) {
+					log.debug("Upgrading to TCP protocol.");
+					newProtocol = "TCP";
 				}
-			} catch (EOFWhileReadingFirstLineException e) {
-				log.debug("Server connection to " + dest + " terminated before line was read. Line so far: " + e.getLineSoFar());
-				exception = e;
-			} catch (NoResponseException e) {
-				throw e;
-			} catch (Exception e) {
-				logException(exc, counter, e);
-				exception = e;
-			}
-			finally	{
-				if (trackNodeStatus) {
-					if(exception != null){
-						exc.setNodeException(counter, exception);
-					}
+				if (exc.getProperty(Exchange.ALLOW_SPDY) == Boolean.TRUE && isUpgradeToResponse(response, "SPDY/3.1")) {
+					log.debug("Upgrading to SPDY/3.1 protocol.");
+					newProtocol = "SPDY/3.1";
 				}
 			}
-			counter++;
-			if (exc.getDestinations().size() == 1) {
-				//as documented above, the sleep timeout is only applied between successive calls to the same destination.
-				Thread.sleep(timeBetweenTriesMs);
+
+			if (newProtocol != null) {
+				setupConnectionForwarding(exc, con, newProtocol, streamPumpStats);
+				exc.getDestinations().clear();
+				exc.getDestinations().add(dest);
+				con.setExchange(exc);
+				exc.setResponse(response);
+				return exc;
+			}
+
+			boolean is5XX = 500 <= response.getStatusCode() && response.getStatusCode() < 600;
+			if (!a.failOverOn5XX || !is5XX || a.counter == maxRetries-1) {
+				applyKeepAliveHeader(response, con);
+				exc.getDestinations().clear();
+				exc.getDestinations().add(dest);
+				con.setExchange(exc);
+				response.addObserver(con);
+				exc.setResponse(response);
+				return exc;
+			}
+			// java.net.SocketException: Software caused connection abort: socket write error
+		} catch (ConnectException e) {
+			a.exception = e;
+			log.info("Connection to " + (target == null ? dest : target ) + " refused.");
+		} catch(SocketException e){
+			if ( e.getMessage().contains("Software caused connection abort")) {
+				log.info("Connection to " + dest + " was aborted externally. Maybe by the server or the OS Membrane is running on.");
+			} else if (e.getMessage().contains("Connection reset") ) {
+				log.info("Connection to " + dest + " was reset externally. Maybe by the server or the OS Membrane is running on.");
+			} else {
+				logException(exc, a.counter, e);
 			}
+			a.exception = e;
+		} catch (UnknownHostException e) {
+			log.warn("Unknown host: " + (target == null ? dest : target ));
+			a.exception = e;
+			if (exc.getDestinations().size() < 2) {
+				//don't retry this host, it's useless. (it's very unlikely that it will work after timeBetweenTriesMs)
+				a.giveUp = true;
+			}
+		} catch (EOFWhileReadingFirstLineException e) {
+			log.debug("Server connection to " + dest + " terminated before line was read. Line so far: " + e.getLineSoFar());
+			a.exception = e;
+		} catch (NoResponseException e) {
+			throw e;
+		} catch (Exception e) {
+			logException(exc, a.counter, e);
+			a.exception = e;
 		}
-		throw exception;
+		finally	{
+			if (a.trackNodeStatus) {
+				if(a.exception != null){
+					exc.setNodeException(a.counter, a.exception);
+				}
+			}
+		}
+		return null;
 	}
 
 	private void disableStreamingForRetries(Exchange exc) {
@@ -312,7 +506,7 @@ public class HttpClient {
 	}
 
 	private void applyKeepAliveHeader(Response response, Connection con) {
-		String value = response.getHeader().getFirstValue(Header.KEEP_ALIVE);
+		String value = response.getHeader().getFirstValue(HeaderName.KEEP_ALIVE);
 		if (value == null)
 			return;
 
@@ -396,7 +590,7 @@ public class HttpClient {
 			@Override
 			public void setExchangeFinished() {
 				String threadName = Thread.currentThread().getName();
-				new Thread(b, threadName + " " + protocol + " Backward Thread").start();
+				hsr.getTransport().createThread(b, threadName + " " + protocol + " Backward Thread").start();
 				try {
 					Thread.currentThread().setName(threadName + " " + protocol + " Onward Thread");
 					a.run();
@@ -413,8 +607,8 @@ public class HttpClient {
 
 	private boolean isUpgradeToResponse(Response res, String protocol) {
 		return res.getStatusCode() == 101 &&
-				"upgrade".equalsIgnoreCase(res.getHeader().getFirstValue(Header.CONNECTION)) &&
-				protocol.equalsIgnoreCase(res.getHeader().getFirstValue(Header.UPGRADE));
+				"upgrade".equalsIgnoreCase(res.getHeader().getFirstValue(HeaderName.CONNECTION)) &&
+				protocol.equalsIgnoreCase(res.getHeader().getFirstValue(HeaderName.UPGRADE));
 	}
 
 	private void handleConnectRequest(Exchange exc, Connection con) throws IOException, EndOfStreamException {
@@ -438,7 +632,7 @@ public class HttpClient {
 		Util.shutdownOutput(con.socket);
 	}
 
-	ConnectionManager getConnectionManager() {
+	public ConnectionManager getConnectionManager() {
 		return conMgr;
 	}
 }
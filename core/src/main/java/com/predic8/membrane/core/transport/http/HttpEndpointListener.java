@@ -16,6 +16,7 @@ package com.predic8.membrane.core.transport.http;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.security.InvalidParameterException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -36,6 +37,7 @@ public class HttpEndpointListener extends Thread {
 	private final ServerSocket serverSocket;
 	private final HttpTransport transport;
 	private final SSLProvider sslProvider;
+	private final boolean nio;
 	private final ConcurrentHashMap<Socket, Boolean> idleSockets = new ConcurrentHashMap<Socket, Boolean>();
 	private final ConcurrentHashMap<Socket, Boolean> openSockets = new ConcurrentHashMap<Socket, Boolean>();
 	private final ConcurrentHashMap<InetAddress, ClientInfo> ipConnectionCount = new ConcurrentHashMap<>();
@@ -73,8 +75,11 @@ public class HttpEndpointListener extends Thread {
 		this.sslProvider = sslProvider;
 
 		try {
+			nio = sslProvider == null && transport.getMode() == HttpTransport.Mode.NIO;
 			if (sslProvider != null)
 				serverSocket = sslProvider.createServerSocket(port, 50, ip != null ? InetAddress.getByName(ip) : null);
+			else if (nio)
+				serverSocket = openServerSocketChannel(ip, port);
 			else
 				serverSocket = new ServerSocket(port, 50, ip != null ? InetAddress.getByName(ip) : null);
 
@@ -104,6 +109,17 @@ public class HttpEndpointListener extends Thread {
 		}
 	}
 
+	private ServerSocket openServerSocketChannel(String ip, int port) throws IOException {
+		ServerSocketChannel channel = ServerSocketChannel.open();
+		try {
+			channel.socket().bind(new InetSocketAddress(ip != null ? InetAddress.getByName(ip) : null, port), 50);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return channel.socket();
+	}
+
 	@Override
 	public void run() {
 		while (!closed) {
@@ -141,7 +157,11 @@ public class HttpEndpointListener extends Thread {
 					try {
 						if (log.isDebugEnabled())
 							log.debug("Accepted connection from " + socket.getRemoteSocketAddress());
-						transport.getExecutorService().execute(new HttpServerHandler(socket, this));
+						NioSelectorLoop selectorLoop = nio ? transport.nextSelectorLoop() : null;
+						if (selectorLoop != null)
+							selectorLoop.register(new HttpServerHandler(socket, this, selectorLoop));
+						else
+							transport.getExecutorService().execute(new HttpServerHandler(socket, this));
 					} catch (RejectedExecutionException e) {
 						connectionCount.decrementAndGet();
 						openSockets.remove(socket);
@@ -153,7 +173,7 @@ public class HttpEndpointListener extends Thread {
 			}
 			catch (SocketException e) {
 				String message = e.getMessage();
-				if (message != null && (message.endsWith("socket closed") || message.endsWith("Socket closed"))) {
+				if (closed || message != null && (message.endsWith("socket closed") || message.endsWith("Socket closed"))) {
 					log.debug("socket closed.");
 					break;
 				} else
@@ -216,6 +236,13 @@ public class HttpEndpointListener extends Thread {
 		return openSockets.size();
 	}
 
+	/**
+	 * @return the number of open connections currently waiting for the next request
+	 */
+	public int getNumberOfIdleConnections() {
+		return idleSockets.size();
+	}
+
 	public HttpTransport getTransport() {
 		return transport;
 	}
@@ -14,8 +14,6 @@
 
 package com.predic8.membrane.core.transport.http;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -23,6 +21,8 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLException;
@@ -38,6 +38,7 @@ import com.predic8.membrane.core.http.MessageObserver;
 import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
 import com.predic8.membrane.core.transport.ssl.SSLProvider;
+import com.predic8.membrane.core.util.BufferPool;
 import com.predic8.membrane.core.util.DNSCache;
 import com.predic8.membrane.core.util.EndOfStreamException;
 import com.predic8.membrane.core.util.Util;
@@ -49,16 +50,33 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 
 	private final HttpEndpointListener endpointListener;
 	private Socket sourceSocket;
-	private InputStream srcIn;
-	private OutputStream srcOut;
+	private PooledBufferedInputStream srcIn;
+	private PooledBufferedOutputStream srcOut;
 
 	private boolean showSSLExceptions = true;
 
+	/**
+	 * The selector loop watching this connection while it is idle, or null, if the connection is handled in blocking
+	 * mode (one thread for the whole lifetime of the connection).
+	 */
+	private final NioSelectorLoop selectorLoop;
+	private HeadInputStream nioIn;
+	private byte[] nioHead;
+	private int nioHeadLength;
+	private long lastActivity;
+	private Connection boundConnection; // see Request.isBindTargetConnectionToIncoming()
+
 
 	public HttpServerHandler(Socket socket, HttpEndpointListener endpointListener) throws IOException {
+		this(socket, endpointListener, null);
+	}
+
+	HttpServerHandler(Socket socket, HttpEndpointListener endpointListener, NioSelectorLoop selectorLoop) throws IOException {
 		super(endpointListener.getTransport());
 		this.endpointListener = endpointListener;
 		this.sourceSocket = socket;
+		this.selectorLoop = selectorLoop;
+		this.lastActivity = System.currentTimeMillis();
 	}
 
 	@Override
@@ -77,28 +95,62 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 			showSSLExceptions = false;
 		}
 		log.debug("New ServerThread created. " + counter.incrementAndGet());
-		srcIn = new BufferedInputStream(sourceSocket.getInputStream(), 2048);
-		srcOut = new BufferedOutputStream(sourceSocket.getOutputStream(), 2048);
+		if (selectorLoop != null) {
+			nioIn = new HeadInputStream(sourceSocket.getInputStream());
+			srcIn = new PooledBufferedInputStream(nioIn, BufferPool.STREAM);
+		} else {
+			srcIn = new PooledBufferedInputStream(sourceSocket.getInputStream(), BufferPool.STREAM);
+		}
+		srcOut = new PooledBufferedOutputStream(sourceSocket.getOutputStream(), BufferPool.STREAM);
 		sourceSocket.setSoTimeout(endpointListener.getTransport().getSocketTimeout());
 		sourceSocket.setTcpNoDelay(endpointListener.getTransport().isTcpNoDelay());
 	}
 
 	public void run() {
-		Connection boundConnection = null; // see Request.isBindTargetConnectionToIncoming()
+		boolean suspended = false;
 		try {
 			updateThreadName(true);
-			setup();
+			if (srcIn == null) {
+				setup();
+			} else {
+				// the buffers were released when the connection was handed to the selector loop
+				srcIn.acquire();
+				srcOut.acquire();
+			}
+			if (nioHead != null) {
+				nioIn.setHead(nioHead, nioHeadLength);
+				nioHead = null;
+			}
+			if (isSuspended()) {
+				// the upstream call of a suspended exchange has completed
+				resume();
+				if (!prepareNextExchange())
+					return;
+			}
 			while (true) {
 				srcReq = new Request();
 
-				endpointListener.setIdleStatus(sourceSocket, true);
-				try {
-					srcIn.mark(2);
-					if (srcIn.read() == -1)
-						break;
-					srcIn.reset();
-				} finally {
-					endpointListener.setIdleStatus(sourceSocket, false);
+				if (selectorLoop != null) {
+					if (srcIn.available() == 0) {
+						// wait for the next request head without occupying this thread
+						endpointListener.setIdleStatus(sourceSocket, true);
+						suspended = true;
+						// an idle connection does not need any buffers (srcOut has been flushed)
+						srcIn.release();
+						srcOut.release();
+						selectorLoop.register(this);
+						return;
+					}
+				} else {
+					endpointListener.setIdleStatus(sourceSocket, true);
+					try {
+						srcIn.mark(2);
+						if (srcIn.read() == -1)
+							break;
+						srcIn.reset();
+					} finally {
+						endpointListener.setIdleStatus(sourceSocket, false);
+					}
 				}
 
 				if (boundConnection != null) {
@@ -118,19 +170,14 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 
 				process();
 
-				if (srcReq.isCONNECTRequest()) {
-					log.debug("stopping HTTP Server Thread after establishing an HTTP connect");
+				if (isSuspended()) {
+					suspended = true;
+					// only now, as the exchange must not be resumed before this thread has left it
+					suspendedOn.whenComplete((outcome, e) -> dispatch());
 					return;
 				}
-				boundConnection = exchange.getTargetConnection();
-				exchange.setTargetConnection(null);
-				if (!exchange.canKeepConnectionAlive())
+				if (!prepareNextExchange())
 					break;
-				if (exchange.getResponse().isRedirect()) {
-					break;
-				}
-				exchange.detach();
-				exchange = new Exchange(this);
 			}
 		} catch (SocketTimeoutException e) {
 			log.debug("Socket of thread " + counter + " timed out");
@@ -163,22 +210,107 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 		}
 
 		finally {
-			endpointListener.setOpenStatus(sourceSocket, false);
+			if (!suspended)
+				close();
 
-			if (boundConnection != null)
-				try {
-					boundConnection.close();
-				} catch (IOException e) {
-					log.debug("Closing bound connection.", e);
-				}
+			updateThreadName(false);
+		}
 
-			closeConnections();
+	}
 
-			exchange.detach();
+	/**
+	 * @return whether the connection may be used for the next request
+	 */
+	private boolean prepareNextExchange() {
+		if (srcReq.isCONNECTRequest()) {
+			log.debug("stopping HTTP Server Thread after establishing an HTTP connect");
+			return false;
+		}
+		boundConnection = exchange.getTargetConnection();
+		exchange.setTargetConnection(null);
+		if (!exchange.canKeepConnectionAlive())
+			return false;
+		if (exchange.getResponse().isRedirect()) {
+			return false;
+		}
+		exchange.detach();
+		exchange = new Exchange(this);
+		return true;
+	}
 
-			updateThreadName(false);
+	/**
+	 * Exchanges are only suspended in {@link HttpTransport.Mode#NIO}, where this handler can be run again.
+	 */
+	@Override
+	public boolean isSuspendable() {
+		return selectorLoop != null;
+	}
+
+	/**
+	 * Runs this handler again to continue the suspended exchange.
+	 */
+	private void dispatch() {
+		try {
+			getTransport().getExecutorService().execute(this);
+		} catch (RejectedExecutionException e) {
+			log.error("HttpServerHandler execution rejected. Might be due to a proxies.xml hot deployment in progress or a low"
+					+ " value for <transport maxThreadPoolSize=\"...\">.");
+			close();
 		}
+	}
 
+	/**
+	 * Releases all resources held by this connection. Called once, either at the end of {@link #run()}, by the
+	 * {@link NioSelectorLoop} for a connection which terminated while being idle, or when a suspended exchange
+	 * cannot be resumed.
+	 */
+	void close() {
+		try {
+			endpointListener.setIdleStatus(sourceSocket, false);
+		} catch (IOException e) {
+			// does not happen when leaving the idle status
+		}
+		endpointListener.setOpenStatus(sourceSocket, false);
+
+		if (boundConnection != null) {
+			try {
+				boundConnection.close();
+			} catch (IOException e) {
+				log.debug("Closing bound connection.", e);
+			}
+			boundConnection = null;
+		}
+
+		closeConnections();
+
+		// the socket is closed, so blocked reads have returned and the buffers can be reused
+		if (srcIn != null)
+			srcIn.release();
+		if (srcOut != null)
+			srcOut.release();
+		if (nioIn != null)
+			nioIn.release();
+
+		if (exchange != null)
+			exchange.detach();
+	}
+
+	/**
+	 * Called by the {@link NioSelectorLoop} once the next request head (and possibly more) has been read from the
+	 * idle connection. The data is handed back to the stream before the request is parsed.
+	 */
+	void headReceived(byte[] head, int length) throws IOException {
+		nioHead = head;
+		nioHeadLength = length;
+		endpointListener.setIdleStatus(sourceSocket, false);
+	}
+
+	void setLastActivity(long lastActivity) {
+		this.lastActivity = lastActivity;
+	}
+
+	long getLastActivity() {
+		return lastActivity;
 	}
 
 	private void closeConnections() {
@@ -205,7 +337,19 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 			InetAddress remoteAddr = sourceSocket.getInetAddress();
 			String ip = dnsCache.getHostAddress(remoteAddr);
 			exchange.setRemoteAddrIp(ip);
-			exchange.setRemoteAddr(getTransport().isReverseDNS() ? dnsCache.getHostName(remoteAddr) : ip);
+			if (getTransport().isReverseDNS()) {
+				CompletableFuture<String> hostName = dnsCache.getHostNameAsync(remoteAddr);
+				if (hostName.isDone()) {
+					exchange.setRemoteAddr(hostName.isCompletedExceptionally() ? ip : hostName.join());
+				} else {
+					// do not wait for DNS: the name is filled in as soon as it is known
+					final Exchange exc = exchange;
+					exc.setRemoteAddr(ip);
+					hostName.thenAccept(exc::setRemoteAddr);
+				}
+			} else {
+				exchange.setRemoteAddr(ip);
+			}
 
 			exchange.setRequest(srcReq);
 			exchange.setOriginalRequestUri(srcReq.getUri());
@@ -232,19 +376,45 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
 			}
 
 			invokeHandlers();
+			if (isSuspended())
+				return;
 
 			exchange.blockResponseIfNeeded();
 		} catch (AbortException e) {
-			log.debug("Aborted");
-			exchange.finishExchange(true, e.getMessage());
+			writeAbortResponse(e);
+			return;
+		}
 
-			removeBodyFromBuffer();
-			writeResponse(exchange.getResponse());
+		sendResponse();
+	}
+
+	/**
+	 * Like {@link #process()}, after the exchange was suspended.
+	 */
+	private void resume() throws Exception {
+		try {
+			resumeHandlers();
 
-			log.debug("exchange set aborted");
+			exchange.blockResponseIfNeeded();
+		} catch (AbortException e) {
+			writeAbortResponse(e);
 			return;
 		}
 
+		sendResponse();
+	}
+
+	private void writeAbortResponse(AbortException e) throws Exception {
+		log.debug("Aborted");
+		exchange.finishExchange(true, e.getMessage());
+
+		removeBodyFromBuffer();
+		writeResponse(exchange.getResponse());
+
+		log.debug("exchange set aborted");
+	}
+
+	private void sendResponse() throws Exception {
 		try {
 			removeBodyFromBuffer();
 			writeResponse(exchange.getResponse());
@@ -329,4 +499,87 @@ public class HttpServerHandler extends AbstractHttpHandler implements Runnable {
     return getSourceSocket().getRemoteSocketAddress().toString();
   }  
 
+	/**
+	 * Returns the request head read by the {@link NioSelectorLoop} before reading from the socket. Unlike a
+	 * {@link java.io.PushbackInputStream}, which would need a buffer of {@link NioSelectorLoop#MAX_HEAD_SIZE} bytes,
+	 * the head is not copied: its array is read directly and handed back to {@link BufferPool#STREAM} once consumed.
+	 */
+	private static class HeadInputStream extends InputStream {
+
+		private final InputStream in;
+		private byte[] head;
+		private int pos;
+		private int count;
+
+		HeadInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		void setHead(byte[] head, int length) {
+			release();
+			this.head = head;
+			pos = 0;
+			count = length;
+			if (length == 0)
+				release();
+		}
+
+		private void advance(int n) {
+			pos += n;
+			if (pos >= count)
+				release();
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (head == null)
+				return in.read();
+			int b = head[pos] & 0xff;
+			advance(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (head == null)
+				return in.read(b, off, len);
+			if (len == 0)
+				return 0;
+			int n = Math.min(len, count - pos);
+			System.arraycopy(head, pos, b, off, n);
+			advance(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (head == null)
+				return in.skip(n);
+			if (n <= 0)
+				return 0;
+			int skipped = (int) Math.min(n, count - pos);
+			advance(skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (head == null)
+				return in.available();
+			return count - pos;
+		}
+
+		void release() {
+			if (head != null)
+				BufferPool.STREAM.release(head);
+			head = null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			release();
+			in.close();
+		}
+	}
+
 }
\ No newline at end of file
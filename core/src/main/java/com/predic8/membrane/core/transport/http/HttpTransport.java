@@ -24,6 +24,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,9 +52,23 @@ public class HttpTransport extends Transport {
 	public static final String HEADER_HOST = "com.predic8.membrane.transport.http.header.Host";
 	public static final String SOURCE_IP = "com.predic8.membrane.transport.http.source.Ip";
 
+	public enum Mode {
+		BLOCKING,
+		NIO,
+	}
+
+	public enum ExecutorType {
+		PLATFORM,
+		VIRTUAL,
+	}
+
 	private int socketTimeout = 30000;
 	private int forceSocketCloseOnHotDeployAfter = 30000;
 	private boolean tcpNoDelay = true;
+	private Mode mode = Mode.BLOCKING;
+	private int selectorThreads = Runtime.getRuntime().availableProcessors();
+	private volatile NioSelectorLoop[] selectorLoops;
+	private final AtomicInteger nextSelectorLoop = new AtomicInteger();
 
 	public Hashtable<IpPort, HttpEndpointListener> portListenerMapping = new Hashtable<IpPort, HttpEndpointListener>();
 	public List<WeakReference<HttpEndpointListener>> stillRunning = new ArrayList<WeakReference<HttpEndpointListener>>();
@@ -61,6 +76,9 @@ public class HttpTransport extends Transport {
 	private ThreadPoolExecutor executorService = new ThreadPoolExecutor(20,
 			Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
 			new SynchronousQueue<Runnable>(), new HttpServerThreadFactory());
+	private ExecutorType executor = ExecutorType.PLATFORM;
+	private VirtualThreadFactory virtualThreadFactory;
+	private ExecutorService virtualThreadExecutorService;
 
 	@Override
 	public void init(Router router) throws Exception {
@@ -69,6 +87,27 @@ public class HttpTransport extends Transport {
 
 	}
 
+	private synchronized void startSelectorLoops() throws IOException {
+		if (selectorLoops != null)
+			return;
+		selectorLoops = new NioSelectorLoop[Math.max(1, selectorThreads)];
+		for (int i = 0; i < selectorLoops.length; i++) {
+			selectorLoops[i] = new NioSelectorLoop(this, i);
+			selectorLoops[i].start();
+		}
+	}
+
+	/**
+	 * @return the selector loop a newly accepted connection should be registered with, or null, if the transport
+	 *         does not run in {@link Mode#NIO}.
+	 */
+	NioSelectorLoop nextSelectorLoop() {
+		NioSelectorLoop[] loops = selectorLoops;
+		if (loops == null)
+			return null;
+		return loops[(nextSelectorLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+	}
+
 	public boolean isAnyThreadListeningAt(String ip, int port) {
 		return portListenerMapping.get(new IpPort(ip, port)) != null;
 	}
@@ -115,9 +154,17 @@ public class HttpTransport extends Transport {
 		log.debug("Closing all stream pumps.");
 		getRouter().getStatistics().getStreamPumpStats().closeAllStreamPumps();
 
+		if (selectorLoops != null) {
+			log.debug("Closing all selector loops.");
+			for (NioSelectorLoop loop : selectorLoops)
+				loop.close();
+			selectorLoops = null;
+		}
+
 		if (waitForCompletion) {
 			long now = System.currentTimeMillis();
 			log.debug("Waiting for running exchanges to finish.");
+			ExecutorService executorService = getExecutorService();
 			executorService.shutdown();
 			try {
 				while (true) {
@@ -161,6 +208,9 @@ public class HttpTransport extends Transport {
 		if (port == -1)
 			throw new RuntimeException("The port-attribute is missing (probably on a <serviceProxy> element).");
 
+		if (mode == Mode.NIO && sslProvider == null)
+			startSelectorLoops();
+
 		HttpEndpointListener portListenerThread = new HttpEndpointListener(
 				ip, port, this, sslProvider);
 		portListenerMapping.put(new IpPort(ip, port), portListenerThread);
@@ -208,9 +258,57 @@ public class HttpTransport extends Transport {
 	}
 
 	public ExecutorService getExecutorService() {
+		if (virtualThreadExecutorService != null)
+			return virtualThreadExecutorService;
 		return executorService;
 	}
 
+	/**
+	 * Creates a thread for work belonging to a client connection (for example a {@link StreamPump}), matching the
+	 * configured {@link ExecutorType}.
+	 */
+	public Thread createThread(Runnable r, String name) {
+		Thread th = virtualThreadFactory != null ? virtualThreadFactory.newThread(r) : new Thread(r);
+		th.setName(name);
+		return th;
+	}
+
+	public ExecutorType getExecutor() {
+		return executor;
+	}
+
+	/**
+	 * @description <p>Which kind of threads handle incoming connections.</p>
+	 *              <p><tt>platform</tt> uses a pool of operating system threads (see <tt>coreThreadPoolSize</tt> and
+	 *              <tt>maxThreadPoolSize</tt>).</p>
+	 *              <p><tt>virtual</tt> starts a new virtual thread for each connection and for each stream pump
+	 *              (WebSocket, CONNECT and other protocol upgrades). Threads waiting for a slow backend then no longer
+	 *              occupy an operating system thread. <tt>coreThreadPoolSize</tt> and <tt>maxThreadPoolSize</tt> are
+	 *              ignored. Requires Java 21 or newer; on older JVMs, <tt>platform</tt> is used.</p>
+	 * @default platform
+	 * @example virtual
+	 */
+	@MCAttribute
+	public void setExecutor(ExecutorType executor) {
+		if (executor == ExecutorType.VIRTUAL && !VirtualThreadFactory.isSupported()) {
+			log.warn("<transport executor=\"virtual\"> requires Java 21 or newer. Falling back to platform threads.");
+			executor = ExecutorType.PLATFORM;
+		}
+		this.executor = executor;
+		if (executor == ExecutorType.VIRTUAL) {
+			if (virtualThreadExecutorService == null) {
+				virtualThreadFactory = new VirtualThreadFactory(HttpServerThreadFactory.DEFAULT_THREAD_NAME);
+				virtualThreadExecutorService = virtualThreadFactory.newThreadPerTaskExecutor();
+			}
+		} else {
+			if (virtualThreadExecutorService != null) {
+				virtualThreadExecutorService.shutdown();
+				virtualThreadExecutorService = null;
+				virtualThreadFactory = null;
+			}
+		}
+	}
+
 	public int getSocketTimeout() {
 		return socketTimeout;
 	}
@@ -241,6 +339,42 @@ public class HttpTransport extends Transport {
 		this.tcpNoDelay = tcpNoDelay;
 	}
 
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @description <p>How incoming connections are handled.</p>
+	 *              <p><tt>blocking</tt> assigns one thread per incoming connection for its whole lifetime, including
+	 *              idle keep-alive time.</p>
+	 *              <p><tt>nio</tt> watches idle keep-alive connections and reads request headers using a small number of
+	 *              non-blocking selector threads (see <tt>selectorThreads</tt>). A worker thread is only assigned once a
+	 *              complete request head has been received, and returned while waiting for the response of the
+	 *              target server, and as soon as the exchange has completed. This allows a large number of mostly idle
+	 *              client connections. Listeners using SSL always run in
+	 *              <tt>blocking</tt> mode.</p>
+	 * @default blocking
+	 * @example nio
+	 */
+	@MCAttribute
+	public void setMode(Mode mode) {
+		this.mode = mode;
+	}
+
+	public int getSelectorThreads() {
+		return selectorThreads;
+	}
+
+	/**
+	 * @description Number of selector threads used when <tt>mode="nio"</tt>.
+	 * @default <i>number of available processors</i>
+	 * @example 4
+	 */
+	@MCAttribute
+	public void setSelectorThreads(int selectorThreads) {
+		this.selectorThreads = selectorThreads;
+	}
+
 	@Override
 	public boolean isOpeningPorts() {
 		return true;
@@ -0,0 +1,279 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.predic8.membrane.core.util.BufferPool;
+
+/**
+ * Watches idle client connections of a {@link HttpTransport} running in {@link HttpTransport.Mode#NIO}.
+ *
+ * Connections are registered by the {@link HttpEndpointListener} after they have been accepted and by the
+ * {@link HttpServerHandler} after an exchange has completed and the connection may be kept alive. The loop reads
+ * from the non-blocking channel until a complete request head has been received, and then hands the connection (switched
+ * back to blocking mode) and the data read so far to the transport's executor, where the interceptor chain is run.
+ */
+public class NioSelectorLoop extends Thread {
+
+	private static final Logger log = LoggerFactory.getLogger(NioSelectorLoop.class.getName());
+
+	/**
+	 * The maximum number of bytes read by the selector loop before the connection is handed to a worker thread. If the
+	 * request head is larger, the remainder is read by the worker using the usual blocking parser.
+	 */
+	public static final int MAX_HEAD_SIZE = 16384;
+
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private final HttpTransport transport;
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<HttpServerHandler> pending = new ConcurrentLinkedQueue<HttpServerHandler>();
+	private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(MAX_HEAD_SIZE);
+
+	private volatile boolean closed;
+	private long lastTimeoutCheck;
+
+	public NioSelectorLoop(HttpTransport transport, int index) throws IOException {
+		this.transport = transport;
+		this.selector = Selector.open();
+		setName("Selector Loop " + index);
+		setDaemon(true);
+	}
+
+	/**
+	 * Hands an idle connection over to this loop. May be called from any thread.
+	 */
+	public void register(HttpServerHandler handler) {
+		if (closed) {
+			handler.close();
+			return;
+		}
+		pending.add(handler);
+		selector.wakeup();
+	}
+
+	public void close() {
+		closed = true;
+		selector.wakeup();
+	}
+
+	public int getNumberOfIdleConnections() {
+		return selector.keys().size();
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!closed) {
+				selector.select(SELECT_TIMEOUT);
+				registerPending();
+				handleSelectedKeys();
+				closeTimedOut();
+			}
+		} catch (Exception e) {
+			log.error("", e);
+		} finally {
+			closeAll();
+		}
+	}
+
+	private void registerPending() {
+		HttpServerHandler handler;
+		while ((handler = pending.poll()) != null) {
+			try {
+				SocketChannel channel = handler.getSourceSocket().getChannel();
+				channel.configureBlocking(false);
+				handler.setLastActivity(System.currentTimeMillis());
+				channel.register(selector, SelectionKey.OP_READ, new IdleConnection(handler));
+			} catch (IOException e) {
+				log.debug("Could not register connection.", e);
+				handler.close();
+			}
+		}
+	}
+
+	private void handleSelectedKeys() throws IOException {
+		List<SelectionKey> complete = null;
+		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+		while (it.hasNext()) {
+			SelectionKey key = it.next();
+			it.remove();
+			IdleConnection ic = (IdleConnection) key.attachment();
+			try {
+				if (!key.isValid() || !key.isReadable())
+					continue;
+				int state = ic.read((SocketChannel) key.channel());
+				if (state == IdleConnection.EOF) {
+					close(key);
+				} else if (state == IdleConnection.COMPLETE) {
+					ic.done = true;
+					key.cancel();
+					if (complete == null)
+						complete = new ArrayList<SelectionKey>();
+					complete.add(key);
+				}
+			} catch (CancelledKeyException e) {
+				close(key);
+			} catch (IOException e) {
+				log.debug("Reading request head failed.", e);
+				close(key);
+			}
+		}
+		if (complete == null)
+			return;
+
+		// deregister the cancelled keys, so that the channels can be switched back to blocking mode
+		selector.selectNow();
+
+		for (SelectionKey key : complete) {
+			IdleConnection ic = (IdleConnection) key.attachment();
+			try {
+				key.channel().configureBlocking(true);
+				ic.handler.headReceived(ic.data, ic.length);
+				transport.getExecutorService().execute(ic.handler);
+			} catch (RejectedExecutionException e) {
+				log.error("HttpServerHandler execution rejected. Might be due to a proxies.xml hot deployment in progress or a low"
+						+ " value for <transport maxThreadPoolSize=\"...\">.");
+				ic.handler.close();
+			} catch (IOException e) {
+				log.debug("Could not dispatch connection.", e);
+				ic.handler.close();
+			}
+		}
+	}
+
+	/**
+	 * Closes connections which have been idle for longer than the socket timeout, and cleans up after connections
+	 * which have been closed by another thread (see {@link HttpEndpointListener#closeConnections(boolean)}).
+	 */
+	private void closeTimedOut() {
+		long now = System.currentTimeMillis();
+		if (now - lastTimeoutCheck < SELECT_TIMEOUT)
+			return;
+		lastTimeoutCheck = now;
+		long timeout = transport.getSocketTimeout();
+		for (SelectionKey key : selector.keys()) {
+			IdleConnection ic = (IdleConnection) key.attachment();
+			if (ic.done)
+				continue;
+			boolean timedOut = timeout > 0 && now - ic.handler.getLastActivity() > timeout;
+			if (!timedOut && key.isValid() && key.channel().isOpen())
+				continue;
+			if (timedOut)
+				log.debug("Idle connection timed out.");
+			close(key);
+		}
+	}
+
+	private void close(SelectionKey key) {
+		IdleConnection ic = (IdleConnection) key.attachment();
+		if (ic.done)
+			return;
+		ic.done = true;
+		key.cancel();
+		ic.handler.close();
+		BufferPool.STREAM.release(ic.data);
+		ic.data = null;
+	}
+
+	private void closeAll() {
+		for (SelectionKey key : selector.keys())
+			close(key);
+		HttpServerHandler handler;
+		while ((handler = pending.poll()) != null)
+			handler.close();
+		try {
+			selector.close();
+		} catch (IOException e) {
+			log.debug("", e);
+		}
+	}
+
+	/**
+	 * The data received on an idle connection, until the request head is complete.
+	 */
+	private final class IdleConnection {
+		static final int INCOMPLETE = 0;
+		static final int COMPLETE = 1;
+		static final int EOF = 2;
+
+		final HttpServerHandler handler;
+		boolean done;
+		byte[] data;
+		int length;
+
+		IdleConnection(HttpServerHandler handler) {
+			this.handler = handler;
+		}
+
+		int read(SocketChannel channel) throws IOException {
+			readBuffer.clear();
+			readBuffer.limit(MAX_HEAD_SIZE - length);
+			int n = channel.read(readBuffer);
+			if (n == -1)
+				return length == 0 ? EOF : COMPLETE;
+			if (n == 0)
+				return INCOMPLETE;
+			handler.setLastActivity(System.currentTimeMillis());
+
+			if (data == null) {
+				// most heads fit into a pooled buffer, which the handler returns once the head has been parsed
+				data = n <= BufferPool.STREAM.getBufferSize() ? BufferPool.STREAM.acquire() : new byte[n];
+			} else if (data.length < length + n) {
+				byte[] grown = Arrays.copyOf(data, Math.min(MAX_HEAD_SIZE, Math.max(length + n, data.length * 2)));
+				BufferPool.STREAM.release(data);
+				data = grown;
+			}
+			readBuffer.flip();
+			int start = Math.max(0, length - 3);
+			readBuffer.get(data, length, n);
+			length += n;
+
+			if (length == MAX_HEAD_SIZE || isHeadComplete(start))
+				return COMPLETE;
+			return INCOMPLETE;
+		}
+
+		/**
+		 * @return whether an empty line (terminating the request head) is contained in data[start..length).
+		 */
+		private boolean isHeadComplete(int start) {
+			for (int i = start; i < length; i++) {
+				if (data[i] != '\n')
+					continue;
+				if (i + 1 < length && data[i + 1] == '\n')
+					return true;
+				if (i + 2 < length && data[i + 1] == '\r' && data[i + 2] == '\n')
+					return true;
+			}
+			return false;
+		}
+	}
+}
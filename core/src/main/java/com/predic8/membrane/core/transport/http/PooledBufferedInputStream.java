@@ -0,0 +1,245 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.predic8.membrane.core.util.BufferPool;
+
+/**
+ * A buffered input stream for sockets, taking its buffer from a {@link BufferPool}. Behaves like
+ * {@link java.io.BufferedInputStream}, including mark/reset.
+ *
+ * The buffer is returned to the pool by {@link #release()}, and a new one can be taken by {@link #acquire()}, e.g.
+ * while the connection is idle and watched by a {@link NioSelectorLoop}. As another thread (e.g. a {@link StreamPump}) might
+ * still be using the stream at that time, access is guarded by a lock: A read blocked in I/O keeps the buffer
+ * (it is then left to the garbage collector), and reads after the release fail.
+ */
+public class PooledBufferedInputStream extends InputStream {
+
+	private final InputStream in;
+	private final BufferPool pool;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private byte[] buf;
+	private boolean pooled = true;
+	private int pos;
+	private int count;
+	private int markpos = -1;
+	private int marklimit;
+
+	public PooledBufferedInputStream(InputStream in, BufferPool pool) {
+		this.in = in;
+		this.pool = pool;
+		this.buf = pool.acquire();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buf == null)
+			throw new SocketException("Socket closed");
+	}
+
+	private void fill() throws IOException {
+		if (markpos < 0) {
+			pos = 0;
+		} else if (pos >= buf.length) {
+			if (markpos > 0) {
+				int size = pos - markpos;
+				System.arraycopy(buf, markpos, buf, 0, size);
+				pos = size;
+				markpos = 0;
+			} else if (buf.length >= marklimit) {
+				markpos = -1;
+				pos = 0;
+			} else {
+				byte[] grown = new byte[Math.min(2 * pos, marklimit)];
+				System.arraycopy(buf, 0, grown, 0, pos);
+				if (pooled)
+					pool.release(buf);
+				pooled = false;
+				buf = grown;
+			}
+		}
+		count = pos;
+		int n = in.read(buf, pos, buf.length - pos);
+		if (n > 0)
+			count = n + pos;
+	}
+
+	@Override
+	public int read() throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if (pos >= count) {
+				fill();
+				if (pos >= count)
+					return -1;
+			}
+			return buf[pos++] & 0xff;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private int read1(byte[] b, int off, int len) throws IOException {
+		int avail = count - pos;
+		if (avail <= 0) {
+			if (len >= buf.length && markpos < 0)
+				return in.read(b, off, len);
+			fill();
+			avail = count - pos;
+			if (avail <= 0)
+				return -1;
+		}
+		int n = Math.min(avail, len);
+		System.arraycopy(buf, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if ((off | len | (off + len) | (b.length - (off + len))) < 0)
+				throw new IndexOutOfBoundsException();
+			if (len == 0)
+				return 0;
+
+			int n = 0;
+			while (true) {
+				int nread = read1(b, off + n, len - n);
+				if (nread <= 0)
+					return n == 0 ? nread : n;
+				n += nread;
+				if (n >= len || in.available() <= 0)
+					return n;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if (n <= 0)
+				return 0;
+			long avail = count - pos;
+			if (avail <= 0) {
+				if (markpos < 0)
+					return in.skip(n);
+				fill();
+				avail = count - pos;
+				if (avail <= 0)
+					return 0;
+			}
+			long skipped = Math.min(avail, n);
+			pos += skipped;
+			return skipped;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public int available() throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			int n = count - pos;
+			int avail = in.available();
+			return n > Integer.MAX_VALUE - avail ? Integer.MAX_VALUE : n + avail;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void mark(int readlimit) {
+		lock.lock();
+		try {
+			marklimit = readlimit;
+			markpos = pos;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void reset() throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if (markpos < 0)
+				throw new IOException("Resetting to invalid mark");
+			pos = markpos;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	/**
+	 * Takes a new buffer from the pool after {@link #release()}. Does nothing, if the stream still holds a buffer.
+	 */
+	public void acquire() {
+		lock.lock();
+		try {
+			if (buf != null)
+				return;
+			buf = pool.acquire();
+			pooled = true;
+			pos = count = 0;
+			markpos = -1;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the buffer to the pool, unless it is currently in use by another thread. Data which is buffered, but
+	 * has not been read yet, is lost. Does not close the underlying stream.
+	 */
+	public void release() {
+		if (!lock.tryLock())
+			return;
+		try {
+			if (buf != null && pooled)
+				pool.release(buf);
+			buf = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		release();
+		in.close();
+	}
+
+}
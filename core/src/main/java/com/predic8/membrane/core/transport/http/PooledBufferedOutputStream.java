@@ -0,0 +1,142 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.predic8.membrane.core.util.BufferPool;
+
+/**
+ * A buffered output stream for sockets, taking its buffer from a {@link BufferPool}. Behaves like
+ * {@link java.io.BufferedOutputStream}.
+ *
+ * See {@link PooledBufferedInputStream} on how the buffer is released.
+ */
+public class PooledBufferedOutputStream extends OutputStream {
+
+	private final OutputStream out;
+	private final BufferPool pool;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private byte[] buf;
+	private int count;
+
+	public PooledBufferedOutputStream(OutputStream out, BufferPool pool) {
+		this.out = out;
+		this.pool = pool;
+		this.buf = pool.acquire();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (buf == null)
+			throw new SocketException("Socket closed");
+	}
+
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buf, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if (count >= buf.length)
+				flushBuffer();
+			buf[count++] = (byte) b;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			if (len >= buf.length) {
+				flushBuffer();
+				out.write(b, off, len);
+				return;
+			}
+			if (len > buf.length - count)
+				flushBuffer();
+			System.arraycopy(b, off, buf, count, len);
+			count += len;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			ensureOpen();
+			flushBuffer();
+			out.flush();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes a new buffer from the pool after {@link #release()}. Does nothing, if the stream still holds a buffer.
+	 */
+	public void acquire() {
+		lock.lock();
+		try {
+			if (buf == null)
+				buf = pool.acquire();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the buffer to the pool, unless it is currently in use by another thread. Unflushed data is
+	 * discarded. Does not close the underlying stream.
+	 */
+	public void release() {
+		if (!lock.tryLock())
+			return;
+		try {
+			if (buf != null)
+				pool.release(buf);
+			buf = null;
+			count = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (buf != null)
+				flush();
+		} finally {
+			release();
+			out.close();
+		}
+	}
+
+}
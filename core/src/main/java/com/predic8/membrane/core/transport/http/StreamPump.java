@@ -27,6 +27,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.predic8.membrane.core.rules.Rule;
+import com.predic8.membrane.core.util.BufferPool;
 
 import javax.net.ssl.SSLException;
 
@@ -78,7 +79,7 @@ public class StreamPump implements Runnable {
 
 	@Override
 	public void run() {
-		byte[] buffer = new byte[8192];
+		byte[] buffer = BufferPool.BODY.acquire();
 		int length = 0;
 		if (stats != null)
 			stats.registerPump(this);
@@ -103,6 +104,7 @@ public class StreamPump implements Runnable {
 			} catch (Exception e) {
 				// ignore
 			}
+			BufferPool.BODY.release(buffer);
 			if (stats != null)
 				stats.unregisterPump(this);
 		}
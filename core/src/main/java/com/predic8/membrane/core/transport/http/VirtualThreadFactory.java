@@ -0,0 +1,70 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads, if the JVM supports them (Java 21 or newer).
+ *
+ * Membrane is compiled for older Java versions, so the virtual thread API is accessed via reflection.
+ */
+public class VirtualThreadFactory implements ThreadFactory {
+
+	private static final ThreadFactory delegate = createDelegate();
+
+	private final String threadName;
+
+	public VirtualThreadFactory(String threadName) {
+		if (delegate == null)
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.");
+		this.threadName = threadName;
+	}
+
+	private static ThreadFactory createDelegate() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+			return (ThreadFactory) factory.invoke(builder);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	public static boolean isSupported() {
+		return delegate != null;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		Thread th = delegate.newThread(r);
+		th.setName(threadName);
+		return th;
+	}
+
+	/**
+	 * @return an executor starting a new virtual thread for each task.
+	 */
+	public ExecutorService newThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, this);
+		} catch (Exception e) {
+			throw new UnsupportedOperationException("Virtual threads require Java 21 or newer.", e);
+		}
+	}
+}
@@ -24,10 +24,12 @@ import com.predic8.membrane.core.transport.ws.WebSocketInterceptorInterface;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class WebSocketStreamPump extends StreamPump {
     protected static Logger log = LoggerFactory.getLogger(WebSocketStreamPump.class.getName());
@@ -61,12 +63,23 @@ public class WebSocketStreamPump extends StreamPump {
     private final boolean pumpsToRight;
     boolean connectionIsOpen = true;
     WebSocketFrameAssembler frameAssembler;
+    private final ReentrantLock outLock = new ReentrantLock();
+    /** the thread reading the frames: frames it writes are flushed after each batch */
+    private volatile Thread readerThread;
+    private boolean flushThis, flushOther;
 
     @Override
     public void run() {
         if (otherStreamPump == null)
             throw new RuntimeException("Call init with other WebSocketStreamPump (backward direction)");
+        readerThread = Thread.currentThread();
         try {
+            if (chain.isEmpty()) {
+                // no interceptor needs to see the frames: forward them as they are (in this case, only this pump
+                // writes to its output stream)
+                frameAssembler.forwardFrames(out);
+                return;
+            }
             frameAssembler.readFrames(frame -> {
                 try {
                     if (pumpsToRight) {
@@ -79,7 +92,7 @@ public class WebSocketStreamPump extends StreamPump {
                 } catch (Exception e) {
                     e.printStackTrace();
                 }
-            });
+            }, this::flushBatch);
         } catch (Exception e) {
             connectionIsOpen = false;
             String entity = (pumpsToRight ? "client to server" : "server to client");
@@ -97,22 +110,13 @@ public class WebSocketStreamPump extends StreamPump {
 
     private void passFrameToChainElement(int i, boolean frameTravelsToRight, WebSocketFrame frame) throws Exception {
         if (chain.isEmpty()) {
-            if (true)
-                synchronized (out) {
-                    frame.write(out);
-                }
+            write(this, frame);
             return;
         }
         if (i == -1) {
-            OutputStream target = pumpsToRight ? otherStreamPump.out : out;
-            synchronized (target) {
-                frame.write(target);
-            }
+            write(pumpsToRight ? otherStreamPump : this, frame);
         } else if (chain.size() == i) {
-            OutputStream target = pumpsToRight ? out : otherStreamPump.out;
-            synchronized (target) {
-                frame.write(target);
-            }
+            write(pumpsToRight ? this : otherStreamPump, frame);
         } else {
             chain.get(i).handleFrame(frame, frameTravelsToRight, frame1 -> {
                 passFrameToChainElement(i + (frameTravelsToRight ? 1 : -1), frameTravelsToRight, frame1);
@@ -120,4 +124,50 @@ public class WebSocketStreamPump extends StreamPump {
         }
     }
 
+    /**
+     * Writes the frame to the output stream of the given pump. Frames may be written by both pumps of a connection, so
+     * the output stream is guarded by a lock (and not by a monitor, which would pin a virtual thread to its carrier
+     * while blocked in the socket write).
+     *
+     * Frames written by the reading thread are flushed by {@link #flushBatch()}, frames written by other threads (e.g.
+     * by an interceptor sending frames on its own) immediately.
+     */
+    private void write(WebSocketStreamPump target, WebSocketFrame frame) throws Exception {
+        boolean batched = Thread.currentThread() == readerThread;
+        target.outLock.lock();
+        try {
+            frame.write(target.out, !batched);
+        } finally {
+            target.outLock.unlock();
+        }
+        if (batched) {
+            if (target == this)
+                flushThis = true;
+            else
+                flushOther = true;
+        }
+    }
+
+    private void flushBatch() {
+        try {
+            if (flushThis)
+                flush(this);
+            if (flushOther)
+                flush(otherStreamPump);
+        } catch (IOException e) {
+            log.debug("Could not flush WebSocket frames.", e);
+        } finally {
+            flushThis = flushOther = false;
+        }
+    }
+
+    private static void flush(WebSocketStreamPump target) throws IOException {
+        target.outLock.lock();
+        try {
+            target.out.flush();
+        } finally {
+            target.outLock.unlock();
+        }
+    }
+
 }
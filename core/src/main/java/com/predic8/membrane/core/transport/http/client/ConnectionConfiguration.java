@@ -22,6 +22,8 @@ public class ConnectionConfiguration {
 	private long keepAliveTimeout = 4000;
 	private int connectTimeout = 10000;
 	private String localAddr;
+	private int maxIdlePerDestination;
+	private int maxTotalPerDestination;
 
 	public long getKeepAliveTimeout() {
 		return keepAliveTimeout;
@@ -64,5 +66,35 @@ public class ConnectionConfiguration {
 		this.localAddr = localAddr;
 	}
 
+	public int getMaxIdlePerDestination() {
+		return maxIdlePerDestination;
+	}
+
+	/**
+	 * @description The maximum number of idle connections kept open per destination (host and port). Connections
+	 *              released while this limit is reached are closed. 0 means no limit.
+	 * @default 0
+	 * @example 20
+	 */
+	@MCAttribute
+	public void setMaxIdlePerDestination(int maxIdlePerDestination) {
+		this.maxIdlePerDestination = maxIdlePerDestination;
+	}
+
+	public int getMaxTotalPerDestination() {
+		return maxTotalPerDestination;
+	}
+
+	/**
+	 * @description The maximum number of connections (idle or in use) open at the same time per destination (host and
+	 *              port). When the limit is reached, requests wait for a connection to become available, at most for
+	 *              the duration of the socket timeout. 0 means no limit.
+	 * @default 0
+	 * @example 100
+	 */
+	@MCAttribute
+	public void setMaxTotalPerDestination(int maxTotalPerDestination) {
+		this.maxTotalPerDestination = maxTotalPerDestination;
+	}
 
 }
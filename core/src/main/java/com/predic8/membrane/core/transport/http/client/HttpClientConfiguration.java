@@ -24,6 +24,7 @@ import com.predic8.membrane.core.config.security.SSLParser;
 public class HttpClientConfiguration {
 
 	private int maxRetries = 5;
+	private int maxAsyncCalls = 256;
 	private ConnectionConfiguration connection = new ConnectionConfiguration();
 	private ProxyConfiguration proxy;
 	private AuthenticationConfiguration authentication;
@@ -79,6 +80,23 @@ public class HttpClientConfiguration {
 		this.maxRetries = maxRetries;
 	}
 
+	public int getMaxAsyncCalls() {
+		return maxAsyncCalls;
+	}
+
+	/**
+	 * @description The maximum number of asynchronous calls (used by <tt>&lt;transport mode="NIO"&gt;</tt>) this
+	 *              client has in flight at a time. When the limit is reached, requests wait for their response on
+	 *              the thread handling them.
+	 * @default 256
+	 */
+	@MCAttribute
+	public void setMaxAsyncCalls(int maxAsyncCalls) {
+		if (maxAsyncCalls <= 0)
+			throw new InvalidParameterException("'maxAsyncCalls' must be positive.");
+		this.maxAsyncCalls = maxAsyncCalls;
+	}
+
 	public SSLParser getSslParser() {
 		return sslParser;
 	}
@@ -15,7 +15,7 @@
 package com.predic8.membrane.core.transport.ws;
 
 import com.predic8.membrane.core.exchange.Exchange;
-import com.predic8.membrane.core.util.ByteUtil;
+import com.predic8.membrane.core.util.BufferPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,11 +25,19 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+/**
+ * A WebSocket frame (RFC 6455, section 5.2).
+ *
+ * The payload is kept unmasked. It is only masked while the frame is written, using a pooled buffer, so that
+ * interceptors may keep and modify it.
+ */
 public class WebSocketFrame {
 
     protected static Logger log = LoggerFactory.getLogger(WebSocketFrame.class.getName());
 
-    final static int INITIAL_BUFFER_SIZE = 8192;
+    private static final byte[] EMPTY = new byte[0];
+    /** the maximum length of a frame header: 2 bytes, 8 bytes extended payload length and the masking key */
+    static final int MAX_HEADER_LENGTH = 14;
 
     Exchange originalExchange;
     private String error = null;
@@ -41,7 +49,8 @@ public class WebSocketFrame {
     boolean isMasked;
     long payloadLength;
     final byte[] maskKey = new byte[4];
-    byte[] payload = new byte[INITIAL_BUFFER_SIZE];
+    byte[] payload = EMPTY;
+    private final byte[] header = new byte[MAX_HEADER_LENGTH];
 
     public WebSocketFrame() {
 
@@ -54,9 +63,8 @@ public class WebSocketFrame {
         this.rsv3 = rsv3;
         this.opcode = opcode;
         this.isMasked = isMasked;
-        payloadLength = payload.length;
-        System.arraycopy(this.maskKey,0,maskingKey,0,maskingKey.length);
-        System.arraycopy(this.payload,0,payload,0,payload.length);
+        setMaskKey(maskingKey);
+        setPayload(payload);
     }
 
     private String calcError() {
@@ -66,60 +74,67 @@ public class WebSocketFrame {
     }
 
     public void write(OutputStream out) throws IOException {
-        byte[] result = new byte[getSizeInBytes()];
-
-        byte finAndReservedAndOpcode = 0;
-        finAndReservedAndOpcode = ByteUtil.setBitValueBigEndian(finAndReservedAndOpcode, 0, finalFragment);
-        finAndReservedAndOpcode = ByteUtil.setBitValueBigEndian(finAndReservedAndOpcode, 1, rsv1);
-        finAndReservedAndOpcode = ByteUtil.setBitValueBigEndian(finAndReservedAndOpcode, 2, rsv2);
-        finAndReservedAndOpcode = ByteUtil.setBitValueBigEndian(finAndReservedAndOpcode, 3, rsv3);
-        finAndReservedAndOpcode = ByteUtil.setBitValuesBigEndian(finAndReservedAndOpcode, 4, 7, opcode);
-
-        byte maskAndPayloadLength = 0;
-        maskAndPayloadLength = ByteUtil.setBitValueBigEndian(maskAndPayloadLength, 0, this.isMasked);
-        int additionalPayloadBytes = getExtendedPayloadSize(computePayloadField());
-
-        maskAndPayloadLength = ByteUtil.setBitValuesBigEndian(maskAndPayloadLength, 1, 7, computePayloadField());
-
-        result[0] = finAndReservedAndOpcode;
-        result[1] = maskAndPayloadLength;
-
-        byte[] additionalPayloadLength = null;
-
-        if (additionalPayloadBytes == 2) {
-            byte[] extendedPayloadLength = ByteBuffer.allocate(4).putInt((int) payloadLength).array();
-            byte[] correctedExtendedPayloadLength = new byte[2];
-            for (int i = 2; i < extendedPayloadLength.length; i++)
-                correctedExtendedPayloadLength[i - 2] = extendedPayloadLength[i];
-            additionalPayloadLength = correctedExtendedPayloadLength;
-        }
-        if (additionalPayloadBytes == 8) {
-            additionalPayloadLength = ByteBuffer.allocate(8).putLong((int) payloadLength).array();
-        }
-        if (additionalPayloadLength != null)
-            for (int i = 0; i < additionalPayloadBytes; i++) {
-                result[2 + i] = additionalPayloadLength[i];
-            }
-
-
-        int maskKeyLength = isMasked ? maskKey.length : 0;
-        for (int i = 0; i < maskKeyLength; i++)
-            result[2 + additionalPayloadBytes + i] = maskKey[i];
-
-        int payloadOffset = 2 + additionalPayloadBytes + maskKeyLength;
-        System.arraycopy(payload, 0, result, payloadOffset, (int) payloadLength);
+        write(out, true);
+    }
 
+    /**
+     * @param flush whether to flush the stream: Callers writing several frames at once may flush only after the
+     *              last one.
+     */
+    public void write(OutputStream out, boolean flush) throws IOException {
+        int length = (int) payloadLength;
+        int payloadField = computePayloadField();
+        header[0] = (byte) ((finalFragment ? 0x80 : 0) | (rsv1 ? 0x40 : 0) | (rsv2 ? 0x20 : 0) | (rsv3 ? 0x10 : 0) | (opcode & 0x0F));
+        header[1] = (byte) ((isMasked ? 0x80 : 0) | payloadField);
+        int headerLength = 2;
+        int additionalPayloadBytes = getExtendedPayloadSize(payloadField);
+        for (int i = additionalPayloadBytes - 1; i >= 0; i--)
+            header[headerLength++] = (byte) (payloadLength >>> (8 * i));
         if (isMasked) {
-            int maskIndex = 0;
-            for (int i = 0; i < payloadLength; i++) {
-                result[payloadOffset + i] = (byte) (result[payloadOffset + i] ^ maskKey[maskIndex]);
-                maskIndex = (maskIndex + 1) % 4;
+            System.arraycopy(maskKey, 0, header, headerLength, 4);
+            headerLength += 4;
+        }
+        out.write(header, 0, headerLength);
+
+        if (!isMasked) {
+            out.write(payload, 0, length);
+        } else {
+            byte[] masked = BufferPool.BODY.acquire();
+            try {
+                for (int i = 0; i < length; i += masked.length) {
+                    int n = Math.min(masked.length, length - i);
+                    mask(payload, i, masked, 0, n, maskKey, i);
+                    out.write(masked, 0, n);
+                }
+            } finally {
+                BufferPool.BODY.release(masked);
             }
         }
 
-        out.write(result);
-        out.flush();
+        if (flush)
+            out.flush();
+    }
 
+    /**
+     * XORs <code>length</code> bytes of <code>src</code> with the mask key, eight bytes at a time.
+     *
+     * @param maskIndex the index (relative to the start of the payload) of the first byte, which determines the
+     *                  first mask key byte to use
+     */
+    static void mask(byte[] src, int srcOffset, byte[] dst, int dstOffset, int length, byte[] maskKey, int maskIndex) {
+        int i = 0;
+        if (length >= 8) {
+            long m = 0;
+            for (int k = 0; k < 8; k++)
+                m = (m << 8) | (maskKey[(maskIndex + k) & 3] & 0xFFL);
+            // big endian: the byte at the lowest index is XORed with the most significant byte of the mask
+            ByteBuffer s = ByteBuffer.wrap(src);
+            ByteBuffer d = src == dst ? s : ByteBuffer.wrap(dst);
+            for (; i <= length - 8; i += 8)
+                d.putLong(dstOffset + i, s.getLong(srcOffset + i) ^ m);
+        }
+        for (; i < length; i++)
+            dst[dstOffset + i] = (byte) (src[srcOffset + i] ^ maskKey[(maskIndex + i) & 3]);
     }
 
     private int computePayloadField() {
@@ -190,77 +205,77 @@ public class WebSocketFrame {
     }
 
     /**
+     * @return the length of the frame header at the given position, or 0 if the header is not complete
+     */
+    static int getHeaderLength(byte[] buffer, int offset, int length) {
+        if (length < 2)
+            return 0;
+        int b = buffer[offset + 1];
+        int payloadField = b & 0x7F;
+        int headerLength = 2 + (payloadField == 126 ? 2 : payloadField == 127 ? 8 : 0) + ((b & 0x80) != 0 ? 4 : 0);
+        return length < headerLength ? 0 : headerLength;
+    }
+
+    /**
+     * @return the payload length stored in the (complete) frame header at the given position
+     */
+    static long getPayloadLength(byte[] buffer, int offset) {
+        int payloadField = buffer[offset + 1] & 0x7F;
+        if (payloadField < 126)
+            return payloadField;
+        int additionalPayloadBytes = payloadField == 126 ? 2 : 8;
+        long result = 0;
+        for (int i = 0; i < additionalPayloadBytes; i++)
+            result = (result << 8) | (buffer[offset + 2 + i] & 0xFF);
+        return result;
+    }
+
+    /**
+     * Parses a frame in place. The frame's fields are only changed if the frame is complete. The payload is copied
+     * (and unmasked) into this frame's payload buffer, which is reused for the next frame read.
+     *
      * @param buffer
      * @param offset
      * @param length
      * @return the number of bytes read. if > 0, this class has been properly initialized with the frame data read.
      */
     public int tryRead(byte[] buffer, int offset, int length) {
-        if (length < 2)
+        int headerLength = getHeaderLength(buffer, offset, length);
+        if (headerLength == 0)
             return 0;
 
-        int origOffset = offset;
-
-        byte finAndReservedAndOpCode = buffer[offset++];
-        finalFragment = ByteUtil.getBitValueBigEndian(finAndReservedAndOpCode, 0);
-        rsv1 = ByteUtil.getBitValueBigEndian(finAndReservedAndOpCode, 1);
-        rsv2 = ByteUtil.getBitValueBigEndian(finAndReservedAndOpCode, 2);
-        rsv3 = ByteUtil.getBitValueBigEndian(finAndReservedAndOpCode, 3);
-        opcode = ByteUtil.getValueOfBits(finAndReservedAndOpCode, 4, 7);
-
-        int headerLength = 2;
-
-        byte maskAndPayloadLength = buffer[offset++];
-        isMasked = ByteUtil.getBitValueBigEndian(maskAndPayloadLength, 0);
-        payloadLength = ByteUtil.getValueOfBits(maskAndPayloadLength, 1, 7);
-        if (payloadLength >= 126) {
-            if (payloadLength == 126) {
-                headerLength += 2;
-                byte[] newPayloadLength = new byte[4];
-                for (int i = 2; i < newPayloadLength.length; i++)
-                    newPayloadLength[i] = buffer[offset++];
-                payloadLength = ByteBuffer.wrap(newPayloadLength).getInt();
-            } else {
-                headerLength += 8;
-                byte[] newPayloadLength = new byte[8];
-                for (int i = 0; i < newPayloadLength.length; i++)
-                    newPayloadLength[i] = buffer[offset++];
-                payloadLength = ByteBuffer.wrap(newPayloadLength).getLong();
-            }
-        }
-
-        if (isMasked) {
-            headerLength += 4;
-            for (int i = 0; i < 4; i++)
-                maskKey[i] = buffer[offset++];
-        }
-
+        long payloadLength = getPayloadLength(buffer, offset);
         if (payloadLength > Integer.MAX_VALUE || payloadLength < 0) {
             log.warn("Payload of ws message is bigger than Integer.MAX_VALUE which is currently not supported. Message will be truncated");
             payloadLength = Integer.MAX_VALUE;
         }
         // if payloadLength is bigger than what can currently be in the buffer then we haven't read the whole frame
-        if(payloadLength > length-headerLength)
+        if (payloadLength > length - headerLength)
             return 0;
-        // ensure that 'payload' buffer is large enough
-        if (payload.length < payloadLength)
-            payload = new byte[(int) payloadLength];
-
-        int maskIndex = 0;
-        for (int i = 0; i < payloadLength; i++) {
-            payload[i] = buffer[offset++];
-            if (isMasked)
-                payload[i] = (byte) (payload[i] ^ maskKey[maskIndex]);
-            maskIndex = (maskIndex + 1) % 4;
-        }
 
-        // TODO: directly set the fields (or better: use them during parsing)
+        int b0 = buffer[offset];
+        finalFragment = (b0 & 0x80) != 0;
+        rsv1 = (b0 & 0x40) != 0;
+        rsv2 = (b0 & 0x20) != 0;
+        rsv3 = (b0 & 0x10) != 0;
+        opcode = b0 & 0x0F;
+        isMasked = (buffer[offset + 1] & 0x80) != 0;
+        this.payloadLength = payloadLength;
+        if (isMasked)
+            System.arraycopy(buffer, offset + headerLength - 4, maskKey, 0, 4);
 
-        if (opcode == 8)
-            error = calcError();
+        // ensure that 'payload' buffer is large enough
+        int n = (int) payloadLength;
+        if (payload.length < n)
+            payload = new byte[Math.max(n, 2 * payload.length)];
+        if (isMasked)
+            mask(buffer, offset + headerLength, payload, 0, n, maskKey, 0);
+        else
+            System.arraycopy(buffer, offset + headerLength, payload, 0, n);
 
+        error = opcode == 8 && n >= 2 ? calcError() : null;
 
-        return offset - origOffset;
+        return headerLength + n;
     }
 
 
@@ -350,7 +365,7 @@ public class WebSocketFrame {
     }
 
     public byte[] toBytes() throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(getSizeInBytes());
         write(baos);
         return baos.toByteArray();
     }
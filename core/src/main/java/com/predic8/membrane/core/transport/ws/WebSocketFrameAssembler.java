@@ -20,8 +20,17 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
+/**
+ * Reads the frames of a WebSocket connection.
+ *
+ * Frames are parsed in place in a reusable buffer: Unconsumed data is only moved to the start of the buffer when
+ * the end of the buffer is reached, and the buffer only grows if a single frame does not fit into it.
+ */
 public class WebSocketFrameAssembler {
 
     protected static Logger log = LoggerFactory.getLogger(WebSocketFrameAssembler.class.getName());
@@ -32,35 +41,115 @@ public class WebSocketFrameAssembler {
     InputStream in;
 
     byte[] buffer = new byte[BUFFER_SIZE];
+    /** the unconsumed data is buffer[start..end) */
+    private int start, end;
+
+    private final ReentrantLock lock = new ReentrantLock();
 
     public WebSocketFrameAssembler(InputStream in, Exchange originalExchange) {
         this.in = in;
         this.originalExchange = originalExchange;
     }
 
-    public synchronized void readFrames(Consumer<WebSocketFrame> consumer) throws IOException {
-        int read;
+    public void readFrames(Consumer<WebSocketFrame> consumer) throws IOException {
+        readFrames(consumer, null);
+    }
+
+    /**
+     * @param afterBatch if not null, called after the frames completed by one read from the input stream have been
+     *                   passed to the consumer, e.g. to flush the frames written by the consumer
+     */
+    public void readFrames(Consumer<WebSocketFrame> consumer, Runnable afterBatch) throws IOException {
+        // a lock instead of a monitor, as the calling (possibly virtual) thread blocks in read() for the lifetime of the connection
+        lock.lock();
+        try {
+            doReadFrames(consumer, afterBatch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doReadFrames(Consumer<WebSocketFrame> consumer, Runnable afterBatch) throws IOException {
         WebSocketFrame frame = new WebSocketFrame();
         if (originalExchange != null)
             frame.setOriginalExchange(originalExchange);
-        int offset = 0;
         int handled;
-        while ((read = in.read(buffer, offset, buffer.length - offset)) > 0) {
+        while (fill(true)) {
+            boolean any = false;
+            while ((handled = frame.tryRead(buffer, start, end - start)) > 0) {
+                start += handled;
+                any = true;
+                consumer.accept(frame);
+            }
+            if (any && afterBatch != null)
+                afterBatch.run();
+        }
+    }
 
-            offset = offset + read;
+    /**
+     * Copies the frames to the output stream without decoding them. Only the frame headers are parsed: Payloads are
+     * passed through (still masked) as they arrive, even if a frame does not fit into the buffer. The output stream
+     * is flushed once per read from the input stream.
+     */
+    public void forwardFrames(OutputStream out) throws IOException {
+        lock.lock();
+        try {
+            doForwardFrames(out);
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            while ((handled = frame.tryRead(buffer, 0, offset)) > 0) {
-                consumer.accept(frame);
-                System.arraycopy(buffer, handled, buffer, 0, offset - handled);
-                offset -= handled;
+    private void doForwardFrames(OutputStream out) throws IOException {
+        // the payload bytes of the current frame which have not been forwarded yet
+        long remaining = 0;
+        while (fill(false)) {
+            int pos = start;
+            while (true) {
+                if (remaining > 0) {
+                    int n = (int) Math.min(remaining, end - pos);
+                    pos += n;
+                    remaining -= n;
+                    if (remaining > 0)
+                        break;
+                }
+                int headerLength = WebSocketFrame.getHeaderLength(buffer, pos, end - pos);
+                if (headerLength == 0)
+                    break;
+                remaining = WebSocketFrame.getPayloadLength(buffer, pos);
+                pos += headerLength;
             }
-            if(offset >= buffer.length && handled == 0){
-                byte[] newBuffer = new byte[buffer.length*2];
-                System.arraycopy(buffer,0,newBuffer,0,buffer.length);
-                buffer = newBuffer;
+            if (pos > start) {
+                out.write(buffer, start, pos - start);
+                start = pos;
             }
+            out.flush();
         }
     }
 
+    /**
+     * Reads more data, after making room for it.
+     *
+     * @param grow whether to grow the buffer if it is full of unconsumed data
+     * @return false, if the end of the stream has been reached
+     */
+    private boolean fill(boolean grow) throws IOException {
+        if (start == end) {
+            start = end = 0;
+        } else if (end == buffer.length) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                end -= start;
+                start = 0;
+            } else if (grow) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read <= 0)
+            return false;
+        end += read;
+        return true;
+    }
 
 }
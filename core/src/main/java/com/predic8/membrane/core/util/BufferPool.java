@@ -0,0 +1,150 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of equally sized byte arrays.
+ *
+ * The pool is split into stripes selected by the current thread's ID, so that concurrent threads rarely touch
+ * the same slots. (Thread-locals are not used, as they would not help with virtual threads, which are created
+ * per connection.) When a stripe is empty, a new array is allocated; when it is full, the released array is left
+ * to the garbage collector. The pool therefore never holds more than {@link #getCapacity()} arrays.
+ *
+ * A buffer must not be used after it has been released.
+ */
+public class BufferPool {
+
+	private static final int SLOTS_PER_STRIPE = 16;
+
+	/**
+	 * Pool for the read buffers used when streaming message bodies. The buffer size can be set using the system
+	 * property "membrane.core.http.body.buffersize".
+	 */
+	public static final BufferPool BODY;
+
+	/**
+	 * Pool for the buffers of the streams wrapping accepted sockets.
+	 */
+	public static final BufferPool STREAM = new BufferPool(2048);
+
+	static {
+		String bufferSize = System.getProperty("membrane.core.http.body.buffersize");
+		BODY = new BufferPool(bufferSize == null ? 8192 : Integer.parseInt(bufferSize));
+	}
+
+	private final int bufferSize;
+	private final AtomicReferenceArray<byte[]> slots;
+	private final int stripeMask;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder discarded = new LongAdder();
+
+	public BufferPool(int bufferSize) {
+		this(bufferSize, 2 * Runtime.getRuntime().availableProcessors());
+	}
+
+	public BufferPool(int bufferSize, int stripes) {
+		if (bufferSize <= 0)
+			throw new IllegalArgumentException("bufferSize must be positive.");
+		int n = 1;
+		while (n < stripes)
+			n <<= 1;
+		this.bufferSize = bufferSize;
+		this.stripeMask = n - 1;
+		this.slots = new AtomicReferenceArray<byte[]>(n * SLOTS_PER_STRIPE);
+	}
+
+	/**
+	 * @return a buffer of {@link #getBufferSize()} bytes. Its content is undefined.
+	 */
+	public byte[] acquire() {
+		int base = getStripeBase();
+		for (int i = base; i < base + SLOTS_PER_STRIPE; i++) {
+			byte[] buffer = slots.get(i);
+			if (buffer != null && slots.compareAndSet(i, buffer, null)) {
+				hits.increment();
+				return buffer;
+			}
+		}
+		misses.increment();
+		return new byte[bufferSize];
+	}
+
+	/**
+	 * Returns a buffer to the pool. Buffers of a different size (not acquired from this pool) are ignored.
+	 */
+	public void release(byte[] buffer) {
+		if (buffer == null || buffer.length != bufferSize)
+			return;
+		int base = getStripeBase();
+		for (int i = base; i < base + SLOTS_PER_STRIPE; i++) {
+			if (slots.get(i) == null && slots.compareAndSet(i, null, buffer))
+				return;
+		}
+		discarded.increment();
+	}
+
+	private int getStripeBase() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ (id >>> 32));
+		h ^= h >>> 16;
+		return (h & stripeMask) * SLOTS_PER_STRIPE;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * @return the number of buffers currently held by the pool
+	 */
+	public int getPooled() {
+		int n = 0;
+		for (int i = 0; i < slots.length(); i++)
+			if (slots.get(i) != null)
+				n++;
+		return n;
+	}
+
+	/**
+	 * @return the number of {@link #acquire()} calls served by a pooled buffer
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of {@link #acquire()} calls which had to allocate a new buffer
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of released buffers which were dropped because the stripe was full
+	 */
+	public long getDiscarded() {
+		return discarded.sum();
+	}
+
+}
@@ -36,12 +36,20 @@ public class ByteUtil {
 			return getByteArrayData(in);
 
 		byte[] content = new byte[length];
+		readByteArray(in, content, length);
+		return content;
+	}
+
+	/**
+	 * Reads up to <code>length</code> bytes into the beginning of <code>content</code>, stopping early only at the
+	 * end of the stream.
+	 */
+	public static void readByteArray(InputStream in, byte[] content, int length) throws IOException {
 		int offset = 0;
 		int count = 0;
 		while (offset < length && (count = in.read(content, offset, length - offset)) >= 0) {
 			offset += count;
 		}
-		return content;
 	}
 
 	public static byte[] getByteArrayData(InputStream stream) throws IOException {
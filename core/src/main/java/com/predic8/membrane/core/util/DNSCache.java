@@ -15,58 +15,356 @@
 package com.predic8.membrane.core.util;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * See InetAddress Caching of InetAddress class
+ * Caches DNS lookups (see InetAddress Caching of InetAddress class).
  *
- * Java 1.5 implementation of InetAddress Caching differs from Java 1.6 one.
+ * Each kind of lookup has its own map holding at most {@link #getMaxEntries()} entries. Successful lookups expire
+ * after {@link #getTtl()} milliseconds, failed ones (a reverse lookup returning the IP address, or a forward lookup
+ * throwing {@link UnknownHostException}) after {@link #getNegativeTtl()} milliseconds. Concurrent lookups of the
+ * same key wait for the same result.
+ *
+ * Reverse lookups run on a small pool of background threads: {@link #getHostNameAsync(InetAddress)} never blocks.
+ * Forward lookups ({@link #resolve(String)}) are refreshed in the background when they are about to expire, so that
+ * frequently used destinations never wait for DNS. When too many lookups are pending, the blocking methods look up
+ * on the calling thread instead.
  */
 public class DNSCache {
 
-	private Map<InetAddress, String> hostNames = new Hashtable<InetAddress, String>();
-	private Map<InetAddress, String> canonicalHostNames = new Hashtable<InetAddress, String>();
-	private Map<InetAddress, String> hostAddresses = new Hashtable<InetAddress, String>();
+	private static final AtomicInteger threadNumber = new AtomicInteger();
+
+	private int maxEntries = 10000;
+	private long ttl = 5 * 60 * 1000;
+	private long negativeTtl = 30 * 1000;
+
+	private final Executor lookupExecutor;
+
+	private final Lookups<InetAddress, String> hostNames;
+	private final Lookups<InetAddress, String> canonicalHostNames;
+	private final Lookups<InetAddress, String> hostAddresses;
+	private final Lookups<String, InetAddress> addresses;
+
+	public DNSCache() {
+		this(createExecutor());
+	}
+
+	DNSCache(Executor lookupExecutor) {
+		this.lookupExecutor = lookupExecutor;
+
+		hostNames = new Lookups<InetAddress, String>(lookupExecutor, false) {
+			@Override
+			String lookup(InetAddress address) {
+				return address.getHostName();
+			}
+
+			@Override
+			boolean isNegative(InetAddress address, String hostName) {
+				return hostName.equals(address.getHostAddress());
+			}
+		};
+		canonicalHostNames = new Lookups<InetAddress, String>(lookupExecutor, false) {
+			@Override
+			String lookup(InetAddress address) {
+				return address.getCanonicalHostName();
+			}
 
+			@Override
+			boolean isNegative(InetAddress address, String hostName) {
+				return hostName.equals(address.getHostAddress());
+			}
+		};
+		// formatting an address does not need a background thread
+		hostAddresses = new Lookups<InetAddress, String>(null, false) {
+			@Override
+			String lookup(InetAddress address) {
+				return address.getHostAddress();
+			}
+		};
+		addresses = new Lookups<String, InetAddress>(lookupExecutor, true) {
+			@Override
+			InetAddress lookup(String host) throws UnknownHostException {
+				return InetAddress.getByName(host);
+			}
+		};
+	}
+
+	private static Executor createExecutor() {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(1000), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "DNS Lookup " + threadNumber.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Performs a reverse lookup, blocking on a cache miss.
+	 *
+	 * @return the host name, or the IP address if the lookup failed
+	 */
 	public String getHostName(InetAddress address) {
-		if (hostNames.containsKey(address))
-			return hostNames.get(address);
+		try {
+			return hostNames.getBlocking(address);
+		} catch (Exception e) {
+			return address.getHostAddress();
+		}
+	}
 
-		String hostName = address.getHostName();
-		hostNames.put(address, hostName);
-		return hostName;
+	/**
+	 * Performs a reverse lookup in the background.
+	 *
+	 * @return a future, which is already completed if the name was cached. It completes exceptionally with a
+	 *         {@link RejectedExecutionException}, if too many lookups are pending.
+	 */
+	public CompletableFuture<String> getHostNameAsync(InetAddress address) {
+		return hostNames.get(address);
 	}
 
+	/**
+	 * @return the canonical host name, or the IP address if the lookup failed
+	 */
 	public String getCanonicalHostName(InetAddress address) {
-		if (canonicalHostNames.containsKey(address))
-			return canonicalHostNames.get(address);
-
-		String canonicalHostName = address.getCanonicalHostName();
-		canonicalHostNames.put(address, canonicalHostName);
-		return canonicalHostName;
+		try {
+			return canonicalHostNames.getBlocking(address);
+		} catch (Exception e) {
+			return address.getHostAddress();
+		}
 	}
 
 	public String getHostAddress(InetAddress address) {
-		if (hostAddresses.containsKey(address))
-			return hostAddresses.get(address);
+		try {
+			return hostAddresses.getBlocking(address);
+		} catch (Exception e) {
+			return address.getHostAddress();
+		}
+	}
 
-		String hostAddress = address.getHostAddress();
-		hostAddresses.put(address, hostAddress);
-		return hostAddress;
+	/**
+	 * Performs a forward lookup, blocking on a cache miss.
+	 */
+	public InetAddress resolve(String host) throws UnknownHostException {
+		try {
+			return addresses.getBlocking(host);
+		} catch (UnknownHostException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// InetAddress.getByName() does not throw other checked exceptions
+			throw new RuntimeException(e);
+		}
 	}
 
 	public Collection<String> getCachedHostNames() {
-		return hostNames.values();
+		return hostNames.getValues();
 	}
 
 	public Collection<String> getCachedCanonicalHostNames() {
-		return canonicalHostNames.values();
+		return canonicalHostNames.getValues();
 	}
 
 	public Collection<String> getCachedHostAddresses() {
-		return hostAddresses.values();
+		return hostAddresses.getValues();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(long ttl) {
+		this.ttl = ttl;
+	}
+
+	public long getNegativeTtl() {
+		return negativeTtl;
+	}
+
+	public void setNegativeTtl(long negativeTtl) {
+		this.negativeTtl = negativeTtl;
+	}
+
+	private static class Entry<V> {
+		final CompletableFuture<V> value = new CompletableFuture<V>();
+		final AtomicBoolean refreshing = new AtomicBoolean();
+		/** in nanoTime, set when the lookup has completed */
+		volatile long expires = Long.MAX_VALUE;
+		volatile long refreshAt = Long.MAX_VALUE;
+
+		boolean isExpired(long now) {
+			return expires != Long.MAX_VALUE && now - expires >= 0;
+		}
+
+		boolean isRefreshDue(long now) {
+			return refreshAt != Long.MAX_VALUE && now - refreshAt >= 0;
+		}
+	}
+
+	/**
+	 * One kind of lookup.
+	 */
+	private abstract class Lookups<K, V> {
+		private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+		/** null to look up on the calling thread */
+		private final Executor executor;
+		private final boolean refreshAhead;
+
+		Lookups(Executor executor, boolean refreshAhead) {
+			this.executor = executor;
+			this.refreshAhead = refreshAhead;
+		}
+
+		abstract V lookup(K key) throws Exception;
+
+		/**
+		 * Waits for the result of {@link #get(Object)}. If the lookup could not be started in the background, it
+		 * is done on the calling thread (without caching the result).
+		 *
+		 * @throws Exception the exception thrown by the lookup
+		 */
+		V getBlocking(K key) throws Exception {
+			try {
+				return get(key).join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RejectedExecutionException)
+					return lookup(key);
+				if (e.getCause() instanceof Exception)
+					throw (Exception) e.getCause();
+				throw e;
+			}
+		}
+
+		boolean isNegative(K key, V value) {
+			return false;
+		}
+
+		CompletableFuture<V> get(K key) {
+			long now = System.nanoTime();
+			while (true) {
+				Entry<V> entry = entries.get(key);
+				if (entry != null && !entry.isExpired(now)) {
+					if (refreshAhead && entry.isRefreshDue(now) && entry.refreshing.compareAndSet(false, true))
+						refresh(key, entry);
+					return entry.value;
+				}
+				Entry<V> created = new Entry<V>();
+				if (entry == null ? entries.putIfAbsent(key, created) != null : !entries.replace(key, entry, created))
+					continue;
+				if (entries.size() > maxEntries)
+					evict(now);
+				start(key, created);
+				return created.value;
+			}
+		}
+
+		private void start(final K key, final Entry<V> entry) {
+			if (executor == null) {
+				complete(key, entry);
+				return;
+			}
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						complete(key, entry);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// too many lookups pending: do not cache the failure
+				entries.remove(key, entry);
+				entry.value.completeExceptionally(e);
+			}
+		}
+
+		private void complete(K key, Entry<V> entry) {
+			try {
+				V value = lookup(key);
+				setExpiry(entry, isNegative(key, value));
+				entry.value.complete(value);
+			} catch (Exception e) {
+				setExpiry(entry, true);
+				entry.value.completeExceptionally(e);
+			}
+		}
+
+		private void setExpiry(Entry<V> entry, boolean negative) {
+			long now = System.nanoTime();
+			long millis = negative ? negativeTtl : ttl;
+			entry.expires = now + TimeUnit.MILLISECONDS.toNanos(millis);
+			if (!negative)
+				entry.refreshAt = now + TimeUnit.MILLISECONDS.toNanos(millis * 4 / 5);
+		}
+
+		/**
+		 * Looks up the key again in the background, replacing the entry only if the lookup succeeds.
+		 */
+		private void refresh(final K key, final Entry<V> entry) {
+			final Entry<V> refreshed = new Entry<V>();
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						complete(key, refreshed);
+						if (refreshed.value.isCompletedExceptionally())
+							entry.refreshing.set(false);
+						else
+							entries.replace(key, entry, refreshed);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				entry.refreshing.set(false);
+			}
+		}
+
+		/**
+		 * Removes expired entries, and then arbitrary entries, until the map is 10% below its limit.
+		 */
+		private void evict(long now) {
+			int target = maxEntries - maxEntries / 10;
+			for (Iterator<Entry<V>> it = entries.values().iterator(); it.hasNext(); )
+				if (it.next().isExpired(now))
+					it.remove();
+			for (Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator(); it.hasNext() && entries.size() > target; ) {
+				Map.Entry<K, Entry<V>> e = it.next();
+				// entries still being looked up are needed by the threads waiting for them
+				if (e.getValue().value.isDone())
+					it.remove();
+			}
+		}
+
+		Collection<V> getValues() {
+			List<V> values = new ArrayList<V>();
+			for (Entry<V> entry : entries.values())
+				if (entry.value.isDone() && !entry.value.isCompletedExceptionally())
+					values.add(entry.value.join());
+			return values;
+		}
 	}
 
 }
@@ -53,6 +53,14 @@ public class HttpUtil {
 		return GMT_DATE_FORMAT;
 	}
 
+	/**
+	 * @return the maximum length of a line in a HTTP message head, configurable via the system property
+	 *         "membrane.core.http.body.maxlinelength".
+	 */
+	public static int getMaxLineLength() {
+		return MAX_LINE_LENGTH;
+	}
+
 	public static String readLine(InputStream in) throws IOException, EndOfStreamException {
 
 		StringBuilder line = new StringBuilder(128);
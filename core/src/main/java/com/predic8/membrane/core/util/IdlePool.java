@@ -0,0 +1,78 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps idle instances of an object which is expensive to create and may only be used by one thread at a time.
+ *
+ * Idle instances are kept in a lock-free queue. The pool never blocks: When it is empty, {@link #poll()} returns
+ * null and the caller creates a new instance; when {@link #getMaxIdle()} instances are idle already, a released
+ * one is left to the garbage collector.
+ */
+public class IdlePool<T> {
+
+	/**
+	 * 2 idle instances per core.
+	 */
+	public static final int DEFAULT_MAX_IDLE = Runtime.getRuntime().availableProcessors() * 2;
+
+	private final int maxIdle;
+	private final ConcurrentLinkedQueue<T> instances = new ConcurrentLinkedQueue<T>();
+	private final AtomicInteger idle = new AtomicInteger();
+
+	public IdlePool() {
+		this(DEFAULT_MAX_IDLE);
+	}
+
+	public IdlePool(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * @return an idle instance, or null if there is none
+	 */
+	public T poll() {
+		T instance = instances.poll();
+		if (instance != null)
+			idle.decrementAndGet();
+		return instance;
+	}
+
+	/**
+	 * Keeps the instance for reuse. It must not be used by the caller afterwards.
+	 */
+	public void release(T instance) {
+		if (idle.incrementAndGet() > maxIdle) {
+			idle.decrementAndGet();
+			return;
+		}
+		instances.offer(instance);
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	/**
+	 * @return the number of instances currently kept
+	 */
+	public int getIdle() {
+		return idle.get();
+	}
+
+}
@@ -122,4 +122,53 @@ public class SOAPUtil {
 		}
 		return false;
 	}
+
+	/**
+	 * @return the namespace of the first element within the SOAP body (the operation's element, or the fault), or
+	 *         null if the message is not a SOAP message or the body is empty
+	 */
+	public static String getBodyElementNamespace(XMLInputFactory xmlInputFactory, XOPReconstitutor xopr, Message msg) {
+		int depth = 0;
+		try {
+			XMLEventReader parser;
+			synchronized (xmlInputFactory) {
+				parser = xmlInputFactory.createXMLEventReader(xopr.reconstituteIfNecessary(msg));
+			}
+
+			while (parser.hasNext()) {
+				XMLEvent event = parser.nextEvent();
+				if (event.isStartElement()) {
+					QName name = ((StartElement) event).getName();
+					if (depth == 2)
+						return name.getNamespaceURI();
+					if (!Constants.SOAP11_NS.equals(name.getNamespaceURI())
+							&& !Constants.SOAP12_NS.equals(name.getNamespaceURI()))
+						return null;
+					if (depth == 1 && "Header".equals(name.getLocalPart())) {
+						// skip header
+						int stack = 0;
+						while (parser.hasNext()) {
+							event = parser.nextEvent();
+							if (event.isStartElement())
+								stack++;
+							if (event.isEndElement())
+								if (stack == 0)
+									break;
+								else
+									stack--;
+						}
+						continue;
+					}
+					if (!(depth == 0 ? "Envelope" : "Body").equals(name.getLocalPart()))
+						return null;
+					depth++;
+				}
+				if (event.isEndElement())
+					return null;
+			}
+		} catch (Exception e) {
+			log.warn("Ignoring exception: ", e);
+		}
+		return null;
+	}
 }
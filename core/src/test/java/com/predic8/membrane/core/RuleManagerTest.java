@@ -15,11 +15,16 @@ package com.predic8.membrane.core;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import com.predic8.membrane.core.RuleManager.RuleDefinitionSource;
 import com.predic8.membrane.core.rules.ProxyRule;
 import com.predic8.membrane.core.rules.ProxyRuleKey;
 import com.predic8.membrane.core.rules.Rule;
@@ -31,6 +36,8 @@ public class RuleManagerTest {
 
 	RuleManager manager;
 
+	MockRouter router;
+
 	Rule proxy3013;
 
 	Rule forwardBlz;
@@ -40,7 +47,7 @@ public class RuleManagerTest {
 	@Before
 	public void setUp() throws Exception{
 		manager = new RuleManager();
-		MockRouter router = new MockRouter();
+		router = new MockRouter();
 		manager.setRouter(router);
 		proxy3013 = new ProxyRule(new ProxyRuleKey(3013));
 		manager.addProxyAndOpenPortIfNew(proxy3013);
@@ -109,4 +116,48 @@ public class RuleManagerTest {
 		assertEquals(forwardBlz, manager.getRules().get(2));
 	}
 
+	@Test
+	public void testRoutingTableMatchesScan() throws Exception {
+		String[] hosts = { "*", "localhost", "LocalHost", "api.example.com", "*.example.com", "a.com b.com" };
+		String[] methods = { "*", "GET", "POST" };
+		String[] paths = { ".*", "/api/.*", "/api/v1/.*", "/a?pi.*", "/static|/assets.*", "/api", "^/api.*" };
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++) {
+			ServiceProxyKey key = new ServiceProxyKey(hosts[random.nextInt(hosts.length)],
+					methods[random.nextInt(methods.length)], paths[random.nextInt(paths.length)], 3016 + random.nextInt(3));
+			key.setUsePathPattern(random.nextBoolean());
+			key.setPathRegExp(random.nextInt(4) != 0);
+			ServiceProxy sp = new ServiceProxy(key, "localhost", 80);
+			sp.init(router);
+			manager.addProxy(sp, RuleDefinitionSource.MANUAL);
+		}
+
+		String[] requestHosts = { null, "localhost", "LOCALHOST:3016", "api.example.com", "www.example.com:80", "a.com", "other" };
+		String[] uris = { "/", "/api", "/api/v1/x", "/pi", "/static/a", "/assets", "/other" };
+		for (String host : requestHosts)
+			for (String uri : uris)
+				for (String method : new String[] { "GET", "POST" })
+					for (int port = 3013; port <= 3019; port++)
+						assertSame(manager.getMatchingRuleByScan(host, method, uri, "1.1", port, null),
+								manager.getMatchingRule(host, method, uri, "1.1", port, null));
+	}
+
+	@Test
+	public void testRoutingTableFollowsKeyChanges() throws Exception {
+		ServiceProxyKey key = new ServiceProxyKey("example.com", "*", "/a", 3016);
+		key.setUsePathPattern(true);
+		key.setPathRegExp(false);
+		ServiceProxy sp = new ServiceProxy(key, "localhost", 80);
+		sp.init(router);
+		manager.addProxy(sp, RuleDefinitionSource.MANUAL);
+		assertSame(sp, manager.getMatchingRule("Example.com", "GET", "/a/b", "1.1", 3016, null));
+
+		key.setPath("/b");
+		assertNull(manager.getMatchingRule("example.com", "GET", "/a/b", "1.1", 3016, null));
+		assertSame(sp, manager.getMatchingRule("example.com", "GET", "/b", "1.1", 3016, null));
+
+		key.setHost("example.org");
+		assertSame(sp, manager.getMatchingRule("example.org:3016", "GET", "/b", "1.1", 3016, null));
+	}
+
 }
@@ -18,19 +18,30 @@ import com.predic8.membrane.core.config.ProxyTest;
 import com.predic8.membrane.core.config.ReadRulesConfigurationTest;
 import com.predic8.membrane.core.config.ReadRulesWithInterceptorsConfigurationTest;
 import com.predic8.membrane.core.exchangestore.AbortExchangeTest;
+import com.predic8.membrane.core.exchangestore.ElasticSearchExchangeStoreTest;
+import com.predic8.membrane.core.exchangestore.FileExchangeStoreTest;
+import com.predic8.membrane.core.exchangestore.RingBufferExchangeStoreTest;
 import com.predic8.membrane.core.http.BodyTest;
 import com.predic8.membrane.core.http.HeaderTest;
+import com.predic8.membrane.core.http.HeadParserTest;
 import com.predic8.membrane.core.http.RequestTest;
 import com.predic8.membrane.core.http.ResponseTest;
 import com.predic8.membrane.core.interceptor.*;
 import com.predic8.membrane.core.interceptor.acl.AccessControlInterceptorTest;
 import com.predic8.membrane.core.interceptor.acl.AccessControlParserTest;
 import com.predic8.membrane.core.interceptor.balancer.*;
+import com.predic8.membrane.core.interceptor.cache.CacheInterceptorTest;
 import com.predic8.membrane.core.interceptor.cbr.XPathCBRInterceptorTest;
 import com.predic8.membrane.core.interceptor.formvalidation.FormValidationInterceptorTest;
 import com.predic8.membrane.core.interceptor.groovy.GroovyInterceptorTest;
+import com.predic8.membrane.core.lang.ScriptExecutorPoolTest;
 import com.predic8.membrane.core.interceptor.oauth2.OAuth2UnitTests;
+import com.predic8.membrane.core.interceptor.prometheus.ExpositionStreamTest;
 import com.predic8.membrane.core.interceptor.ratelimit.RateLimitInterceptorTest;
+import com.predic8.membrane.core.interceptor.ratelimit.RateLimitStrategyTest;
+import com.predic8.membrane.core.interceptor.apimanagement.AMEnforcementEngineTest;
+import com.predic8.membrane.core.interceptor.apimanagement.AMStatisticsCollectorTest;
+import com.predic8.membrane.core.interceptor.authentication.session.SessionManagerTest;
 import com.predic8.membrane.core.interceptor.rest.HTTP2XMLInterceptorTest;
 import com.predic8.membrane.core.interceptor.rewrite.ReverseProxyingInterceptorTest;
 import com.predic8.membrane.core.interceptor.rewrite.RewriteInterceptorTest;
@@ -38,6 +49,7 @@ import com.predic8.membrane.core.interceptor.schemavalidation.JSONSchemaValidati
 import com.predic8.membrane.core.interceptor.schemavalidation.SOAPMessageValidatorInterceptorTest;
 import com.predic8.membrane.core.interceptor.schemavalidation.SOAPUtilTest;
 import com.predic8.membrane.core.interceptor.schemavalidation.ValidatorInterceptorTest;
+import com.predic8.membrane.core.interceptor.websocket.WebSocketFrameTest;
 import com.predic8.membrane.core.interceptor.soap.SoapOperationExtractorTest;
 import com.predic8.membrane.core.interceptor.xmlcontentfilter.SimpleXPathAnalyzerTest;
 import com.predic8.membrane.core.interceptor.xmlcontentfilter.SimpleXPathParserTest;
@@ -49,9 +61,13 @@ import com.predic8.membrane.core.multipart.ReassembleTest;
 import com.predic8.membrane.core.resolver.SingleResolverTest;
 import com.predic8.membrane.core.rules.ProxyRuleTest;
 import com.predic8.membrane.core.rules.ServiceProxyKeyTest;
+import com.predic8.membrane.core.stats.LatencyHistogramTest;
 import com.predic8.membrane.core.transport.ExchangeTest;
 import com.predic8.membrane.core.transport.http.HostColonPortTest;
+import com.predic8.membrane.core.transport.http.ConnectionManagerTest;
 import com.predic8.membrane.core.transport.http.HttpKeepAliveTest;
+import com.predic8.membrane.core.transport.http.HttpClientAsyncTest;
+import com.predic8.membrane.core.transport.http.NioTransportTest;
 import com.predic8.membrane.core.transport.http.ServiceInvocationTest;
 import com.predic8.membrane.core.transport.ssl.SSLContextTest;
 import com.predic8.membrane.core.util.*;
@@ -63,7 +79,7 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({HeaderTest.class, BodyTest.class, ByteUtilTest.class,
+@SuiteClasses({HeaderTest.class, HeadParserTest.class, BodyTest.class, ByteUtilTest.class, BufferPoolTest.class, IdlePoolTest.class,
         HttpUtilTest.class, RequestTest.class, ResponseTest.class,
         MagicTest.class, WSDLInterceptorTest.class,
         AccessControlParserTest.class, AccessControlInterceptorTest.class,
@@ -75,15 +91,15 @@ import org.junit.runners.Suite.SuiteClasses;
         ProxyRuleTest.class, TextUtilTest.class, RelocatorTest.class,
         XSLTInterceptorTest.class, URLUtilTest.class, ClusterManagerTest.class,
         ClusterNotificationInterceptorTest.class,
-        XMLSessionIdExtractorTest.class, ClusterBalancerTest.class,
+        XMLSessionIdExtractorTest.class, ClusterBalancerTest.class, DispatchingStrategyTest.class,
         LoadBalancingWithClusterManagerAndNoSessionTest.class,
         LoadBalancingWithClusterManagerTest.class,
         MultipleLoadBalancersTest.class, DNSCacheTest.class,
         ValidatorInterceptorTest.class, XPathCBRInterceptorTest.class,
         CustomSpringConfigurationTest.class, JSESSIONIDExtractorTest.class,
-        ThrottleInterceptorTest.class, GroovyInterceptorTest.class,
+        ThrottleInterceptorTest.class, GroovyInterceptorTest.class, ScriptExecutorPoolTest.class,
         FormValidationInterceptorTest.class, ServiceInvocationTest.class,
-        HttpKeepAliveTest.class, ReverseProxyingInterceptorTest.class,
+        HttpKeepAliveTest.class, NioTransportTest.class, HttpClientAsyncTest.class, ConnectionManagerTest.class, ReverseProxyingInterceptorTest.class,
         SSLContextTest.class, RelocatorWADLTest.class,
         WADLInterceptorTest.class, ReassembleTest.class,
         XMLContentFilterTest.class, XMLElementFinderTest.class,
@@ -92,14 +108,17 @@ import org.junit.runners.Suite.SuiteClasses;
         SOAPUtilTest.class, SoapOperationExtractorTest.class,
         ContentTypeDetectorTest.class,
         MessageAnalyserTest.class, ExchangeTest.class,
-        LimitedMemoryExchangeStoreTest.class,
+        LimitedMemoryExchangeStoreTest.class, RingBufferExchangeStoreTest.class, FileExchangeStoreTest.class,
+        ElasticSearchExchangeStoreTest.class,
         IndexInterceptorTest.class,
         SingleResolverTest.class,
         JSONSchemaValidationTest.class,
         SOAPMessageValidatorInterceptorTest.class,
         URITest.class,
         RewriteInterceptorTest.class,
-        AbortExchangeTest.class, RateLimitInterceptorTest.class,
+        AbortExchangeTest.class, RateLimitInterceptorTest.class, RateLimitStrategyTest.class, AMEnforcementEngineTest.class, AMStatisticsCollectorTest.class, CacheInterceptorTest.class,
+        LatencyHistogramTest.class, ExpositionStreamTest.class,
+        WebSocketFrameTest.class, SessionManagerTest.class,
         OAuth2UnitTests.class
 
 })
@@ -0,0 +1,191 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.exchangestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.Interceptor.Flow;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+
+public class ElasticSearchExchangeStoreTest {
+
+	private HttpRouter router;
+	private final List<String> bulks = new ArrayList<String>();
+	private final AtomicInteger failures = new AtomicInteger();
+	/** the number of times documents of "/busy" are answered with status 429 */
+	private final AtomicInteger busy = new AtomicInteger();
+	private ElasticSearchExchangeStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		// stands in for Elasticsearch's bulk API
+		router = new HttpRouter();
+		ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "POST", "/_bulk", 3059), "", -1);
+		sp.getInterceptors().add(new AbstractInterceptor() {
+			@Override
+			public Outcome handleRequest(Exchange exc) throws Exception {
+				String body = exc.getRequest().getBodyAsStringDecoded();
+				if (failures.getAndDecrement() > 0) {
+					exc.setResponse(Response.serverUnavailable("").build());
+					return Outcome.RETURN;
+				}
+				synchronized (bulks) {
+					bulks.add(body);
+				}
+				exc.setResponse(Response.ok(getBulkResponse(body)).build());
+				return Outcome.RETURN;
+			}
+		});
+		router.getRuleManager().addProxyAndOpenPortIfNew(sp);
+		router.init();
+
+		store = new ElasticSearchExchangeStore();
+		store.setLocation("http://localhost:3059");
+		store.setDocumentPrefix("test");
+		store.setUpdateIntervalMs(100);
+		store.setRetryDelayMs(10);
+		store.setMaxBulkDocs(3);
+		store.init();
+	}
+
+	/**
+	 * Rejects the documents of "/reject" and, {@link #busy} times, those of "/busy".
+	 */
+	private String getBulkResponse(String body) {
+		StringBuilder items = new StringBuilder();
+		boolean errors = false;
+		String[] lines = body.split("\n");
+		for (int i = 1; i < lines.length; i += 2) {
+			int status = 201;
+			if (lines[i].contains("/reject"))
+				status = 400;
+			else if (lines[i].contains("/busy") && busy.getAndDecrement() > 0)
+				status = 429;
+			errors |= status != 201;
+			if (items.length() > 0)
+				items.append(',');
+			items.append("{\"index\":{\"status\":").append(status).append("}}");
+		}
+		return "{\"errors\":" + errors + ",\"items\":[" + items + "]}";
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.destroy();
+		router.shutdown();
+	}
+
+	@Test
+	public void testBulk() throws Exception {
+		for (int i = 0; i < 5; i++)
+			store.snap(getExchange(), Flow.REQUEST);
+		waitForShipped(5);
+
+		int lines = 0;
+		synchronized (bulks) {
+			assertTrue(bulks.size() >= 2);
+			for (String bulk : bulks) {
+				String[] l = bulk.split("\n");
+				assertTrue(l.length <= 6);
+				for (int i = 1; i < l.length; i += 2)
+					assertTrue(l[i].endsWith(",\"issuer\":\"test\"}"));
+				lines += l.length;
+			}
+		}
+		assertEquals(10, lines);
+		assertEquals(0, store.getDropped());
+		assertEquals(0, store.getQueueDepth());
+		assertTrue(store.getBulkLatency().getCount() >= 2);
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		failures.set(2);
+		store.snap(getExchange(), Flow.REQUEST);
+		waitForShipped(1);
+
+		assertEquals(0, store.getFailedBulks());
+		synchronized (bulks) {
+			assertEquals(1, bulks.size());
+			assertEquals(2, bulks.get(0).split("\n").length);
+		}
+	}
+
+	@Test
+	public void testItemErrors() throws Exception {
+		busy.set(1);
+		store.snap(getExchange("/ok"), Flow.REQUEST);
+		store.snap(getExchange("/busy"), Flow.REQUEST);
+		store.snap(getExchange("/reject"), Flow.REQUEST);
+		for (int i = 0; i < 1000 && store.getDropped() < 1; i++)
+			Thread.sleep(10);
+		waitForShipped(2);
+
+		// only the document temporarily not indexed is sent again
+		assertEquals(1, store.getDropped());
+		assertEquals(0, store.getFailedBulks());
+		assertEquals(1, countDocuments("/ok"));
+		assertEquals(2, countDocuments("/busy"));
+		assertEquals(1, countDocuments("/reject"));
+	}
+
+	private int countDocuments(String path) {
+		int count = 0;
+		synchronized (bulks) {
+			for (String bulk : bulks) {
+				String[] lines = bulk.split("\n");
+				for (int i = 1; i < lines.length; i += 2)
+					if (lines[i].contains(path))
+						count++;
+			}
+		}
+		return count;
+	}
+
+	private void waitForShipped(int n) throws InterruptedException {
+		for (int i = 0; i < 1000 && store.getShipped() < n; i++)
+			Thread.sleep(10);
+		assertEquals(n, store.getShipped());
+	}
+
+	private Exchange getExchange() throws Exception {
+		return getExchange("/foo");
+	}
+
+	private Exchange getExchange(String path) throws Exception {
+		Exchange exc = new Request.Builder().get("http://localhost" + path).buildExchange();
+		exc.setRule(new ServiceProxy(new ServiceProxyKey("localhost", "*", ".*", 3000), "localhost", 80));
+		exc.setResponse(Response.ok("<a />").build());
+		return exc;
+	}
+
+}
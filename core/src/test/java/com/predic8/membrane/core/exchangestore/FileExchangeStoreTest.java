@@ -0,0 +1,182 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.exchangestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.Interceptor.Flow;
+
+public class FileExchangeStoreTest {
+
+	private File dir;
+	private FileExchangeStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("exchanges").toFile();
+		store = new FileExchangeStore();
+		store.setDir(dir.getAbsolutePath());
+		store.setAsync(true);
+		store.setRaw(true);
+		store.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		store.destroy();
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void testSegment() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Exchange exc = getExchange("/" + i);
+			store.snap(exc, Flow.REQUEST);
+			store.snap(exc, Flow.RESPONSE);
+		}
+		assertTrue(store.flush(10000));
+
+		List<File> segments = find(dir, ".seg");
+		assertEquals(1, segments.size());
+		String segment = FileUtils.readFileToString(segments.get(0), "UTF-8");
+		File index = new File(segments.get(0).getPath().replaceAll("\\.seg$", ".idx"));
+		List<String> lines = FileUtils.readLines(index, "UTF-8");
+		assertEquals(6, lines.size());
+
+		long end = 0;
+		for (int i = 0; i < lines.size(); i++) {
+			String[] fields = lines.get(i).split("\t");
+			assertTrue(fields[0].endsWith(i % 2 == 0 ? "-Request.msg" : "-Response.msg"));
+			int offset = Integer.parseInt(fields[1]);
+			int length = Integer.parseInt(fields[2]);
+			assertEquals(end, offset);
+			String message = segment.substring(offset, offset + length);
+			if (i % 2 == 0)
+				assertTrue(message.startsWith("GET /" + i / 2 + " "));
+			else
+				assertTrue(message.endsWith("<a />"));
+			end = offset + length;
+		}
+		assertEquals(segment.length(), end);
+		assertEquals(0, store.getDropped());
+	}
+
+	@Test
+	public void testDestroyWritesQueuedMessages() throws Exception {
+		for (int i = 0; i < 100; i++)
+			store.snap(getExchange("/" + i), Flow.RESPONSE);
+		store.destroy();
+
+		List<File> indexes = find(dir, ".idx");
+		assertEquals(1, indexes.size());
+		assertEquals(100, FileUtils.readLines(indexes.get(0), "UTF-8").size());
+		assertEquals(0, store.getDropped());
+
+		// messages snapped afterwards are dropped
+		store.snap(getExchange("/100"), Flow.RESPONSE);
+		assertEquals(1, store.getDropped());
+	}
+
+	@Test
+	public void testUnformattableMessageIsDropped() throws Exception {
+		FileExchangeStore store = new FileExchangeStore();
+		store.setDir(dir.getAbsolutePath());
+		store.setAsync(true);
+		try {
+			Exchange exc = getExchange("/0");
+			exc.setResponse(Response.ok().contentType("text/xml; charset=x-unknown").body("<a />").build());
+			store.snap(exc, Flow.RESPONSE);
+			store.snap(getExchange("/1"), Flow.RESPONSE);
+			assertTrue(store.flush(10000));
+
+			assertEquals(1, store.getDropped());
+			assertEquals(1, FileUtils.readLines(find(dir, ".idx").get(0), "UTF-8").size());
+		} finally {
+			store.destroy();
+		}
+	}
+
+	@Test
+	public void testRolling() throws Exception {
+		FileExchangeStore store = new FileExchangeStore();
+		store.setDir(dir.getAbsolutePath());
+		store.setAsync(true);
+		store.setMaxSegmentSize(1);
+		try {
+			for (int i = 0; i < 3; i++) {
+				store.snap(getExchange("/" + i), Flow.RESPONSE);
+				assertTrue(store.flush(10000));
+			}
+			assertEquals(3, find(dir, ".seg").size());
+			assertEquals(3, find(dir, ".idx").size());
+		} finally {
+			store.destroy();
+		}
+	}
+
+	@Test
+	public void testDeleteOldSegments() throws Exception {
+		store.setMaxDays(1);
+		store.snap(getExchange("/0"), Flow.RESPONSE);
+		assertTrue(store.flush(10000));
+
+		Calendar old = Calendar.getInstance();
+		old.add(Calendar.DAY_OF_MONTH, -10);
+		File oldDir = new File(FileExchangeStore.getDirectoryName(dir.getAbsolutePath(), old));
+		assertTrue(oldDir.mkdirs());
+		FileUtils.writeStringToFile(new File(oldDir, "old-1.seg"), "x", "UTF-8");
+
+		store.deleteOldFolders(Calendar.getInstance());
+
+		assertFalse(oldDir.exists());
+		assertEquals(1, find(dir, ".seg").size());
+	}
+
+	private static List<File> find(File dir, String suffix) {
+		List<File> result = new ArrayList<File>();
+		for (File f : FileUtils.listFiles(dir, null, true))
+			if (f.getName().endsWith(suffix))
+				result.add(f);
+		return result;
+	}
+
+	private Exchange getExchange(String uri) throws Exception {
+		Exchange exc = new Exchange(null);
+		Request req = new Request();
+		req.create("GET", uri, "HTTP/1.1", new Header(), null);
+		exc.setRequest(req);
+		exc.setResponse(Response.ok().body("<a />").build());
+		return exc;
+	}
+
+}
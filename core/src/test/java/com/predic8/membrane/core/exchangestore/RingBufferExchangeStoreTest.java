@@ -0,0 +1,141 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.exchangestore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.AbstractExchange;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.Interceptor.Flow;
+
+public class RingBufferExchangeStoreTest {
+
+	private RingBufferExchangeStore store;
+
+	@Before
+	public void setUp() throws Exception {
+		store = new RingBufferExchangeStore();
+		store.setSlotSize(1024);
+		store.setMaxSize(4 * 1024);
+	}
+
+	@Test
+	public void testStore() throws Exception {
+		store.snap(getExchange("/0", "<a />"), Flow.RESPONSE);
+		store.snap(getExchange("/1", "<b />"), Flow.RESPONSE);
+
+		List<AbstractExchange> exchanges = store.getAllExchangesAsList();
+		assertEquals(2, exchanges.size());
+		assertEquals("/0", exchanges.get(0).getRequest().getUri());
+		assertEquals("GET", exchanges.get(0).getRequest().getMethod());
+		assertEquals(200, exchanges.get(1).getResponse().getStatusCode());
+		assertEquals("<b />", exchanges.get(1).getResponse().getBodyAsStringDecoded());
+	}
+
+	@Test
+	public void testRequestIsNotStored() throws Exception {
+		store.snap(getExchange("/0", "<a />"), Flow.REQUEST);
+		assertEquals(0, store.getAllExchangesAsList().size());
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		for (int i = 0; i < 10; i++)
+			store.snap(getExchange("/" + i, "<a />"), Flow.RESPONSE);
+
+		List<AbstractExchange> exchanges = store.getAllExchangesAsList();
+		assertEquals(4, exchanges.size());
+		for (int i = 0; i < 4; i++)
+			assertEquals("/" + (i + 6), exchanges.get(i).getRequest().getUri());
+	}
+
+	@Test
+	public void testTruncation() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 2000; i++)
+			sb.append('x');
+		store.snap(getExchange("/0", sb.toString()), Flow.RESPONSE);
+
+		String body = store.getAllExchangesAsList().get(0).getResponse().getBodyAsStringDecoded();
+		assertTrue(body.length() > 0);
+		assertTrue(body.length() < 1024);
+		assertEquals(0, store.getDropped());
+	}
+
+	@Test
+	public void testGetByIdAndRemove() throws Exception {
+		Exchange exc = getExchange("/0", "<a />");
+		store.snap(exc, Flow.RESPONSE);
+		store.snap(getExchange("/1", "<b />"), Flow.RESPONSE);
+
+		assertEquals("/0", store.getExchangeById((int) exc.getId()).getRequest().getUri());
+
+		store.remove(exc);
+		assertNull(store.getExchangeById((int) exc.getId()));
+		assertEquals(1, store.getAllExchangesAsList().size());
+	}
+
+	@Test
+	public void testConcurrentSnaps() throws Exception {
+		store.setMaxSize(64 * 1024);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 1000; i++)
+							store.snap(getExchange("/" + i, "<a />"), Flow.RESPONSE);
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+
+		// a slot still being written by a slow thread makes the thread wrapping around drop its exchange
+		List<AbstractExchange> exchanges = store.getAllExchangesAsList();
+		assertTrue(exchanges.size() <= 64);
+		assertTrue(exchanges.size() >= 64 - store.getDropped());
+		for (AbstractExchange exc : exchanges)
+			assertEquals("<a />", exc.getResponse().getBodyAsStringDecoded());
+	}
+
+	private Exchange getExchange(String uri, String body) throws Exception {
+		Exchange exc = new Exchange(null);
+		Request req = new Request();
+		req.create("GET", uri, "HTTP/", new Header(), null);
+		exc.setRequest(req);
+		exc.setResponse(Response.ok().body(body).build());
+		return exc;
+	}
+
+}
@@ -0,0 +1,133 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.http;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import com.predic8.membrane.core.Constants;
+import com.predic8.membrane.core.transport.http.EOFWhileReadingLineException;
+import com.predic8.membrane.core.transport.http.NoMoreRequestsException;
+
+public class HeadParserTest {
+
+	private static final String REQUEST = "POST /a/b?c=d HTTP/1.1\r\n" +
+			"Host: localhost:3000\r\n" +
+			"content-length:  5 \r\n" +
+			"X-Custom: a:b\r\n" +
+			"\r\n" +
+			"hello";
+
+	private InputStream stream(String s) {
+		return new BufferedInputStream(new ByteArrayInputStream(s.getBytes(Constants.ISO_8859_1_CHARSET)), 16);
+	}
+
+	private InputStream unmarkableStream(String s) {
+		return new FilterInputStream(new ByteArrayInputStream(s.getBytes(Constants.ISO_8859_1_CHARSET))) {
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	@Test
+	public void testRequest() throws Exception {
+		for (InputStream in : new InputStream[] { stream(REQUEST), unmarkableStream(REQUEST) }) {
+			Request r = new Request();
+			r.read(in, true);
+			assertEquals("POST", r.getMethod());
+			assertEquals("/a/b?c=d", r.getUri());
+			assertEquals("1.1", r.getVersion());
+			assertEquals("localhost:3000", r.getHeader().getHost());
+			assertEquals(5, r.getHeader().getContentLength());
+			assertEquals("a:b", r.getHeader().getFirstValue("x-custom"));
+			assertEquals("hello", r.getBodyAsStringDecoded());
+		}
+	}
+
+	@Test
+	public void testHeaderIsWrittenAsReceived() throws Exception {
+		Request r = new Request();
+		r.read(stream(REQUEST), false);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		r.getHeader().write(out);
+		assertEquals("Host: localhost:3000\r\ncontent-length: 5\r\nX-Custom: a:b\r\n", out.toString(Constants.ISO_8859_1));
+	}
+
+	@Test
+	public void testBareCR() throws Exception {
+		String request = "GET / HTTP/1.1\r\nHost: localhost\r\nX-Custom: a\rInjected: b\r\n\r\n";
+		for (InputStream in : new InputStream[] { stream(request), unmarkableStream(request) }) {
+			Request r = new Request();
+			r.read(in, true);
+			assertEquals("a Injected: b", r.getHeader().getFirstValue("X-Custom"));
+			assertNull(r.getHeader().getFirstValue("Injected"));
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			r.getHeader().write(out);
+			assertEquals(-1, out.toString(Constants.ISO_8859_1).replace("\r\n", "").indexOf('\r'));
+		}
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		InputStream in = stream("GET /1 HTTP/1.1\nHost: a\n\nGET /2 HTTP/1.0\r\nHost: b\r\n\r\n");
+		Request r1 = new Request();
+		r1.read(in, true);
+		Request r2 = new Request();
+		r2.read(in, true);
+		assertEquals("/1", r1.getUri());
+		assertEquals("/2", r2.getUri());
+		assertEquals("1.0", r2.getVersion());
+		assertEquals("b", r2.getHeader().getHost());
+		try {
+			new Request().read(in, true);
+			fail();
+		} catch (NoMoreRequestsException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testUnusualStartLines() throws Exception {
+		Request r = new Request();
+		r.read(stream("GET /a b HTTP/1.1\r\n\r\n"), false);
+		assertEquals("/a b", r.getUri());
+
+		Response res = new Response();
+		res.read(stream("HTTP/1.1 404\r\n\r\n"), false);
+		assertEquals(404, res.getStatusCode());
+		assertNull(res.getStatusMessage());
+
+		res = new Response();
+		res.read(stream("HTTP/1.0 500 Internal Server Error\r\n\r\n"), false);
+		assertEquals(500, res.getStatusCode());
+		assertEquals("Internal Server Error", res.getStatusMessage());
+		assertEquals("1.0", res.getVersion());
+	}
+
+	@Test(expected = EOFWhileReadingLineException.class)
+	public void testEOFInHeader() throws Exception {
+		new Request().read(stream("GET / HTTP/1.1\r\nHost: a\r\nX-"), false);
+	}
+
+}
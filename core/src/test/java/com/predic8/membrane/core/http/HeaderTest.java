@@ -79,4 +79,35 @@ public class HeaderTest {
 		assertEquals("utf-8", header.getCharset());
 	}
 
+	@Test
+	public void testDuplicateFields() throws Exception {
+		Header header = new Header();
+		header.add("X-A", "1");
+		header.add("Via", "a");
+		assertEquals("1", header.getFirstValue("x-a"));
+		header.add("x-a", "2");
+		header.add("X-B", "3");
+		assertEquals(2, header.getNumberOf("X-A"));
+		assertEquals("1,2", header.getNormalizedValue("X-A"));
+		assertEquals(2, header.getValues(new HeaderName("x-A")).size());
+
+		header.setValue("X-A", "4");
+		assertEquals(1, header.getNumberOf("X-A"));
+		assertEquals("X-A: 4\r\nVia: a\r\nX-B: 3\r\n", header.toString());
+
+		header.removeFields("via");
+		assertNull(header.getFirstValue("Via"));
+		header.add("Via", "b");
+		assertEquals("X-A: 4\r\nX-B: 3\r\nVia: b\r\n", header.toString());
+	}
+
+	@Test
+	public void testHeaderNameConstants() throws Exception {
+		Header header = new Header();
+		header.add("content-length", "5");
+		assertEquals("5", header.getFirstValue(HeaderName.CONTENT_LENGTH));
+		assertEquals(5, header.getContentLength());
+		assertEquals(new HeaderName("CONTENT-LENGTH").hashCode(), HeaderName.CONTENT_LENGTH.hashCode());
+	}
+
 }
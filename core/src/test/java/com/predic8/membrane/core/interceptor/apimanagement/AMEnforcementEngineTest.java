@@ -0,0 +1,149 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.apimanagement;
+
+import com.predic8.membrane.core.interceptor.apimanagement.policy.Policy;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AMEnforcementEngineTest {
+
+    private static Policy createPolicy(String name, int requests, long bytes, String... services) {
+        Policy p = new Policy();
+        p.setName(name);
+        p.getRateLimit().setRequests(requests);
+        p.getRateLimit().setInterval(60);
+        p.getQuota().setSize(bytes);
+        p.getQuota().setInterval(60);
+        p.setServiceProxies(new HashSet<>(Arrays.asList(services)));
+        return p;
+    }
+
+    private static Key createKey(String name, Policy... policies) {
+        Key key = new Key();
+        key.setName(name);
+        key.setPolicies(new HashSet<>(Arrays.asList(policies)));
+        return key;
+    }
+
+    @Test
+    public void testRequestsPassWhileOnePolicyHasCapacity() {
+        AMEnforcementEngine engine = new AMEnforcementEngine();
+        Policy small = createPolicy("small", 1, 0, "a");
+        Policy large = createPolicy("large", 2, 0, "a");
+        Policy other = createPolicy("other", 0, 0, "b");
+        Key key = createKey("k", small, large, other);
+
+        for (int i = 0; i < 3; i++)
+            assertNull(engine.acquireRequest(key, "a"));
+        assertNotNull(engine.acquireRequest(key, "a"));
+        assertEquals(0, engine.getRequestCount("k", "other"));
+
+        // no policy covers the service
+        assertNull(engine.acquireRequest(key, "c"));
+    }
+
+    @Test
+    public void testQuota() {
+        AMEnforcementEngine engine = new AMEnforcementEngine();
+        Policy p = createPolicy("p", 0, 100, "a");
+        Key key = createKey("k", p);
+
+        assertNull(engine.addBytes(key, "a", 60));
+        assertNull(engine.addBytes(key, "a", 40));
+        assertSame(p, engine.addBytes(key, "a", 1));
+        assertEquals(101, engine.getByteCount("k", "p"));
+
+        // the usage of the exceeded window still counts in the next one
+        long resetTime = engine.getQuotaResetTime("k", p);
+        assertTrue(resetTime > System.currentTimeMillis() + 60000);
+        assertTrue(resetTime <= System.currentTimeMillis() + 120000);
+    }
+
+    @Test
+    public void testNoBurstAcrossWindowBoundary() {
+        AMEnforcementEngine engine = new AMEnforcementEngine();
+        final long[] now = {0};
+        engine.setClock(() -> now[0]);
+        Policy p = createPolicy("p", 10, 0, "a");
+        Key key = createKey("k", p);
+
+        assertNull(engine.acquireRequest(key, "a"));
+        now[0] = 59000;
+        for (int i = 0; i < 9; i++)
+            assertNull(engine.acquireRequest(key, "a"));
+        assertSame(p, engine.acquireRequest(key, "a"));
+
+        // right after the boundary, the previous window still counts almost completely
+        now[0] = 61000;
+        assertSame(p, engine.acquireRequest(key, "a"));
+        assertEquals(0, engine.getRequestCount("k", "p"));
+        long resetTime = engine.getRequestsResetTime("k", p);
+        assertEquals(66000, resetTime);
+
+        now[0] = resetTime;
+        assertNull(engine.acquireRequest(key, "a"));
+        assertSame(p, engine.acquireRequest(key, "a"));
+    }
+
+    @Test
+    public void testWindowRollsOver() {
+        AtomicReference<AMEnforcementEngine.Window> ref = new AtomicReference<>(new AMEnforcementEngine.Window(0));
+        AMEnforcementEngine.Window w = AMEnforcementEngine.getWindow(ref, 1000, 5000);
+        w.used.incrementAndGet();
+        assertSame(w, AMEnforcementEngine.getWindow(ref, 1000, 5999));
+        AMEnforcementEngine.Window next = AMEnforcementEngine.getWindow(ref, 1000, 6000);
+        assertNotSame(w, next);
+        assertEquals(0, next.used.get());
+        assertEquals(1, next.previous);
+        assertEquals(6000, next.start);
+
+        // a window has passed without requests
+        AMEnforcementEngine.Window later = AMEnforcementEngine.getWindow(ref, 1000, 8500);
+        assertEquals(0, later.previous);
+        assertEquals(8500, later.start);
+    }
+
+    @Test
+    public void testRetain() {
+        AMEnforcementEngine engine = new AMEnforcementEngine();
+        Policy p = createPolicy("p", 10, 0, "a");
+        Policy q = createPolicy("q", 10, 0, "a");
+        engine.acquireRequest(createKey("k1", p), "a");
+        engine.acquireRequest(createKey("k1", p), "a");
+        engine.acquireRequest(createKey("k1", q), "a");
+        engine.acquireRequest(createKey("k2", p), "a");
+
+        Map<String, Key> keys = new HashMap<>();
+        keys.put("k1", createKey("k1", p));
+        Map<String, Policy> policies = new HashMap<>();
+        policies.put("p", p);
+        policies.put("q", q);
+        engine.retain(keys, policies);
+
+        assertEquals(1, engine.getKeyCount());
+        assertEquals(2, engine.getRequestCount("k1", "p"));
+        assertEquals(0, engine.getRequestCount("k1", "q"));
+        assertEquals(0, engine.getRequestCount("k2", "p"));
+    }
+
+}
@@ -13,15 +13,26 @@
 
 package com.predic8.membrane.core.interceptor.apimanagement;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.predic8.membrane.core.HttpRouter;
 import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.PlainBodyTransferrer;
 import com.predic8.membrane.core.http.Request;
 import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
 import com.predic8.membrane.core.interceptor.Outcome;
 import com.predic8.membrane.core.interceptor.apimanagement.statistics.AMStatisticsCollector;
 import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AMStatisticsCollectorTest {
 
@@ -66,5 +77,82 @@ public class AMStatisticsCollectorTest {
 
     }
 
+    @Test
+    public void testShipping() throws Exception {
+        // stands in for the API management backend
+        final List<String> paths = new ArrayList<String>();
+        final List<JsonNode> documents = new ArrayList<JsonNode>();
+        final ObjectMapper mapper = new ObjectMapper();
+        HttpRouter router = new HttpRouter();
+        ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "PUT", "/api/", 3063), "", -1);
+        sp.getInterceptors().add(new AbstractInterceptor() {
+            @Override
+            public Outcome handleRequest(Exchange exc) throws Exception {
+                synchronized (documents) {
+                    paths.add(exc.getRequest().getUri());
+                    documents.add(mapper.readTree(exc.getRequest().getBodyAsStreamDecoded()));
+                }
+                exc.setResponse(Response.ok().build());
+                return Outcome.RETURN;
+            }
+        });
+        router.getRuleManager().addProxyAndOpenPortIfNew(sp);
+        router.init();
+
+        AMStatisticsCollector amSc = new AMStatisticsCollector();
+        amSc.setHost("http://localhost:3063");
+        amSc.setCollectTimeInSeconds(1);
+        amSc.setMaxBatchRecords(2);
+        amSc.setBodyBytes(5);
+        try {
+            for (int i = 0; i < 4; i++)
+                amSc.addExchangeToQueue(getExchange());
+
+            // the response body is captured while it is sent
+            Exchange exc = getExchange();
+            amSc.handleRequest(exc, Outcome.CONTINUE);
+            exc.setResponse(Response.ok("Streamed body").build());
+            exc.getResponse().getBody().write(new PlainBodyTransferrer(new ByteArrayOutputStream()));
+            exc.setCompleted();
+
+            for (int i = 0; i < 500 && amSc.getShipped() < 10; i++)
+                Thread.sleep(10);
+            assertEquals(10, amSc.getShipped());
+            assertEquals(0, amSc.getDropped());
+        } finally {
+            amSc.shutdown();
+            router.shutdown();
+        }
+
+        int statistics = 0, traces = 0;
+        List<String> bodies = new ArrayList<String>();
+        synchronized (documents) {
+            for (int i = 0; i < documents.size(); i++) {
+                JsonNode records = documents.get(i).elements().next();
+                assertTrue(records.size() <= 2);
+                if (paths.get(i).startsWith(AMStatisticsCollector.API_STATISTICS_PATH)) {
+                    statistics += records.size();
+                    assertEquals("junit API", documents.get(i).get("services").get(0).get("service").asText());
+                } else {
+                    traces += records.size();
+                    for (JsonNode record : records)
+                        bodies.add(record.get("Response").get("body").asText());
+                }
+            }
+        }
+        assertEquals(5, statistics);
+        assertEquals(5, traces);
+        assertTrue(bodies.contains("Hello"));
+        assertTrue(bodies.contains("Strea"));
+    }
+
+    private Exchange getExchange() throws Exception {
+        Exchange exc = new Request.Builder().get("http://localhost/foo").buildExchange();
+        exc.setResponse(Response.ok("Hello back").build());
+        exc.setProperty(Exchange.API_KEY, "junit");
+        exc.setRule(new ServiceProxy());
+        exc.getRule().setName("junit API");
+        return exc;
+    }
 
 }
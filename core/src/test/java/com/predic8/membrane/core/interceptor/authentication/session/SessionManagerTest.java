@@ -0,0 +1,157 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.authentication.session;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.interceptor.authentication.session.SessionManager.Session;
+import com.predic8.membrane.core.rules.ServiceProxy;
+
+public class SessionManagerTest {
+
+	@Test
+	public void testGetSession() throws Exception {
+		SessionManager sm = createSessionManager(60000);
+		Exchange exc = getExchange(null);
+		Session s = sm.createSession(exc);
+
+		assertSame(s, sm.getSession(getExchange(getSessionId(exc))));
+		assertNull(sm.getSession(getExchange("unknown")));
+	}
+
+	@Test
+	public void testExpiry() throws Exception {
+		final long[] now = new long[1];
+		SessionManager sm = new SessionManager();
+		sm.setTimeout(200);
+		sm.setClock(() -> now[0]);
+		sm.init(null);
+		Exchange used = getExchange(null);
+		sm.createSession(used);
+		for (int i = 0; i < 10; i++)
+			sm.createSession(getExchange(null));
+		assertEquals(11, sm.getSessionCount());
+
+		for (int i = 0; i < 4; i++) {
+			now[0] += 100;
+			assertNotNull(sm.getSession(getExchange(getSessionId(used))));
+		}
+		// the unused sessions have been dropped by the wheel, without a cleanup
+		assertEquals(1, sm.getSessionCount());
+
+		now[0] += 300;
+		assertNull(sm.getSession(getExchange(getSessionId(used))));
+		assertEquals(0, sm.getSessionCount());
+	}
+
+	@Test
+	public void testMaxSessions() throws Exception {
+		SessionManager sm = createSessionManager(60000);
+		sm.setMaxSessions(100);
+		List<String> ids = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++) {
+			Exchange exc = getExchange(null);
+			sm.createSession(exc);
+			ids.add(getSessionId(exc));
+		}
+		assertTrue(sm.getSessionCount() <= 100);
+		// the most recent session is kept
+		assertNotNull(sm.getSession(getExchange(ids.get(ids.size() - 1))));
+	}
+
+	@Test
+	public void testRemoveSession() throws Exception {
+		SessionManager sm = createSessionManager(60000);
+		Exchange exc = getExchange(null);
+		Session s = sm.createSession(exc);
+		sm.createSession(getExchange(null));
+
+		sm.removeSession(s);
+		assertNull(sm.getSession(getExchange(getSessionId(exc))));
+		assertEquals(1, sm.getSessionCount());
+	}
+
+	@Test
+	public void testFileSessionStore() throws Exception {
+		File file = File.createTempFile("sessions", ".json");
+		try {
+			FileSessionStore store = new FileSessionStore();
+			store.setLocation(file.getAbsolutePath());
+			SessionManager sm = new SessionManager();
+			sm.setStore(store);
+			sm.setTimeout(60000);
+			sm.init(null);
+
+			Exchange exc = getExchange(null);
+			Session s = sm.createSession(exc);
+			Map<String, String> attributes = new HashMap<String, String>();
+			attributes.put("email", "john@predic8.de");
+			attributes.put("password", "secret");
+			s.preAuthorize("john", attributes);
+			s.authorize();
+			sm.cleanup();
+
+			SessionManager restarted = new SessionManager();
+			restarted.setStore(store);
+			restarted.setTimeout(60000);
+			restarted.init(null);
+
+			Session loaded = restarted.getSession(getExchange(getSessionId(exc)));
+			assertNotNull(loaded);
+			assertTrue(loaded.isAuthorized());
+			assertEquals("john", loaded.getUserName());
+			assertEquals("john@predic8.de", loaded.getUserAttributes().get("email"));
+			assertNull(loaded.getUserAttributes().get("password"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private SessionManager createSessionManager(long timeout) {
+		SessionManager sm = new SessionManager();
+		sm.setTimeout(timeout);
+		sm.init(null);
+		return sm;
+	}
+
+	private Exchange getExchange(String sessionId) throws Exception {
+		Request.Builder builder = new Request.Builder().get("/");
+		if (sessionId != null)
+			builder.header("Cookie", "SESSIONID=" + sessionId);
+		Exchange exc = builder.buildExchange();
+		exc.setRule(new ServiceProxy());
+		return exc;
+	}
+
+	private String getSessionId(Exchange exc) {
+		String cookie = (String) exc.getProperty("SESSION_ID");
+		return cookie.substring(0, cookie.indexOf(';'));
+	}
+
+}
@@ -0,0 +1,140 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DispatchingStrategyTest {
+
+	private LoadBalancingInterceptor lb;
+	private Node a, b, c;
+
+	@Before
+	public void setUp() throws Exception {
+		lb = new LoadBalancingInterceptor();
+		Balancer balancer = lb.getClusterManager();
+		balancer.setSessionTimeout(0);
+		balancer.up(Cluster.DEFAULT_NAME, "a", 80);
+		balancer.up(Cluster.DEFAULT_NAME, "b", 80);
+		balancer.up(Cluster.DEFAULT_NAME, "c", 80);
+		a = balancer.getNode(Cluster.DEFAULT_NAME, "a", 80);
+		b = balancer.getNode(Cluster.DEFAULT_NAME, "b", 80);
+		c = balancer.getNode(Cluster.DEFAULT_NAME, "c", 80);
+	}
+
+	private String sequence(DispatchingStrategy strategy, int n) throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++)
+			sb.append(strategy.dispatch(lb).getHost());
+		return sb.toString();
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		RoundRobinStrategy s = new RoundRobinStrategy();
+		assertEquals("abcabc", sequence(s, 6));
+		b.setStatus(Node.Status.DOWN);
+		assertEquals("acac", sequence(s, 4));
+	}
+
+	@Test
+	public void testWeightedRoundRobin() throws Exception {
+		a.setWeight(5);
+		WeightedRoundRobinStrategy s = new WeightedRoundRobinStrategy();
+		assertEquals("aabacaa" + "aabacaa", sequence(s, 14));
+
+		c.setStatus(Node.Status.TAKEOUT);
+		String seq = sequence(s, 12);
+		assertEquals(10, count(seq, 'a'));
+		assertEquals(2, count(seq, 'b'));
+	}
+
+	private int count(String s, char ch) {
+		int n = 0;
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) == ch)
+				n++;
+		return n;
+	}
+
+	@Test
+	public void testLeastConnections() throws Exception {
+		a.addThread();
+		c.addThread();
+		LeastConnectionsStrategy s = new LeastConnectionsStrategy();
+		for (int i = 0; i < 10; i++)
+			assertSame(b, s.dispatch(lb));
+		b.addThread();
+		b.addThread();
+		String seq = sequence(s, 20);
+		assertEquals(-1, seq.indexOf('b'));
+	}
+
+	@Test
+	public void testPowerOfTwoChoices() throws Exception {
+		c.setStatus(Node.Status.DOWN);
+		a.addThread();
+		PowerOfTwoChoicesStrategy s = new PowerOfTwoChoicesStrategy();
+		for (int i = 0; i < 10; i++)
+			assertSame(b, s.dispatch(lb));
+	}
+
+	@Test
+	public void testPeakEwma() throws Exception {
+		c.setStatus(Node.Status.DOWN);
+		a.updateLatency(100 * 1000 * 1000);
+		b.updateLatency(10 * 1000 * 1000);
+		PeakEwmaStrategy s = new PeakEwmaStrategy();
+		for (int i = 0; i < 10; i++)
+			assertSame(b, s.dispatch(lb));
+
+		// a peak replaces the average immediately
+		b.updateLatency(1000 * 1000 * 1000);
+		assertSame(a, s.dispatch(lb));
+	}
+
+	@Test
+	public void testNoNodeUp() throws Exception {
+		a.setStatus(Node.Status.DOWN);
+		b.setStatus(Node.Status.DOWN);
+		c.setStatus(Node.Status.DOWN);
+		for (DispatchingStrategy s : new DispatchingStrategy[] { new RoundRobinStrategy(), new WeightedRoundRobinStrategy(),
+				new LeastConnectionsStrategy(), new PowerOfTwoChoicesStrategy(), new PeakEwmaStrategy() }) {
+			try {
+				s.dispatch(lb);
+				fail();
+			} catch (EmptyNodeListException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testOutstandingRequests() {
+		a.addThread();
+		a.addThread();
+		a.removeThread();
+		assertEquals(1, a.getThreads());
+		a.removeThread();
+		a.removeThread();
+		assertEquals(0, a.getThreads());
+	}
+
+}
@@ -0,0 +1,325 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Body;
+import com.predic8.membrane.core.http.ChunkedBody;
+import com.predic8.membrane.core.http.PlainBodyTransferrer;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.Outcome;
+
+public class CacheInterceptorTest {
+
+	private int backendCalls;
+
+	private CacheInterceptor createCache() {
+		CacheInterceptor cache = new CacheInterceptor();
+		cache.setStore(new InMemoryStore());
+		return cache;
+	}
+
+	private Exchange createExchange(String method, String path, String... headers) {
+		Exchange exc = new Exchange(null);
+		Request request = new Request();
+		request.setMethod(method);
+		request.setUri(path);
+		for (int i = 0; i < headers.length; i += 2)
+			request.getHeader().add(headers[i], headers[i + 1]);
+		exc.setRequest(request);
+		exc.getDestinations().add("http://backend" + path);
+		return exc;
+	}
+
+	/**
+	 * Runs the exchange through the cache. If it is forwarded, the response is created from the given status and
+	 * header fields, with the body "body".
+	 */
+	private Response call(CacheInterceptor cache, Exchange exc, int status, String... headers) throws Exception {
+		if (cache.handleRequest(exc) == Outcome.RETURN)
+			return exc.getResponse();
+		backendCalls++;
+		Response.ResponseBuilder builder = Response.ok().status(status, "Status");
+		for (int i = 0; i < headers.length; i += 2)
+			builder.header(headers[i], headers[i + 1]);
+		if (status != 304)
+			builder.body("body");
+		exc.setResponse(builder.build());
+		cache.handleResponse(exc);
+		return exc.getResponse();
+	}
+
+	@Test
+	public void testFreshHit() throws Exception {
+		CacheInterceptor cache = createCache();
+		call(cache, createExchange("GET", "/a"), 200, "Cache-Control", "max-age=60");
+		Response response = call(cache, createExchange("GET", "/a"), 200, "Cache-Control", "max-age=60");
+		assertEquals(1, backendCalls);
+		assertEquals("body", response.getBodyAsStringDecoded());
+		assertNotNull(response.getHeader().getFirstValue("Age"));
+		assertEquals(1, cache.getHits());
+
+		// HEAD requests are served from the stored GET response
+		response = call(cache, createExchange("HEAD", "/a"), 200);
+		assertEquals(1, backendCalls);
+		assertEquals(200, response.getStatusCode());
+	}
+
+	@Test
+	public void testNotStorable() throws Exception {
+		CacheInterceptor cache = createCache();
+		call(cache, createExchange("GET", "/a"), 200, "Cache-Control", "no-store");
+		call(cache, createExchange("GET", "/a"), 200, "Cache-Control", "private, max-age=60");
+		call(cache, createExchange("GET", "/a"), 500, "Cache-Control", "");
+		call(cache, createExchange("GET", "/a"), 200);
+		assertEquals(4, backendCalls);
+
+		call(cache, createExchange("GET", "/b", "Cache-Control", "no-cache"), 200, "Cache-Control", "max-age=60");
+		call(cache, createExchange("GET", "/b", "Cache-Control", "no-cache"), 200, "Cache-Control", "max-age=60");
+		assertEquals(6, backendCalls);
+	}
+
+	@Test
+	public void testRevalidation() throws Exception {
+		CacheInterceptor cache = createCache();
+		call(cache, createExchange("GET", "/a"), 200, "Cache-Control", "max-age=0", "ETag", "\"v1\"");
+
+		Exchange exc = createExchange("GET", "/a");
+		assertEquals(Outcome.CONTINUE, cache.handleRequest(exc));
+		assertEquals("\"v1\"", exc.getRequest().getHeader().getFirstValue("If-None-Match"));
+		exc.setResponse(Response.ok().status(304, "Not Modified").header("Cache-Control", "max-age=60").build());
+		cache.handleResponse(exc);
+		assertEquals(200, exc.getResponse().getStatusCode());
+		assertEquals("body", exc.getResponse().getBodyAsStringDecoded());
+		assertEquals(1, cache.getRevalidations());
+
+		// now fresh again, and the client's own condition is evaluated
+		Response response = call(cache, createExchange("GET", "/a", "If-None-Match", "W/\"v1\""), 200);
+		assertEquals(1, backendCalls);
+		assertEquals(304, response.getStatusCode());
+	}
+
+	@Test
+	public void testVaryAndInvalidation() throws Exception {
+		CacheInterceptor cache = createCache();
+		call(cache, createExchange("GET", "/a", "Accept-Language", "de"), 200, "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+		call(cache, createExchange("GET", "/a", "Accept-Language", "en"), 200, "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+		call(cache, createExchange("GET", "/a", "Accept-Language", "de"), 200);
+		call(cache, createExchange("GET", "/a", "Accept-Language", "en"), 200);
+		assertEquals(2, backendCalls);
+
+		call(cache, createExchange("POST", "/a"), 200);
+		// the variants are removed together with the vary marker
+		assertEquals(0, cache.getStore().getEntryCount());
+		call(cache, createExchange("GET", "/a", "Accept-Language", "de"), 200, "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+		call(cache, createExchange("GET", "/a", "Accept-Language", "en"), 200, "Cache-Control", "max-age=60", "Vary", "Accept-Language");
+		assertEquals(5, backendCalls);
+	}
+
+	@Test
+	public void testLocationInvalidation() throws Exception {
+		CacheInterceptor cache = createCache();
+		call(cache, createExchange("GET", "/b"), 200, "Cache-Control", "max-age=60");
+		call(cache, createExchange("GET", "/c"), 200, "Cache-Control", "max-age=60");
+		call(cache, createExchange("POST", "/a"), 201, "Location", "/b", "Content-Location", "http://other/c");
+		assertEquals(3, backendCalls);
+
+		call(cache, createExchange("GET", "/b"), 200, "Cache-Control", "max-age=60");
+		assertEquals(4, backendCalls);
+		// a different origin is not invalidated, see RFC 7234 section 4.4
+		call(cache, createExchange("GET", "/c"), 200, "Cache-Control", "max-age=60");
+		assertEquals(4, backendCalls);
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		final CacheInterceptor cache = createCache();
+		Exchange first = createExchange("GET", "/a");
+		assertEquals(Outcome.CONTINUE, cache.handleRequest(first));
+
+		final Response[] second = new Response[1];
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					second[0] = call(cache, createExchange("GET", "/a"), 200);
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		t.start();
+		while (cache.getWaiting() != 1)
+			Thread.sleep(10);
+		first.setResponse(Response.ok().header("Cache-Control", "max-age=60").body("body").build());
+		cache.handleResponse(first);
+		t.join();
+
+		assertEquals(0, backendCalls);
+		assertEquals("body", second[0].getBodyAsStringDecoded());
+		assertEquals(1, cache.getCoalesced());
+	}
+
+	/**
+	 * Runs the exchange through the cache with a response whose body has not been read yet, and forwards the
+	 * body.
+	 */
+	private void callStreamed(CacheInterceptor cache, Exchange exc, Response response) throws Exception {
+		assertEquals(Outcome.CONTINUE, cache.handleRequest(exc));
+		exc.setResponse(response);
+		cache.handleResponse(exc);
+		response.getBody().write(new PlainBodyTransferrer(new ByteArrayOutputStream()));
+		exc.setCompleted();
+	}
+
+	@Test
+	public void testStreamedBody() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "membrane-cache-test-" + System.nanoTime());
+		FileStore store = new FileStore();
+		store.setMemorySize(0);
+		store.setMaxEntrySize(10);
+		store.init(dir.getAbsolutePath());
+		try {
+			CacheInterceptor cache = new CacheInterceptor();
+			cache.setStore(store);
+
+			Response response = Response.ok().header("Cache-Control", "max-age=60").header("Transfer-Encoding", "chunked").build();
+			response.setBody(new ChunkedBody(new ByteArrayInputStream("4\r\nbody\r\n0\r\n\r\n".getBytes())));
+			callStreamed(cache, createExchange("GET", "/a"), response);
+			assertEquals(1, store.getEntryCount());
+			assertEquals(4, cache.getBytesStored());
+			assertEquals("body", call(cache, createExchange("GET", "/a"), 200).getBodyAsStringDecoded());
+			assertEquals(0, backendCalls);
+
+			// too large: rejected by its length, or discarded while it is forwarded
+			response = Response.ok().header("Cache-Control", "max-age=60").header("Content-Length", "20").build();
+			response.setBody(new Body(new ByteArrayInputStream(new byte[20]), 20));
+			callStreamed(cache, createExchange("GET", "/b"), response);
+			response = Response.ok().header("Cache-Control", "max-age=60").header("Transfer-Encoding", "chunked").build();
+			response.setBody(new ChunkedBody(new ByteArrayInputStream("14\r\n01234567890123456789\r\n0\r\n\r\n".getBytes())));
+			callStreamed(cache, createExchange("GET", "/c"), response);
+			assertEquals(1, store.getEntryCount());
+			assertEquals(1, dir.listFiles().length);
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testUnreadableBodyIsMiss() throws Exception {
+		final CacheEntry entry = CacheEntry.create(Response.ok().header("Cache-Control", "max-age=60").build(), 0, System.currentTimeMillis())
+				.withFile(new File("does-not-exist"), 0, 4);
+		final boolean[] removed = new boolean[1];
+		CacheInterceptor cache = new CacheInterceptor();
+		cache.setStore(new CacheInterceptor.Store() {
+			@Override
+			public CacheEntry get(String key) {
+				return removed[0] ? null : entry;
+			}
+
+			@Override
+			public void put(String key, CacheEntry entry) {
+			}
+
+			@Override
+			public void remove(String key) {
+			}
+
+			@Override
+			public void remove(String key, CacheEntry e) {
+				removed[0] = e == entry;
+			}
+		});
+		Response response = call(cache, createExchange("GET", "/a"), 200);
+		assertEquals(1, backendCalls);
+		assertEquals("body", response.getBodyAsStringDecoded());
+		assertEquals(true, removed[0]);
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void testInMemoryStoreIsBounded() throws Exception {
+		InMemoryStore store = new InMemoryStore();
+		store.setMaxSize(100000);
+		store.setMaxEntrySize(2000);
+		CacheEntry entry = CacheEntry.create(Response.ok().build(), new byte[1000], 0, 0);
+
+		// a frequently used entry survives a scan of entries used once
+		for (int i = 0; i < 10; i++) {
+			store.put("hot", entry);
+			store.get("hot");
+		}
+		for (int i = 0; i < 1000; i++)
+			store.put("cold" + i, entry);
+		assertNotNull(store.get("hot"));
+		// once full, entries used once are not admitted
+		assertNull(store.get("cold500"));
+		assertEquals(true, store.getSize() <= 100000);
+		assertEquals(true, store.getEvictions() > 0);
+	}
+
+	@Test
+	public void testFileStore() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "membrane-cache-test-" + System.nanoTime());
+		FileStore store = new FileStore();
+		store.setMemorySize(0);
+		store.init(dir.getAbsolutePath());
+		try {
+			// longer than the 64KB supported by DataOutputStream.writeUTF()
+			char[] large = new char[70000];
+			Arrays.fill(large, 'x');
+			CacheEntry entry = CacheEntry.create(Response.ok().header("ETag", "\"x\"").header("X-Large", new String(large)).build(),
+					"content".getBytes(), 1, 2);
+			store.put("key", entry);
+
+			FileStore reopened = new FileStore();
+			reopened.setMemorySize(0);
+			reopened.init(dir.getAbsolutePath());
+			CacheEntry read = reopened.get("key");
+			assertEquals("\"x\"", read.getETag());
+			assertEquals(70000, read.getHeader().getFirstValue("X-Large").length());
+			assertEquals(7, read.getBodyLength());
+			assertNull(read.getContent());
+
+			CacheInterceptor cache = new CacheInterceptor();
+			cache.setStore(reopened);
+			Exchange exc = createExchange("GET", "/");
+			Response response = cache.toResponse(exc, read, null, null);
+			assertEquals("content", response.getBodyAsStringDecoded());
+
+			reopened.remove("key");
+			assertNull(reopened.get("key"));
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+
+}
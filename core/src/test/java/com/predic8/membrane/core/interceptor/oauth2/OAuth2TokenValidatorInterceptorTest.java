@@ -0,0 +1,181 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.oauth2;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Header;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.interceptor.oauth2.tokengenerators.JwtGenerator;
+import com.predic8.membrane.core.interceptor.oauth2.tokenvalidation.OAuth2TokenValidatorInterceptor;
+import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class OAuth2TokenValidatorInterceptorTest {
+
+    private HttpRouter router;
+    private JwtGenerator jwtGenerator;
+    private final AtomicInteger userinfoCalls = new AtomicInteger();
+    private volatile String validToken = "Bearer good";
+
+    @Before
+    public void setUp() throws Exception {
+        jwtGenerator = new JwtGenerator();
+
+        // stands in for the authorization server
+        router = new HttpRouter();
+        ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "GET", null, 3064), "", -1);
+        sp.getInterceptors().add(new AbstractInterceptor() {
+            @Override
+            public Outcome handleRequest(Exchange exc) throws Exception {
+                if (exc.getRequest().getUri().equals("/certs")) {
+                    exc.setResponse(Response.ok(jwtGenerator.getJwk()).contentType("application/json").build());
+                    return Outcome.RETURN;
+                }
+                userinfoCalls.incrementAndGet();
+                Thread.sleep(200);
+                if (validToken.equals(exc.getRequest().getHeader().getFirstValue(Header.AUTHORIZATION)))
+                    exc.setResponse(Response.ok("{\"sub\":\"john\"}").contentType("application/json").build());
+                else
+                    exc.setResponse(Response.badRequest().build());
+                return Outcome.RETURN;
+            }
+        });
+        router.getRuleManager().addProxyAndOpenPortIfNew(sp);
+        router.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        router.shutdown();
+    }
+
+    @Test
+    public void testCaching() throws Exception {
+        OAuth2TokenValidatorInterceptor validator = createValidator();
+
+        assertEquals(Outcome.CONTINUE, validator.handleRequest(getExchange("Bearer good")));
+        assertEquals(Outcome.CONTINUE, validator.handleRequest(getExchange("Bearer good")));
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange("Bearer bad")));
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange("Bearer bad")));
+        assertEquals(Outcome.RETURN, validator.handleRequest(new Request.Builder().get("/").buildExchange()));
+
+        assertEquals(2, userinfoCalls.get());
+        assertEquals(2, validator.getCachedTokens());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        final OAuth2TokenValidatorInterceptor validator = createValidator();
+
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        try {
+            List<Future<Outcome>> outcomes = new ArrayList<Future<Outcome>>();
+            for (int i = 0; i < 40; i++) {
+                final String token = i % 2 == 0 ? "Bearer good" : "Bearer other";
+                outcomes.add(executor.submit(new Callable<Outcome>() {
+                    @Override
+                    public Outcome call() throws Exception {
+                        return validator.handleRequest(getExchange(token));
+                    }
+                }));
+            }
+            for (int i = 0; i < outcomes.size(); i++)
+                assertEquals(i % 2 == 0 ? Outcome.CONTINUE : Outcome.RETURN, outcomes.get(i).get());
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(2, userinfoCalls.get());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        final long[] now = { System.currentTimeMillis() };
+        OAuth2TokenValidatorInterceptor validator = createValidator();
+        validator.setClock(() -> now[0]);
+        // expires within 30 seconds, before the cache TTL of 60 seconds
+        validToken = "Bearer " + jwtGenerator.getSignedIdToken("iss", "john", "abc", 30);
+
+        assertEquals(Outcome.CONTINUE, validator.handleRequest(getExchange(validToken)));
+        now[0] += 20000;
+        assertEquals(Outcome.CONTINUE, validator.handleRequest(getExchange(validToken)));
+        assertEquals(1, userinfoCalls.get());
+
+        // the token has expired: it is not taken from the cache anymore
+        now[0] += 11000;
+        validator.handleRequest(getExchange(validToken));
+        assertEquals(2, userinfoCalls.get());
+    }
+
+    @Test
+    public void testJwks() throws Exception {
+        OAuth2TokenValidatorInterceptor validator = new OAuth2TokenValidatorInterceptor();
+        validator.setJwksUrl("http://localhost:3064/certs");
+        validator.setIssuer("iss");
+        validator.init(router);
+
+        String token = "Bearer " + jwtGenerator.getSignedIdToken("iss", "john", "abc", 60);
+        assertEquals(Outcome.CONTINUE, validator.handleRequest(getExchange(token)));
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange("Bearer " + jwtGenerator.getSignedIdToken("other", "john", "abc", 60))));
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange("Bearer " + new JwtGenerator().getSignedIdToken("iss", "john", "abc", 60))));
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange("Bearer good")));
+
+        assertEquals(0, userinfoCalls.get());
+        assertEquals(3, validator.getLocalValidations());
+    }
+
+    @Test
+    public void testJwksUnavailable() throws Exception {
+        OAuth2TokenValidatorInterceptor validator = new OAuth2TokenValidatorInterceptor();
+        validator.setJwksUrl("http://localhost:3064/missing");
+        validator.setIssuer("iss");
+        validator.init(router);
+
+        String token = "Bearer " + jwtGenerator.getSignedIdToken("iss", "john", "abc", 60);
+        assertEquals(Outcome.RETURN, validator.handleRequest(getExchange(token)));
+        // the token could not be checked: the rejection is not cached
+        assertEquals(0, validator.getCachedTokens());
+    }
+
+    private OAuth2TokenValidatorInterceptor createValidator() throws Exception {
+        OAuth2TokenValidatorInterceptor validator = new OAuth2TokenValidatorInterceptor();
+        validator.setEndpoint("http://localhost:3064/userinfo");
+        validator.init(router);
+        return validator;
+    }
+
+    private Exchange getExchange(String authorization) throws Exception {
+        return new Request.Builder().get("/").header(Header.AUTHORIZATION, authorization).buildExchange();
+    }
+
+}
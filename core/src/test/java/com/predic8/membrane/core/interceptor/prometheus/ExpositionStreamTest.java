@@ -0,0 +1,78 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.interceptor.prometheus;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class ExpositionStreamTest {
+
+    private static String readAll(ExpositionStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int n;
+        while ((n = in.read(buffer, 0, buffer.length)) != -1)
+            baos.write(buffer, 0, n);
+        return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testFamiliesAreRenderedLazily() throws IOException {
+        final int[] rendered = new int[1];
+        ExpositionStream out = new ExpositionStream();
+        out.addFamily(() -> {
+            rendered[0]++;
+            out.type("a", "counter").append("a{x=\"1\"} ").append(42).append('\n');
+        });
+        out.addFamily(() -> rendered[0]++); // renders nothing
+        out.addFamily(() -> {
+            rendered[0]++;
+            out.type("b", "gauge").append("b ").append(-7).append(' ').append(Long.MIN_VALUE).append('\n');
+        });
+
+        assertEquals(0, rendered[0]);
+        assertEquals('#', out.read());
+        assertEquals(1, rendered[0]);
+        assertEquals(" TYPE a counter\na{x=\"1\"} 42\n# TYPE b gauge\nb -7 -9223372036854775808\n", readAll(out, 3));
+        assertEquals(3, rendered[0]);
+        assertEquals(-1, out.read());
+    }
+
+    @Test
+    public void testLabelValueEscaping() throws IOException {
+        ExpositionStream out = new ExpositionStream();
+        out.addFamily(() -> out.append("m{d=\"").appendLabelValue("a\\b\"c\nd\u00e4\uD83D\uDE00").append("\"} ").append(0));
+        assertEquals("m{d=\"a\\\\b\\\"c\\nd\u00e4\uD83D\uDE00\"} 0", readAll(out, 1024));
+    }
+
+    @Test
+    public void testLargeFamily() throws IOException {
+        ExpositionStream out = new ExpositionStream();
+        out.addFamily(() -> {
+            for (int i = 0; i < 10000; i++)
+                out.append(i).append('\n');
+        });
+        String s = readAll(out, 100);
+        assertEquals(10000, s.split("\n").length);
+        assertEquals("9999", s.split("\n")[9999]);
+    }
+
+}
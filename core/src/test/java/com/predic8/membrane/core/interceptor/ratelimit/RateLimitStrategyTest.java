@@ -0,0 +1,118 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.interceptor.ratelimit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.interceptor.Outcome;
+
+public class RateLimitStrategyTest {
+
+	private static final long MS = 1000000L;
+
+	private static int countAllowed(RateLimitStrategy strategy, String key, int requests) {
+		int allowed = 0;
+		for (int i = 0; i < requests; i++)
+			if (!strategy.isRequestLimitReached(key))
+				allowed++;
+		return allowed;
+	}
+
+	@Test
+	public void testTokenBucket() {
+		final long[] now = new long[1];
+		TokenBucketRateLimit strategy = new TokenBucketRateLimit(Duration.standardSeconds(1), 10);
+		strategy.setClock(() -> now[0]);
+		assertEquals(10, countAllowed(strategy, "a", 20));
+		assertEquals(10, countAllowed(strategy, "b", 20));
+		// refills at 10 tokens per second
+		now[0] += 250 * MS;
+		assertEquals(2, countAllowed(strategy, "a", 10));
+	}
+
+	@Test
+	public void testGcra() {
+		final long[] now = new long[1];
+		GcraRateLimit strategy = new GcraRateLimit(Duration.standardSeconds(1), 10, 3);
+		strategy.setClock(() -> now[0]);
+		assertEquals(3, countAllowed(strategy, "a", 10));
+		now[0] += 150 * MS;
+		assertEquals(1, countAllowed(strategy, "a", 10));
+		// the next request is allowed 50ms later
+		now[0] += 49 * MS;
+		assertTrue(strategy.isRequestLimitReached("a"));
+		now[0] += 1 * MS;
+		assertEquals(1, countAllowed(strategy, "a", 10));
+	}
+
+	@Test
+	public void testSlidingWindow() {
+		final long[] now = new long[1];
+		SlidingWindowRateLimit strategy = new SlidingWindowRateLimit(Duration.millis(500), 10);
+		strategy.setClock(() -> now[0]);
+		assertEquals(10, countAllowed(strategy, "a", 20));
+		// unlike a fixed window, the previous window's requests still count after the boundary
+		now[0] += 550 * MS;
+		assertEquals(1, countAllowed(strategy, "a", 20));
+		now[0] += 1000 * MS;
+		assertEquals(10, countAllowed(strategy, "a", 20));
+	}
+
+	@Test
+	public void testMaxKeys() {
+		GcraRateLimit strategy = new GcraRateLimit(Duration.standardSeconds(10), 10, 2);
+		strategy.setMaxKeys(100);
+		for (int i = 0; i < 1000; i++)
+			strategy.isRequestLimitReached("10.0.0." + i);
+		assertEquals(100, strategy.getKeys().size());
+		assertEquals(900, strategy.getKeys().getOverflowRequests());
+		// tracked keys keep their own state
+		assertFalse(strategy.isRequestLimitReached("10.0.0.1"));
+		assertTrue(strategy.isRequestLimitReached("10.0.0.1"));
+		// all other keys share one, which is exhausted
+		assertTrue(strategy.isRequestLimitReached("10.0.1.1"));
+	}
+
+	@Test
+	public void testHeaderKey() throws Exception {
+		RateLimitInterceptor rli = new RateLimitInterceptor(Duration.standardSeconds(10), 2);
+		rli.setAlgorithm(RateLimitInterceptor.Algorithm.SLIDING_WINDOW);
+		rli.setKeyType(RateLimitInterceptor.KeyType.HEADER);
+		rli.setKeyName("X-Client");
+
+		assertEquals(Outcome.CONTINUE, rli.handleRequest(createExchange("a")));
+		assertEquals(Outcome.CONTINUE, rli.handleRequest(createExchange("a")));
+		Exchange exc = createExchange("a");
+		assertEquals(Outcome.RETURN, rli.handleRequest(exc));
+		assertEquals(429, exc.getResponse().getStatusCode());
+		assertEquals(Outcome.CONTINUE, rli.handleRequest(createExchange("b")));
+	}
+
+	private static Exchange createExchange(String client) {
+		Exchange exc = new Exchange(null);
+		exc.setRequest(new Request());
+		exc.getRequest().getHeader().add("X-Client", client);
+		exc.setRemoteAddrIp("192.168.1.100");
+		return exc;
+	}
+
+}
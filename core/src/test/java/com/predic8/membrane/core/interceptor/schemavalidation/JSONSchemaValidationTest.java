@@ -65,5 +65,20 @@ public class JSONSchemaValidationTest {
 		validate("classpath:/validation/jsonschema/schema2001.json", "/validation/jsonschema/bad2001.json", false);
 	}
 
+	@Test
+	public void runStreaming() throws Exception {
+		Assert.assertTrue(new JSONValidator(new ResolverMap(), "classpath:/validation/jsonschema/schema2002.json", null).isStreaming());
+		Assert.assertFalse(new JSONValidator(new ResolverMap(), "classpath:/validation/jsonschema/schema2000.json", null).isStreaming());
+		validate("classpath:/validation/jsonschema/schema2002.json", "/validation/jsonschema/good2002.json", true);
+	}
+
+	@Test
+	public void runStreaming2() throws Exception {
+		validate("classpath:/validation/jsonschema/schema2002.json", "/validation/jsonschema/bad2002.json", false);
+		// not an array, too few items, not well-formed
+		validate("classpath:/validation/jsonschema/schema2002.json", "/validation/jsonschema/good2000.json", false);
+		validate("classpath:/validation/jsonschema/schema2002.json", "/validation/jsonschema/empty-array.json", false);
+		validate("classpath:/validation/jsonschema/schema2002.json", "/validation/jsonschema/unterminated-array.json", false);
+	}
 
 }
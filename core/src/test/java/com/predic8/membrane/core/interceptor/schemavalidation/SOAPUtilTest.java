@@ -52,6 +52,13 @@ public class SOAPUtilTest {
 		Assert.assertTrue(SOAPUtil.isFault(xmlInputFactory, new XOPReconstitutor(), getMessage("src/test/resources/wsdlValidator/soapFaultCustom.xml")));
 	}
 
+	@Test
+	public void testBodyElementNamespace() throws Exception {
+		Assert.assertEquals("http://predic8.com/wsdl/material/ArticleService/1/",
+				SOAPUtil.getBodyElementNamespace(xmlInputFactory, new XOPReconstitutor(), getMessage("src/test/resources/validation/articleRequest.xml")));
+		Assert.assertNull(SOAPUtil.getBodyElementNamespace(xmlInputFactory, new XOPReconstitutor(), getMessage("src/test/resources/validation/order.xml")));
+	}
+
 	private Message getMessage(String path) throws Exception {
 		return Response.ok().contentType("text/xml").body(new FileInputStream(path), true).build();
 	}
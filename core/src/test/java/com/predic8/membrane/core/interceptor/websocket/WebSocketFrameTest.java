@@ -18,10 +18,17 @@ import com.predic8.membrane.core.transport.ws.WebSocketFrame;
 import com.predic8.membrane.core.transport.ws.WebSocketFrameAssembler;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class WebSocketFrameTest {
@@ -68,4 +75,82 @@ public class WebSocketFrameTest {
         assertEquals(numberOfFrames, counter[0]);
 
     }
+
+    private static byte[] createPayload(int length) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++)
+            payload[i] = (byte) (i * 31 + 7);
+        return payload;
+    }
+
+    private static byte[] copyPayload(WebSocketFrame frame) {
+        byte[] result = new byte[(int) frame.getPayloadLength()];
+        System.arraycopy(frame.getPayload(), 0, result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void testMaskRoundTrip() throws Exception {
+        byte[] maskKey = new byte[] { 1, 2, (byte) 0x83, (byte) 0xF4 };
+        for (int length : new int[] { 0, 1, 7, 8, 9, 125, 126, 1000, 65535, 65536, 70001 }) {
+            byte[] payload = createPayload(length);
+            byte[] bytes = new WebSocketFrame(true, false, false, false, 2, true, maskKey, payload).toBytes();
+
+            int headerLength = bytes.length - length;
+            assertEquals(length < 126 ? 6 : length < 65536 ? 8 : 14, headerLength);
+            for (int i = 0; i < length; i++)
+                assertEquals(payload[i] ^ maskKey[i % 4], bytes[headerLength + i]);
+
+            WebSocketFrame frame = new WebSocketFrame();
+            assertEquals(0, frame.tryRead(bytes, 0, bytes.length - 1));
+            assertEquals(bytes.length, frame.tryRead(bytes, 0, bytes.length));
+            assertEquals(length, frame.getPayloadLength());
+            assertArrayEquals(maskKey, frame.getMaskKey());
+            assertArrayEquals(payload, copyPayload(frame));
+        }
+    }
+
+    @Test
+    public void testSmallFramesInOneRead() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++)
+            new WebSocketFrame(true, false, false, false, 1, true, new byte[] { 9, 8, 7, 6 }, ("message " + i).getBytes()).write(stream, false);
+
+        List<String> messages = new ArrayList<>();
+        AtomicInteger batches = new AtomicInteger();
+        new WebSocketFrameAssembler(new ByteArrayInputStream(stream.toByteArray()), null).readFrames(
+                frame -> messages.add(new String(copyPayload(frame))), batches::incrementAndGet);
+
+        assertEquals(100, messages.size());
+        assertEquals("message 99", messages.get(99));
+        assertEquals(1, batches.get());
+    }
+
+    @Test
+    public void testForwardFrames() throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int length : new int[] { 5, 100000, 0, 126, 3, 20000, 5 })
+            new WebSocketFrame(true, false, false, false, 2, length % 2 == 0, new byte[] { 1, 2, 3, 4 }, createPayload(length)).write(stream, false);
+        byte[] input = stream.toByteArray();
+
+        // deliver the data in small pieces, which split frame headers
+        InputStream in = new ByteArrayInputStream(input) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1001));
+            }
+        };
+        AtomicInteger flushes = new AtomicInteger();
+        ByteArrayOutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+        new WebSocketFrameAssembler(in, null).forwardFrames(out);
+
+        assertArrayEquals(input, out.toByteArray());
+        // flushed once per read, not per frame
+        assertTrue(flushes.get() >= (input.length + 1000) / 1001);
+    }
 }
@@ -13,6 +13,7 @@
    limitations under the License. */
 package com.predic8.membrane.core.interceptor.xslt;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 
 import javax.xml.xpath.XPath;
@@ -72,6 +73,27 @@ public class XSLTInterceptorTest extends TestCase {
 		assertXPath("/person/company", "predic8");
 	}
 
+	@Test
+	public void testStreaming() throws Exception {
+		exc = new Exchange(null);
+		exc.setResponse(Response.ok().body(getClass().getResourceAsStream("/customer.xml"), true).build());
+
+		XSLTInterceptor i = new XSLTInterceptor();
+		i.setXslt("classpath:/customer2person.xsl");
+		i.setStreaming(true);
+		i.init(new HttpRouter());
+		i.handleResponse(exc);
+
+		assertTrue(exc.getResponse().getBody() instanceof XSLTBody);
+		assertTrue(exc.getResponse().getHeader().isChunked());
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		exc.getResponse().write(baos);
+		String written = baos.toString("UTF-8");
+		assertTrue(written.contains("Transfer-Encoding: chunked"));
+		assertTrue(written.contains("<city>Omaha</city>"));
+	}
+
 	@SuppressWarnings("unused")
 	private void printBodyContent() throws Exception {
 		InputStream i = exc.getResponse().getBodyAsStream();
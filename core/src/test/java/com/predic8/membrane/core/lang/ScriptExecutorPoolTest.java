@@ -0,0 +1,78 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.lang;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.lang.groovy.GroovyLanguageSupport;
+
+public class ScriptExecutorPoolTest {
+
+	@Test
+	public void testConcurrentInvocations() throws Exception {
+		HttpRouter router = new HttpRouter();
+		try {
+			final Function<Map<String, Object>, Object> script = new GroovyLanguageSupport().compileScript(router, "x * 2");
+			int threads = 4 * Runtime.getRuntime().availableProcessors();
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Object>> results = new ArrayList<Future<Object>>();
+				for (int i = 0; i < 100 * threads; i++) {
+					final int x = i;
+					results.add(executor.submit(() -> {
+						Map<String, Object> parameters = new HashMap<String, Object>();
+						parameters.put("x", x);
+						return script.apply(parameters);
+					}));
+				}
+				for (int i = 0; i < results.size(); i++)
+					assertEquals(2 * i, results.get(i).get());
+			} finally {
+				executor.shutdown();
+			}
+			assertEquals(100 * threads, ((ScriptExecutorPool<?, ?>) script).getLatency().getCount());
+		} finally {
+			router.shutdown();
+		}
+	}
+
+	@Test
+	public void testExpression() throws Exception {
+		HttpRouter router = new HttpRouter();
+		try {
+			Map<String, Object> parameters = new HashMap<String, Object>();
+			parameters.put("x", 3);
+			GroovyLanguageSupport ls = new GroovyLanguageSupport();
+			assertEquals(true, ls.compileExpression(router, "x == 3").apply(parameters));
+			assertEquals(false, ls.compileExpression(router, "x").apply(parameters));
+		} finally {
+			router.shutdown();
+		}
+	}
+
+}
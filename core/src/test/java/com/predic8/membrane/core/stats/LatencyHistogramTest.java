@@ -0,0 +1,112 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testBuckets() {
+		for (long v = 0; v < 100000; v++) {
+			int bucket = LatencyHistogram.getBucket(v);
+			assertTrue(LatencyHistogram.getLowerBound(bucket) <= v);
+			assertTrue(LatencyHistogram.getUpperBound(bucket) >= v);
+			assertTrue(LatencyHistogram.getUpperBound(bucket) - v <= v / 16);
+		}
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.getBucket(Long.MAX_VALUE));
+		assertEquals(0, LatencyHistogram.getBucket(-1));
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.getValueAtPercentile(50));
+		for (int i = 1; i <= 1000; i++)
+			h.record(i);
+		assertEquals(1000, h.getCount());
+		assertEquals(500500, h.getSum());
+		assertInRange(500, h.getValueAtPercentile(50));
+		assertInRange(990, h.getValueAtPercentile(99));
+		assertInRange(1000, h.getValueAtPercentile(100));
+		assertEquals(1, h.getValueAtPercentile(0));
+	}
+
+	private void assertInRange(long expected, long actual) {
+		assertTrue(actual + " should be about " + expected, actual >= expected && actual <= expected + expected / 16);
+	}
+
+	@Test
+	public void testMerge() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		for (int i = 0; i < 100; i++) {
+			a.record(10);
+			b.record(1000);
+		}
+		a.add(b);
+		assertEquals(200, a.getCount());
+		assertEquals(10, a.getValueAtPercentile(50));
+		assertInRange(1000, a.getValueAtPercentile(51));
+		assertEquals(100, b.getCount());
+	}
+
+	@Test
+	public void testAddCounts() {
+		LatencyHistogram h = new LatencyHistogram();
+		h.record(1);
+		h.record(5);
+		h.record(6);
+		h.record(100);
+		h.record(100000);
+		long[] counts = new long[4];
+		long[] bounds = { 5, 10, 100 };
+		h.addCounts(bounds, counts);
+		h.addCounts(bounds, counts);
+		assertEquals(4, counts[0]);
+		assertEquals(2, counts[1]);
+		assertEquals(2, counts[2]);
+		assertEquals(2, counts[3]);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final LatencyHistogram h = new LatencyHistogram();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 10000; i++)
+						h.record(i % 100);
+				}
+			};
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertEquals(80000, h.getCount());
+		assertEquals(8 * 100 * 4950, h.getSum());
+	}
+
+}
@@ -0,0 +1,156 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConnectionManagerTest {
+
+	private ServerSocket server;
+	private final List<Socket> accepted = new ArrayList<Socket>();
+	private Thread acceptor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new ServerSocket(3032);
+		acceptor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						Socket s = server.accept();
+						synchronized (accepted) {
+							accepted.add(s);
+						}
+					}
+				} catch (Exception e) {
+					// server closed
+				}
+			}
+		};
+		acceptor.start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.close();
+		acceptor.join();
+		synchronized (accepted) {
+			for (Socket s : accepted)
+				s.close();
+		}
+	}
+
+	@Test
+	public void testReuse() throws Exception {
+		ConnectionManager cm = new ConnectionManager(10000);
+		Connection c1 = cm.getConnection("localhost", 3032, null, null, 1000);
+		c1.release();
+		Connection c2 = cm.getConnection("localhost", 3032, null, null, 1000);
+		assertSame(c1, c2);
+		c2.close();
+
+		ConnectionManager.Destination d = cm.getDestinations().values().iterator().next();
+		assertEquals(1, d.getHits());
+		assertEquals(1, d.getMisses());
+		assertEquals(1, d.getOpened());
+		assertEquals(0, d.getTotal());
+		assertEquals(0, cm.getNumberInPool());
+	}
+
+	@Test
+	public void testMaxIdle() throws Exception {
+		ConnectionManager cm = new ConnectionManager(10000, 1, 0);
+		Connection c1 = cm.getConnection("localhost", 3032, null, null, 1000);
+		Connection c2 = cm.getConnection("localhost", 3032, null, null, 1000);
+		c1.release();
+		c2.release();
+		assertTrue(c2.isClosed());
+
+		ConnectionManager.Destination d = cm.getDestinations().values().iterator().next();
+		assertEquals(1, d.getIdle());
+		assertEquals(1, d.getTotal());
+		assertEquals(1, d.getEvictions());
+	}
+
+	@Test
+	public void testExpiredOnRelease() throws Exception {
+		// a keep-alive timeout below the slippage lets connections expire immediately
+		ConnectionManager cm = new ConnectionManager(300);
+		Connection c1 = cm.getConnection("localhost", 3032, null, null, 1000);
+		c1.release();
+		assertTrue(c1.isClosed());
+
+		ConnectionManager.Destination d = cm.getDestinations().values().iterator().next();
+		assertEquals(0, d.getIdle());
+		assertEquals(1, d.getEvictions());
+		assertEquals(0, cm.getNumberInPool());
+	}
+
+	@Test
+	public void testUnusedDestinationsAreForgotten() throws Exception {
+		ConnectionManager cm = new ConnectionManager(100);
+		cm.getConnection("localhost", 3032, null, null, 1000).close();
+		assertEquals(1, cm.getDestinations().size());
+		for (int i = 0; i < 500 && !cm.getDestinations().isEmpty(); i++)
+			Thread.sleep(10);
+		assertEquals(0, cm.getDestinations().size());
+	}
+
+	@Test
+	public void testMaxTotal() throws Exception {
+		ConnectionManager cm = new ConnectionManager(10000, 0, 1);
+		final Connection c1 = cm.getConnection("localhost", 3032, null, null, 1000);
+		try {
+			cm.getConnection("localhost", 3032, null, null, 200);
+			fail("limit not enforced");
+		} catch (SocketTimeoutException e) {
+			// expected
+		}
+
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+					c1.release();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}.start();
+		Connection c2 = cm.getConnection("localhost", 3032, null, null, 5000);
+		assertSame(c1, c2);
+
+		ConnectionManager.Destination d = cm.getDestinations().values().iterator().next();
+		assertEquals(1, d.getOpened());
+		assertTrue(d.getWaitTimeMs() >= 200);
+		c2.close();
+	}
+
+}
@@ -0,0 +1,130 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.core.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+import com.predic8.membrane.core.transport.http.client.HttpClientConfiguration;
+
+public class HttpClientAsyncTest {
+
+	private HttpRouter router;
+	private HttpClient client;
+	private final CountDownLatch slow = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws Exception {
+		router = new HttpRouter();
+		ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3061), "", -1);
+		sp.getInterceptors().add(new AbstractInterceptor() {
+			@Override
+			public Outcome handleRequest(Exchange exc) throws Exception {
+				if (exc.getRequest().getUri().equals("/slow"))
+					slow.await(10, TimeUnit.SECONDS);
+				exc.setResponse(Response.ok("OK" + exc.getRequest().getUri()).build());
+				return Outcome.RETURN;
+			}
+		});
+		router.getRuleManager().addProxyAndOpenPortIfNew(sp);
+		router.init();
+
+		HttpClientConfiguration configuration = new HttpClientConfiguration();
+		configuration.setMaxRetries(3);
+		client = new HttpClient(configuration);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		slow.countDown();
+		router.shutdown();
+	}
+
+	@Test
+	public void testCall() throws Exception {
+		CompletableFuture<Exchange> future = client.callAsync(new Request.Builder().get("http://localhost:3061/a").buildExchange());
+		Response response = future.get(10, TimeUnit.SECONDS).getResponse();
+		assertEquals(200, response.getStatusCode());
+		assertEquals("OK/a", response.getBodyAsStringDecoded());
+	}
+
+	@Test
+	public void testFailOver() throws Exception {
+		Exchange exc = new Request.Builder().get("http://localhost:3062/b").buildExchange();
+		exc.getDestinations().add("http://localhost:3061/b");
+		Response response = client.callAsync(exc).get(10, TimeUnit.SECONDS).getResponse();
+		assertEquals("OK/b", response.getBodyAsStringDecoded());
+		assertEquals("http://localhost:3061/b", exc.getDestinations().get(0));
+	}
+
+	@Test
+	public void testRetriesExhausted() throws Exception {
+		long start = System.currentTimeMillis();
+		CompletableFuture<Exchange> future = client.callAsync(new Request.Builder().get("http://localhost:3062/").buildExchange());
+		try {
+			future.get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof ConnectException);
+		}
+		// two delays between three attempts
+		assertTrue(System.currentTimeMillis() - start >= 500);
+	}
+
+	@Test
+	public void testMaxAsyncCalls() throws Exception {
+		HttpClientConfiguration configuration = new HttpClientConfiguration();
+		configuration.setMaxAsyncCalls(1);
+		HttpClient limited = new HttpClient(configuration);
+
+		CompletableFuture<Exchange> pending = limited.callAsync(new Request.Builder().get("http://localhost:3061/slow").buildExchange());
+		try {
+			limited.callAsync(new Request.Builder().get("http://localhost:3061/a").buildExchange()).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		// the limit is per client
+		assertEquals("OK/a", client.callAsync(new Request.Builder().get("http://localhost:3061/a").buildExchange())
+				.get(10, TimeUnit.SECONDS).getResponse().getBodyAsStringDecoded());
+
+		slow.countDown();
+		assertEquals("OK/slow", pending.get(10, TimeUnit.SECONDS).getResponse().getBodyAsStringDecoded());
+		assertEquals("OK/a", limited.callAsync(new Request.Builder().get("http://localhost:3061/a").buildExchange())
+				.get(10, TimeUnit.SECONDS).getResponse().getBodyAsStringDecoded());
+	}
+
+}
@@ -0,0 +1,196 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.transport.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+
+public class NioTransportTest {
+
+	private final HashSet<Integer> connections = new HashSet<Integer>();
+	private final HashSet<String> threads = new HashSet<String>();
+	private HttpRouter router;
+
+	@Before
+	public void setUp() throws Exception {
+		router = new HttpRouter();
+		router.getTransport().setMode(HttpTransport.Mode.NIO);
+		router.getTransport().setSelectorThreads(2);
+		ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3031), "", -1);
+		sp.getInterceptors().add(new AbstractInterceptor() {
+			@Override
+			public Outcome handleRequest(Exchange exc) throws Exception {
+				exc.getRequest().readBody();
+				exc.setResponse(Response.ok("OK" + exc.getRequest().getUri()).build());
+				synchronized (connections) {
+					connections.add(((HttpServerHandler) exc.getHandler()).getSrcOut().hashCode());
+				}
+				return Outcome.RETURN;
+			}
+		});
+		router.getRuleManager().addProxyAndOpenPortIfNew(sp);
+		router.getRuleManager().addProxyAndOpenPortIfNew(new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3035), "localhost", 3036));
+		router.init();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		router.shutdown();
+	}
+
+	private Exchange createExchange(String path) throws Exception {
+		return new Request.Builder().post("http://localhost:3031" + path).body("hello").buildExchange();
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		HttpClient client = new HttpClient();
+		for (int i = 0; i < 5; i++) {
+			Response response = client.call(createExchange("/" + i)).getResponse();
+			assertEquals(200, response.getStatusCode());
+			assertEquals("OK/" + i, response.getBodyAsStringDecoded());
+			Thread.sleep(50); // let the connection go idle
+		}
+		assertEquals(1, connections.size());
+	}
+
+	@Test
+	public void testPipelining() throws Exception {
+		Socket s = new Socket("localhost", 3031);
+		try {
+			OutputStream out = s.getOutputStream();
+			out.write(("GET /a HTTP/1.1\r\nHost: localhost\r\n\r\n" +
+					"GET /b HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes());
+			out.flush();
+
+			InputStream in = new BufferedInputStream(s.getInputStream());
+			Response a = new Response();
+			a.read(in, true);
+			Response b = new Response();
+			b.read(in, true);
+			assertEquals("OK/a", a.getBodyAsStringDecoded());
+			assertEquals("OK/b", b.getBodyAsStringDecoded());
+		} finally {
+			s.close();
+		}
+	}
+
+	@Test
+	public void testHeadSplitAcrossPackets() throws Exception {
+		Socket s = new Socket("localhost", 3031);
+		try {
+			s.setTcpNoDelay(true);
+			OutputStream out = s.getOutputStream();
+			out.write("GET /split HTTP/1.1\r\nHo".getBytes());
+			out.flush();
+			Thread.sleep(100);
+			out.write("st: localhost\r\n\r".getBytes());
+			out.flush();
+			Thread.sleep(100);
+			out.write("\n".getBytes());
+			out.flush();
+
+			Response r = new Response();
+			r.read(new BufferedInputStream(s.getInputStream()), true);
+			assertEquals("OK/split", r.getBodyAsStringDecoded());
+		} finally {
+			s.close();
+		}
+	}
+
+	@Test
+	public void testIdleConnectionsDoNotHoldThreads() throws Exception {
+		Socket[] sockets = new Socket[50];
+		try {
+			for (int i = 0; i < sockets.length; i++)
+				sockets[i] = new Socket("localhost", 3031);
+			Thread.sleep(200);
+			for (Thread t : Thread.getAllStackTraces().keySet())
+				if (t.getName().startsWith(HttpServerThreadFactory.DEFAULT_THREAD_NAME + " "))
+					threads.add(t.getName());
+			assertTrue(threads.size() < sockets.length);
+		} finally {
+			for (Socket s : sockets)
+				if (s != null)
+					s.close();
+		}
+	}
+
+	@Test
+	public void testUpstreamCallsDoNotHoldThreads() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger waiting = new AtomicInteger();
+		HttpRouter backend = new HttpRouter();
+		ServiceProxy sp = new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3036), "", -1);
+		sp.getInterceptors().add(new AbstractInterceptor() {
+			@Override
+			public Outcome handleRequest(Exchange exc) throws Exception {
+				waiting.incrementAndGet();
+				release.await(10, TimeUnit.SECONDS);
+				exc.setResponse(Response.ok("OK" + exc.getRequest().getUri()).build());
+				return Outcome.RETURN;
+			}
+		});
+		backend.getRuleManager().addProxyAndOpenPortIfNew(sp);
+		backend.init();
+		try {
+			HttpClient client = new HttpClient();
+			List<CompletableFuture<Exchange>> calls = new ArrayList<CompletableFuture<Exchange>>();
+			for (int i = 0; i < 10; i++)
+				calls.add(client.callAsync(new Request.Builder().get("http://localhost:3035/" + i).buildExchange()));
+
+			ThreadPoolExecutor executor = (ThreadPoolExecutor) router.getTransport().getExecutorService();
+			for (int i = 0; i < 500 && (waiting.get() < calls.size() || executor.getActiveCount() > 0); i++)
+				Thread.sleep(10);
+			// every exchange is waiting for the backend, but none of them holds a thread of the proxy
+			assertEquals(calls.size(), waiting.get());
+			assertEquals(0, executor.getActiveCount());
+
+			release.countDown();
+			for (int i = 0; i < calls.size(); i++)
+				assertEquals("OK/" + i, calls.get(i).get(10, TimeUnit.SECONDS).getResponse().getBodyAsStringDecoded());
+		} finally {
+			release.countDown();
+			backend.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.predic8.membrane.core.transport.http.PooledBufferedInputStream;
+import com.predic8.membrane.core.transport.http.PooledBufferedOutputStream;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testReuse() {
+		BufferPool pool = new BufferPool(16, 1);
+		byte[] b1 = pool.acquire();
+		pool.release(b1);
+		byte[] b2 = pool.acquire();
+		assertSame(b1, b2);
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getMisses());
+	}
+
+	@Test
+	public void testBounded() {
+		BufferPool pool = new BufferPool(16, 1);
+		byte[][] buffers = new byte[pool.getCapacity() + 1][];
+		for (int i = 0; i < buffers.length; i++)
+			buffers[i] = pool.acquire();
+		for (byte[] b : buffers)
+			pool.release(b);
+		assertEquals(pool.getCapacity(), pool.getPooled());
+		assertEquals(1, pool.getDiscarded());
+
+		pool.release(new byte[17]);
+		assertEquals(1, pool.getDiscarded());
+	}
+
+	@Test
+	public void testStreams() throws Exception {
+		BufferPool pool = new BufferPool(4, 1);
+		byte[] data = "0123456789".getBytes();
+
+		PooledBufferedInputStream in = new PooledBufferedInputStream(new ByteArrayInputStream(data), pool);
+		assertEquals('0', in.read());
+		in.mark(100);
+		byte[] b = new byte[8];
+		assertEquals(8, in.read(b));
+		in.reset();
+		assertEquals('1', in.read());
+		in.release();
+		// the mark made the buffer grow: the pooled buffer was returned then, the grown one is not pooled
+		assertEquals(1, pool.getPooled());
+
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PooledBufferedOutputStream out = new PooledBufferedOutputStream(baos, pool);
+		out.write(data, 0, 3);
+		assertEquals(0, baos.size());
+		out.write(data, 3, 7);
+		out.flush();
+		assertEquals("0123456789", baos.toString());
+		assertEquals(0, pool.getPooled());
+		out.release();
+		assertEquals(1, pool.getPooled());
+	}
+
+}
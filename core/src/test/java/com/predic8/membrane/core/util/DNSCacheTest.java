@@ -16,10 +16,15 @@ package com.predic8.membrane.core.util;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -53,4 +58,55 @@ public class DNSCacheTest {
 		assertTrue(cache.getCachedHostAddresses().contains(host));
 	}
 
+	@Test
+	public void testGetHostNameAsync() throws Exception {
+		assertEquals("localhost", cache.getHostNameAsync(address).get(10, TimeUnit.SECONDS));
+		assertTrue(cache.getHostNameAsync(address).isDone());
+	}
+
+	@Test
+	public void testResolve() throws Exception {
+		assertEquals(address, cache.resolve("localhost"));
+		assertSame(cache.resolve("localhost"), cache.resolve("localhost"));
+	}
+
+	@Test
+	public void testNegativeResolve() throws Exception {
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.resolve("nonexistent.invalid");
+				fail();
+			} catch (UnknownHostException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void testRejectedLookup() throws Exception {
+		DNSCache cache = new DNSCache(r -> {
+			throw new RejectedExecutionException();
+		});
+		// the blocking methods look up on the calling thread
+		assertEquals("localhost", cache.getHostName(address));
+		assertEquals(address, cache.resolve("localhost"));
+		try {
+			cache.resolve("nonexistent.invalid");
+			fail();
+		} catch (UnknownHostException e) {
+			// expected
+		}
+		CompletableFuture<String> hostName = cache.getHostNameAsync(address);
+		assertTrue(hostName.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		cache.setMaxEntries(10);
+		for (int i = 1; i <= 50; i++)
+			cache.getHostAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, (byte) i }));
+		assertTrue(cache.getCachedHostAddresses().size() <= 10);
+		assertEquals("127.0.0.50", cache.getHostAddress(InetAddress.getByAddress(new byte[] { 127, 0, 0, 50 })));
+	}
+
 }
@@ -0,0 +1,48 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class IdlePoolTest {
+
+	@Test
+	public void testReuse() {
+		IdlePool<Object> pool = new IdlePool<Object>(2);
+		assertNull(pool.poll());
+		Object o = new Object();
+		pool.release(o);
+		assertEquals(1, pool.getIdle());
+		assertSame(o, pool.poll());
+		assertEquals(0, pool.getIdle());
+		assertNull(pool.poll());
+	}
+
+	@Test
+	public void testBounded() {
+		IdlePool<Object> pool = new IdlePool<Object>(2);
+		for (int i = 0; i < 3; i++)
+			pool.release(new Object());
+		assertEquals(2, pool.getIdle());
+		pool.poll();
+		pool.poll();
+		assertNull(pool.poll());
+	}
+
+}
@@ -0,0 +1,175 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.evaluation;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.interceptor.schemavalidation.IValidator;
+import com.predic8.membrane.core.interceptor.schemavalidation.JSONValidator;
+import com.predic8.membrane.core.interceptor.schemavalidation.XMLSchemaValidator;
+import com.predic8.membrane.core.resolver.ResolverMap;
+
+/**
+ * Measures schema validation of large messages (about 4 MB): Latency and bytes allocated per message on one
+ * thread, and throughput using 2 threads per core sharing one validator.
+ *
+ * For JSON, streaming validation of an array (see {@link JSONValidator}) is compared with tree validation of the
+ * same document, which is forced by adding the keyword "uniqueItems" to the schema.
+ */
+public class SchemaValidationPerformance {
+
+	private static final int WARMUP = 10;
+	private static final int ITERATIONS = 50;
+	private static final int SIZE = 4 * 1024 * 1024;
+
+	private static final String XSD = "<xsd:schema xmlns:xsd=\"http://www.w3.org/2001/XMLSchema\" targetNamespace=\"urn:order\" elementFormDefault=\"qualified\">\n" +
+			"  <xsd:element name=\"order\"><xsd:complexType><xsd:sequence>\n" +
+			"    <xsd:element name=\"item\" maxOccurs=\"unbounded\"><xsd:complexType><xsd:sequence>\n" +
+			"      <xsd:element name=\"name\" type=\"xsd:string\"/>\n" +
+			"      <xsd:element name=\"price\" type=\"xsd:decimal\"/>\n" +
+			"    </xsd:sequence><xsd:attribute name=\"id\" type=\"xsd:int\" use=\"required\"/></xsd:complexType></xsd:element>\n" +
+			"  </xsd:sequence></xsd:complexType></xsd:element>\n" +
+			"</xsd:schema>";
+
+	private static final String JSON_SCHEMA = "{ \"type\": \"array\", %s\"items\": { \"type\": \"object\", \"required\": [ \"id\", \"price\" ], " +
+			"\"properties\": { \"id\": { \"type\": \"integer\" }, \"name\": { \"type\": \"string\" }, \"price\": { \"type\": \"number\", \"minimum\": 0 } } } }";
+
+	private static List<File> files = new ArrayList<File>();
+	private static byte[] xml;
+	private static byte[] json;
+
+	@BeforeClass
+	public static void init() throws Exception {
+		StringBuilder sb = new StringBuilder("<order xmlns=\"urn:order\">");
+		for (int i = 0; sb.length() < SIZE; i++)
+			sb.append("<item id=\"").append(i).append("\"><name>Article ").append(i).append("</name><price>")
+					.append(i % 100).append(".99</price></item>");
+		xml = sb.append("</order>").toString().getBytes(StandardCharsets.UTF_8);
+
+		sb = new StringBuilder("[");
+		for (int i = 0; sb.length() < SIZE; i++)
+			sb.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"Article ").append(i)
+					.append("\",\"price\":").append(i % 100).append(".99}");
+		json = sb.append("]").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@AfterClass
+	public static void done() {
+		for (File f : files)
+			f.delete();
+	}
+
+	private static String write(String content, String suffix) throws Exception {
+		File f = File.createTempFile("membrane", suffix);
+		Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		files.add(f);
+		return f.getAbsolutePath();
+	}
+
+	@Test
+	public void xmlSchema() throws Exception {
+		measure("XML Schema", new XMLSchemaValidator(new ResolverMap(), write(XSD, ".xsd"), null), xml);
+	}
+
+	@Test
+	public void jsonStreaming() throws Exception {
+		JSONValidator validator = new JSONValidator(new ResolverMap(), write(String.format(JSON_SCHEMA, ""), ".json"), null);
+		Assert.assertTrue(validator.isStreaming());
+		measure("JSON Schema, streaming", validator, json);
+	}
+
+	@Test
+	public void jsonTree() throws Exception {
+		JSONValidator validator = new JSONValidator(new ResolverMap(), write(String.format(JSON_SCHEMA, "\"uniqueItems\": false, "), ".json"), null);
+		Assert.assertFalse(validator.isStreaming());
+		measure("JSON Schema, tree", validator, json);
+	}
+
+	private void measure(String name, IValidator validator, byte[] body) throws Exception {
+		run(name, validator, body, WARMUP);
+		run(name, validator, body, ITERATIONS);
+		int threads = 2 * Runtime.getRuntime().availableProcessors();
+		runConcurrently(name, validator, body, threads, WARMUP);
+		runConcurrently(name, validator, body, threads, ITERATIONS);
+	}
+
+	private static void validate(IValidator validator, byte[] body) throws Exception {
+		Request request = new Request.Builder().body(body).build();
+		Exchange exc = new Exchange(null);
+		exc.setRequest(request);
+		if (validator.validateMessage(exc, request, "request") != Outcome.CONTINUE)
+			throw new AssertionError("validation failed: " + exc.getResponse());
+	}
+
+	private void run(String name, IValidator validator, byte[] body, int iterations) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			validate(validator, body);
+		time = System.nanoTime() - time;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+		if (iterations == WARMUP)
+			return;
+		System.out.println(name + ": " + time / iterations / 1000 + " us/message, "
+				+ allocated / iterations / 1024 + " KB allocated/message (message size " + body.length / 1024 + " KB)");
+	}
+
+	private void runConcurrently(String name, final IValidator validator, final byte[] body, int threads, final int iterations) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long time = System.nanoTime();
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++)
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < iterations; i++)
+						validate(validator, body);
+					return null;
+				}));
+			for (Future<?> f : futures)
+				f.get();
+			time = System.nanoTime() - time;
+
+			if (iterations == WARMUP)
+				return;
+			System.out.println(name + ", " + threads + " threads: "
+					+ (long) threads * iterations * 1000000000L / time + " messages/s, "
+					+ time / iterations / 1000 + " us/message latency");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}
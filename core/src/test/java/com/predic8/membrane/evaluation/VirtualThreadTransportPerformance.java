@@ -0,0 +1,124 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.evaluation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.exchange.Exchange;
+import com.predic8.membrane.core.http.Request;
+import com.predic8.membrane.core.http.Response;
+import com.predic8.membrane.core.interceptor.AbstractInterceptor;
+import com.predic8.membrane.core.interceptor.Outcome;
+import com.predic8.membrane.core.rules.ServiceProxy;
+import com.predic8.membrane.core.rules.ServiceProxyKey;
+import com.predic8.membrane.core.transport.http.HttpClient;
+import com.predic8.membrane.core.transport.http.HttpTransport;
+import com.predic8.membrane.core.transport.http.VirtualThreadFactory;
+
+/**
+ * Compares {@code <transport executor="platform">} with {@code <transport executor="virtual">} by sending 10,000
+ * concurrent requests through the proxy to a backend taking 1 second per request.
+ *
+ * Requires Java 21 and a file descriptor limit well above 20,000 ({@code ulimit -n}).
+ */
+public class VirtualThreadTransportPerformance {
+
+	private static final int REQUESTS = 10000;
+	private static final int BACKEND_DELAY_MS = 1000;
+
+	@Test
+	public void platformThreads() throws Exception {
+		run(HttpTransport.ExecutorType.PLATFORM);
+	}
+
+	@Test
+	public void virtualThreads() throws Exception {
+		run(HttpTransport.ExecutorType.VIRTUAL);
+	}
+
+	private void run(HttpTransport.ExecutorType executor) throws Exception {
+		Assume.assumeTrue(VirtualThreadFactory.isSupported());
+
+		HttpRouter backend = createRouter(HttpTransport.ExecutorType.VIRTUAL);
+		ServiceProxy slow = new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3041), "", -1);
+		slow.getInterceptors().add(new AbstractInterceptor() {
+			@Override
+			public Outcome handleRequest(Exchange exc) throws Exception {
+				Thread.sleep(BACKEND_DELAY_MS);
+				exc.setResponse(Response.ok("OK").build());
+				return Outcome.RETURN;
+			}
+		});
+		backend.getRuleManager().addProxyAndOpenPortIfNew(slow);
+		backend.init();
+
+		HttpRouter proxy = createRouter(executor);
+		proxy.getRuleManager().addProxyAndOpenPortIfNew(new ServiceProxy(new ServiceProxyKey("*", "*", ".*", 3040), "localhost", 3041));
+		proxy.init();
+
+		try {
+			final HttpClient client = new HttpClient();
+			final CountDownLatch done = new CountDownLatch(REQUESTS);
+			final AtomicInteger failed = new AtomicInteger();
+			ThreadFactory clientThreads = new VirtualThreadFactory("client");
+			long peakThreads = 0;
+
+			long time = System.currentTimeMillis();
+			for (int i = 0; i < REQUESTS; i++) {
+				clientThreads.newThread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							Exchange exc = new Request.Builder().get("http://localhost:3040/").buildExchange();
+							if (client.call(exc).getResponse().getStatusCode() != 200)
+								failed.incrementAndGet();
+							exc.getResponse().readBody();
+						} catch (Exception e) {
+							failed.incrementAndGet();
+						} finally {
+							done.countDown();
+						}
+					}
+				}).start();
+			}
+			while (done.getCount() > 0) {
+				peakThreads = Math.max(peakThreads, Thread.activeCount());
+				Thread.sleep(100);
+			}
+
+			System.out.println("executor=" + executor + ": " + REQUESTS + " requests in "
+					+ (System.currentTimeMillis() - time) / 1000.0 + "s, " + failed.get() + " failed, "
+					+ peakThreads + " platform threads at peak");
+		} finally {
+			proxy.shutdown();
+			backend.shutdown();
+		}
+	}
+
+	private HttpRouter createRouter(HttpTransport.ExecutorType executor) {
+		HttpRouter router = new HttpRouter();
+		router.getTransport().setExecutor(executor);
+		router.getTransport().setConcurrentConnectionLimitPerIp(2 * REQUESTS);
+		router.getTransport().setSocketTimeout(60000);
+		return router;
+	}
+
+}
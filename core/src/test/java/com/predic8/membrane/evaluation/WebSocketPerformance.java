@@ -0,0 +1,144 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+package com.predic8.membrane.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.predic8.membrane.core.transport.ws.WebSocketFrame;
+import com.predic8.membrane.core.transport.ws.WebSocketFrameAssembler;
+
+/**
+ * Measures reading WebSocket frames from a stream and writing them to another one, as done by
+ * {@link com.predic8.membrane.core.transport.http.WebSocketStreamPump}: decoding every frame (as needed when
+ * WebSocket interceptors are configured) and forwarding the frames without decoding them.
+ *
+ * Two kinds of traffic are used: chat-like traffic (many small, masked text frames) and large binary frames. Reports
+ * time and bytes allocated per MB of traffic. Allocation is measured using the HotSpot-specific
+ * {@link com.sun.management.ThreadMXBean}.
+ */
+public class WebSocketPerformance {
+
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 100;
+
+	private static byte[] chat;
+	private static byte[] binary;
+
+	private interface Mode {
+		void pump(byte[] traffic) throws Exception;
+	}
+
+	private static final Mode DECODE = new Mode() {
+		@Override
+		public void pump(byte[] traffic) throws Exception {
+			new WebSocketFrameAssembler(new ByteArrayInputStream(traffic), null).readFrames(frame -> {
+				try {
+					frame.write(NULL, false);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}, () -> {});
+		}
+	};
+
+	private static final Mode FORWARD = new Mode() {
+		@Override
+		public void pump(byte[] traffic) throws Exception {
+			new WebSocketFrameAssembler(new ByteArrayInputStream(traffic), null).forwardFrames(NULL);
+		}
+	};
+
+	private static final OutputStream NULL = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+		}
+	};
+
+	@BeforeClass
+	public static void init() throws Exception {
+		Random random = new Random(42);
+		byte[] maskKey = new byte[4];
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; out.size() < 4 * 1024 * 1024; i++) {
+			random.nextBytes(maskKey);
+			StringBuilder message = new StringBuilder("{\"user\":\"user" + i % 100 + "\",\"text\":\"");
+			int length = 20 + random.nextInt(150);
+			while (message.length() < length)
+				message.append("hello ");
+			message.append("\"}");
+			new WebSocketFrame(true, false, false, false, 1, true, maskKey, message.toString().getBytes()).write(out, false);
+		}
+		chat = out.toByteArray();
+
+		out = new ByteArrayOutputStream();
+		byte[] payload = new byte[1024 * 1024];
+		random.nextBytes(payload);
+		for (int i = 0; i < 4; i++) {
+			random.nextBytes(maskKey);
+			new WebSocketFrame(true, false, false, false, 2, true, maskKey, payload).write(out, false);
+		}
+		binary = out.toByteArray();
+	}
+
+	@Test
+	public void chat() throws Exception {
+		run("chat, decode", DECODE, chat);
+		run("chat, forward", FORWARD, chat);
+	}
+
+	@Test
+	public void binary() throws Exception {
+		run("binary, decode", DECODE, binary);
+		run("binary, forward", FORWARD, binary);
+	}
+
+	private void run(String name, Mode mode, byte[] traffic) throws Exception {
+		run(name, mode, traffic, WARMUP);
+		run(name, mode, traffic, ITERATIONS);
+	}
+
+	private void run(String name, Mode mode, byte[] traffic, int iterations) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			mode.pump(traffic);
+		time = System.nanoTime() - time;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+		if (iterations == WARMUP)
+			return;
+		double mb = (double) traffic.length * iterations / (1024 * 1024);
+		System.out.println(name + ": " + (long) (time / mb / 1000) + " us/MB, "
+				+ (long) (allocated / mb / 1024) + " KB allocated/MB");
+	}
+
+}
@@ -0,0 +1,176 @@
+/* Copyright 2026 predic8 GmbH, www.predic8.com
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+   http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License. */
+
+
+package com.predic8.membrane.evaluation;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.transform.stream.StreamSource;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.predic8.membrane.core.HttpRouter;
+import com.predic8.membrane.core.http.ChunkedBodyTransferrer;
+import com.predic8.membrane.core.interceptor.xslt.XSLTBody;
+import com.predic8.membrane.core.interceptor.xslt.XSLTTransformer;
+
+/**
+ * Compares buffered XSLT transformation (the result becomes a byte[] body) with streaming transformation (the
+ * result is written through a chunked transferrer while it is produced), for a SOAP message of about 4 MB.
+ *
+ * Reports time and bytes allocated per message on one thread, and throughput using 2 threads per core sharing
+ * one {@link XSLTTransformer}. Allocation is measured using the HotSpot-specific
+ * {@link com.sun.management.ThreadMXBean}.
+ */
+public class XSLTPerformance {
+
+	private static final int WARMUP = 20;
+	private static final int ITERATIONS = 100;
+
+	private static final String STYLESHEET = "<xsl:stylesheet version=\"1.0\" xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\">\n" +
+			"  <xsl:template match=\"@*|node()\"><xsl:copy><xsl:apply-templates select=\"@*|node()\"/></xsl:copy></xsl:template>\n" +
+			"  <xsl:template match=\"price\"><amount currency=\"EUR\"><xsl:value-of select=\".\"/></amount></xsl:template>\n" +
+			"</xsl:stylesheet>";
+
+	private static HttpRouter router;
+	private static File stylesheet;
+	private static XSLTTransformer transformer;
+	private static byte[] message;
+
+	private interface Mode {
+		void transform(byte[] xml) throws Exception;
+	}
+
+	private static final Mode BUFFERED = new Mode() {
+		@Override
+		public void transform(byte[] xml) throws Exception {
+			byte[] result = transformer.transform(new StreamSource(new ByteArrayInputStream(xml)), new HashMap<String, String>());
+			NULL.write(result);
+		}
+	};
+
+	private static final Mode STREAMING = new Mode() {
+		@Override
+		public void transform(byte[] xml) throws Exception {
+			XSLTBody body = new XSLTBody(transformer, new StreamSource(new ByteArrayInputStream(xml)), new HashMap<String, String>());
+			body.write(new ChunkedBodyTransferrer(NULL));
+		}
+	};
+
+	private static final OutputStream NULL = new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+		}
+	};
+
+	@BeforeClass
+	public static void init() throws Exception {
+		router = new HttpRouter();
+		stylesheet = File.createTempFile("membrane", ".xsl");
+		Files.write(stylesheet.toPath(), STYLESHEET.getBytes(StandardCharsets.UTF_8));
+		transformer = new XSLTTransformer(stylesheet.getAbsolutePath(), router, 2 * Runtime.getRuntime().availableProcessors());
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\"><soapenv:Body><order>");
+		for (int i = 0; sb.length() < 4 * 1024 * 1024; i++)
+			sb.append("<item id=\"").append(i).append("\"><name>Article ").append(i).append("</name><price>")
+					.append(i % 100).append(".99</price></item>");
+		sb.append("</order></soapenv:Body></soapenv:Envelope>");
+		message = sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@AfterClass
+	public static void done() throws Exception {
+		router.shutdown();
+		stylesheet.delete();
+	}
+
+	@Test
+	public void singleThread() throws Exception {
+		run("buffered", BUFFERED, WARMUP);
+		run("streaming", STREAMING, WARMUP);
+		run("buffered", BUFFERED, ITERATIONS);
+		run("streaming", STREAMING, ITERATIONS);
+	}
+
+	@Test
+	public void concurrent() throws Exception {
+		int threads = 2 * Runtime.getRuntime().availableProcessors();
+		runConcurrently("buffered", BUFFERED, threads, WARMUP);
+		runConcurrently("streaming", STREAMING, threads, WARMUP);
+		runConcurrently("buffered", BUFFERED, threads, ITERATIONS);
+		runConcurrently("streaming", STREAMING, threads, ITERATIONS);
+	}
+
+	private void run(String name, Mode mode, int iterations) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		long allocated = threads.getThreadAllocatedBytes(threadId);
+		long time = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+			mode.transform(message);
+		time = System.nanoTime() - time;
+		allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+		if (iterations == WARMUP)
+			return;
+		System.out.println(name + ": " + time / iterations / 1000 + " us/message, "
+				+ allocated / iterations / 1024 + " KB allocated/message (message size " + message.length / 1024 + " KB)");
+	}
+
+	private void runConcurrently(String name, final Mode mode, int threads, final int iterations) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			long time = System.nanoTime();
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (int t = 0; t < threads; t++)
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < iterations; i++)
+						mode.transform(message);
+					return null;
+				}));
+			for (Future<?> f : futures)
+				f.get();
+			time = System.nanoTime() - time;
+
+			if (iterations == WARMUP)
+				return;
+			System.out.println(name + ", " + threads + " threads: "
+					+ (long) threads * iterations * 1000000000L / time + " messages/s");
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+}